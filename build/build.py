@@ -138,6 +138,7 @@ maxTotalConnections = 200
 maxRedirects = 20 # Gecko default
 followW3Cspec = 0
 statistics = 0
+schemaLoading = 'lazy'
 miniDoc = '<!doctype html><meta charset=utf-8><title>test</title>'
 
 dependencyPackages = [
@@ -795,6 +796,7 @@ def getRunArgs(heap="$((HEAP))"):
         '-Dnu.validator.servlet.max-total-connections=%d' % maxTotalConnections,  # nopep8
         '-Dnu.validator.servlet.max-redirects=%d' % maxRedirects,
         '-Dnu.validator.servlet.statistics=%d' % statistics,
+        '-Dnu.validator.servlet.schema-loading=' + schemaLoading,
         '-Dnu.validator.servlet.style-sheet=' + stylesheet,
         '-Dnu.validator.servlet.user-agent=' + userAgent,
         '-Dnu.validator.servlet.version=' + validatorVersion,
@@ -1302,6 +1304,27 @@ def preparePropertiesFile():
     f.close()
 
 
+def compressStaticAssets():
+    # The servlet serves these brotli-compressed copies to clients that
+    # accept brotli; without the brotli command, it only offers gzip.
+    names = ("about.html", "style.css", "script.js")
+    for name in names:
+        brotliPath = os.path.join(filesDir, name + ".br")
+        if os.path.exists(brotliPath):
+            os.remove(brotliPath)
+    for name in names:
+        path = os.path.join(filesDir, name)
+        try:
+            subprocess.check_call(["brotli", "--best", "--force",
+                                   "--output=" + path + ".br", path])
+        except (OSError, subprocess.CalledProcessError):
+            for name in names:
+                brotliPath = os.path.join(filesDir, name + ".br")
+                if os.path.exists(brotliPath):
+                    os.remove(brotliPath)
+            return
+
+
 def prepareLocalEntityJar():
     ensureDirExists(filesDir)
     preparePropertiesFile()
@@ -1317,6 +1340,7 @@ def prepareLocalEntityJar():
                     os.path.join(filesDir, "script.js"))
     shutil.copyfile(os.path.join(buildRoot, "site", "icon.png"),
                     os.path.join(filesDir, "icon.png"))
+    compressStaticAssets()
     shutil.copyfile(os.path.join(buildRoot, "docs", "Microsyntax-descriptions.md"),  # nopep8
                     os.path.join(filesDir, "syntax-descriptions"))
     shutil.copyfile(os.path.join(buildRoot, "resources", "language-profiles-list.txt"),  # nopep8
@@ -1413,6 +1437,7 @@ def runTests():
         args = ["--ignore=hgroup", "tests/messages.json"]
     else:
         args = ["--ignore=html-its", "tests/messages.json"]
+    args = ["--jobs=%d" % max(1, cpuCount())] + args
     className = "nu.validator.client.TestRunner"
     classPath = os.pathsep.join(
         buildRunJarPathList() +
@@ -1422,6 +1447,14 @@ def runTests():
         sys.exit(1)
 
 
+def cpuCount():
+    try:
+        import multiprocessing
+        return multiprocessing.cpu_count()
+    except (ImportError, NotImplementedError):
+        return 1
+
+
 def splitHostSpec(spec):
     index = spec.find('/')
     return (spec[0:index], spec[index:])
@@ -1436,6 +1469,7 @@ def printHelp():
     print("  --control-port=-1")
     print("                                Sets server control port number")
     print("                                (necessary for daemonizing)")
+    print("  --eager-schemas            -- Load all preset schemas at startup")
     print("  --git=/usr/bin/git         -- Sets path to the git binary")
     print("  --heap=512                 -- Sets Java heap size in MB")
     print("  --html5link=http://www.whatwg.org/specs/web-apps/current-work/")
@@ -1579,6 +1613,8 @@ else:
             followW3Cspec = 1
         elif arg == '--statistics':
             statistics = 1
+        elif arg == '--eager-schemas':
+            schemaLoading = 'eager'
         elif arg == '--help':
             printHelp()
         elif arg == 'update':
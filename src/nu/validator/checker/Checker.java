@@ -48,6 +48,8 @@ public abstract class Checker implements ContentHandler {
 
     private Locator locator;
 
+    private IdIndex idIndex;
+
     /**
      * Constructor.
      */
@@ -134,6 +136,31 @@ public abstract class Checker implements ContentHandler {
         this.errorHandler = errorHandler;
     }
     
+    /**
+     * Sets the ID index shared by the checkers of a validation. The index is
+     * filled by an <code>IdIndexingContentHandler</code> in front of the
+     * checkers; checkers only read it.
+     * 
+     * @param idIndex
+     *            the index
+     */
+    public void setIdIndex(IdIndex idIndex) {
+        this.idIndex = idIndex;
+    }
+
+    /**
+     * Returns the ID index of the document being checked. The index is
+     * complete when <code>endDocument</code> is called.
+     * 
+     * @return the index
+     */
+    protected IdIndex getIdIndex() {
+        if (idIndex == null) {
+            idIndex = new IdIndex();
+        }
+        return idIndex;
+    }
+
     /**
      * Returns the locator.
      * 
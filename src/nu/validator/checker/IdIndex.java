@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package nu.validator.checker;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+
+import com.thaiopensource.util.PropertyId;
+
+/**
+ * The IDs, and the names of image maps, of one document, indexed once for all
+ * the checkers of a validation instead of once per checker. Each distinct
+ * value is stored once, in an open-addressed table, together with a bit mask
+ * saying which kinds of element carry it.
+ *
+ * <p>The index is filled by a single <code>IdIndexingContentHandler</code>
+ * placed in front of the checkers, which see every element after it has been
+ * indexed and only read the index. Element ordinals count the elements that
+ * handler has passed on since the start of the document, so a checker that
+ * counts its own elements from <code>startDocument</code> gets the same
+ * numbers. <code>IdFilter</code> keeps an index of its own for XML IDs.
+ */
+public final class IdIndex {
+
+    /**
+     * The property under which <code>CheckerValidator</code> finds the index
+     * to share.
+     */
+    public static final PropertyId<IdIndex> PROPERTY = PropertyId.newInstance(
+            "ID_INDEX", IdIndex.class);
+
+    /**
+     * An ID of an element that <code>Assertions</code> looks at, i.e. one
+     * outside template contents.
+     */
+    private static final int ID = 1;
+
+    private static final int FORM_CONTROL = 1 << 1;
+
+    private static final int FORM = 1 << 2;
+
+    private static final int DATALIST = 1 << 3;
+
+    private static final int MENU = 1 << 4;
+
+    /**
+     * The name of an HTML <code>map</code> element.
+     */
+    private static final int MAP_NAME = 1 << 5;
+
+    /**
+     * The <code>id</code> attribute of an HTML element, template contents
+     * included.
+     */
+    private static final int HTML_ID = 1 << 6;
+
+    /**
+     * An ID registered by <code>IdFilter</code>.
+     */
+    private static final int XML_ID = 1 << 7;
+
+    private static final String XHTML = "http://www.w3.org/1999/xhtml";
+
+    private String[] keys = new String[64];
+
+    private int[] kinds = new int[64];
+
+    /**
+     * The ordinal of the first HTML element whose <code>id</code> is the key.
+     */
+    private int[] firstElements = new int[64];
+
+    /**
+     * The position handle of the first XML ID that is the key.
+     */
+    private int[] firstXmlIds = new int[64];
+
+    private int size = 0;
+
+    private final PositionTable positions = new PositionTable();
+
+    private int templateDepth = 0;
+
+    private int elements = 0;
+
+    public IdIndex() {
+    }
+
+    /**
+     * Forgets everything indexed, for a new document.
+     */
+    public void reset() {
+        keys = new String[64];
+        kinds = new int[64];
+        firstElements = new int[64];
+        firstXmlIds = new int[64];
+        size = 0;
+        positions.clear();
+        templateDepth = 0;
+        elements = 0;
+    }
+
+    /**
+     * Returns whether an element outside template contents has the ID.
+     */
+    public boolean isId(String id) {
+        return is(id, ID);
+    }
+
+    /**
+     * Returns whether a non-hidden form control has the ID.
+     */
+    public boolean isFormControlId(String id) {
+        return is(id, FORM_CONTROL);
+    }
+
+    /**
+     * Returns whether a <code>form</code> element has the ID.
+     */
+    public boolean isFormId(String id) {
+        return is(id, FORM);
+    }
+
+    /**
+     * Returns whether a <code>datalist</code> element has the ID.
+     */
+    public boolean isDatalistId(String id) {
+        return is(id, DATALIST);
+    }
+
+    /**
+     * Returns whether a <code>menu</code> element has the ID.
+     */
+    public boolean isMenuId(String id) {
+        return is(id, MENU);
+    }
+
+    /**
+     * Returns whether a <code>map</code> element has the name.
+     */
+    public boolean isMapName(String name) {
+        return is(name, MAP_NAME);
+    }
+
+    /**
+     * Returns the ordinal of the first HTML element whose <code>id</code>
+     * attribute is <code>id</code>, counting elements from zero in document
+     * order, or -1.
+     */
+    public int getFirstElementWithId(String id) {
+        int slot = find(id);
+        if (slot < 0 || (kinds[slot] & HTML_ID) == 0) {
+            return -1;
+        }
+        return firstElements[slot];
+    }
+
+    private boolean is(String key, int kind) {
+        int slot = find(key);
+        return slot >= 0 && (kinds[slot] & kind) != 0;
+    }
+
+    /**
+     * Indexes an element.
+     */
+    public void startElement(String uri, String localName, Attributes atts) {
+        int ordinal = elements++;
+        boolean html = XHTML == uri;
+        boolean template = html && "template".equals(localName);
+        boolean visible;
+        if (template) {
+            templateDepth++;
+            visible = templateDepth == 1;
+        } else {
+            visible = templateDepth == 0;
+        }
+        int kind = 0;
+        if (visible) {
+            kind = ID;
+            if (html) {
+                if ("menu" == localName) {
+                    kind |= MENU;
+                } else if ("datalist" == localName) {
+                    kind |= DATALIST;
+                } else if ("form" == localName) {
+                    kind |= FORM;
+                } else if ("button" == localName || "meter" == localName
+                        || "output" == localName || "progress" == localName
+                        || "select" == localName || "textarea" == localName) {
+                    kind |= FORM_CONTROL;
+                } else if ("input" == localName) {
+                    String type = atts.getValue("", "type");
+                    if (type == null
+                            || !AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
+                                    "hidden", type)) {
+                        kind |= FORM_CONTROL;
+                    }
+                }
+            }
+        }
+        int len = atts.getLength();
+        for (int i = 0; i < len; i++) {
+            String local = atts.getLocalName(i);
+            boolean noNamespace = atts.getURI(i).length() == 0;
+            if (html && noNamespace && "id" == local) {
+                String value = atts.getValue(i);
+                if (value.length() != 0) {
+                    int slot = slotFor(value);
+                    if ((kinds[slot] & HTML_ID) == 0) {
+                        kinds[slot] |= HTML_ID;
+                        firstElements[slot] = ordinal;
+                    }
+                }
+            }
+            if (kind != 0 && ("ID" == atts.getType(i) || (html && "id" == local))) {
+                String value = atts.getValue(i);
+                if (value.length() != 0) {
+                    kinds[slotFor(value)] |= kind;
+                }
+            }
+            if (html && noNamespace && "name" == local && "map" == localName) {
+                String value = atts.getValue(i);
+                if (value.length() != 0) {
+                    kinds[slotFor(value)] |= MAP_NAME;
+                }
+            }
+        }
+    }
+
+    /**
+     * Notes the end of an element.
+     */
+    public void endElement(String uri, String localName) {
+        if (XHTML == uri && "template".equals(localName)) {
+            templateDepth--;
+        }
+    }
+
+    /**
+     * Registers an XML ID and returns the position of its first occurrence
+     * if it was registered before, or <code>null</code>.
+     */
+    public Locator registerXmlId(String id, Locator locator) {
+        int slot = slotFor(id);
+        if ((kinds[slot] & XML_ID) != 0) {
+            return positions.get(firstXmlIds[slot]);
+        }
+        kinds[slot] |= XML_ID;
+        firstXmlIds[slot] = positions.add(locator);
+        return null;
+    }
+
+    private int find(String key) {
+        int mask = keys.length - 1;
+        int i = key.hashCode() & mask;
+        String k;
+        while ((k = keys[i]) != null) {
+            if (k.equals(key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slotFor(String key) {
+        int mask = keys.length - 1;
+        int i = key.hashCode() & mask;
+        String k;
+        while ((k = keys[i]) != null) {
+            if (k.equals(key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        if ((size + 1) << 1 > keys.length) {
+            grow();
+            return slotFor(key);
+        }
+        keys[i] = key;
+        size++;
+        return i;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldKinds = kinds;
+        int[] oldFirstElements = firstElements;
+        int[] oldFirstXmlIds = firstXmlIds;
+        int capacity = oldKeys.length << 1;
+        keys = new String[capacity];
+        kinds = new int[capacity];
+        firstElements = new int[capacity];
+        firstXmlIds = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            String key = oldKeys[j];
+            if (key != null) {
+                int i = key.hashCode() & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                kinds[i] = oldKinds[j];
+                firstElements[i] = oldFirstElements[j];
+                firstXmlIds[i] = oldFirstXmlIds[j];
+            }
+        }
+    }
+}
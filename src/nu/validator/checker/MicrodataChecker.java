@@ -22,15 +22,7 @@
 
 package nu.validator.checker;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
@@ -68,81 +60,94 @@ import org.xml.sax.SAXException;
  * validates with no errors, then all the constraints are satisfied.
  */
 public class MicrodataChecker extends Checker {
-    /**
-     * The relevant aspects of an HTML element.
+    /*
+     * The relevant aspects of HTML elements are kept in parallel arrays
+     * indexed by node number. Nodes are numbered in tree order, and each
+     * node number is also the handle of the element's position in the
+     * position table.
      *
-     * There is no Document class as there is no need for a root
-     * element from which all Elements can be reached.
+     * There is no Document node as there is no need for a root element
+     * from which all nodes can be reached.
      */
-    class Element {
-        public final Locator locator;
 
-        public final String[] itemProp;
+    private static final int INITIAL_CAPACITY = 64;
 
-        public final String[] itemRef;
+    private static final int NONE = -1;
 
-        public final boolean itemScope;
+    private int nodeCount;
 
-        public final List<Element> children;
+    // elements seen, counted like the ordinals of the ID index
+    private int elementCount;
 
-        // tree order of the element, for cheap sorting and hashing
-        private final int order;
+    // ordinal of each node in the ID index; increasing in tree order
+    private int[] ordinals;
 
-        public Element(Locator locator, String[] itemProp, String[] itemRef,
-                boolean itemScope) {
-            this.locator = locator;
-            this.itemProp = itemProp;
-            this.itemRef = itemRef;
-            this.itemScope = itemScope;
-            this.children = new LinkedList<>();
-            this.order = counter++;
-        }
+    private String[][] itemProps;
 
-        @Override
-        public boolean equals(Object that) {
-            return this == that;
-        }
+    private String[][] itemRefs;
 
-        @Override
-        public int hashCode() {
-            return order;
-        }
+    private boolean[] itemScopes;
 
-        /**
-         * Helper for building the Element tree(s).
-         */
-        class Builder {
-            public final Builder parent;
+    private int[] firstChildren;
 
-            public final int depth; // nesting depth in the input
+    private int[] lastChildren;
 
-            public Builder(Builder parent, int depth) {
-                this.parent = parent;
-                this.depth = depth;
-            }
+    private int[] nextSiblings;
 
-            public void appendChild(Element elm) {
-                Element.this.children.add(elm);
-            }
-        }
-    }
+    // property nodes not (yet) found to be a property of any item
+    private boolean[] unclaimed;
 
     private int depth; // nesting depth in the input
 
-    private Element.Builder builder;
+    // the open nodes and their nesting depths in the input, for building
+    // the tree(s)
+    private int[] openNodes;
 
-    private static int counter;
+    private int[] openDepths;
 
-    // top-level items (itemscope but not itemprop)
-    private List<Element> items;
+    private int openCount;
 
-    // property elements (itemprop)
-    private Set<Element> properties;
+    private Locator locator;
 
-    // mapping from id to Element (like getElementById)
-    private Map<String, Element> idmap;
+    // positions of nodes, for diagnostics
+    private final PositionTable positions = new PositionTable();
 
-    private Locator locator;
+    /*
+     * State of the item graph walk at the end of the document. The walk
+     * keeps one frame per item that is being checked, innermost last.
+     */
+
+    // generation of the item that last visited each node
+    private int[] visited;
+
+    private int generation;
+
+    // nodes whose visited mark was overwritten and the marks they had, so
+    // that an item gets its own marks back when a sub-item is done
+    private int[] undoNodes;
+
+    private int[] undoMarks;
+
+    private int undoCount;
+
+    private int[] pending;
+
+    private int pendingCount;
+
+    // whether a node is an item on the path from the top-level item
+    private boolean[] onPath;
+
+    private int[] frameRoots;
+
+    private int[] frameGenerations;
+
+    private int[] framePendingBases;
+
+    private int[] frameUndoBases;
+
+    private boolean[] frameMemoryErrors;
+
+    private int frameCount;
 
     /**
      * @see nu.validator.checker.Checker#reset()
@@ -150,11 +155,39 @@ public class MicrodataChecker extends Checker {
     @Override
     public void reset() {
         depth = 0;
-        builder = null;
-        counter = 0;
-        items = new LinkedList<>();
-        properties = new LinkedHashSet<>();
-        idmap = new HashMap<>();
+        elementCount = 0;
+        nodeCount = 0;
+        ordinals = new int[INITIAL_CAPACITY];
+        itemProps = new String[INITIAL_CAPACITY][];
+        itemRefs = new String[INITIAL_CAPACITY][];
+        itemScopes = new boolean[INITIAL_CAPACITY];
+        firstChildren = new int[INITIAL_CAPACITY];
+        lastChildren = new int[INITIAL_CAPACITY];
+        nextSiblings = new int[INITIAL_CAPACITY];
+        unclaimed = new boolean[INITIAL_CAPACITY];
+        openNodes = new int[INITIAL_CAPACITY];
+        openDepths = new int[INITIAL_CAPACITY];
+        openCount = 0;
+        positions.clear();
+        visited = null;
+        undoNodes = null;
+        undoMarks = null;
+        pending = null;
+        onPath = null;
+        frameRoots = null;
+        frameGenerations = null;
+        framePendingBases = null;
+        frameUndoBases = null;
+        frameMemoryErrors = null;
+    }
+
+    /**
+     * @see nu.validator.checker.Checker#startDocument()
+     */
+    @Override
+    public void startDocument() throws SAXException {
+        super.startDocument();
+        elementCount = 0;
     }
 
     /**
@@ -164,6 +197,7 @@ public class MicrodataChecker extends Checker {
     @Override
     public void startElement(String uri, String localName, String qName,
             Attributes atts) throws SAXException {
+        int ordinal = elementCount++;
         depth++;
 
         if ("http://www.w3.org/1999/xhtml" != uri) {
@@ -193,23 +227,53 @@ public class MicrodataChecker extends Checker {
         }
 
         if (id != null || itemProp != null || itemScope) {
-            Element elm = new Element(new LocatorImpl(locator), itemProp,
-                    itemRef, itemScope);
-
-            if (itemProp != null) {
-                properties.add(elm);
-            } else if (itemScope) {
-                items.add(elm);
+            int node = newNode(ordinal, itemProp, itemRef, itemScope);
+            if (openCount > 0) {
+                appendChild(openNodes[openCount - 1], node);
             }
-            if (!idmap.containsKey(id)) {
-                idmap.put(id, elm);
+            if (openCount == openNodes.length) {
+                openNodes = Arrays.copyOf(openNodes, openCount << 1);
+                openDepths = Arrays.copyOf(openDepths, openCount << 1);
             }
+            openNodes[openCount] = node;
+            openDepths[openCount] = depth;
+            openCount++;
+        }
+    }
 
-            if (builder != null) {
-                builder.appendChild(elm);
-            }
-            builder = elm.new Builder(builder, depth);
+    private int newNode(int ordinal, String[] itemProp, String[] itemRef,
+            boolean itemScope) {
+        if (nodeCount == ordinals.length) {
+            int capacity = nodeCount << 1;
+            ordinals = Arrays.copyOf(ordinals, capacity);
+            itemProps = Arrays.copyOf(itemProps, capacity);
+            itemRefs = Arrays.copyOf(itemRefs, capacity);
+            itemScopes = Arrays.copyOf(itemScopes, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            lastChildren = Arrays.copyOf(lastChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            unclaimed = Arrays.copyOf(unclaimed, capacity);
         }
+        int node = nodeCount++;
+        positions.add(locator);
+        ordinals[node] = ordinal;
+        itemProps[node] = itemProp;
+        itemRefs[node] = itemRef;
+        itemScopes[node] = itemScope;
+        firstChildren[node] = NONE;
+        lastChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        unclaimed[node] = itemProp != null;
+        return node;
+    }
+
+    private void appendChild(int parent, int child) {
+        if (lastChildren[parent] == NONE) {
+            firstChildren[parent] = child;
+        } else {
+            nextSiblings[lastChildren[parent]] = child;
+        }
+        lastChildren[parent] = child;
     }
 
     /**
@@ -219,8 +283,8 @@ public class MicrodataChecker extends Checker {
     @Override
     public void endElement(String uri, String localName, String qName)
             throws SAXException {
-        if (builder != null && builder.depth == depth) {
-            builder = builder.parent;
+        if (openCount > 0 && openDepths[openCount - 1] == depth) {
+            openCount--;
         }
         depth--;
     }
@@ -230,16 +294,35 @@ public class MicrodataChecker extends Checker {
      */
     @Override
     public void endDocument() throws SAXException {
-        // check all top-level items
-        for (Element item : items) {
-            checkItem(item, new ArrayDeque<Element>());
+        visited = new int[nodeCount];
+        generation = 0;
+        undoNodes = new int[INITIAL_CAPACITY];
+        undoMarks = new int[INITIAL_CAPACITY];
+        undoCount = 0;
+        pending = new int[INITIAL_CAPACITY];
+        pendingCount = 0;
+        onPath = new boolean[nodeCount];
+        frameRoots = new int[INITIAL_CAPACITY];
+        frameGenerations = new int[INITIAL_CAPACITY];
+        framePendingBases = new int[INITIAL_CAPACITY];
+        frameUndoBases = new int[INITIAL_CAPACITY];
+        frameMemoryErrors = new boolean[INITIAL_CAPACITY];
+        frameCount = 0;
+
+        // check all top-level items (itemscope but not itemprop)
+        for (int node = 0; node < nodeCount; node++) {
+            if (itemScopes[node] && itemProps[node] == null) {
+                checkItem(node);
+            }
         }
 
         // emit errors for unreferenced properties
-        for (Element prop : properties) {
-            err("The \u201Citemprop\u201D attribute was specified,"
-                + " but the element is not a property of any item.",
-                    prop.locator);
+        for (int node = 0; node < nodeCount; node++) {
+            if (unclaimed[node]) {
+                err("The \u201Citemprop\u201D attribute was specified,"
+                    + " but the element is not a property of any item.",
+                        positions.get(node));
+            }
         }
     }
 
@@ -247,64 +330,126 @@ public class MicrodataChecker extends Checker {
      * Check itemref constraints.
      *
      * This mirrors the "the properties of an item" algorithm, modified to
-     * recursively check sub-items.
+     * check sub-items as they are found. Instead of recursing, a frame is
+     * pushed for each sub-item.
      *
      * http://www.whatwg.org/specs/web-apps/current-work/multipage/microdata.html#the-properties-of-an-item
      */
-    private void checkItem(Element root, Deque<Element> parents)
-            throws SAXException {
-        Deque<Element> pending = new ArrayDeque<>();
-        Set<Element> memory = new HashSet<>();
-        memory.add(root);
-        for (Element child : root.children) {
-            pending.push(child);
-        }
-        if (root.itemRef != null) {
-            for (String id : root.itemRef) {
-                Element refElm = idmap.get(id);
-                if (refElm != null) {
-                    pending.push(refElm);
-                } else {
-                    err("The \u201Citemref\u201D attribute referenced \u201C"
-                            + id
-                            + "\u201D, but there is no element with an"
-                            + " \u201Cid\u201D attribute with that value.",
-                            root.locator);
+    private void checkItem(int item) throws SAXException {
+        pushFrame(item);
+        while (frameCount > 0) {
+            int frame = frameCount - 1;
+            int root = frameRoots[frame];
+            if (pendingCount == framePendingBases[frame]) {
+                if (frameMemoryErrors[frame]) {
+                    err("The \u201Citemref\u201D attribute contained redundant references.",
+                            positions.get(root));
                 }
+                popFrame();
+                continue;
             }
-        }
-        boolean memoryError = false;
-        while (pending.size() > 0) {
-            Element current = pending.pop();
-            if (memory.contains(current)) {
-                memoryError = true;
+            int current = pending[--pendingCount];
+            if (visited[current] == frameGenerations[frame]) {
+                frameMemoryErrors[frame] = true;
                 continue;
             }
-            memory.add(current);
-            if (!current.itemScope) {
-                for (Element child : current.children) {
-                    pending.push(child);
-                }
+            visit(current, frameGenerations[frame]);
+            if (!itemScopes[current]) {
+                pushChildren(current);
             }
-            if (current.itemProp != null) {
-                properties.remove(current);
-                if (current.itemScope) {
-                    if (!parents.contains(current)) {
-                        parents.push(root);
-                        checkItem(current, parents);
-                        parents.pop();
+            if (itemProps[current] != null) {
+                unclaimed[current] = false;
+                if (itemScopes[current]) {
+                    if (!onPath[current]) {
+                        onPath[root] = true;
+                        pushFrame(current);
                     } else {
                         err("The \u201Citemref\u201D attribute created a"
                             + " circular reference with another item.",
-                                current.locator);
+                                positions.get(current));
                     }
                 }
             }
         }
-        if (memoryError) {
-            err("The \u201Citemref\u201D attribute contained redundant references.",
-                    root.locator);
+    }
+
+    private void pushFrame(int root) throws SAXException {
+        if (frameCount == frameRoots.length) {
+            int capacity = frameCount << 1;
+            frameRoots = Arrays.copyOf(frameRoots, capacity);
+            frameGenerations = Arrays.copyOf(frameGenerations, capacity);
+            framePendingBases = Arrays.copyOf(framePendingBases, capacity);
+            frameUndoBases = Arrays.copyOf(frameUndoBases, capacity);
+            frameMemoryErrors = Arrays.copyOf(frameMemoryErrors, capacity);
+        }
+        int frame = frameCount++;
+        frameRoots[frame] = root;
+        frameGenerations[frame] = ++generation;
+        framePendingBases[frame] = pendingCount;
+        frameUndoBases[frame] = undoCount;
+        frameMemoryErrors[frame] = false;
+        visit(root, generation);
+        pushChildren(root);
+        String[] itemRef = itemRefs[root];
+        if (itemRef != null) {
+            for (String id : itemRef) {
+                int refNode = getNodeById(id);
+                if (refNode != NONE) {
+                    push(refNode);
+                } else {
+                    err("The \u201Citemref\u201D attribute referenced \u201C"
+                            + id
+                            + "\u201D, but there is no element with an"
+                            + " \u201Cid\u201D attribute with that value.",
+                            positions.get(root));
+                }
+            }
+        }
+    }
+
+    private void popFrame() {
+        int frame = --frameCount;
+        int undoBase = frameUndoBases[frame];
+        while (undoCount > undoBase) {
+            undoCount--;
+            visited[undoNodes[undoCount]] = undoMarks[undoCount];
+        }
+        if (frame > 0) {
+            onPath[frameRoots[frame - 1]] = false;
+        }
+    }
+
+    private void visit(int node, int mark) {
+        if (undoCount == undoNodes.length) {
+            undoNodes = Arrays.copyOf(undoNodes, undoCount << 1);
+            undoMarks = Arrays.copyOf(undoMarks, undoCount << 1);
+        }
+        undoNodes[undoCount] = node;
+        undoMarks[undoCount] = visited[node];
+        undoCount++;
+        visited[node] = mark;
+    }
+
+    private void pushChildren(int node) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            push(child);
+        }
+    }
+
+    private void push(int node) {
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount << 1);
+        }
+        pending[pendingCount++] = node;
+    }
+
+    private int getNodeById(String id) {
+        int ordinal = getIdIndex().getFirstElementWithId(id);
+        if (ordinal < 0) {
+            return NONE;
         }
+        int node = Arrays.binarySearch(ordinals, 0, nodeCount, ordinal);
+        return node < 0 ? NONE : node;
     }
 
     /**
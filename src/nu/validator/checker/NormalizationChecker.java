@@ -23,6 +23,8 @@
 
 package nu.validator.checker;
 
+import nu.validator.xml.CharacterUtil;
+
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
@@ -70,6 +72,12 @@ public final class NormalizationChecker extends Checker {
             "[[:nfc_qc=maybe:][:^ccc=0:]]").freeze();
     // see http://sourceforge.net/mailarchive/message.php?msg_id=37279908
 
+    /**
+     * The first character in <code>COMPOSING_CHARACTERS</code>. Nothing below
+     * it is a composing character, a surrogate or not in NFC.
+     */
+    private static final char FIRST_COMPOSING_CHAR = '\u0300';
+
     /**
      * A buffer for holding sequences overlap the SAX buffer boundary.
      */
@@ -113,6 +121,9 @@ public final class NormalizationChecker extends Checker {
      * or a surrogate and <code>false</code> otherwise
      */
     private static boolean isComposingCharOrSurrogate(char c) {
+        if (c < FIRST_COMPOSING_CHAR) {
+            return false;
+        }
         if (UCharacter.isHighSurrogate(c) || UCharacter.isLowSurrogate(c)) {
             return true;
         }
@@ -128,9 +139,37 @@ public final class NormalizationChecker extends Checker {
      * <code>false</code> otherwise
      */
     private static boolean isComposingChar(int c) {
+        if (c < FIRST_COMPOSING_CHAR) {
+            return false;
+        }
         return COMPOSING_CHARACTERS.contains(c);
     }
 
+    /**
+     * Returns <code>true</code> if a slice of an UTF-16 code unit array is in
+     * NFC and <code>false</code> otherwise. The characters below U+0300 are
+     * starters that are in NFC, so ICU is only asked to look at the text
+     * from the last one of those before the first other character.
+     *
+     * @param ch the array to check
+     * @param start the index of the first code unit of the slice
+     * @param end the index of the first code unit after the slice
+     * @return <code>true</code> if the slice is in NFC
+     */
+    @SuppressWarnings("deprecation")
+    private static boolean isNormalized(char[] ch, int start, int end) {
+        int first = CharacterUtil.skipRange(ch, start, end, 0,
+                FIRST_COMPOSING_CHAR);
+        if (first == end) {
+            return true;
+        }
+        if (first > start) {
+            // the preceding starter may compose with what follows
+            first--;
+        }
+        return Normalizer.isNormalized(ch, first, end, Normalizer.NFC, 0);
+    }
+
     /**
      * Returns <code>true</code> if the argument starts with a composing 
      * character and <code>false</code> otherwise.
@@ -205,7 +244,6 @@ public final class NormalizationChecker extends Checker {
      * 
      * @see nu.validator.checker.Checker#characters(char[], int, int)
      */
-    @SuppressWarnings("deprecation")
     @Override
     public void characters(char[] ch, int start, int length)
             throws SAXException {
@@ -251,7 +289,7 @@ public final class NormalizationChecker extends Checker {
             if (i == stop) {
                 return;
             } else {
-                if (!Normalizer.isNormalized(buf, 0, pos, Normalizer.NFC, 0)) {
+                if (!isNormalized(buf, 0, pos)) {
                     errAboutTextRun();
                 }
                 pos = 0;
@@ -263,8 +301,7 @@ public final class NormalizationChecker extends Checker {
             while (i > start && isComposingCharOrSurrogate(ch[i])) {
                 i--;
             }
-            if (i > start
-                    && !Normalizer.isNormalized(ch, start, i, Normalizer.NFC, 0)) {
+            if (i > start && !isNormalized(ch, start, i)) {
                 errAboutTextRun();
             }
             appendToBuf(ch, i, stop);
@@ -412,10 +449,9 @@ public final class NormalizationChecker extends Checker {
      * 
      * @throws SAXException if the <code>ErrorHandler</code> throws.
      */
-    @SuppressWarnings("deprecation")
     public void flush() throws SAXException {
         if (!alreadyComplainedAboutThisRun
-                && !Normalizer.isNormalized(buf, 0, pos, Normalizer.NFC, 0)) {
+                && !isNormalized(buf, 0, pos)) {
             errAboutTextRun();
         }
         reset();
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.checker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Locator;
+
+/**
+ * Source positions remembered by a checker for diagnostics it reports
+ * later. Instead of a <code>LocatorImpl</code> per position, the table keeps
+ * the line and column numbers in parallel <code>int</code> arrays and each
+ * distinct pair of system id and public id once, and hands out the index of
+ * a position as its handle. A <code>Locator</code> is only made when a
+ * message is reported.
+ *
+ * <p>Handles are given out in ascending order starting from zero, so a table
+ * also serves as an ordered list of positions. Handles become invalid when
+ * the table is cleared.
+ */
+public final class PositionTable {
+
+    private int[] lines = new int[16];
+
+    private int[] columns = new int[16];
+
+    private int[] resources = new int[16];
+
+    private int size = 0;
+
+    /**
+     * System ids and public ids of positions, as pairs.
+     */
+    private final List<String> resourceIds = new ArrayList<>();
+
+    public PositionTable() {
+    }
+
+    /**
+     * Remembers the current position of a locator.
+     *
+     * @param locator
+     *            the locator
+     * @return the handle of the position
+     */
+    public int add(Locator locator) {
+        if (size == lines.length) {
+            int capacity = size << 1;
+            int[] newLines = new int[capacity];
+            System.arraycopy(lines, 0, newLines, 0, size);
+            lines = newLines;
+            int[] newColumns = new int[capacity];
+            System.arraycopy(columns, 0, newColumns, 0, size);
+            columns = newColumns;
+            int[] newResources = new int[capacity];
+            System.arraycopy(resources, 0, newResources, 0, size);
+            resources = newResources;
+        }
+        if (locator == null) {
+            lines[size] = -1;
+            columns[size] = -1;
+            resources[size] = resource(null, null);
+        } else {
+            lines[size] = locator.getLineNumber();
+            columns[size] = locator.getColumnNumber();
+            resources[size] = resource(locator.getSystemId(),
+                    locator.getPublicId());
+        }
+        return size++;
+    }
+
+    /**
+     * Returns a remembered position as a <code>Locator</code>.
+     *
+     * @param handle
+     *            a handle returned by <code>add</code>
+     * @return the position
+     */
+    public Locator get(int handle) {
+        if (handle < 0 || handle >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(handle));
+        }
+        return new Position(handle);
+    }
+
+    /**
+     * Returns the number of positions in the table.
+     *
+     * @return the number of positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forgets all positions.
+     */
+    public void clear() {
+        size = 0;
+        resourceIds.clear();
+    }
+
+    private int resource(String systemId, String publicId) {
+        int n = resourceIds.size();
+        // Positions mostly come from the same entity in a row, so look at
+        // the most recent resources first.
+        for (int i = n - 2; i >= 0; i -= 2) {
+            if (same(systemId, resourceIds.get(i))
+                    && same(publicId, resourceIds.get(i + 1))) {
+                return i;
+            }
+        }
+        resourceIds.add(systemId);
+        resourceIds.add(publicId);
+        return n;
+    }
+
+    private static boolean same(String a, String b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    /**
+     * A remembered position, copied out of the table.
+     */
+    private final class Position implements Locator {
+
+        private final String systemId;
+
+        private final String publicId;
+
+        private final int line;
+
+        private final int column;
+
+        Position(int handle) {
+            int resource = resources[handle];
+            this.systemId = resourceIds.get(resource);
+            this.publicId = resourceIds.get(resource + 1);
+            this.line = lines[handle];
+            this.column = columns[handle];
+        }
+
+        @Override
+        public String getPublicId() {
+            return publicId;
+        }
+
+        @Override
+        public String getSystemId() {
+            return systemId;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return line;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return column;
+        }
+    }
+}
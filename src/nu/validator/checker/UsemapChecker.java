@@ -22,10 +22,8 @@
 
 package nu.validator.checker;
 
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
@@ -33,9 +31,9 @@ import org.xml.sax.SAXException;
 
 public class UsemapChecker extends Checker {
 
-    private final Map<String, Locator> usemapLocationsByName = new LinkedHashMap<>();
+    private final Map<String, Integer> usemapLocationsByName = new LinkedHashMap<>();
 
-    private final Set<String> mapNames = new HashSet<>();
+    private final PositionTable positions = new PositionTable();
 
     private Locator locator = null;
 
@@ -50,12 +48,7 @@ public class UsemapChecker extends Checker {
     public void startElement(String uri, String localName, String qName,
             Attributes atts) throws SAXException {
         if ("http://www.w3.org/1999/xhtml" == uri) {
-            if ("map" == localName) {
-                String name = atts.getValue("", "name");
-                if (name != null && !"".equals(name)) {
-                    mapNames.add(name);
-                }
-            } else if ("img" == localName || "object" == localName) {
+            if ("img" == localName || "object" == localName) {
                 String usemap = atts.getValue("", "usemap");
                 if (usemap != null) {
                     int hashIndex = usemap.indexOf('#');
@@ -64,7 +57,7 @@ public class UsemapChecker extends Checker {
                         // the schema takes care of that.
                         String ref = usemap.substring(hashIndex + 1);
                         usemapLocationsByName.put(ref,
-                                new LocatorImpl(locator));
+                                positions.add(locator));
                     }
                 }
             }
@@ -76,14 +69,15 @@ public class UsemapChecker extends Checker {
      */
     @Override
     public void endDocument() throws SAXException {
-        for (Map.Entry<String, Locator> entry : usemapLocationsByName.entrySet()) {
-            if (!mapNames.contains(entry.getKey())) {
+        IdIndex idIndex = getIdIndex();
+        for (Map.Entry<String, Integer> entry : usemapLocationsByName.entrySet()) {
+            if (!idIndex.isMapName(entry.getKey())) {
                 err("The hash-name reference in attribute \u201Cusemap\u201D"
                     + " referred to \u201C"
                         + entry.getKey()
                         + "\u201D, but there is no \u201Cmap\u201D element"
                         + " with a \u201Cname\u201D attribute with that value.",
-                        entry.getValue());
+                        positions.get(entry.getValue()));
             }
         }
     }
@@ -94,7 +88,7 @@ public class UsemapChecker extends Checker {
     @Override
     public void startDocument() throws SAXException {
         usemapLocationsByName.clear();
-        mapNames.clear();
+        positions.clear();
     }
 
     /**
@@ -111,7 +105,7 @@ public class UsemapChecker extends Checker {
     @Override
     public void reset() {
         usemapLocationsByName.clear();
-        mapNames.clear();
+        positions.clear();
     }
 
 }
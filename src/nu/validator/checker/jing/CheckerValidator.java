@@ -23,9 +23,15 @@
 package nu.validator.checker.jing;
 
 import nu.validator.checker.Checker;
+import nu.validator.checker.IdIndex;
+import nu.validator.xml.IdIndexingContentHandler;
+import nu.validator.xml.StageTimings;
+import nu.validator.xml.TimingContentHandler;
+
 import org.xml.sax.ContentHandler;
 import org.xml.sax.DTDHandler;
 import org.xml.sax.ErrorHandler;
+import org.xml.sax.ext.LexicalHandler;
 
 import com.thaiopensource.util.PropertyMap;
 import com.thaiopensource.validate.ValidateProperty;
@@ -44,28 +50,56 @@ public final class CheckerValidator implements Validator {
      * The wrapped <code>Checker</code>
      */
     private final Checker checker;
+
+    /**
+     * The handler given to Jing: the checker itself or a wrapper that indexes
+     * IDs or times it
+     */
+    private final ContentHandler contentHandler;
     
     /**
      * Constructor
      * 
      * @param checker the <code>Checker</code> to wrap
      * @param propertyMap a property map containing a mapping for 
-     * <code>ValidateProperty.ERROR_HANDLER</code>
+     * <code>ValidateProperty.ERROR_HANDLER</code> and optionally for
+     * <code>IdIndex.PROPERTY</code>, an index filled by an
+     * <code>IdIndexingContentHandler</code> in front of the validator, and
+     * <code>StageTimings.PROPERTY</code>
      */
     public CheckerValidator(Checker checker, PropertyMap propertyMap) {
         super();
         this.checker = checker;
         this.checker.setErrorHandler((ErrorHandler) propertyMap.get(ValidateProperty.ERROR_HANDLER));
+        IdIndex idIndex = (IdIndex) propertyMap.get(IdIndex.PROPERTY);
+        ContentHandler handler = checker;
+        if (idIndex == null) {
+            // Nobody in front fills a shared index, so index for this checker.
+            idIndex = new IdIndex();
+            handler = new IdIndexingContentHandler(checker, idIndex);
+        }
+        this.checker.setIdIndex(idIndex);
+        StageTimings timings = (StageTimings) propertyMap.get(StageTimings.PROPERTY);
+        // Lexical handlers are looked up by type, so they stay unwrapped.
+        if (checker instanceof LexicalHandler) {
+            this.contentHandler = checker;
+        } else if (timings == null) {
+            this.contentHandler = handler;
+        } else {
+            this.contentHandler = new TimingContentHandler(handler, timings,
+                    "checker." + checker.getClass().getSimpleName());
+        }
     }
 
     /**
-     * Returns the wrapped <code>Checker</code>.
+     * Returns the wrapped <code>Checker</code>, timed if the property map
+     * had <code>StageTimings</code>.
      * @return the wrapped <code>Checker</code>
      * @see com.thaiopensource.validate.Validator#getContentHandler()
      */
     @Override
     public ContentHandler getContentHandler() {
-        return checker;
+        return contentHandler;
     }
     
     /**
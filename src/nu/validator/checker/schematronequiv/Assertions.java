@@ -36,7 +36,9 @@ import java.util.Collections;
 
 import nu.validator.checker.AttributeUtil;
 import nu.validator.checker.Checker;
+import nu.validator.checker.IdIndex;
 import nu.validator.checker.LocatorImpl;
+import nu.validator.checker.PositionTable;
 import nu.validator.checker.TaintableLocatorImpl;
 import nu.validator.checker.VnuBadAttrValueException;
 import nu.validator.checker.VnuBadElementNameException;
@@ -647,13 +649,263 @@ public class Assertions extends Checker {
         ATTRIBUTES_WITH_IMPLICIT_STATE_OR_PROPERTY.add("required");
     }
 
+    /*
+     * Codes for the element names and attribute names that the checks below
+     * look at, so that they can dispatch with a switch. Zero means some other
+     * name.
+     */
+    private static final int EL_A = 1;
+
+    private static final int EL_AREA = 2;
+
+    private static final int EL_ARTICLE = 3;
+
+    private static final int EL_ASIDE = 4;
+
+    private static final int EL_AUDIO = 5;
+
+    private static final int EL_BDO = 6;
+
+    private static final int EL_BUTTON = 7;
+
+    private static final int EL_CANVAS = 8;
+
+    private static final int EL_EMBED = 9;
+
+    private static final int EL_FIELDSET = 10;
+
+    private static final int EL_FIGURE = 11;
+
+    private static final int EL_H1 = 12;
+
+    private static final int EL_H2 = 13;
+
+    private static final int EL_H3 = 14;
+
+    private static final int EL_H4 = 15;
+
+    private static final int EL_H5 = 16;
+
+    private static final int EL_H6 = 17;
+
+    private static final int EL_IFRAME = 18;
+
+    private static final int EL_IMG = 19;
+
+    private static final int EL_INPUT = 20;
+
+    private static final int EL_LABEL = 21;
+
+    private static final int EL_LI = 22;
+
+    private static final int EL_LINK = 23;
+
+    private static final int EL_MAIN = 24;
+
+    private static final int EL_MAP = 25;
+
+    private static final int EL_MATH = 26;
+
+    private static final int EL_MENU = 27;
+
+    private static final int EL_MENUITEM = 28;
+
+    private static final int EL_META = 29;
+
+    private static final int EL_METER = 30;
+
+    private static final int EL_NAV = 31;
+
+    private static final int EL_OBJECT = 32;
+
+    private static final int EL_OL = 33;
+
+    private static final int EL_OPTION = 34;
+
+    private static final int EL_OUTPUT = 35;
+
+    private static final int EL_PARAM = 36;
+
+    private static final int EL_PICTURE = 37;
+
+    private static final int EL_PROGRESS = 38;
+
+    private static final int EL_SCRIPT = 39;
+
+    private static final int EL_SECTION = 40;
+
+    private static final int EL_SELECT = 41;
+
+    private static final int EL_SOURCE = 42;
+
+    private static final int EL_SVG = 43;
+
+    private static final int EL_TABLE = 44;
+
+    private static final int EL_TBODY = 45;
+
+    private static final int EL_TEMPLATE = 46;
+
+    private static final int EL_TEXTAREA = 47;
+
+    private static final int EL_TFOOT = 48;
+
+    private static final int EL_TH = 49;
+
+    private static final int EL_THEAD = 50;
+
+    private static final int EL_TRACK = 51;
+
+    private static final int EL_UL = 52;
+
+    private static final int EL_VIDEO = 53;
+
+    private static final int ATT_HREF = 1;
+
+    private static final int ATT_CONTROLS = 2;
+
+    private static final int ATT_TYPE = 3;
+
+    private static final int ATT_ROLE = 4;
+
+    private static final int ATT_ARIA_ACTIVEDESCENDANT = 5;
+
+    private static final int ATT_ARIA_OWNS = 6;
+
+    private static final int ATT_LIST = 7;
+
+    private static final int ATT_LANG = 8;
+
+    private static final int ATT_ID = 9;
+
+    private static final int ATT_FOR = 10;
+
+    private static final int ATT_CONTEXTMENU = 11;
+
+    private static final int ATT_ISMAP = 12;
+
+    private static final int ATT_SELECTED = 13;
+
+    private static final int ATT_USEMAP = 14;
+
+    private static final int ATT_ITEMID = 15;
+
+    private static final int ATT_ITEMREF = 16;
+
+    private static final int ATT_ITEMSCOPE = 17;
+
+    private static final int ATT_ITEMTYPE = 18;
+
+    private static final int ATT_LANGUAGE = 19;
+
+    private static final int ATT_REV = 20;
+
+    private static final NameTable ELEMENT_NAMES = new NameTable(53);
+
+    private static final NameTable ATTRIBUTE_NAMES = new NameTable(20);
+
+    /**
+     * The number of each special ancestor, plus one.
+     */
+    private static final NameTable SPECIAL_ANCESTOR_NUMBERS = new NameTable(
+            SPECIAL_ANCESTORS.length);
+
+    static {
+        ELEMENT_NAMES.put("a", EL_A);
+        ELEMENT_NAMES.put("area", EL_AREA);
+        ELEMENT_NAMES.put("article", EL_ARTICLE);
+        ELEMENT_NAMES.put("aside", EL_ASIDE);
+        ELEMENT_NAMES.put("audio", EL_AUDIO);
+        ELEMENT_NAMES.put("bdo", EL_BDO);
+        ELEMENT_NAMES.put("button", EL_BUTTON);
+        ELEMENT_NAMES.put("canvas", EL_CANVAS);
+        ELEMENT_NAMES.put("embed", EL_EMBED);
+        ELEMENT_NAMES.put("fieldset", EL_FIELDSET);
+        ELEMENT_NAMES.put("figure", EL_FIGURE);
+        ELEMENT_NAMES.put("h1", EL_H1);
+        ELEMENT_NAMES.put("h2", EL_H2);
+        ELEMENT_NAMES.put("h3", EL_H3);
+        ELEMENT_NAMES.put("h4", EL_H4);
+        ELEMENT_NAMES.put("h5", EL_H5);
+        ELEMENT_NAMES.put("h6", EL_H6);
+        ELEMENT_NAMES.put("iframe", EL_IFRAME);
+        ELEMENT_NAMES.put("img", EL_IMG);
+        ELEMENT_NAMES.put("input", EL_INPUT);
+        ELEMENT_NAMES.put("label", EL_LABEL);
+        ELEMENT_NAMES.put("li", EL_LI);
+        ELEMENT_NAMES.put("link", EL_LINK);
+        ELEMENT_NAMES.put("main", EL_MAIN);
+        ELEMENT_NAMES.put("map", EL_MAP);
+        ELEMENT_NAMES.put("math", EL_MATH);
+        ELEMENT_NAMES.put("menu", EL_MENU);
+        ELEMENT_NAMES.put("menuitem", EL_MENUITEM);
+        ELEMENT_NAMES.put("meta", EL_META);
+        ELEMENT_NAMES.put("meter", EL_METER);
+        ELEMENT_NAMES.put("nav", EL_NAV);
+        ELEMENT_NAMES.put("object", EL_OBJECT);
+        ELEMENT_NAMES.put("ol", EL_OL);
+        ELEMENT_NAMES.put("option", EL_OPTION);
+        ELEMENT_NAMES.put("output", EL_OUTPUT);
+        ELEMENT_NAMES.put("param", EL_PARAM);
+        ELEMENT_NAMES.put("picture", EL_PICTURE);
+        ELEMENT_NAMES.put("progress", EL_PROGRESS);
+        ELEMENT_NAMES.put("script", EL_SCRIPT);
+        ELEMENT_NAMES.put("section", EL_SECTION);
+        ELEMENT_NAMES.put("select", EL_SELECT);
+        ELEMENT_NAMES.put("source", EL_SOURCE);
+        ELEMENT_NAMES.put("svg", EL_SVG);
+        ELEMENT_NAMES.put("table", EL_TABLE);
+        ELEMENT_NAMES.put("tbody", EL_TBODY);
+        ELEMENT_NAMES.put("template", EL_TEMPLATE);
+        ELEMENT_NAMES.put("textarea", EL_TEXTAREA);
+        ELEMENT_NAMES.put("tfoot", EL_TFOOT);
+        ELEMENT_NAMES.put("th", EL_TH);
+        ELEMENT_NAMES.put("thead", EL_THEAD);
+        ELEMENT_NAMES.put("track", EL_TRACK);
+        ELEMENT_NAMES.put("ul", EL_UL);
+        ELEMENT_NAMES.put("video", EL_VIDEO);
+        ATTRIBUTE_NAMES.put("href", ATT_HREF);
+        ATTRIBUTE_NAMES.put("controls", ATT_CONTROLS);
+        ATTRIBUTE_NAMES.put("type", ATT_TYPE);
+        ATTRIBUTE_NAMES.put("role", ATT_ROLE);
+        ATTRIBUTE_NAMES.put("aria-activedescendant", ATT_ARIA_ACTIVEDESCENDANT);
+        ATTRIBUTE_NAMES.put("aria-owns", ATT_ARIA_OWNS);
+        ATTRIBUTE_NAMES.put("list", ATT_LIST);
+        ATTRIBUTE_NAMES.put("lang", ATT_LANG);
+        ATTRIBUTE_NAMES.put("id", ATT_ID);
+        ATTRIBUTE_NAMES.put("for", ATT_FOR);
+        ATTRIBUTE_NAMES.put("contextmenu", ATT_CONTEXTMENU);
+        ATTRIBUTE_NAMES.put("ismap", ATT_ISMAP);
+        ATTRIBUTE_NAMES.put("selected", ATT_SELECTED);
+        ATTRIBUTE_NAMES.put("usemap", ATT_USEMAP);
+        ATTRIBUTE_NAMES.put("itemid", ATT_ITEMID);
+        ATTRIBUTE_NAMES.put("itemref", ATT_ITEMREF);
+        ATTRIBUTE_NAMES.put("itemscope", ATT_ITEMSCOPE);
+        ATTRIBUTE_NAMES.put("itemtype", ATT_ITEMTYPE);
+        ATTRIBUTE_NAMES.put("language", ATT_LANGUAGE);
+        ATTRIBUTE_NAMES.put("rev", ATT_REV);
+        for (int i = 0; i < SPECIAL_ANCESTORS.length; i++) {
+            SPECIAL_ANCESTOR_NUMBERS.put(SPECIAL_ANCESTORS[i], i + 1);
+        }
+        // The element name lists are looked up with a binary search.
+        for (String[] names : INPUT_ATTRIBUTES.values()) {
+            Arrays.sort(names);
+        }
+        for (String[] names : OBSOLETE_ATTRIBUTES.values()) {
+            Arrays.sort(names);
+        }
+        for (String[] names : OBSOLETE_STYLE_ATTRS.values()) {
+            Arrays.sort(names);
+        }
+    }
+
     private static final String h1WarningMessage = "Consider using the"
             + " \u201Ch1\u201D element as a top-level heading only (all"
             + " \u201Ch1\u201D elements are treated as top-level headings"
             + " by many screen readers and other tools).";
 
     private class IdrefLocator {
-        private final Locator locator;
+        private final int position;
 
         private final String idref;
 
@@ -664,13 +916,13 @@ public class Assertions extends Checker {
          * @param idref
          */
         public IdrefLocator(Locator locator, String idref) {
-            this.locator = new LocatorImpl(locator);
+            this.position = positions.add(locator);
             this.idref = idref;
             this.additional = null;
         }
 
         public IdrefLocator(Locator locator, String idref, String additional) {
-            this.locator = new LocatorImpl(locator);
+            this.position = positions.add(locator);
             this.idref = idref;
             this.additional = additional;
         }
@@ -681,7 +933,7 @@ public class Assertions extends Checker {
          * @return the locator
          */
         public Locator getLocator() {
-            return locator;
+            return positions.get(position);
         }
 
         /**
@@ -714,7 +966,7 @@ public class Assertions extends Checker {
 
         private final String forAttr;
 
-        private Set<Locator> imagesLackingAlt = new HashSet<>();
+        private Set<Locator> imagesLackingAlt = null;
 
         private Locator nonEmptyOption = null;
 
@@ -962,6 +1214,9 @@ public class Assertions extends Checker {
          * @return the imagesLackingAlt
          */
         public Set<Locator> getImagesLackingAlt() {
+            if (imagesLackingAlt == null) {
+                return Collections.emptySet();
+            }
             return imagesLackingAlt;
         }
 
@@ -969,6 +1224,9 @@ public class Assertions extends Checker {
          * Adds to the imagesLackingAlt
          */
         public void addImageLackingAlt(Locator locator) {
+            if (imagesLackingAlt == null) {
+                imagesLackingAlt = new HashSet<>();
+            }
             this.imagesLackingAlt.add(locator);
         }
 
@@ -1100,7 +1358,7 @@ public class Assertions extends Checker {
 
     private Map<StackNode, Locator> openSingleSelects = new HashMap<>();
 
-    private Map<StackNode, Locator> openLabels = new HashMap<>();
+    private Map<StackNode, Integer> openLabels = new HashMap<>();
 
     private Map<StackNode, TaintableLocatorImpl> openMediaElements = new HashMap<>();
 
@@ -1108,26 +1366,16 @@ public class Assertions extends Checker {
 
     private LinkedHashSet<IdrefLocator> contextmenuReferences = new LinkedHashSet<>();
 
-    private Set<String> menuIds = new HashSet<>();
-
     private LinkedHashSet<IdrefLocator> formControlReferences = new LinkedHashSet<>();
 
     private LinkedHashSet<IdrefLocator> formElementReferences = new LinkedHashSet<>();
 
     private LinkedHashSet<IdrefLocator> needsAriaOwner = new LinkedHashSet<>();
 
-    private Set<String> formControlIds = new HashSet<>();
-
-    private Set<String> formElementIds = new HashSet<>();
-
     private LinkedHashSet<IdrefLocator> listReferences = new LinkedHashSet<>();
 
-    private Set<String> listIds = new HashSet<>();
-
     private LinkedHashSet<IdrefLocator> ariaReferences = new LinkedHashSet<>();
 
-    private Set<String> allIds = new HashSet<>();
-
     private int currentFigurePtr;
 
     private int currentHeadingPtr;
@@ -1148,9 +1396,14 @@ public class Assertions extends Checker {
 
     private int numberOfTemplatesDeep = 0;
 
-    private Set<Locator> secondLevelH1s = new HashSet<>();
+    /**
+     * Positions remembered for diagnostics reported later.
+     */
+    private final PositionTable positions = new PositionTable();
+
+    private final PositionTable secondLevelH1s = new PositionTable();
 
-    private Map<Locator, Map<String, String>> siblingSources = new ConcurrentHashMap<>();
+    private Map<Integer, Map<String, String>> siblingSources = new ConcurrentHashMap<>();
 
     private final void errContainedInOrOwnedBy(String role, Locator locator)
             throws SAXException {
@@ -1197,9 +1450,11 @@ public class Assertions extends Checker {
      */
     @Override
     public void endDocument() throws SAXException {
+        IdIndex idIndex = getIdIndex();
+
         // contextmenu
         for (IdrefLocator idrefLocator : contextmenuReferences) {
-            if (!menuIds.contains(idrefLocator.getIdref())) {
+            if (!idIndex.isMenuId(idrefLocator.getIdref())) {
                 err("The \u201Ccontextmenu\u201D attribute must refer to a \u201Cmenu\u201D element.",
                         idrefLocator.getLocator());
             }
@@ -1207,7 +1462,7 @@ public class Assertions extends Checker {
 
         // label for
         for (IdrefLocator idrefLocator : formControlReferences) {
-            if (!formControlIds.contains(idrefLocator.getIdref())) {
+            if (!idIndex.isFormControlId(idrefLocator.getIdref())) {
                 err("The \u201Cfor\u201D attribute of the \u201Clabel\u201D element must refer to a non-hidden form control.",
                         idrefLocator.getLocator());
             }
@@ -1215,7 +1470,7 @@ public class Assertions extends Checker {
 
         // references to IDs from form attributes
         for (IdrefLocator idrefLocator : formElementReferences) {
-            if (!formElementIds.contains(idrefLocator.getIdref())) {
+            if (!idIndex.isFormId(idrefLocator.getIdref())) {
                 err("The \u201Cform\u201D attribute must refer to a form element.",
                         idrefLocator.getLocator());
             }
@@ -1223,7 +1478,7 @@ public class Assertions extends Checker {
 
         // input list
         for (IdrefLocator idrefLocator : listReferences) {
-            if (!listIds.contains(idrefLocator.getIdref())) {
+            if (!idIndex.isDatalistId(idrefLocator.getIdref())) {
                 err("The \u201Clist\u201D attribute of the \u201Cinput\u201D element must refer to a \u201Cdatalist\u201D element.",
                         idrefLocator.getLocator());
             }
@@ -1231,7 +1486,7 @@ public class Assertions extends Checker {
 
         // ARIA idrefs
         for (IdrefLocator idrefLocator : ariaReferences) {
-            if (!allIds.contains(idrefLocator.getIdref())) {
+            if (!idIndex.isId(idrefLocator.getIdref())) {
                 err("The \u201C" + idrefLocator.getAdditional()
                         + "\u201D attribute must point to an element in the same document.",
                         idrefLocator.getLocator());
@@ -1258,8 +1513,8 @@ public class Assertions extends Checker {
         }
 
         if (hasTopLevelH1) {
-            for (Locator locator : secondLevelH1s) {
-                warn(h1WarningMessage, locator);
+            for (int i = 0; i < secondLevelH1s.size(); i++) {
+                warn(h1WarningMessage, secondLevelH1s.get(i));
             }
         }
 
@@ -1298,76 +1553,109 @@ public class Assertions extends Checker {
         }
         StackNode node = pop();
         Locator locator = null;
-        openSingleSelects.remove(node);
-        openLabels.remove(node);
-        openMediaElements.remove(node);
+        // Most elements are in none of these maps.
+        if (!openSingleSelects.isEmpty()) {
+            openSingleSelects.remove(node);
+        }
+        if (!openLabels.isEmpty()) {
+            openLabels.remove(node);
+        }
+        if (!openMediaElements.isEmpty()) {
+            openMediaElements.remove(node);
+        }
         if ("http://www.w3.org/1999/xhtml" == uri) {
-            if ("figure" == localName) {
-                if ((node.needsFigcaption() && !node.hasFigcaptionContent())
-                        || node.hasTextNode() || node.hasEmbeddedContent()) {
-                    for (Locator imgLocator : node.getImagesLackingAlt()) {
-                        err("An \u201Cimg\u201D element must have an"
-                                + " \u201Calt\u201D attribute, except under"
-                                + " certain conditions. For details, consult"
-                                + " guidance on providing text alternatives"
-                                + " for images.", imgLocator);
+            switch (ELEMENT_NAMES.get(localName)) {
+                case EL_FIGURE:
+                    if ((node.needsFigcaption() && !node.hasFigcaptionContent())
+                            || node.hasTextNode() || node.hasEmbeddedContent()) {
+                        for (Locator imgLocator : node.getImagesLackingAlt()) {
+                            err("An \u201Cimg\u201D element must have an"
+                                    + " \u201Calt\u201D attribute, except under"
+                                    + " certain conditions. For details, consult"
+                                    + " guidance on providing text alternatives"
+                                    + " for images.", imgLocator);
+                        }
                     }
-                }
-            } else if ("picture" == localName) {
-                siblingSources.clear();
-            } else if ("select" == localName && node.isOptionNeeded()) {
-                if (!node.hasOption()) {
-                    err("A \u201Cselect\u201D element with a"
-                            + " \u201Crequired\u201D attribute, and without a"
-                            + " \u201Cmultiple\u201D attribute, and without a"
-                            + " \u201Csize\u201D attribute whose value is"
-                            + " greater than"
-                            + " \u201C1\u201D, must have a child"
-                            + " \u201Coption\u201D element.");
-                }
-                if (node.nonEmptyOptionLocator() != null) {
-                    err("The first child \u201Coption\u201D element of a"
-                            + " \u201Cselect\u201D element with a"
-                            + " \u201Crequired\u201D attribute, and without a"
-                            + " \u201Cmultiple\u201D attribute, and without a"
-                            + " \u201Csize\u201D attribute whose value is"
-                            + " greater than"
-                            + " \u201C1\u201D, must have either an empty"
-                            + " \u201Cvalue\u201D attribute, or must have no"
-                            + " text content."
-                            + " Consider either adding a placeholder option"
-                            + " label, or adding a"
-                            + " \u201Csize\u201D attribute with a value equal"
-                            + " to the number of"
-                            + " \u201Coption\u201D elements.",
-                            node.nonEmptyOptionLocator());
-                }
-            } else if ("section" == localName && !node.hasHeading()) {
-                warn("Section lacks heading. Consider using"
-                        + " \u201ch2\u201d-\u201ch6\u201d elements to add"
-                        + " identifying headings to all sections.",
-                        node.locator());
-            } else if ("article" == localName && !node.hasHeading()) {
-                warn("Article lacks heading. Consider using"
-                        + " \u201ch2\u201d-\u201ch6\u201d elements to add"
-                        + " identifying headings to all articles.",
-                        node.locator());
-            } else if (("h1" == localName || "h2" == localName
-                    || "h3" == localName || "h4" == localName
-                    || "h5" == localName || "h6" == localName)
-                    && !node.hasTextNode() && !node.hasImg()) {
-                warn("Empty heading.", node.locator());
-            } else if ("option" == localName
-                    && !stack[currentPtr].hasOption()) {
-                stack[currentPtr].setOptionFound();
-            }
-            if ("article" == localName || "aside" == localName
-                    || "nav" == localName || "section" == localName) {
-                currentSectioningElementPtr = currentPtr - 1;
-                currentSectioningDepth--;
+                    break;
+                case EL_PICTURE:
+                    siblingSources.clear();
+                    break;
+                case EL_SELECT:
+                    if (node.isOptionNeeded()) {
+                        if (!node.hasOption()) {
+                            err("A \u201Cselect\u201D element with a"
+                                    + " \u201Crequired\u201D attribute, and without a"
+                                    + " \u201Cmultiple\u201D attribute, and without a"
+                                    + " \u201Csize\u201D attribute whose value is"
+                                    + " greater than"
+                                    + " \u201C1\u201D, must have a child"
+                                    + " \u201Coption\u201D element.");
+                        }
+                        if (node.nonEmptyOptionLocator() != null) {
+                            err("The first child \u201Coption\u201D element of a"
+                                    + " \u201Cselect\u201D element with a"
+                                    + " \u201Crequired\u201D attribute, and without a"
+                                    + " \u201Cmultiple\u201D attribute, and without a"
+                                    + " \u201Csize\u201D attribute whose value is"
+                                    + " greater than"
+                                    + " \u201C1\u201D, must have either an empty"
+                                    + " \u201Cvalue\u201D attribute, or must have no"
+                                    + " text content."
+                                    + " Consider either adding a placeholder option"
+                                    + " label, or adding a"
+                                    + " \u201Csize\u201D attribute with a value equal"
+                                    + " to the number of"
+                                    + " \u201Coption\u201D elements.",
+                                    node.nonEmptyOptionLocator());
+                        }
+                    }
+                    break;
+                case EL_SECTION:
+                    if (!node.hasHeading()) {
+                        warn("Section lacks heading. Consider using"
+                                + " \u201ch2\u201d-\u201ch6\u201d elements to add"
+                                + " identifying headings to all sections.",
+                                node.locator());
+                    }
+                    currentSectioningElementPtr = currentPtr - 1;
+                    currentSectioningDepth--;
+                    break;
+                case EL_ARTICLE:
+                    if (!node.hasHeading()) {
+                        warn("Article lacks heading. Consider using"
+                                + " \u201ch2\u201d-\u201ch6\u201d elements to add"
+                                + " identifying headings to all articles.",
+                                node.locator());
+                    }
+                    currentSectioningElementPtr = currentPtr - 1;
+                    currentSectioningDepth--;
+                    break;
+                case EL_ASIDE:
+                case EL_NAV:
+                    currentSectioningElementPtr = currentPtr - 1;
+                    currentSectioningDepth--;
+                    break;
+                case EL_H1:
+                case EL_H2:
+                case EL_H3:
+                case EL_H4:
+                case EL_H5:
+                case EL_H6:
+                    if (!node.hasTextNode() && !node.hasImg()) {
+                        warn("Empty heading.", node.locator());
+                    }
+                    break;
+                case EL_OPTION:
+                    if (!stack[currentPtr].hasOption()) {
+                        stack[currentPtr].setOptionFound();
+                    }
+                    break;
+                default:
+                    break;
             }
         }
-        if ((locator = openActiveDescendants.remove(node)) != null) {
+        if (!openActiveDescendants.isEmpty()
+                && (locator = openActiveDescendants.remove(node)) != null) {
             warn("Attribute \u201Caria-activedescendant\u201D value should "
                     + "either refer to a descendant element, or should "
                     + "be accompanied by attribute \u201Caria-owns\u201D.",
@@ -1404,19 +1692,15 @@ public class Assertions extends Checker {
         openMediaElements.clear();
         openActiveDescendants.clear();
         contextmenuReferences.clear();
-        menuIds.clear();
         ariaOwnsIdsByRole.clear();
         needsAriaOwner.clear();
         formControlReferences.clear();
         formElementReferences.clear();
-        formControlIds.clear();
-        formElementIds.clear();
         listReferences.clear();
-        listIds.clear();
         ariaReferences.clear();
-        allIds.clear();
         siblingSources.clear();
         secondLevelH1s.clear();
+        positions.clear();
     }
 
     /**
@@ -1435,7 +1719,8 @@ public class Assertions extends Checker {
         } else if (numberOfTemplatesDeep > 0) {
             return;
         }
-        Set<String> ids = new HashSet<>();
+        // allocated for the first ID
+        Set<String> ids = null;
         String role = null;
         String inputTypeVal = null;
         String menuitemTypeVal = null;
@@ -1445,8 +1730,7 @@ public class Assertions extends Checker {
         boolean href = false;
         boolean activeDescendantWithAriaOwns = false;
         // see nu.validator.datatype.ImageCandidateStrings
-        System.setProperty("nu.validator.checker.imageCandidateString.hasWidth",
-                "0");
+        ImageCandidateStrings.resetHasWidth();
 
         StackNode parent = peek();
         int ancestorMask = 0;
@@ -1457,6 +1741,8 @@ public class Assertions extends Checker {
             parentName = parent.getName();
             parentRole = parent.getRole();
         }
+        int element = "http://www.w3.org/1999/xhtml" == uri
+                ? ELEMENT_NAMES.get(localName) : 0;
         if ("http://www.w3.org/1999/xhtml" == uri) {
             boolean controls = false;
             boolean hidden = false;
@@ -1481,7 +1767,7 @@ public class Assertions extends Checker {
                 String attUri = atts.getURI(i);
                 if (attUri.length() == 0) {
                     String attLocal = atts.getLocalName(i);
-                    if ("embed".equals(localName)) {
+                    if (element == EL_EMBED) {
                         for (int j = 0; j < attLocal.length(); j++) {
                             char c = attLocal.charAt(j);
                             if (c >= 'A' && c <= 'Z') {
@@ -1498,135 +1784,177 @@ public class Assertions extends Checker {
                                     + " XML-compatible.");
                         }
                     }
-                    if ("href" == attLocal) {
-                        href = true;
-                    } else if ("controls" == attLocal) {
-                        controls = true;
-                    } else if ("type" == attLocal && "param" != localName
-                            && "ol" != localName && "ul" != localName
-                            && "li" != localName) {
-                        if ("input" == localName) {
-                            inputTypeVal = atts.getValue(i);
-                        } else if ("menuitem" == localName) {
-                            menuitemTypeVal = atts.getValue(i);
-                        }
-                        String attValue = atts.getValue(i);
-                        if (AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
-                                "hidden", attValue)) {
-                            hidden = true;
-                        } else if (AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
-                                "toolbar", attValue)) {
-                            toolbar = true;
-                        }
+                    boolean handled = true;
+                    switch (ATTRIBUTE_NAMES.get(attLocal)) {
+                        case ATT_HREF:
+                            href = true;
+                            break;
+                        case ATT_CONTROLS:
+                            controls = true;
+                            break;
+                        case ATT_TYPE:
+                            if (element == EL_PARAM || element == EL_OL
+                                    || element == EL_UL || element == EL_LI) {
+                                handled = false;
+                                break;
+                            }
+                            String attValue = atts.getValue(i);
+                            if (element == EL_INPUT) {
+                                inputTypeVal = attValue;
+                            } else if (element == EL_MENUITEM) {
+                                menuitemTypeVal = attValue;
+                            }
+                            if (AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
+                                    "hidden", attValue)) {
+                                hidden = true;
+                            } else if (AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
+                                    "toolbar", attValue)) {
+                                toolbar = true;
+                            }
 
-                        if (!AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
-                                "text/javascript", attValue)) {
-                            typeNotTextJavaScript = true;
-                        }
-                    } else if ("role" == attLocal) {
-                        role = atts.getValue(i);
-                    } else if ("aria-activedescendant" == attLocal) {
-                        activeDescendant = atts.getValue(i);
-                    } else if ("aria-owns" == attLocal) {
-                        owns = atts.getValue(i);
-                    } else if ("list" == attLocal) {
-                        list = atts.getValue(i);
-                    } else if ("lang" == attLocal) {
-                        lang = atts.getValue(i);
-                    } else if ("id" == attLocal) {
-                        id = atts.getValue(i);
-                    } else if ("for" == attLocal && "label" == localName) {
-                        forAttr = atts.getValue(i);
-                        ancestorMask |= LABEL_FOR_MASK;
-                    } else if ("contextmenu" == attLocal) {
-                        contextmenu = atts.getValue(i);
-                    } else if ("ismap" == attLocal) {
-                        ismap = true;
-                    } else if ("selected" == attLocal) {
-                        selected = true;
-                    } else if ("usemap" == attLocal && "input" != localName) {
-                        usemap = true;
-                    } else if ("itemid" == attLocal) {
-                        itemid = true;
-                    } else if ("itemref" == attLocal) {
-                        itemref = true;
-                    } else if ("itemscope" == attLocal) {
-                        itemscope = true;
-                    } else if ("itemtype" == attLocal) {
-                        itemtype = true;
-                    } else if ("language" == attLocal
-                            && AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
+                            if (!AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
+                                    "text/javascript", attValue)) {
+                                typeNotTextJavaScript = true;
+                            }
+                            break;
+                        case ATT_ROLE:
+                            role = atts.getValue(i);
+                            break;
+                        case ATT_ARIA_ACTIVEDESCENDANT:
+                            activeDescendant = atts.getValue(i);
+                            break;
+                        case ATT_ARIA_OWNS:
+                            owns = atts.getValue(i);
+                            break;
+                        case ATT_LIST:
+                            list = atts.getValue(i);
+                            break;
+                        case ATT_LANG:
+                            lang = atts.getValue(i);
+                            break;
+                        case ATT_ID:
+                            id = atts.getValue(i);
+                            break;
+                        case ATT_FOR:
+                            if (element != EL_LABEL) {
+                                handled = false;
+                                break;
+                            }
+                            forAttr = atts.getValue(i);
+                            ancestorMask |= LABEL_FOR_MASK;
+                            break;
+                        case ATT_CONTEXTMENU:
+                            contextmenu = atts.getValue(i);
+                            break;
+                        case ATT_ISMAP:
+                            ismap = true;
+                            break;
+                        case ATT_SELECTED:
+                            selected = true;
+                            break;
+                        case ATT_USEMAP:
+                            if (element == EL_INPUT) {
+                                handled = false;
+                                break;
+                            }
+                            usemap = true;
+                            break;
+                        case ATT_ITEMID:
+                            itemid = true;
+                            break;
+                        case ATT_ITEMREF:
+                            itemref = true;
+                            break;
+                        case ATT_ITEMSCOPE:
+                            itemscope = true;
+                            break;
+                        case ATT_ITEMTYPE:
+                            itemtype = true;
+                            break;
+                        case ATT_LANGUAGE:
+                            if (!AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
                                     "javascript", atts.getValue(i))) {
-                        languageJavaScript = true;
-                    } else if ("rev" == attLocal
-                            && !("1".equals(System.getProperty(
-                                    "nu.validator.schema.rdfa-full")))) {
-                        errObsoleteAttribute("rev", localName,
-                                " Use the \u201Crel\u201D attribute instead,"
-                                        + " with a term having the opposite meaning.");
-                    } else if (OBSOLETE_ATTRIBUTES.containsKey(attLocal)
-                            && "ol" != localName && "ul" != localName
-                            && "li" != localName) {
-                        String[] elementNames = OBSOLETE_ATTRIBUTES.get(
-                                attLocal);
-                        Arrays.sort(elementNames);
-                        if (Arrays.binarySearch(elementNames, localName) >= 0) {
-                            String suggestion = OBSOLETE_ATTRIBUTES_MSG.containsKey(
-                                    attLocal)
-                                            ? " " + OBSOLETE_ATTRIBUTES_MSG.get(
-                                                    attLocal)
-                                            : "";
-                            errObsoleteAttribute(attLocal, localName,
-                                    suggestion);
-                        }
-                    } else if (OBSOLETE_STYLE_ATTRS.containsKey(attLocal)) {
-                        String[] elementNames = OBSOLETE_STYLE_ATTRS.get(
-                                attLocal);
-                        Arrays.sort(elementNames);
-                        if (Arrays.binarySearch(elementNames, localName) >= 0) {
-                            errObsoleteAttribute(attLocal, localName,
-                                    " Use CSS instead.");
-                        }
-                    } else if (INPUT_ATTRIBUTES.containsKey(attLocal)
-                            && "input" == localName) {
-                        String[] allowedTypes = INPUT_ATTRIBUTES.get(attLocal);
-                        Arrays.sort(allowedTypes);
-                        inputTypeVal = inputTypeVal == null ? "text"
-                                : inputTypeVal;
-                        if (Arrays.binarySearch(allowedTypes,
-                                inputTypeVal) < 0) {
-                            err("Attribute \u201c" + attLocal
-                                    + "\u201d is only allowed when the input"
-                                    + " type is " + renderTypeList(allowedTypes)
-                                    + ".");
-                        }
-                    } else if ("dropzone" == attLocal) {
-                        String[] tokens = atts.getValue(i).toString().split(
-                                "[ \\t\\n\\f\\r]+");
-                        Arrays.sort(tokens);
-                        for (int j = 0; j < tokens.length; j++) {
-                            String keyword = tokens[j];
-                            if (j > 0 && keyword.equals(tokens[j - 1])) {
-                                err("Duplicate keyword " + keyword
-                                        + ". Each keyword must be unique.");
+                                handled = false;
+                                break;
+                            }
+                            languageJavaScript = true;
+                            break;
+                        case ATT_REV:
+                            if ("1".equals(System.getProperty(
+                                    "nu.validator.schema.rdfa-full"))) {
+                                handled = false;
+                                break;
+                            }
+                            errObsoleteAttribute("rev", localName,
+                                    " Use the \u201Crel\u201D attribute instead,"
+                                            + " with a term having the opposite meaning.");
+                            break;
+                        default:
+                            handled = false;
+                            break;
+                    }
+                    if (!handled) {
+                        if (OBSOLETE_ATTRIBUTES.containsKey(attLocal)
+                                && element != EL_OL && element != EL_UL
+                                && element != EL_LI) {
+                            String[] elementNames = OBSOLETE_ATTRIBUTES.get(
+                                    attLocal);
+                            if (Arrays.binarySearch(elementNames, localName) >= 0) {
+                                String suggestion = OBSOLETE_ATTRIBUTES_MSG.containsKey(
+                                        attLocal)
+                                                ? " " + OBSOLETE_ATTRIBUTES_MSG.get(
+                                                        attLocal)
+                                                : "";
+                                errObsoleteAttribute(attLocal, localName,
+                                        suggestion);
+                            }
+                        } else if (OBSOLETE_STYLE_ATTRS.containsKey(attLocal)) {
+                            String[] elementNames = OBSOLETE_STYLE_ATTRS.get(
+                                    attLocal);
+                            if (Arrays.binarySearch(elementNames, localName) >= 0) {
+                                errObsoleteAttribute(attLocal, localName,
+                                        " Use CSS instead.");
+                            }
+                        } else if (element == EL_INPUT
+                                && INPUT_ATTRIBUTES.containsKey(attLocal)) {
+                            String[] allowedTypes = INPUT_ATTRIBUTES.get(attLocal);
+                            inputTypeVal = inputTypeVal == null ? "text"
+                                    : inputTypeVal;
+                            if (Arrays.binarySearch(allowedTypes,
+                                    inputTypeVal) < 0) {
+                                err("Attribute \u201c" + attLocal
+                                        + "\u201d is only allowed when the input"
+                                        + " type is " + renderTypeList(allowedTypes)
+                                        + ".");
+                            }
+                        } else if ("dropzone" == attLocal) {
+                            String[] tokens = atts.getValue(i).toString().split(
+                                    "[ \\t\\n\\f\\r]+");
+                            Arrays.sort(tokens);
+                            for (int j = 0; j < tokens.length; j++) {
+                                String keyword = tokens[j];
+                                if (j > 0 && keyword.equals(tokens[j - 1])) {
+                                    err("Duplicate keyword " + keyword
+                                            + ". Each keyword must be unique.");
+                                }
+                            }
+                        } else if ("autofocus" == attLocal) {
+                            if (hasAutofocus) {
+                                err("A document must not include more than one"
+                                        + " \u201Cautofocus\u201D attribute.");
+                            }
+                            hasAutofocus = true;
+                        } else if (ATTRIBUTES_WITH_IMPLICIT_STATE_OR_PROPERTY.contains(
+                                attLocal)) {
+                            String stateOrProperty = "aria-" + attLocal;
+                            if (atts.getIndex("", stateOrProperty) > -1
+                                    && "true".equals(
+                                            atts.getValue("", stateOrProperty))) {
+                                warn("Attribute \u201C" + stateOrProperty
+                                        + "\u201D is unnecessary for elements that"
+                                        + " have attribute \u201C" + attLocal
+                                        + "\u201D.");
                             }
-                        }
-                    } else if ("autofocus" == attLocal) {
-                        if (hasAutofocus) {
-                            err("A document must not include more than one"
-                                    + " \u201Cautofocus\u201D attribute.");
-                        }
-                        hasAutofocus = true;
-                    } else if (ATTRIBUTES_WITH_IMPLICIT_STATE_OR_PROPERTY.contains(
-                            attLocal)) {
-                        String stateOrProperty = "aria-" + attLocal;
-                        if (atts.getIndex("", stateOrProperty) > -1
-                                && "true".equals(
-                                        atts.getValue("", stateOrProperty))) {
-                            warn("Attribute \u201C" + stateOrProperty
-                                    + "\u201D is unnecessary for elements that"
-                                    + " have attribute \u201C" + attLocal
-                                    + "\u201D.");
                         }
                     }
                 } else if ("http://www.w3.org/XML/1998/namespace" == attUri) {
@@ -1638,12 +1966,15 @@ public class Assertions extends Checker {
                 if (atts.getType(i) == "ID" || "id" == atts.getLocalName(i)) {
                     String attVal = atts.getValue(i);
                     if (attVal.length() != 0) {
+                        if (ids == null) {
+                            ids = new HashSet<>();
+                        }
                         ids.add(attVal);
                     }
                 }
             }
 
-            if ("input".equals(localName)) {
+            if (element == EL_INPUT) {
                 if (atts.getIndex("", "name") > -1
                         && "isindex".equals(atts.getValue("", "name"))) {
                     err("The value \u201cisindex\u201d for the \u201cname\u201d"
@@ -1713,7 +2044,7 @@ public class Assertions extends Checker {
                     }
                 }
             }
-            if ("img".equals(localName) || "source".equals(localName)) {
+            if (element == EL_IMG || element == EL_SOURCE) {
                 if (atts.getIndex("", "srcset") > -1) {
                     String srcsetVal = atts.getValue("", "srcset");
                     try {
@@ -1725,8 +2056,7 @@ public class Assertions extends Checker {
                                     srcsetVal);
                         }
                         // see nu.validator.datatype.ImageCandidateStrings
-                        if ("1".equals(System.getProperty(
-                                "nu.validator.checker.imageCandidateString.hasWidth"))) {
+                        if (ImageCandidateStrings.hasWidth()) {
                             if (atts.getIndex("", "sizes") < 0) {
                                 err("When the \u201csrcset\u201d attribute has"
                                         + " any image candidate string with a"
@@ -1762,8 +2092,9 @@ public class Assertions extends Checker {
                     }
                     if ("picture".equals(parentName)
                             && !siblingSources.isEmpty()) {
-                        for (Map.Entry<Locator, Map<String, String>> entry : siblingSources.entrySet()) {
-                            Locator locator = entry.getKey();
+                        for (Map.Entry<Integer, Map<String, String>> entry : siblingSources.entrySet()) {
+                            Integer position = entry.getKey();
+                            Locator locator = positions.get(position);
                             Map<String, String> sourceAtts = entry.getValue();
                             String media = sourceAtts.get("media");
                             if (media == null
@@ -1777,7 +2108,7 @@ public class Assertions extends Checker {
                                         + " \u201cmedia\u201d attribute and/or"
                                         + " \u201ctype\u201d attribute.",
                                         locator);
-                                siblingSources.remove(locator);
+                                siblingSources.remove(position);
                             } else if (media != null
                                     && AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
                                             "all", trimSpaces(media))) {
@@ -1794,65 +2125,83 @@ public class Assertions extends Checker {
                 }
             }
 
-            if ("picture".equals(parentName) && "source".equals(localName)) {
+            if ("picture".equals(parentName) && element == EL_SOURCE) {
                 Map<String, String> sourceAtts = new HashMap<>();
                 for (int i = 0; i < atts.getLength(); i++) {
                     sourceAtts.put(atts.getLocalName(i), atts.getValue(i));
                 }
-                siblingSources.put((new LocatorImpl(getDocumentLocator())),
+                siblingSources.put(positions.add(getDocumentLocator()),
                         sourceAtts);
             }
 
-            if ("figure" == localName) {
-                currentFigurePtr = currentPtr + 1;
-            }
-            if ((ancestorMask & FIGURE_MASK) != 0) {
-                if ("img" == localName) {
-                    if (stack[currentFigurePtr].hasImg()) {
+            switch (element) {
+                case EL_FIGURE:
+                    currentFigurePtr = currentPtr + 1;
+                    break;
+                case EL_ARTICLE:
+                case EL_ASIDE:
+                case EL_NAV:
+                case EL_SECTION:
+                    currentSectioningElementPtr = currentPtr + 1;
+                    currentSectioningDepth++;
+                    break;
+                case EL_H1:
+                case EL_H2:
+                case EL_H3:
+                case EL_H4:
+                case EL_H5:
+                case EL_H6:
+                    currentHeadingPtr = currentPtr + 1;
+                    if (currentSectioningElementPtr > -1) {
+                        stack[currentSectioningElementPtr].setHeadingFound();
+                    }
+                    break;
+                case EL_IMG:
+                    if ((ancestorMask & FIGURE_MASK) != 0) {
+                        if (stack[currentFigurePtr].hasImg()) {
+                            stack[currentFigurePtr].setEmbeddedContentFound();
+                        } else {
+                            stack[currentFigurePtr].setImgFound();
+                        }
+                    }
+                    if (((ancestorMask & H1_MASK) != 0
+                            || (ancestorMask & H2_MASK) != 0
+                            || (ancestorMask & H3_MASK) != 0
+                            || (ancestorMask & H4_MASK) != 0
+                            || (ancestorMask & H5_MASK) != 0
+                            || (ancestorMask & H6_MASK) != 0)
+                            && atts.getIndex("", "alt") > -1
+                            && !"".equals(atts.getValue("", "alt"))) {
+                        stack[currentHeadingPtr].setImgFound();
+                    }
+                    break;
+                case EL_AUDIO:
+                case EL_CANVAS:
+                case EL_EMBED:
+                case EL_IFRAME:
+                case EL_MATH:
+                case EL_OBJECT:
+                case EL_SVG:
+                case EL_VIDEO:
+                    if ((ancestorMask & FIGURE_MASK) != 0) {
                         stack[currentFigurePtr].setEmbeddedContentFound();
-                    } else {
-                        stack[currentFigurePtr].setImgFound();
                     }
-                } else if ("audio" == localName || "canvas" == localName
-                        || "embed" == localName || "iframe" == localName
-                        || "math" == localName || "object" == localName
-                        || "svg" == localName || "video" == localName) {
-                    stack[currentFigurePtr].setEmbeddedContentFound();
-                }
-            }
-            if ("article" == localName || "aside" == localName
-                    || "nav" == localName || "section" == localName) {
-                currentSectioningElementPtr = currentPtr + 1;
-                currentSectioningDepth++;
-            }
-            if ("h1" == localName || "h2" == localName || "h3" == localName
-                    || "h4" == localName || "h5" == localName
-                    || "h6" == localName) {
-                currentHeadingPtr = currentPtr + 1;
-                if (currentSectioningElementPtr > -1) {
-                    stack[currentSectioningElementPtr].setHeadingFound();
-                }
-            }
-            if (((ancestorMask & H1_MASK) != 0 || (ancestorMask & H2_MASK) != 0
-                    || (ancestorMask & H3_MASK) != 0
-                    || (ancestorMask & H4_MASK) != 0
-                    || (ancestorMask & H5_MASK) != 0
-                    || (ancestorMask & H6_MASK) != 0) && "img" == localName
-                    && atts.getIndex("", "alt") > -1
-                    && !"".equals(atts.getValue("", "alt"))) {
-                stack[currentHeadingPtr].setImgFound();
-            }
-
-            if ("option" == localName && !parent.hasOption()) {
-                if (atts.getIndex("", "value") < 0) {
-                    parent.setNoValueOptionFound();
-                } else if (atts.getIndex("", "value") > -1
-                        && "".equals(atts.getValue("", "value"))) {
-                    parent.setEmptyValueOptionFound();
-                } else {
-                    parent.setNonEmptyOption(
-                            (new LocatorImpl(getDocumentLocator())));
-                }
+                    break;
+                case EL_OPTION:
+                    if (!parent.hasOption()) {
+                        if (atts.getIndex("", "value") < 0) {
+                            parent.setNoValueOptionFound();
+                        } else if (atts.getIndex("", "value") > -1
+                                && "".equals(atts.getValue("", "value"))) {
+                            parent.setEmptyValueOptionFound();
+                        } else {
+                            parent.setNonEmptyOption(
+                                    (new LocatorImpl(getDocumentLocator())));
+                        }
+                    }
+                    break;
+                default:
+                    break;
             }
 
             // Obsolete elements
@@ -1869,22 +2218,22 @@ public class Assertions extends Checker {
                     localName)) != null) {
                 mask = maskAsObject.intValue();
                 descendantUiString = localName;
-            } else if ("video" == localName && controls) {
+            } else if (element == EL_VIDEO && controls) {
                 mask = A_BUTTON_MASK;
                 descendantUiString = "video\u201D with the attribute \u201Ccontrols";
-            } else if ("audio" == localName && controls) {
+            } else if (element == EL_AUDIO && controls) {
                 mask = A_BUTTON_MASK;
                 descendantUiString = "audio\u201D with the attribute \u201Ccontrols";
-            } else if ("menu" == localName && toolbar) {
+            } else if (element == EL_MENU && toolbar) {
                 mask = A_BUTTON_MASK;
                 descendantUiString = "menu\u201D with the attribute \u201Ctype=toolbar";
-            } else if ("img" == localName && usemap) {
+            } else if (element == EL_IMG && usemap) {
                 mask = A_BUTTON_MASK;
                 descendantUiString = "img\u201D with the attribute \u201Cusemap";
-            } else if ("object" == localName && usemap) {
+            } else if (element == EL_OBJECT && usemap) {
                 mask = A_BUTTON_MASK;
                 descendantUiString = "object\u201D with the attribute \u201Cusemap";
-            } else if ("input" == localName && !hidden) {
+            } else if (element == EL_INPUT && !hidden) {
                 mask = A_BUTTON_MASK;
                 descendantUiString = "input";
             }
@@ -1903,291 +2252,298 @@ public class Assertions extends Checker {
             }
 
             // Ancestor requirements/restrictions
-            if ("area" == localName && ((ancestorMask & MAP_MASK) == 0)) {
-                err("The \u201Carea\u201D element must have a \u201Cmap\u201D ancestor.");
-            } else if ("img" == localName) {
-                String titleVal = atts.getValue("", "title");
-                if (ismap && ((ancestorMask & HREF_MASK) == 0)) {
-                    err("The \u201Cimg\u201D element with the "
-                            + "\u201Cismap\u201D attribute set must have an "
-                            + "\u201Ca\u201D ancestor with the "
-                            + "\u201Chref\u201D attribute.");
-                }
-                if (atts.getIndex("", "alt") < 0) {
-                    if (followW3Cspec
-                            || (titleVal == null || "".equals(titleVal))) {
-                        if ((ancestorMask & FIGURE_MASK) == 0) {
-                            err("An \u201Cimg\u201D element must have an"
-                                    + " \u201Calt\u201D attribute, except under"
-                                    + " certain conditions. For details, consult"
-                                    + " guidance on providing text alternatives"
-                                    + " for images.");
-                        } else {
-                            stack[currentFigurePtr].setFigcaptionNeeded();
-                            stack[currentFigurePtr].addImageLackingAlt(
-                                    new LocatorImpl(getDocumentLocator()));
-                        }
+            switch (element) {
+                case EL_AREA:
+                    if ((ancestorMask & MAP_MASK) == 0) {
+                        err("The \u201Carea\u201D element must have a \u201Cmap\u201D ancestor.");
                     }
-                } else {
-                    if ("".equals(atts.getValue("", "alt")) && role != null) {
-                        List<String> roles = Arrays.asList(role.trim() //
-                                .toLowerCase().split("\\s+"));
-                        if (!roles.contains("none")
-                                && !roles.contains("presentation")) {
-                            err("An \u201Cimg\u201D element which has an"
-                                    + " \u201Calt\u201D attribute whose value"
-                                    + " is the empty string must not have a"
-                                    + " \u201Crole\u201D attribute with any"
-                                    + " value other than \u201Cnone\u201D or"
-                                    + " \u201Cpresentation\u201D");
+                    break;
+                case EL_IMG: {
+                    String titleVal = atts.getValue("", "title");
+                    if (ismap && ((ancestorMask & HREF_MASK) == 0)) {
+                        err("The \u201Cimg\u201D element with the "
+                                + "\u201Cismap\u201D attribute set must have an "
+                                + "\u201Ca\u201D ancestor with the "
+                                + "\u201Chref\u201D attribute.");
+                    }
+                    if (atts.getIndex("", "alt") < 0) {
+                        if (followW3Cspec
+                                || (titleVal == null || "".equals(titleVal))) {
+                            if ((ancestorMask & FIGURE_MASK) == 0) {
+                                err("An \u201Cimg\u201D element must have an"
+                                        + " \u201Calt\u201D attribute, except under"
+                                        + " certain conditions. For details, consult"
+                                        + " guidance on providing text alternatives"
+                                        + " for images.");
+                            } else {
+                                stack[currentFigurePtr].setFigcaptionNeeded();
+                                stack[currentFigurePtr].addImageLackingAlt(
+                                        new LocatorImpl(getDocumentLocator()));
+                            }
+                        }
+                    } else {
+                        if ("".equals(atts.getValue("", "alt")) && role != null) {
+                            List<String> roles = Arrays.asList(role.trim() //
+                                    .toLowerCase().split("\\s+"));
+                            if (!roles.contains("none")
+                                    && !roles.contains("presentation")) {
+                                err("An \u201Cimg\u201D element which has an"
+                                        + " \u201Calt\u201D attribute whose value"
+                                        + " is the empty string must not have a"
+                                        + " \u201Crole\u201D attribute with any"
+                                        + " value other than \u201Cnone\u201D or"
+                                        + " \u201Cpresentation\u201D");
+                            }
                         }
                     }
+                    break;
                 }
-            } else if ("table" == localName) {
-                if (atts.getIndex("", "summary") >= 0) {
-                    errObsoleteAttribute("summary", "table",
-                            " Consider describing the structure of the"
-                                    + " \u201Ctable\u201D in a \u201Ccaption\u201D "
-                                    + " element or in a \u201Cfigure\u201D element "
-                                    + " containing the \u201Ctable\u201D; or,"
-                                    + " simplify the structure of the"
-                                    + " \u201Ctable\u201D so that no description"
-                                    + " is needed.");
-                }
-                if (atts.getIndex("", "border") > -1) {
-                    if (followW3Cspec) {
-                        if (atts.getIndex("", "border") > -1 && (!("".equals(
-                                atts.getValue("", "border"))
-                                || "1".equals(atts.getValue("", "border"))))) {
+                case EL_TABLE:
+                    if (atts.getIndex("", "summary") >= 0) {
+                        errObsoleteAttribute("summary", "table",
+                                " Consider describing the structure of the"
+                                        + " \u201Ctable\u201D in a \u201Ccaption\u201D "
+                                        + " element or in a \u201Cfigure\u201D element "
+                                        + " containing the \u201Ctable\u201D; or,"
+                                        + " simplify the structure of the"
+                                        + " \u201Ctable\u201D so that no description"
+                                        + " is needed.");
+                    }
+                    if (atts.getIndex("", "border") > -1) {
+                        if (followW3Cspec) {
+                            if (atts.getIndex("", "border") > -1 && (!("".equals(
+                                    atts.getValue("", "border"))
+                                    || "1".equals(atts.getValue("", "border"))))) {
+                                errObsoleteAttribute("border", "table",
+                                        " Use CSS instead.");
+                            } else {
+                                warnPresentationalAttribute("border", "table",
+                                        " For example: \u201Ctable, td, th { border: 1px solid gray }\u201D");
+                            }
+                        } else {
                             errObsoleteAttribute("border", "table",
                                     " Use CSS instead.");
-                        } else {
-                            warnPresentationalAttribute("border", "table",
-                                    " For example: \u201Ctable, td, th { border: 1px solid gray }\u201D");
                         }
-                    } else {
-                        errObsoleteAttribute("border", "table",
-                                " Use CSS instead.");
                     }
-                }
-            } else if ("track" == localName
-                    && atts.getIndex("", "default") >= 0) {
-                for (Map.Entry<StackNode, TaintableLocatorImpl> entry : openMediaElements.entrySet()) {
-                    StackNode node = entry.getKey();
-                    TaintableLocatorImpl locator = entry.getValue();
-                    if (node.isTrackDescendant()) {
-                        err("The \u201Cdefault\u201D attribute must not occur"
-                                + " on more than one \u201Ctrack\u201D element"
-                                + " within the same \u201Caudio\u201D or"
-                                + " \u201Cvideo\u201D element.");
-                        if (!locator.isTainted()) {
-                            warn("\u201Caudio\u201D or \u201Cvideo\u201D element"
-                                    + " has more than one \u201Ctrack\u201D child"
-                                    + " element with a \u201Cdefault\u201D attribute.",
-                                    locator);
-                            locator.markTainted();
+                    break;
+                case EL_TRACK:
+                    if (atts.getIndex("", "default") >= 0) {
+                        for (Map.Entry<StackNode, TaintableLocatorImpl> entry : openMediaElements.entrySet()) {
+                            StackNode node = entry.getKey();
+                            TaintableLocatorImpl locator = entry.getValue();
+                            if (node.isTrackDescendant()) {
+                                err("The \u201Cdefault\u201D attribute must not occur"
+                                        + " on more than one \u201Ctrack\u201D element"
+                                        + " within the same \u201Caudio\u201D or"
+                                        + " \u201Cvideo\u201D element.");
+                                if (!locator.isTainted()) {
+                                    warn("\u201Caudio\u201D or \u201Cvideo\u201D element"
+                                            + " has more than one \u201Ctrack\u201D child"
+                                            + " element with a \u201Cdefault\u201D attribute.",
+                                            locator);
+                                    locator.markTainted();
+                                }
+                            } else {
+                                node.setTrackDescendants();
+                            }
                         }
-                    } else {
-                        node.setTrackDescendants();
                     }
-                }
-            } else if ("main" == localName) {
-                if (followW3Cspec && hasVisibleMain) {
-                    if (atts.getIndex("", "hidden") < 0) {
-                        err("A document must not include more than one visible"
-                                + " \u201Cmain\u201D element.");
-                    } else {
-                        hasVisibleMain = true;
-                    }
-                }
-            } else if ("h1" == localName) {
-                if (currentSectioningDepth > 1) {
-                    warn(h1WarningMessage);
-                } else if (currentSectioningDepth == 1) {
-                    secondLevelH1s.add(new LocatorImpl(getDocumentLocator()));
-                } else {
-                    hasTopLevelH1 = true;
-                }
-            }
-
-            // progress
-            else if ("progress" == localName) {
-                double value = getDoubleAttribute(atts, "value");
-                if (!Double.isNaN(value)) {
-                    double max = getDoubleAttribute(atts, "max");
-                    if (Double.isNaN(max)) {
-                        if (!(value <= 1.0)) {
-                            err("The value of the  \u201Cvalue\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
+                    break;
+                case EL_MAIN:
+                    if (followW3Cspec && hasVisibleMain) {
+                        if (atts.getIndex("", "hidden") < 0) {
+                            err("A document must not include more than one visible"
+                                    + " \u201Cmain\u201D element.");
+                        } else {
+                            hasVisibleMain = true;
                         }
+                    }
+                    break;
+                case EL_H1:
+                    if (currentSectioningDepth > 1) {
+                        warn(h1WarningMessage);
+                    } else if (currentSectioningDepth == 1) {
+                        secondLevelH1s.add(getDocumentLocator());
                     } else {
-                        if (!(value <= max)) {
-                            err("The value of the  \u201Cvalue\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
+                        hasTopLevelH1 = true;
+                    }
+                    break;
+                case EL_PROGRESS: {
+                    double value = getDoubleAttribute(atts, "value");
+                    if (!Double.isNaN(value)) {
+                        double max = getDoubleAttribute(atts, "max");
+                        if (Double.isNaN(max)) {
+                            if (!(value <= 1.0)) {
+                                err("The value of the  \u201Cvalue\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
+                            }
+                        } else {
+                            if (!(value <= max)) {
+                                err("The value of the  \u201Cvalue\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
+                            }
                         }
                     }
+                    break;
                 }
-            }
-
-            // meter
-            else if ("meter" == localName) {
-                double value = getDoubleAttribute(atts, "value");
-                double min = getDoubleAttribute(atts, "min");
-                double max = getDoubleAttribute(atts, "max");
-                double optimum = getDoubleAttribute(atts, "optimum");
-                double low = getDoubleAttribute(atts, "low");
-                double high = getDoubleAttribute(atts, "high");
-
-                if (!Double.isNaN(min) && !Double.isNaN(value)
-                        && !(min <= value)) {
-                    err("The value of the \u201Cmin\u201D attribute must be less than or equal to the value of the \u201Cvalue\u201D attribute.");
-                }
-                if (Double.isNaN(min) && !Double.isNaN(value)
-                        && !(0 <= value)) {
-                    err("The value of the \u201Cvalue\u201D attribute must be greater than or equal to zero when the \u201Cmin\u201D attribute is absent.");
-                }
-                if (!Double.isNaN(value) && !Double.isNaN(max)
-                        && !(value <= max)) {
-                    err("The value of the \u201Cvalue\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
-                }
-                if (!Double.isNaN(value) && Double.isNaN(max)
-                        && !(value <= 1)) {
-                    err("The value of the \u201Cvalue\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
-                }
-                if (!Double.isNaN(min) && !Double.isNaN(max) && !(min <= max)) {
-                    err("The value of the \u201Cmin\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
-                }
-                if (Double.isNaN(min) && !Double.isNaN(max) && !(0 <= max)) {
-                    err("The value of the \u201Cmax\u201D attribute must be greater than or equal to zero when the \u201Cmin\u201D attribute is absent.");
-                }
-                if (!Double.isNaN(min) && Double.isNaN(max) && !(min <= 1)) {
-                    err("The value of the \u201Cmin\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
-                }
-                if (!Double.isNaN(min) && !Double.isNaN(low) && !(min <= low)) {
-                    err("The value of the \u201Cmin\u201D attribute must be less than or equal to the value of the \u201Clow\u201D attribute.");
-                }
-                if (Double.isNaN(min) && !Double.isNaN(low) && !(0 <= low)) {
-                    err("The value of the \u201Clow\u201D attribute must be greater than or equal to zero when the \u201Cmin\u201D attribute is absent.");
-                }
-                if (!Double.isNaN(min) && !Double.isNaN(high)
-                        && !(min <= high)) {
-                    err("The value of the \u201Cmin\u201D attribute must be less than or equal to the value of the \u201Chigh\u201D attribute.");
-                }
-                if (Double.isNaN(min) && !Double.isNaN(high) && !(0 <= high)) {
-                    err("The value of the \u201Chigh\u201D attribute must be greater than or equal to zero when the \u201Cmin\u201D attribute is absent.");
-                }
-                if (!Double.isNaN(low) && !Double.isNaN(high)
-                        && !(low <= high)) {
-                    err("The value of the \u201Clow\u201D attribute must be less than or equal to the value of the \u201Chigh\u201D attribute.");
-                }
-                if (!Double.isNaN(high) && !Double.isNaN(max)
-                        && !(high <= max)) {
-                    err("The value of the \u201Chigh\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
-                }
-                if (!Double.isNaN(high) && Double.isNaN(max) && !(high <= 1)) {
-                    err("The value of the \u201Chigh\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
-                }
-                if (!Double.isNaN(low) && !Double.isNaN(max) && !(low <= max)) {
-                    err("The value of the \u201Clow\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
-                }
-                if (!Double.isNaN(low) && Double.isNaN(max) && !(low <= 1)) {
-                    err("The value of the \u201Clow\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
-                }
-                if (!Double.isNaN(min) && !Double.isNaN(optimum)
-                        && !(min <= optimum)) {
-                    err("The value of the \u201Cmin\u201D attribute must be less than or equal to the value of the \u201Coptimum\u201D attribute.");
-                }
-                if (Double.isNaN(min) && !Double.isNaN(optimum)
-                        && !(0 <= optimum)) {
-                    err("The value of the \u201Coptimum\u201D attribute must be greater than or equal to zero when the \u201Cmin\u201D attribute is absent.");
-                }
-                if (!Double.isNaN(optimum) && !Double.isNaN(max)
-                        && !(optimum <= max)) {
-                    err("The value of the \u201Coptimum\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
-                }
-                if (!Double.isNaN(optimum) && Double.isNaN(max)
-                        && !(optimum <= 1)) {
-                    err("The value of the \u201Coptimum\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
-                }
-            }
+                case EL_METER: {
+                    double value = getDoubleAttribute(atts, "value");
+                    double min = getDoubleAttribute(atts, "min");
+                    double max = getDoubleAttribute(atts, "max");
+                    double optimum = getDoubleAttribute(atts, "optimum");
+                    double low = getDoubleAttribute(atts, "low");
+                    double high = getDoubleAttribute(atts, "high");
 
-            // map required attrs
-            else if ("map" == localName && id != null) {
-                String nameVal = atts.getValue("", "name");
-                if (nameVal != null && !nameVal.equals(id)) {
-                    err("The \u201Cid\u201D attribute on a \u201Cmap\u201D element must have an the same value as the \u201Cname\u201D attribute.");
+                    if (!Double.isNaN(min) && !Double.isNaN(value)
+                            && !(min <= value)) {
+                        err("The value of the \u201Cmin\u201D attribute must be less than or equal to the value of the \u201Cvalue\u201D attribute.");
+                    }
+                    if (Double.isNaN(min) && !Double.isNaN(value)
+                            && !(0 <= value)) {
+                        err("The value of the \u201Cvalue\u201D attribute must be greater than or equal to zero when the \u201Cmin\u201D attribute is absent.");
+                    }
+                    if (!Double.isNaN(value) && !Double.isNaN(max)
+                            && !(value <= max)) {
+                        err("The value of the \u201Cvalue\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
+                    }
+                    if (!Double.isNaN(value) && Double.isNaN(max)
+                            && !(value <= 1)) {
+                        err("The value of the \u201Cvalue\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
+                    }
+                    if (!Double.isNaN(min) && !Double.isNaN(max) && !(min <= max)) {
+                        err("The value of the \u201Cmin\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
+                    }
+                    if (Double.isNaN(min) && !Double.isNaN(max) && !(0 <= max)) {
+                        err("The value of the \u201Cmax\u201D attribute must be greater than or equal to zero when the \u201Cmin\u201D attribute is absent.");
+                    }
+                    if (!Double.isNaN(min) && Double.isNaN(max) && !(min <= 1)) {
+                        err("The value of the \u201Cmin\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
+                    }
+                    if (!Double.isNaN(min) && !Double.isNaN(low) && !(min <= low)) {
+                        err("The value of the \u201Cmin\u201D attribute must be less than or equal to the value of the \u201Clow\u201D attribute.");
+                    }
+                    if (Double.isNaN(min) && !Double.isNaN(low) && !(0 <= low)) {
+                        err("The value of the \u201Clow\u201D attribute must be greater than or equal to zero when the \u201Cmin\u201D attribute is absent.");
+                    }
+                    if (!Double.isNaN(min) && !Double.isNaN(high)
+                            && !(min <= high)) {
+                        err("The value of the \u201Cmin\u201D attribute must be less than or equal to the value of the \u201Chigh\u201D attribute.");
+                    }
+                    if (Double.isNaN(min) && !Double.isNaN(high) && !(0 <= high)) {
+                        err("The value of the \u201Chigh\u201D attribute must be greater than or equal to zero when the \u201Cmin\u201D attribute is absent.");
+                    }
+                    if (!Double.isNaN(low) && !Double.isNaN(high)
+                            && !(low <= high)) {
+                        err("The value of the \u201Clow\u201D attribute must be less than or equal to the value of the \u201Chigh\u201D attribute.");
+                    }
+                    if (!Double.isNaN(high) && !Double.isNaN(max)
+                            && !(high <= max)) {
+                        err("The value of the \u201Chigh\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
+                    }
+                    if (!Double.isNaN(high) && Double.isNaN(max) && !(high <= 1)) {
+                        err("The value of the \u201Chigh\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
+                    }
+                    if (!Double.isNaN(low) && !Double.isNaN(max) && !(low <= max)) {
+                        err("The value of the \u201Clow\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
+                    }
+                    if (!Double.isNaN(low) && Double.isNaN(max) && !(low <= 1)) {
+                        err("The value of the \u201Clow\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
+                    }
+                    if (!Double.isNaN(min) && !Double.isNaN(optimum)
+                            && !(min <= optimum)) {
+                        err("The value of the \u201Cmin\u201D attribute must be less than or equal to the value of the \u201Coptimum\u201D attribute.");
+                    }
+                    if (Double.isNaN(min) && !Double.isNaN(optimum)
+                            && !(0 <= optimum)) {
+                        err("The value of the \u201Coptimum\u201D attribute must be greater than or equal to zero when the \u201Cmin\u201D attribute is absent.");
+                    }
+                    if (!Double.isNaN(optimum) && !Double.isNaN(max)
+                            && !(optimum <= max)) {
+                        err("The value of the \u201Coptimum\u201D attribute must be less than or equal to the value of the \u201Cmax\u201D attribute.");
+                    }
+                    if (!Double.isNaN(optimum) && Double.isNaN(max)
+                            && !(optimum <= 1)) {
+                        err("The value of the \u201Coptimum\u201D attribute must be less than or equal to one when the \u201Cmax\u201D attribute is absent.");
+                    }
+                    break;
                 }
-            }
-
-            else if ("object" == localName) {
-                if (atts.getIndex("", "typemustmatch") >= 0) {
-                    if ((atts.getIndex("", "data") < 0)
-                            || (atts.getIndex("", "type") < 0)) {
-                        {
-                            err("Element \u201Cobject\u201D must not have"
-                                    + " attribute \u201Ctypemustmatch\u201D unless"
-                                    + " both attribute \u201Cdata\u201D"
-                                    + " and attribute \u201Ctype\u201D are also specified.");
+                // map required attrs
+                case EL_MAP:
+                    if (id != null) {
+                        String nameVal = atts.getValue("", "name");
+                        if (nameVal != null && !nameVal.equals(id)) {
+                            err("The \u201Cid\u201D attribute on a \u201Cmap\u201D element must have an the same value as the \u201Cname\u201D attribute.");
                         }
                     }
-                }
-            }
-
-            // script
-            else if ("script" == localName) {
-                // script language
-                if (languageJavaScript && typeNotTextJavaScript) {
-                    err("A \u201Cscript\u201D element with the \u201Clanguage=\"JavaScript\"\u201D attribute set must not have a \u201Ctype\u201D attribute whose value is not \u201Ctext/javascript\u201D.");
-                }
-                // src-less script
-                if (atts.getIndex("", "src") < 0) {
-                    if (atts.getIndex("", "charset") >= 0) {
-                        err("Element \u201Cscript\u201D must not have attribute \u201Ccharset\u201D unless attribute \u201Csrc\u201D is also specified.");
+                    break;
+                case EL_OBJECT:
+                    if (atts.getIndex("", "typemustmatch") >= 0) {
+                        if ((atts.getIndex("", "data") < 0)
+                                || (atts.getIndex("", "type") < 0)) {
+                            {
+                                err("Element \u201Cobject\u201D must not have"
+                                        + " attribute \u201Ctypemustmatch\u201D unless"
+                                        + " both attribute \u201Cdata\u201D"
+                                        + " and attribute \u201Ctype\u201D are also specified.");
+                            }
+                        }
                     }
-                    if (atts.getIndex("", "defer") >= 0) {
-                        err("Element \u201Cscript\u201D must not have attribute \u201Cdefer\u201D unless attribute \u201Csrc\u201D is also specified.");
+                    break;
+                case EL_SCRIPT:
+                    // script language
+                    if (languageJavaScript && typeNotTextJavaScript) {
+                        err("A \u201Cscript\u201D element with the \u201Clanguage=\"JavaScript\"\u201D attribute set must not have a \u201Ctype\u201D attribute whose value is not \u201Ctext/javascript\u201D.");
                     }
-                    if (atts.getIndex("", "async") >= 0) {
-                        err("Element \u201Cscript\u201D must not have attribute \u201Casync\u201D unless attribute \u201Csrc\u201D is also specified.");
+                    // src-less script
+                    if (atts.getIndex("", "src") < 0) {
+                        if (atts.getIndex("", "charset") >= 0) {
+                            err("Element \u201Cscript\u201D must not have attribute \u201Ccharset\u201D unless attribute \u201Csrc\u201D is also specified.");
+                        }
+                        if (atts.getIndex("", "defer") >= 0) {
+                            err("Element \u201Cscript\u201D must not have attribute \u201Cdefer\u201D unless attribute \u201Csrc\u201D is also specified.");
+                        }
+                        if (atts.getIndex("", "async") >= 0) {
+                            err("Element \u201Cscript\u201D must not have attribute \u201Casync\u201D unless attribute \u201Csrc\u201D is also specified.");
+                        }
+                        if (atts.getIndex("", "integrity") >= 0) {
+                            err("Element \u201Cscript\u201D must not have attribute"
+                                    + " \u201Cintegrity\u201D unless attribute"
+                                    + " \u201Csrc\u201D is also specified.");
+                        }
                     }
-                    if (atts.getIndex("", "integrity") >= 0) {
-                        err("Element \u201Cscript\u201D must not have attribute"
-                                + " \u201Cintegrity\u201D unless attribute"
-                                + " \u201Csrc\u201D is also specified.");
+                    if (atts.getIndex("", "type") > -1
+                            && AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
+                                    "module", atts.getValue("", "type"))) {
+                        if (atts.getIndex("", "integrity") > -1) {
+                            err("A \u201Cscript\u201D element with an"
+                                    + " \u201Cintegrity\u201D attribute must not have a"
+                                    + " \u201Ctype\u201D attribute with the value"
+                                    + " \u201Cmodule\u201D.");
+                        }
+                        if (atts.getIndex("", "defer") > -1) {
+                            err("A \u201Cscript\u201D element with a"
+                                    + " \u201Cdefer\u201D attribute must not have a"
+                                    + " \u201Ctype\u201D attribute with the value"
+                                    + " \u201Cmodule\u201D.");
+                        }
                     }
-                }
-                if (atts.getIndex("", "type") > -1
-                        && AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
-                                "module", atts.getValue("", "type"))) {
-                    if (atts.getIndex("", "integrity") > -1) {
-                        err("A \u201Cscript\u201D element with an"
-                                + " \u201Cintegrity\u201D attribute must not have a"
-                                + " \u201Ctype\u201D attribute with the value"
-                                + " \u201Cmodule\u201D.");
-                    }
-                    if (atts.getIndex("", "defer") > -1) {
-                        err("A \u201Cscript\u201D element with a"
-                                + " \u201Cdefer\u201D attribute must not have a"
-                                + " \u201Ctype\u201D attribute with the value"
-                                + " \u201Cmodule\u201D.");
+                    break;
+                // bdo required attrs
+                case EL_BDO:
+                    if (atts.getIndex("", "dir") < 0) {
+                        err("Element \u201Cbdo\u201D must have attribute \u201Cdir\u201D.");
                     }
-                }
-            }
-
-            // bdo required attrs
-            else if ("bdo" == localName && atts.getIndex("", "dir") < 0) {
-                err("Element \u201Cbdo\u201D must have attribute \u201Cdir\u201D.");
+                    break;
+                default:
+                    break;
             }
 
             // labelable elements
-            if ("button" == localName
-                    || ("input" == localName
-                            && !AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
-                                    "hidden", atts.getValue("", "type")))
-                    || "meter" == localName || "output" == localName
-                    || "progress" == localName || "select" == localName
-                    || "textarea" == localName) {
-                for (Map.Entry<StackNode, Locator> entry : openLabels.entrySet()) {
+            if (element == EL_BUTTON || (element == EL_INPUT && !hidden)
+                    || element == EL_METER || element == EL_OUTPUT
+                    || element == EL_PROGRESS || element == EL_SELECT
+                    || element == EL_TEXTAREA) {
+                for (Map.Entry<StackNode, Integer> entry : openLabels.entrySet()) {
                     StackNode node = entry.getKey();
-                    Locator locator = entry.getValue();
+                    Locator locator = positions.get(entry.getValue());
                     if (node.isLabeledDescendants()) {
                         err("The \u201Clabel\u201D element may contain at most"
                                 + " one \u201Cbutton\u201D, \u201Cinput\u201D,"
@@ -2229,10 +2585,7 @@ public class Assertions extends Checker {
             // contextmenu
             if (contextmenu != null) {
                 contextmenuReferences.add(new IdrefLocator(
-                        new LocatorImpl(getDocumentLocator()), contextmenu));
-            }
-            if ("menu" == localName) {
-                menuIds.addAll(ids);
+                        getDocumentLocator(), contextmenu));
             }
             if (role != null && owns != null) {
                 for (Set<String> value : REQUIRED_ROLE_ANCESTOR_BY_DESCENDANT.values()) {
@@ -2251,52 +2604,34 @@ public class Assertions extends Checker {
                     }
                 }
             }
-            if ("datalist" == localName) {
-                listIds.addAll(ids);
-            }
-
             // label for
-            if ("label" == localName) {
+            if (element == EL_LABEL) {
                 String forVal = atts.getValue("", "for");
                 if (forVal != null) {
                     formControlReferences.add(new IdrefLocator(
-                            new LocatorImpl(getDocumentLocator()), forVal));
+                            getDocumentLocator(), forVal));
                 }
             }
 
-            if ("form" == localName) {
-                formElementIds.addAll(ids);
-            }
-
-            if (("button" == localName //
-                    || "input" == localName && !hidden) //
-                    || "meter" == localName //
-                    || "output" == localName //
-                    || "progress" == localName //
-                    || "select" == localName //
-                    || "textarea" == localName) {
-                formControlIds.addAll(ids);
-            }
-
-            if ("button" == localName || "fieldset" == localName
-                    || ("input" == localName && !hidden)
-                    || "object" == localName || "output" == localName
-                    || "select" == localName || "textarea" == localName) {
+            if (element == EL_BUTTON || element == EL_FIELDSET
+                    || (element == EL_INPUT && !hidden)
+                    || element == EL_OBJECT || element == EL_OUTPUT
+                    || element == EL_SELECT || element == EL_TEXTAREA) {
                 String formVal = atts.getValue("", "form");
                 if (formVal != null) {
                     formElementReferences.add(new IdrefLocator(
-                            new LocatorImpl(getDocumentLocator()), formVal));
+                            getDocumentLocator(), formVal));
                 }
             }
 
             // input list
-            if ("input" == localName && list != null) {
+            if (element == EL_INPUT && list != null) {
                 listReferences.add(new IdrefLocator(
-                        new LocatorImpl(getDocumentLocator()), list));
+                        getDocumentLocator(), list));
             }
 
             // input@type=button
-            if ("input" == localName
+            if (element == EL_INPUT
                     && AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
                             "button", atts.getValue("", "type"))) {
                 if (atts.getValue("", "value") == null
@@ -2306,14 +2641,14 @@ public class Assertions extends Checker {
             }
 
             // track
-            if ("track" == localName) {
+            if (element == EL_TRACK) {
                 if ("".equals(atts.getValue("", "label"))) {
                     err("Attribute \u201Clabel\u201D for element \u201Ctrack\u201D must have non-empty value.");
                 }
             }
 
             // multiple selected options
-            if ("option" == localName && selected) {
+            if (element == EL_OPTION && selected) {
                 for (Map.Entry<StackNode, Locator> entry : openSingleSelects.entrySet()) {
                     StackNode node = entry.getKey();
                     if (node.isSelectedOptions()) {
@@ -2323,7 +2658,7 @@ public class Assertions extends Checker {
                     }
                 }
             }
-            if ("meta" == localName) {
+            if (element == EL_META) {
                 if (AttributeUtil.lowerCaseLiteralEqualsIgnoreAsciiCaseString(
                         "content-language", atts.getValue("", "http-equiv"))) {
                     err("Using the \u201Cmeta\u201D element to specify the"
@@ -2424,7 +2759,7 @@ public class Assertions extends Checker {
                     hasContentTypePragma = true;
                 }
             }
-            if ("link" == localName) {
+            if (element == EL_LINK) {
                 boolean hasRel = false;
                 List<String> relList = new ArrayList<>();
                 if (atts.getIndex("", "rel") > -1) {
@@ -2516,7 +2851,7 @@ public class Assertions extends Checker {
                             role)) {
                 warn("Element \u201C" + localName + "\u201D does not need a"
                         + " \u201Crole\u201D attribute.");
-            } else if ("input" == localName) {
+            } else if (element == EL_INPUT) {
                 inputTypeVal = inputTypeVal == null ? "text" : inputTypeVal;
                 if (INPUT_TYPES_WITH_IMPLICIT_ROLE.containsKey(inputTypeVal)
                         && INPUT_TYPES_WITH_IMPLICIT_ROLE.get(
@@ -2547,7 +2882,7 @@ public class Assertions extends Checker {
 
                     }
                 }
-            } else if ("menuitem" == localName) {
+            } else if (element == EL_MENUITEM) {
                 menuitemTypeVal = menuitemTypeVal == null ? "command"
                         : menuitemTypeVal;
                 if (MENUITEM_TYPES_WITH_IMPLICIT_ROLE.containsKey(
@@ -2558,33 +2893,33 @@ public class Assertions extends Checker {
                             menuitemTypeVal);
                 }
             } else if (atts.getIndex("", "href") > -1 && "link".equals(role)
-                    && ("a".equals(localName) || "area".equals(localName)
-                            || "link".equals(localName))) {
+                    && (element == EL_A || element == EL_AREA
+                            || element == EL_LINK)) {
                 warn("The \u201Clink\u201D role is unnecessary for element"
                         + " \u201C" + localName + "\u201D with attribute"
                         + " \u201Chref\u201D.");
-            } else if (("tbody".equals(localName) || "tfoot".equals(localName)
-                    || "thead".equals(localName)) && "rowgroup".equals(role)) {
+            } else if ((element == EL_TBODY || element == EL_TFOOT
+                    || element == EL_THEAD) && "rowgroup".equals(role)) {
                 warn("The \u201Crowgroup\u201D role is unnecessary for element"
                         + " \u201C" + localName + "\u201D.");
-            } else if ("th" == localName && ("columnheader".equals(role)
+            } else if (element == EL_TH && ("columnheader".equals(role)
                     || "columnheader".equals(role))) {
                 warn("The \u201C" + role + "\u201D role is unnecessary for"
                         + " element \u201Cth\u201D.");
-            } else if ("li" == localName && "listitem".equals(role)
+            } else if (element == EL_LI && "listitem".equals(role)
                     && !"menu".equals(parentName)) {
                 warn("The \u201Clistitem\u201D role is unnecessary for an"
                         + " \u201Cli\u201D element whose parent is"
                         + " an \u201Col\u201D element or a"
                         + " \u201Cul\u201D element.");
-            } else if ("button" == localName && "button".equals(role)
+            } else if (element == EL_BUTTON && "button".equals(role)
                     && "menu".equals(atts.getValue("", "type"))) {
                 warnExplicitRoleUnnecessaryForType("button", "button", "menu");
-            } else if ("menu" == localName && "toolbar".equals(role)
+            } else if (element == EL_MENU && "toolbar".equals(role)
                     && "toolbar".equals(atts.getValue("", "type"))) {
                 warnExplicitRoleUnnecessaryForType("menu", "toolbar",
                         "toolbar");
-            } else if ("li" == localName && "listitem".equals(role)
+            } else if (element == EL_LI && "listitem".equals(role)
                     && !"menu".equals(parentName)) {
                 warn("The \u201Clistitem\u201D role is unnecessary for an"
                         + " \u201Cli\u201D element whose parent is"
@@ -2597,6 +2932,9 @@ public class Assertions extends Checker {
                 if (atts.getType(i) == "ID") {
                     String attVal = atts.getValue(i);
                     if (attVal.length() != 0) {
+                        if (ids == null) {
+                            ids = new HashSet<>();
+                        }
                         ids.add(attVal);
                     }
                 }
@@ -2611,8 +2949,6 @@ public class Assertions extends Checker {
                     }
                 }
             }
-
-            allIds.addAll(ids);
         }
 
         // ARIA required owner/ancestors
@@ -2624,8 +2960,7 @@ public class Assertions extends Checker {
             if (!currentElementHasRequiredAncestorRole(requiredAncestorRoles)) {
                 if (atts.getIndex("", "id") > -1
                         && !"".equals(atts.getValue("", "id"))) {
-                    needsAriaOwner.add(new IdrefLocator(
-                            new LocatorImpl(getDocumentLocator()),
+                    needsAriaOwner.add(new IdrefLocator(getDocumentLocator(),
                             atts.getValue("", "id"), role));
                 } else {
                     errContainedInOrOwnedBy(role, getDocumentLocator());
@@ -2644,7 +2979,6 @@ public class Assertions extends Checker {
                 }
             }
         }
-        allIds.addAll(ids);
 
         // aria-activedescendant accompanied by aria-owns
         if (activeDescendant != null && !"".equals(activeDescendant)) {
@@ -2663,19 +2997,21 @@ public class Assertions extends Checker {
             }
         }
         // activedescendant
-        for (Iterator<Map.Entry<StackNode, Locator>> iterator = openActiveDescendants.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry<StackNode, Locator> entry = iterator.next();
-            if (ids.contains(entry.getKey().getActiveDescendant())) {
-                iterator.remove();
+        if (ids != null) {
+            for (Iterator<Map.Entry<StackNode, Locator>> iterator = openActiveDescendants.entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry<StackNode, Locator> entry = iterator.next();
+                if (ids.contains(entry.getKey().getActiveDescendant())) {
+                    iterator.remove();
+                }
             }
         }
 
         if ("http://www.w3.org/1999/xhtml" == uri) {
-            int number = specialAncestorNumber(localName);
+            int number = SPECIAL_ANCESTOR_NUMBERS.get(localName) - 1;
             if (number > -1) {
                 ancestorMask |= (1 << number);
             }
-            if ("a" == localName && href) {
+            if (element == EL_A && href) {
                 ancestorMask |= HREF_MASK;
             }
             StackNode child = new StackNode(ancestorMask, localName, role,
@@ -2684,23 +3020,23 @@ public class Assertions extends Checker {
                 openActiveDescendants.put(child,
                         new LocatorImpl(getDocumentLocator()));
             }
-            if ("select" == localName && atts.getIndex("", "multiple") == -1) {
+            if (element == EL_SELECT && atts.getIndex("", "multiple") == -1) {
                 openSingleSelects.put(child, getDocumentLocator());
-            } else if ("label" == localName) {
-                openLabels.put(child, new LocatorImpl(getDocumentLocator()));
-            } else if ("video" == localName || "audio" == localName) {
+            } else if (element == EL_LABEL) {
+                openLabels.put(child, positions.add(getDocumentLocator()));
+            } else if (element == EL_VIDEO || element == EL_AUDIO) {
                 openMediaElements.put(child,
                         new TaintableLocatorImpl(getDocumentLocator()));
             }
             push(child);
-            if ("article" == localName || "aside" == localName
-                    || "nav" == localName || "section" == localName) {
+            if (element == EL_ARTICLE || element == EL_ASIDE
+                    || element == EL_NAV || element == EL_SECTION) {
                 if (atts.getIndex("", "aria-label") > -1
                         && !"".equals(atts.getValue("", "aria-label"))) {
                     child.setHeadingFound();
                 }
             }
-            if ("select" == localName && atts.getIndex("", "required") > -1
+            if (element == EL_SELECT && atts.getIndex("", "required") > -1
                     && atts.getIndex("", "multiple") < 0) {
                 if (atts.getIndex("", "size") > -1) {
                     String size = trimSpaces(atts.getValue("", "size"));
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.checker.schematronequiv;
+
+/**
+ * A fixed table from names to small integer codes, so that checks on
+ * element and attribute names can dispatch with a <code>switch</code>
+ * instead of a chain of string comparisons. Names the parsers emit are
+ * interned, so a lookup is usually settled by identity; other strings still
+ * find their code by <code>equals</code>. Names not in the table have the
+ * code zero.
+ */
+final class NameTable {
+
+    private final String[] names;
+
+    private final int[] codes;
+
+    private final int mask;
+
+    NameTable(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        names = new String[capacity];
+        codes = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds a name. Only to be called while the table is being set up.
+     */
+    NameTable put(String name, int code) {
+        int i = name.hashCode() & mask;
+        while (names[i] != null) {
+            if (names[i].equals(name)) {
+                throw new IllegalArgumentException(name);
+            }
+            i = (i + 1) & mask;
+        }
+        names[i] = name.intern();
+        codes[i] = code;
+        return this;
+    }
+
+    /**
+     * Returns the code of a name, or zero.
+     */
+    int get(String name) {
+        int i = name.hashCode() & mask;
+        String n;
+        while ((n = names[i]) != null) {
+            if (n == name || n.equals(name)) {
+                return codes[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return 0;
+    }
+}
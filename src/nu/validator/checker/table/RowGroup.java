@@ -24,9 +24,6 @@
 package nu.validator.checker.table;
 
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import org.xml.sax.SAXException;
 
@@ -41,7 +38,7 @@ final class RowGroup {
     /**
      * Runtime type constant.
      */
-    private final Cell[] EMPTY_CELL_ARRAY = {};
+    private static final Cell[] EMPTY_CELL_ARRAY = {};
 
     /**
      * Keeps track of the current slot row of the insertion point.
@@ -64,16 +61,32 @@ final class RowGroup {
     private final Table owner;
 
     /**
-     * The set of cells from previous rows that are still in effect extending
-     * downwards.
+     * The cells from previous rows that extend downwards onto the current
+     * row, in column order. Cells in effect never start on the same column,
+     * so the order is strict.
      */
-    private final SortedSet<Cell> cellsIfEffect = new TreeSet<>(
-            VerticalCellComparator.THE_INSTANCE);
+    private Cell[] cellsOnCurrentRow = EMPTY_CELL_ARRAY;
 
     /**
-     * A temporary copy of <code>cellsIfEffect</code> sorted differently.
+     * The number of cells in <code>cellsOnCurrentRow</code>.
      */
-    private Cell[] cellsOnCurrentRow;
+    private int cellsOnCurrentRowCount = 0;
+
+    /**
+     * The cells starting on the current row that extend downwards, in column
+     * order.
+     */
+    private Cell[] newCellsInEffect = EMPTY_CELL_ARRAY;
+
+    /**
+     * The number of cells in <code>newCellsInEffect</code>.
+     */
+    private int newCellsInEffectCount = 0;
+
+    /**
+     * Scratch space for merging the two arrays above at the end of a row.
+     */
+    private Cell[] merged = EMPTY_CELL_ARRAY;
 
     /**
      * Whether the current row has had cells.
@@ -98,11 +111,22 @@ final class RowGroup {
         cell.setPosition(currentRow, insertionPoint);
         owner.cell(cell);
         if (cell.getBottom() > currentRow + 1) {
-            cellsIfEffect.add(cell);
+            if (newCellsInEffectCount == newCellsInEffect.length) {
+                newCellsInEffect = Arrays.copyOf(newCellsInEffect,
+                        Math.max(8, newCellsInEffectCount << 1));
+            }
+            // Cells on a row are positioned left to right.
+            newCellsInEffect[newCellsInEffectCount++] = cell;
         }
         insertionPoint = cell.getRight();
-        for (int i = nextOldCell; i < cellsOnCurrentRow.length; i++) {
-            cellsOnCurrentRow[i].errOnHorizontalOverlap(cell);
+        int right = cell.getRight();
+        for (int i = nextOldCell; i < cellsOnCurrentRowCount; i++) {
+            Cell other = cellsOnCurrentRow[i];
+            if (other.getLeft() >= right) {
+                // This and the rest of the cells start past this cell.
+                break;
+            }
+            other.errOnHorizontalOverlap(cell);
         }
     }
 
@@ -110,7 +134,7 @@ final class RowGroup {
      *
      */
     private void findInsertionPoint() {
-        while (nextOldCell < cellsOnCurrentRow.length) {
+        while (nextOldCell < cellsOnCurrentRowCount) {
             Cell other = cellsOnCurrentRow[nextOldCell];
             if (insertionPoint < other.getLeft()) {
                 break;
@@ -124,7 +148,13 @@ final class RowGroup {
     }
 
     public void end() throws SAXException {
-        for (Cell cell : cellsIfEffect) {
+        if (cellsOnCurrentRowCount == 0) {
+            return;
+        }
+        Cell[] cells = Arrays.copyOf(cellsOnCurrentRow,
+                cellsOnCurrentRowCount);
+        Arrays.sort(cells, VerticalCellComparator.THE_INSTANCE);
+        for (Cell cell : cells) {
             cell.errIfNotRowspanZero(type);
         }
     }
@@ -141,7 +171,6 @@ final class RowGroup {
         }
 
         findInsertionPoint();
-        cellsOnCurrentRow = null;
 
         int columnCount = owner.getColumnCount();
         if (owner.isHardWidth()) {
@@ -173,13 +202,35 @@ final class RowGroup {
             }
         }
 
-        // Get rid of cells that don't span to the next row
-        for (Iterator<Cell> iter = cellsIfEffect.iterator(); iter.hasNext();) {
-            Cell cell = iter.next();
-            if (cell.shouldBeCulled(currentRow + 1)) {
-                iter.remove();
+        // Merge the cells that span to the next row, keeping column order
+        // and getting rid of the cells that don't
+        int capacity = cellsOnCurrentRowCount + newCellsInEffectCount;
+        if (merged.length < capacity) {
+            merged = new Cell[Math.max(8, capacity << 1)];
+        }
+        int nextRow = currentRow + 1;
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < cellsOnCurrentRowCount || j < newCellsInEffectCount) {
+            Cell cell;
+            if (j == newCellsInEffectCount
+                    || (i < cellsOnCurrentRowCount && cellsOnCurrentRow[i].getLeft() < newCellsInEffect[j].getLeft())) {
+                cell = cellsOnCurrentRow[i++];
+            } else {
+                cell = newCellsInEffect[j++];
+            }
+            if (!cell.shouldBeCulled(nextRow)) {
+                merged[count++] = cell;
             }
         }
+        Arrays.fill(cellsOnCurrentRow, 0, cellsOnCurrentRowCount, null);
+        Arrays.fill(newCellsInEffect, 0, newCellsInEffectCount, null);
+        Cell[] swap = cellsOnCurrentRow;
+        cellsOnCurrentRow = merged;
+        cellsOnCurrentRowCount = count;
+        merged = swap;
+        newCellsInEffectCount = 0;
     }
 
     public void startRow() {
@@ -187,9 +238,6 @@ final class RowGroup {
         insertionPoint = 0;
         nextOldCell = 0;
         rowHadCells = false;
-        cellsOnCurrentRow = cellsIfEffect.toArray(EMPTY_CELL_ARRAY);
-        // the array should already be in the right order most of the time
-        Arrays.sort(cellsOnCurrentRow, HorizontalCellComparator.THE_INSTANCE);
     }
 
 }
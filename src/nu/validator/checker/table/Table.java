@@ -23,7 +23,7 @@
 package nu.validator.checker.table;
 
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -157,7 +157,7 @@ final class Table {
     /**
      * A list of cells that refer to headers (in the document order).
      */
-    private final List<Cell> cellsReferringToHeaders = new LinkedList<>();
+    private final List<Cell> cellsReferringToHeaders = new ArrayList<>();
 
     /**
      * The owning checker.
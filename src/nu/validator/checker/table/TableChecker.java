@@ -22,7 +22,7 @@
 
 package nu.validator.checker.table;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 
 import nu.validator.checker.AttributeUtil;
 import nu.validator.checker.Checker;
@@ -56,7 +56,7 @@ public final class TableChecker extends Checker {
      * A stack for holding the tables that are open and ancestors of 
      * the current table. Grows from the tail.
      */
-    private final LinkedList<Table> stack = new LinkedList<>();
+    private final ArrayDeque<Table> stack = new ArrayDeque<>();
 
     /**
      * Pushes the current table onto the stack and creates a new one.
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.checker.test;
+
+import java.io.File;
+import java.io.IOException;
+
+import nu.validator.checker.IdIndex;
+import nu.validator.checker.schematronequiv.Assertions;
+import nu.validator.htmlparser.common.XmlViolationPolicy;
+import nu.validator.htmlparser.sax.HtmlParser;
+import nu.validator.saxtree.Node;
+import nu.validator.saxtree.TreeBuilder;
+import nu.validator.saxtree.TreeParser;
+import nu.validator.xml.IdIndexingContentHandler;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Times the <code>Assertions</code> checker on its own. The page given as
+ * the first argument is parsed once into a SAX tree, which is then replayed
+ * to the checker, first a number of times to warm up and then the given
+ * number of times (default 50) to measure, so that parsing does not count.
+ *
+ * <p>Usage: <code>AssertionsBenchmark page.html [iterations]</code>
+ */
+public class AssertionsBenchmark {
+
+    private static final int WARMUP = 20;
+
+    public static void main(String[] args) throws SAXException, IOException {
+        if (args.length < 1) {
+            System.err.println(
+                    "Usage: AssertionsBenchmark page.html [iterations]");
+            System.exit(1);
+        }
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        Node document = parse(new File(args[0]));
+        CountingErrorHandler errorHandler = new CountingErrorHandler();
+        IdIndex idIndex = new IdIndex();
+        Assertions assertions = new Assertions();
+        assertions.setErrorHandler(errorHandler);
+        assertions.setIdIndex(idIndex);
+        TreeParser treeParser = new TreeParser(new IdIndexingContentHandler(
+                assertions, idIndex), null);
+        for (int i = 0; i < WARMUP; i++) {
+            treeParser.parse(document);
+        }
+        errorHandler.count = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            treeParser.parse(document);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format(
+                "%d iterations, %.3f ms per iteration, %d messages per iteration",
+                iterations, elapsed / 1000000.0 / iterations,
+                errorHandler.count / iterations));
+    }
+
+    private static Node parse(File file) throws SAXException, IOException {
+        HtmlParser parser = new HtmlParser(XmlViolationPolicy.ALTER_INFOSET);
+        TreeBuilder treeBuilder = new TreeBuilder(false, true);
+        parser.setContentHandler(treeBuilder);
+        parser.setLexicalHandler(treeBuilder);
+        parser.parse(new InputSource(file.toURI().toString()));
+        return treeBuilder.getRoot();
+    }
+
+    private static final class CountingErrorHandler implements ErrorHandler {
+
+        long count = 0;
+
+        @Override
+        public void warning(SAXParseException exception) throws SAXException {
+            count++;
+        }
+
+        @Override
+        public void error(SAXParseException exception) throws SAXException {
+            count++;
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception)
+                throws SAXException {
+            count++;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.checker.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+
+import nu.validator.checker.NormalizationChecker;
+import nu.validator.source.SourceCode;
+import nu.validator.source.SourceHandler;
+import nu.validator.xml.ForbiddenCharacterFilter;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.ibm.icu.text.Normalizer;
+
+/**
+ * Checks the bulk-scanning fast paths of <code>NormalizationChecker</code>,
+ * <code>ForbiddenCharacterFilter</code> and <code>SourceCode</code> against
+ * straightforward answers computed on the whole text: ICU on the whole
+ * string, a per-character replacement of forbidden characters and a plain
+ * split on line terminators. Each document is fed in random chunks so that
+ * buffer boundaries fall everywhere, including inside surrogate pairs and
+ * combining sequences.
+ *
+ * <p>The corpus is the UTF-8 files given as arguments or, by default,
+ * documents stitched together from a built-in set of multilingual snippets.
+ */
+public class CharacterScanDifferential {
+
+    private static final String[] SNIPPETS = {
+            "<p class=\"intro\">Plain ASCII markup and text.</p>",
+            "caf\u00E9 na\u00EFve \u00C5ngstr\u00F6m", "cafe\u0301 nai\u0308ve",
+            "A\u030A", "\u1F08\u03B8\u1FC6\u03BD\u03B1\u03B9",
+            "Ti\u1EBFng Vi\u1EC7t", "Tie\u0302\u0301ng Vie\u0323\u0302t",
+            "\u05E9\u05C1\u05B8\u05DC\u05D5\u05B9\u05DD",
+            "\u0645\u064E\u0631\u0652\u062D\u064E\u0628\u064B\u0627",
+            "\u0928\u092E\u0938\u094D\u0924\u0947",
+            "\u0938\u094D\u0924\u0947\u0928\u093C", "\u0E2A\u0E27\u0E31\u0E2A\u0E14\u0E35",
+            "\u6F22\u5B57\u304B\u306A\u30AB\u30CA", "\uD55C\uAD6D\uC5B4",
+            "\u1112\u1161\u11AB", "\uD83D\uDE00 \uD835\uDC00",
+            "\uD834\uDD5E\uD834\uDD65", "\u0301 leading mark", "\u212B \u2126",
+            "\u0001\u0008\u000B\u000C\u007F\u0085\u009F\uFEFF\uFDD0\uFDEF\uFFFE\uFFFF",
+            "\t", "\r\n", "\r", "\n", "\n\r", "\r\r\n", " " };
+
+    private static final int CHUNKINGS = 20;
+
+    private final Random random = new Random(42);
+
+    private int failures = 0;
+
+    private int cases = 0;
+
+    public static void main(String[] args) throws SAXException, IOException {
+        List<String> corpus = new ArrayList<>();
+        if (args.length > 0) {
+            for (String arg : args) {
+                corpus.add(new String(Files.readAllBytes(Paths.get(arg)),
+                        StandardCharsets.UTF_8));
+            }
+        } else {
+            Random random = new Random(17);
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder sb = new StringBuilder();
+                int snippets = random.nextInt(40);
+                for (int j = 0; j < snippets; j++) {
+                    sb.append(SNIPPETS[random.nextInt(SNIPPETS.length)]);
+                }
+                corpus.add(sb.toString());
+            }
+        }
+        CharacterScanDifferential differential = new CharacterScanDifferential();
+        for (String text : corpus) {
+            differential.check(text);
+        }
+        System.out.println(String.format("%d cases, %d failures",
+                differential.cases, differential.failures));
+        if (differential.failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void check(String text) throws SAXException {
+        char[] chars = text.toCharArray();
+        String expectedNormalization = expectedNormalization(text);
+        String expectedFiltered = expectedFiltered(chars);
+        String expectedLines = expectedLines(text);
+        for (int i = 0; i < CHUNKINGS; i++) {
+            int[] bounds = chunk(chars.length, i == 0 ? chars.length : 1 + random.nextInt(16));
+            compare("normalization", text,
+                    expectedNormalization, normalization(chars, bounds));
+            compare("forbidden characters", text, expectedFiltered,
+                    filtered(chars, bounds));
+            compare("source lines", text, expectedLines,
+                    lines(chars, bounds));
+        }
+    }
+
+    private void compare(String what, String text, String expected,
+            String actual) {
+        cases++;
+        if (!expected.equals(actual)) {
+            failures++;
+            System.out.println(String.format(
+                    "%s differs for %s: expected %s, got %s", what,
+                    escape(text), escape(expected), escape(actual)));
+        }
+    }
+
+    /**
+     * Returns chunk boundaries, including 0 and <code>length</code>, with
+     * chunks no longer than <code>max</code>.
+     */
+    private int[] chunk(int length, int max) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int pos = 0;
+        while (pos < length) {
+            pos = Math.min(length, pos + 1 + random.nextInt(max));
+            bounds.add(pos);
+        }
+        int[] rv = new int[bounds.size()];
+        for (int i = 0; i < rv.length; i++) {
+            rv[i] = bounds.get(i);
+        }
+        return rv;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String expectedNormalization(String text)
+            throws SAXException {
+        StringBuilder sb = new StringBuilder();
+        if (NormalizationChecker.startsWithComposingChar(text)) {
+            sb.append("Text run starts with a composing character.\n");
+        }
+        if (!Normalizer.isNormalized(text, Normalizer.NFC, 0)) {
+            sb.append("Text run is not in Unicode Normalization Form C.\n");
+        }
+        return sb.toString();
+    }
+
+    private static String normalization(char[] chars, int[] bounds)
+            throws SAXException {
+        final StringBuilder sb = new StringBuilder();
+        NormalizationChecker checker = new NormalizationChecker();
+        checker.setErrorHandler(new ErrorHandler() {
+
+            @Override
+            public void warning(SAXParseException exception)
+                    throws SAXException {
+                sb.append(exception.getMessage()).append('\n');
+            }
+
+            @Override
+            public void error(SAXParseException exception)
+                    throws SAXException {
+                sb.append(exception.getMessage()).append('\n');
+            }
+
+            @Override
+            public void fatalError(SAXParseException exception)
+                    throws SAXException {
+                sb.append(exception.getMessage()).append('\n');
+            }
+        });
+        for (int i = 1; i < bounds.length; i++) {
+            checker.characters(chars, bounds[i - 1], bounds[i] - bounds[i - 1]);
+        }
+        checker.flush();
+        return sb.toString();
+    }
+
+    private static String expectedFiltered(char[] chars) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : chars) {
+            if (!((c >= ' ' && c <= '\uFFFD') || c == '\t' || c == '\n' || c == '\r') || c == '\uFEFF' || (c >= '\u007F' && c <= '\u009F') || (c >= '\uFDD0' && c <= '\uFDDF')) {
+                sb.append('\uFFFD');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String filtered(char[] chars, int[] bounds)
+            throws SAXException {
+        final StringBuilder sb = new StringBuilder();
+        ForbiddenCharacterFilter filter = new ForbiddenCharacterFilter(
+                new DefaultHandler() {
+
+                    @Override
+                    public void characters(char[] ch, int start, int length) {
+                        sb.append(ch, start, length);
+                    }
+                });
+        for (int i = 1; i < bounds.length; i++) {
+            filter.characters(chars, bounds[i - 1], bounds[i] - bounds[i - 1]);
+        }
+        return sb.toString();
+    }
+
+    private static String expectedLines(String text) {
+        String[] lines = text.split("\r\n|\r|\n", -1);
+        int count = lines.length;
+        if (lines[count - 1].isEmpty()) {
+            count--;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append(lines[i]);
+        }
+        return sb.toString();
+    }
+
+    private static String lines(char[] chars, int[] bounds)
+            throws SAXException {
+        SourceCode sourceCode = new SourceCode();
+        sourceCode.initialize(new InputSource());
+        sourceCode.start();
+        for (int i = 1; i < bounds.length; i++) {
+            sourceCode.characters(chars, bounds[i - 1], bounds[i] - bounds[i - 1]);
+        }
+        sourceCode.end();
+        LineCollector collector = new LineCollector();
+        sourceCode.emitSource(collector);
+        return collector.sb.toString();
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= ' ' && c < '\u007F') {
+                sb.append(c);
+            } else {
+                sb.append(String.format("\\u%04X", (int) c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class LineCollector implements SourceHandler {
+
+        final StringBuilder sb = new StringBuilder();
+
+        @Override
+        public void startSource(String type, String encoding)
+                throws SAXException {
+        }
+
+        @Override
+        public void skippedLines(int oneBasedFirst, int oneBasedLast)
+                throws SAXException {
+        }
+
+        @Override
+        public void setLineErrors(SortedSet<Integer> oneBasedLineErrors)
+                throws SAXException {
+        }
+
+        @Override
+        public void endSource() throws SAXException {
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+                throws SAXException {
+            sb.append(ch, start, length);
+        }
+
+        @Override
+        public void newLine() throws SAXException {
+            sb.append('\n');
+        }
+
+        @Override
+        public void startRange(int oneBasedLine, int oneBasedColumn)
+                throws SAXException {
+        }
+
+        @Override
+        public void endRange() throws SAXException {
+        }
+
+        @Override
+        public void startCharHilite(int oneBasedLine, int oneBasedColumn)
+                throws SAXException {
+        }
+
+        @Override
+        public void endCharHilite() throws SAXException {
+        }
+    }
+}
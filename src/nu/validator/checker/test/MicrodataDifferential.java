@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.checker.test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import nu.validator.checker.AttributeUtil;
+import nu.validator.checker.Checker;
+import nu.validator.checker.IdIndex;
+import nu.validator.checker.LocatorImpl;
+import nu.validator.checker.MicrodataChecker;
+import nu.validator.xml.IdIndexingContentHandler;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Checks <code>MicrodataChecker</code>, which walks the item graph on node
+ * arrays and resolves <code>itemref</code> through the ID index, against the
+ * earlier object-tree implementation kept here as
+ * <code>ReferenceMicrodataChecker</code>. Both get the same random documents,
+ * rich in nested items, shared and missing IDs, <code>itemref</code> cycles,
+ * redundant references, templates and foreign elements, and must report the
+ * same diagnostics at the same positions in the same order.
+ *
+ * <p>Usage: <code>MicrodataDifferential [documents] [seed]</code>, by
+ * default 20000 documents.
+ */
+public class MicrodataDifferential {
+
+    private static final String XHTML = "http://www.w3.org/1999/xhtml";
+
+    private static final String SVG = "http://www.w3.org/2000/svg";
+
+    private static final String[] NAMES = { "div", "span", "p", "a",
+            "template", "meta", "link" };
+
+    private static final String[] IDS = { "a", "b", "c", "d", "e", "f", "" };
+
+    private static final String[] PROPS = { "name", "url", "name url",
+            "author", "" };
+
+    private final Random random;
+
+    private final MutableLocator locator = new MutableLocator();
+
+    private int failures = 0;
+
+    private int cases = 0;
+
+    private int diagnostics = 0;
+
+    private MicrodataDifferential(long seed) {
+        random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws SAXException {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        MicrodataDifferential differential = new MicrodataDifferential(seed);
+        for (int i = 0; i < documents; i++) {
+            differential.check(differential.document());
+        }
+        System.out.println(String.format(
+                "%d cases, %d diagnostics, %d failures", differential.cases,
+                differential.diagnostics, differential.failures));
+        if (differential.failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A document as a list of events: a start has attributes, an end has
+     * <code>null</code>.
+     */
+    private List<Event> document() {
+        List<Event> events = new ArrayList<>();
+        int elements = 1 + random.nextInt(random.nextBoolean() ? 8 : 60);
+        int depth = 0;
+        for (int i = 0; i < elements; i++) {
+            while (depth > 0 && random.nextInt(3) == 0) {
+                events.add(events.get(openStart(events)).end());
+                depth--;
+            }
+            boolean foreign = random.nextInt(12) == 0;
+            String name = foreign ? "g" : NAMES[random.nextInt(NAMES.length)];
+            events.add(new Event(foreign ? SVG : XHTML, name, attributes(),
+                    random.nextInt(200)));
+            depth++;
+        }
+        while (depth > 0) {
+            events.add(events.get(openStart(events)).end());
+            depth--;
+        }
+        return events;
+    }
+
+    /**
+     * Returns the index of the start of the innermost open element.
+     */
+    private static int openStart(List<Event> events) {
+        int ends = 0;
+        for (int i = events.size() - 1; i >= 0; i--) {
+            if (events.get(i).atts == null) {
+                ends++;
+            } else if (ends == 0) {
+                return i;
+            } else {
+                ends--;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private AttributesImpl attributes() {
+        AttributesImpl atts = new AttributesImpl();
+        if (random.nextInt(10) < 4) {
+            add(atts, "id", IDS[random.nextInt(IDS.length)]);
+        }
+        if (random.nextInt(10) < 4) {
+            add(atts, "itemprop", PROPS[random.nextInt(PROPS.length)]);
+        }
+        if (random.nextInt(10) < 4) {
+            add(atts, "itemscope", "");
+        }
+        if (random.nextInt(10) < 3) {
+            StringBuilder sb = new StringBuilder();
+            int refs = random.nextInt(4);
+            for (int i = 0; i < refs; i++) {
+                sb.append(' ').append(random.nextInt(8) == 0 ? "missing"
+                        : IDS[random.nextInt(IDS.length - 1)]);
+            }
+            add(atts, "itemref", sb.toString());
+        }
+        if (random.nextInt(20) == 0) {
+            atts.addAttribute("http://www.w3.org/XML/1998/namespace", "id",
+                    "xml:id", "ID", IDS[random.nextInt(IDS.length - 1)]);
+        }
+        return atts;
+    }
+
+    private static void add(AttributesImpl atts, String name, String value) {
+        atts.addAttribute("", name, name, "CDATA", value);
+    }
+
+    private void check(List<Event> events) throws SAXException {
+        cases++;
+        Collector expected = new Collector();
+        ReferenceMicrodataChecker reference = new ReferenceMicrodataChecker();
+        reference.setErrorHandler(expected);
+        replay(events, reference);
+
+        Collector actual = new Collector();
+        MicrodataChecker checker = new MicrodataChecker();
+        IdIndex idIndex = new IdIndex();
+        checker.setIdIndex(idIndex);
+        checker.setErrorHandler(actual);
+        replay(events, new IdIndexingContentHandler(checker, idIndex));
+
+        diagnostics += expected.messages.size();
+        if (!expected.messages.equals(actual.messages)) {
+            failures++;
+            System.out.println("Document: " + events);
+            System.out.println("  expected " + expected.messages);
+            System.out.println("  got      " + actual.messages);
+        }
+    }
+
+    private void replay(List<Event> events, ContentHandler handler)
+            throws SAXException {
+        locator.line = 0;
+        locator.column = 0;
+        handler.setDocumentLocator(locator);
+        handler.startDocument();
+        for (Event event : events) {
+            locator.line++;
+            locator.column = event.column;
+            if (event.atts != null) {
+                handler.startElement(event.uri, event.localName,
+                        event.localName, event.atts);
+            } else {
+                handler.endElement(event.uri, event.localName,
+                        event.localName);
+            }
+        }
+        handler.endDocument();
+    }
+
+    private static final class Event {
+
+        final String uri;
+
+        final String localName;
+
+        final Attributes atts;
+
+        final int column;
+
+        Event(String uri, String localName, Attributes atts, int column) {
+            this.uri = uri;
+            this.localName = localName.intern();
+            this.atts = atts;
+            this.column = column;
+        }
+
+        Event end() {
+            return new Event(uri, localName, null, column);
+        }
+
+        @Override
+        public String toString() {
+            if (atts == null) {
+                return "</" + localName + ">";
+            }
+            StringBuilder sb = new StringBuilder("<").append(localName);
+            for (int i = 0; i < atts.getLength(); i++) {
+                sb.append(' ').append(atts.getQName(i)).append("=\"").append(
+                        atts.getValue(i)).append('"');
+            }
+            return sb.append('>').toString();
+        }
+    }
+
+    private static final class Collector implements ErrorHandler {
+
+        final List<String> messages = new ArrayList<>();
+
+        private void add(String kind, SAXParseException e) {
+            messages.add(String.format("%s %d:%d %s", kind,
+                    e.getLineNumber(), e.getColumnNumber(), e.getMessage()));
+        }
+
+        @Override
+        public void warning(SAXParseException exception) throws SAXException {
+            add("warning", exception);
+        }
+
+        @Override
+        public void error(SAXParseException exception) throws SAXException {
+            add("error", exception);
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception)
+                throws SAXException {
+            add("fatal", exception);
+        }
+    }
+
+    private static final class MutableLocator implements Locator {
+
+        int line;
+
+        int column;
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return "http://example.org/page.html";
+        }
+
+        @Override
+        public int getLineNumber() {
+            return line;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return column;
+        }
+    }
+
+    /**
+     * <code>MicrodataChecker</code> as it was before it moved to node arrays:
+     * an object tree of the relevant elements, an ID map of its own and a
+     * fresh deque and set for every item checked.
+     */
+    private static final class ReferenceMicrodataChecker extends Checker {
+
+        private final class Element {
+
+            final Locator locator;
+
+            final String[] itemProp;
+
+            final String[] itemRef;
+
+            final boolean itemScope;
+
+            final List<Element> children = new LinkedList<>();
+
+            private final int order = counter++;
+
+            Element(Locator locator, String[] itemProp, String[] itemRef,
+                    boolean itemScope) {
+                this.locator = locator;
+                this.itemProp = itemProp;
+                this.itemRef = itemRef;
+                this.itemScope = itemScope;
+            }
+
+            @Override
+            public boolean equals(Object that) {
+                return this == that;
+            }
+
+            @Override
+            public int hashCode() {
+                return order;
+            }
+        }
+
+        private static final class Builder {
+
+            final Element element;
+
+            final Builder parent;
+
+            final int depth;
+
+            Builder(Element element, Builder parent, int depth) {
+                this.element = element;
+                this.parent = parent;
+                this.depth = depth;
+            }
+        }
+
+        private int depth;
+
+        private Builder builder;
+
+        private int counter;
+
+        private List<Element> items;
+
+        private Set<Element> properties;
+
+        private Map<String, Element> idmap;
+
+        private Locator locator;
+
+        @Override
+        public void reset() {
+            depth = 0;
+            builder = null;
+            counter = 0;
+            items = new LinkedList<>();
+            properties = new LinkedHashSet<>();
+            idmap = new HashMap<>();
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes atts) throws SAXException {
+            depth++;
+            if (XHTML != uri) {
+                return;
+            }
+            String id = null;
+            String[] itemProp = null;
+            String[] itemRef = null;
+            boolean itemScope = false;
+            int len = atts.getLength();
+            for (int i = 0; i < len; i++) {
+                if (atts.getURI(i).isEmpty()) {
+                    String attLocal = atts.getLocalName(i);
+                    String attValue = atts.getValue(i);
+                    if ("id" == attLocal) {
+                        id = attValue;
+                    } else if ("itemprop" == attLocal) {
+                        itemProp = AttributeUtil.split(attValue);
+                    } else if ("itemref" == attLocal) {
+                        itemRef = AttributeUtil.split(attValue);
+                    } else if ("itemscope" == attLocal) {
+                        itemScope = true;
+                    }
+                }
+            }
+            if (id != null || itemProp != null || itemScope) {
+                Element elm = new Element(new LocatorImpl(locator), itemProp,
+                        itemRef, itemScope);
+                if (itemProp != null) {
+                    properties.add(elm);
+                } else if (itemScope) {
+                    items.add(elm);
+                }
+                if (!idmap.containsKey(id)) {
+                    idmap.put(id, elm);
+                }
+                if (builder != null) {
+                    builder.element.children.add(elm);
+                }
+                builder = new Builder(elm, builder, depth);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            if (builder != null && builder.depth == depth) {
+                builder = builder.parent;
+            }
+            depth--;
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            for (Element item : items) {
+                checkItem(item, new ArrayDeque<Element>());
+            }
+            for (Element prop : properties) {
+                err("The \u201Citemprop\u201D attribute was specified,"
+                        + " but the element is not a property of any item.",
+                        prop.locator);
+            }
+        }
+
+        private void checkItem(Element root, Deque<Element> parents)
+                throws SAXException {
+            Deque<Element> pending = new ArrayDeque<>();
+            Set<Element> memory = new HashSet<>();
+            memory.add(root);
+            for (Element child : root.children) {
+                pending.push(child);
+            }
+            if (root.itemRef != null) {
+                for (String id : root.itemRef) {
+                    Element refElm = idmap.get(id);
+                    if (refElm != null) {
+                        pending.push(refElm);
+                    } else {
+                        err("The \u201Citemref\u201D attribute referenced \u201C"
+                                + id
+                                + "\u201D, but there is no element with an"
+                                + " \u201Cid\u201D attribute with that value.",
+                                root.locator);
+                    }
+                }
+            }
+            boolean memoryError = false;
+            while (pending.size() > 0) {
+                Element current = pending.pop();
+                if (memory.contains(current)) {
+                    memoryError = true;
+                    continue;
+                }
+                memory.add(current);
+                if (!current.itemScope) {
+                    for (Element child : current.children) {
+                        pending.push(child);
+                    }
+                }
+                if (current.itemProp != null) {
+                    properties.remove(current);
+                    if (current.itemScope) {
+                        if (!parents.contains(current)) {
+                            parents.push(root);
+                            checkItem(current, parents);
+                            parents.pop();
+                        } else {
+                            err("The \u201Citemref\u201D attribute created a"
+                                    + " circular reference with another item.",
+                                    current.locator);
+                        }
+                    }
+                }
+            }
+            if (memoryError) {
+                err("The \u201Citemref\u201D attribute contained redundant references.",
+                        root.locator);
+            }
+        }
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+        }
+    }
+}
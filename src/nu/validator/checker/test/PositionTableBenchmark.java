@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.checker.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nu.validator.checker.Checker;
+import nu.validator.checker.IdIndex;
+import nu.validator.checker.LocatorImpl;
+import nu.validator.checker.MicrodataChecker;
+import nu.validator.checker.PositionTable;
+import nu.validator.checker.UsemapChecker;
+import nu.validator.checker.schematronequiv.Assertions;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Feeds the events of a synthetic page of the given size in megabytes
+ * (default 10) to the checkers that remember positions for later
+ * diagnostics, and reports the heap they retain just before the end of the
+ * document. For comparison, it then reports the heap taken by the same
+ * number of positions as <code>LocatorImpl</code> copies and as a
+ * <code>PositionTable</code>.
+ *
+ * <p>Each row of the page is roughly
+ * <code>&lt;p>&lt;img usemap="#m1" src="a.png" alt="">&lt;label for="c1">Name&lt;/label>&lt;input
+ * id="c1" aria-describedby="d1">&lt;span itemprop="name">Name&lt;/span>&lt;/p></code>,
+ * which leaves four positions behind.
+ */
+public class PositionTableBenchmark {
+
+    private static final String XHTML = "http://www.w3.org/1999/xhtml";
+
+    private static final int BYTES_PER_ROW = 128;
+
+    private static final int POSITIONS_PER_ROW = 4;
+
+    private final int rows;
+
+    private final MutableLocator locator = new MutableLocator();
+
+    /**
+     * @param megabytes size of the page
+     */
+    public PositionTableBenchmark(int megabytes) {
+        rows = (int) ((megabytes * 1024L * 1024L) / BYTES_PER_ROW);
+    }
+
+    public static void main(String[] args) throws SAXException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        PositionTableBenchmark benchmark = new PositionTableBenchmark(
+                megabytes);
+        benchmark.runCheckers();
+        benchmark.runRepresentations();
+    }
+
+    private void runCheckers() throws SAXException {
+        IdIndex idIndex = new IdIndex();
+        Checker[] checkers = { new UsemapChecker(), new MicrodataChecker(),
+                new Assertions() };
+        for (Checker checker : checkers) {
+            checker.setIdIndex(idIndex);
+            checker.setDocumentLocator(locator);
+        }
+        System.gc();
+        long before = usedHeap();
+        long start = System.nanoTime();
+        idIndex.reset();
+        for (Checker checker : checkers) {
+            checker.startDocument();
+        }
+        start(idIndex, checkers, "html", new AttributesImpl());
+        start(idIndex, checkers, "body", new AttributesImpl());
+        for (int i = 0; i < rows; i++) {
+            locator.line = i + 1;
+            locator.column = 4;
+            start(idIndex, checkers, "p", new AttributesImpl());
+            locator.column = 60;
+            AttributesImpl img = new AttributesImpl();
+            img.addAttribute("", "usemap", "usemap", "CDATA", "#m" + i);
+            img.addAttribute("", "src", "src", "CDATA", "a.png");
+            img.addAttribute("", "alt", "alt", "CDATA", "");
+            start(idIndex, checkers, "img", img);
+            end(idIndex, checkers, "img");
+            locator.column = 80;
+            AttributesImpl label = new AttributesImpl();
+            label.addAttribute("", "for", "for", "CDATA", "c" + i);
+            start(idIndex, checkers, "label", label);
+            end(idIndex, checkers, "label");
+            locator.column = 110;
+            AttributesImpl input = new AttributesImpl();
+            input.addAttribute("", "id", "id", "ID", "c" + i);
+            input.addAttribute("", "aria-describedby", "aria-describedby",
+                    "CDATA", "d" + i);
+            start(idIndex, checkers, "input", input);
+            end(idIndex, checkers, "input");
+            locator.column = 125;
+            AttributesImpl span = new AttributesImpl();
+            span.addAttribute("", "itemprop", "itemprop", "CDATA", "name");
+            start(idIndex, checkers, "span", span);
+            end(idIndex, checkers, "span");
+            end(idIndex, checkers, "p");
+        }
+        long fed = System.nanoTime() - start;
+        System.gc();
+        long retained = usedHeap() - before;
+        System.out.println(String.format(
+                "checkers: %d rows fed in %d ms, retained %d KB", rows,
+                fed / 1000000, retained / 1024));
+        end(idIndex, checkers, "body");
+        end(idIndex, checkers, "html");
+        for (Checker checker : checkers) {
+            checker.endDocument();
+        }
+    }
+
+    private void runRepresentations() {
+        int count = rows * POSITIONS_PER_ROW;
+        System.gc();
+        long before = usedHeap();
+        List<Locator> copies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            locator.line = i / POSITIONS_PER_ROW + 1;
+            locator.column = i % POSITIONS_PER_ROW * 20 + 1;
+            copies.add(new LocatorImpl(locator));
+        }
+        System.gc();
+        long retainedCopies = usedHeap() - before;
+        System.out.println(String.format(
+                "LocatorImpl copies: %d positions, retained %d KB",
+                copies.size(), retainedCopies / 1024));
+        copies = null;
+        System.gc();
+        before = usedHeap();
+        PositionTable table = new PositionTable();
+        for (int i = 0; i < count; i++) {
+            locator.line = i / POSITIONS_PER_ROW + 1;
+            locator.column = i % POSITIONS_PER_ROW * 20 + 1;
+            table.add(locator);
+        }
+        System.gc();
+        long retainedTable = usedHeap() - before;
+        System.out.println(String.format(
+                "PositionTable: %d positions, retained %d KB",
+                table.size(), retainedTable / 1024));
+    }
+
+    private static void start(IdIndex idIndex, Checker[] checkers,
+            String localName, AttributesImpl atts) throws SAXException {
+        idIndex.startElement(XHTML, localName, atts);
+        for (Checker checker : checkers) {
+            checker.startElement(XHTML, localName, localName, atts);
+        }
+    }
+
+    private static void end(IdIndex idIndex, Checker[] checkers,
+            String localName) throws SAXException {
+        idIndex.endElement(XHTML, localName);
+        for (Checker checker : checkers) {
+            checker.endElement(XHTML, localName, localName);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final class MutableLocator implements Locator {
+
+        int line;
+
+        int column;
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return "http://example.org/page.html";
+        }
+
+        @Override
+        public int getLineNumber() {
+            return line;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return column;
+        }
+    }
+}
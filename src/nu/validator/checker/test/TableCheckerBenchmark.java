@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.checker.test;
+
+import nu.validator.checker.table.TableChecker;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Feeds a synthetic data table with the given number of rows (default
+ * 50000) through <code>TableChecker</code> and reports the time taken and
+ * the number of diagnostics. Every row has a row header and eight data cells
+ * referring to it and to a column header; every fourth row starts a cell
+ * spanning three rows so that cells from earlier rows stay in effect.
+ */
+public class TableCheckerBenchmark {
+
+    private static final String XHTML = "http://www.w3.org/1999/xhtml";
+
+    private static final int COLUMNS = 8;
+
+    private static final AttributesImpl EMPTY = new AttributesImpl();
+
+    private final int rows;
+
+    private final MutableLocator locator = new MutableLocator();
+
+    /**
+     * @param rows number of body rows
+     */
+    public TableCheckerBenchmark(int rows) {
+        this.rows = rows;
+    }
+
+    public static void main(String[] args) throws SAXException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        TableCheckerBenchmark benchmark = new TableCheckerBenchmark(rows);
+        for (int i = 0; i < 5; i++) {
+            benchmark.run();
+        }
+    }
+
+    private void run() throws SAXException {
+        TableChecker checker = new TableChecker();
+        CountingErrorHandler errorHandler = new CountingErrorHandler();
+        checker.setErrorHandler(errorHandler);
+        checker.setDocumentLocator(locator);
+        long start = System.nanoTime();
+        checker.startDocument();
+        locator.line = 1;
+        start(checker, "table", EMPTY);
+        start(checker, "thead", EMPTY);
+        start(checker, "tr", EMPTY);
+        start(checker, "td", EMPTY);
+        end(checker, "td");
+        for (int column = 0; column < COLUMNS; column++) {
+            AttributesImpl th = new AttributesImpl();
+            th.addAttribute("", "id", "id", "ID", "c" + column);
+            start(checker, "th", th);
+            end(checker, "th");
+        }
+        end(checker, "tr");
+        end(checker, "thead");
+        start(checker, "tbody", EMPTY);
+        for (int row = 0; row < rows; row++) {
+            locator.line = row + 2;
+            start(checker, "tr", EMPTY);
+            AttributesImpl th = new AttributesImpl();
+            th.addAttribute("", "id", "id", "ID", "r" + row);
+            start(checker, "th", th);
+            end(checker, "th");
+            // A spanning cell covers the last column of the next two rows.
+            int columns = row % 4 == 1 || row % 4 == 2 ? COLUMNS - 1
+                    : COLUMNS;
+            for (int column = 0; column < columns; column++) {
+                AttributesImpl td = new AttributesImpl();
+                td.addAttribute("", "headers", "headers", "IDREFS",
+                        "r" + row + " c" + column);
+                if (row % 4 == 0 && column == COLUMNS - 1) {
+                    td.addAttribute("", "rowspan", "rowspan", "CDATA", "3");
+                }
+                start(checker, "td", td);
+                end(checker, "td");
+            }
+            end(checker, "tr");
+        }
+        end(checker, "tbody");
+        end(checker, "table");
+        checker.endDocument();
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format(
+                "%d rows checked in %d ms, %d diagnostics", rows,
+                elapsed / 1000000, errorHandler.count));
+    }
+
+    private static void start(TableChecker checker, String localName,
+            AttributesImpl atts) throws SAXException {
+        checker.startElement(XHTML, localName, localName, atts);
+    }
+
+    private static void end(TableChecker checker, String localName)
+            throws SAXException {
+        checker.endElement(XHTML, localName, localName);
+    }
+
+    private static final class MutableLocator implements Locator {
+
+        int line;
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return "http://example.org/table.html";
+        }
+
+        @Override
+        public int getLineNumber() {
+            return line;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return 1;
+        }
+    }
+
+    private static final class CountingErrorHandler implements ErrorHandler {
+
+        long count = 0;
+
+        @Override
+        public void warning(SAXParseException exception) throws SAXException {
+            count++;
+        }
+
+        @Override
+        public void error(SAXParseException exception) throws SAXException {
+            count++;
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception)
+                throws SAXException {
+            count++;
+        }
+    }
+}
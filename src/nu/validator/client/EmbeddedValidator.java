@@ -59,6 +59,7 @@ public class EmbeddedValidator {
         TEXT, XML, JSON, GNU
     }
 
+    private int aggregate = 0;
     private boolean asciiQuotes = false;
     private boolean detectLanguages = false;
     private boolean forceHTML = false;
@@ -79,7 +80,7 @@ public class EmbeddedValidator {
      * @throws SAXException
      */
     public String validate(Path path) throws IOException, SAXException {
-        try (OneOffValidator validator = new OneOffValidator(asciiQuotes, detectLanguages, forceHTML, lineOffset, loadEntities, noStream, outputFormat, schemaUrl)) {
+        try (OneOffValidator validator = new OneOffValidator(aggregate, asciiQuotes, detectLanguages, forceHTML, lineOffset, loadEntities, noStream, outputFormat, schemaUrl)) {
             return validator.validate(path);
         }
     }
@@ -95,7 +96,7 @@ public class EmbeddedValidator {
      * @throws SAXException
      */
     public String validate(InputStream in) throws IOException, SAXException {
-        try (OneOffValidator validator = new OneOffValidator(asciiQuotes, detectLanguages, forceHTML, lineOffset, loadEntities, noStream, outputFormat, schemaUrl)) {
+        try (OneOffValidator validator = new OneOffValidator(aggregate, asciiQuotes, detectLanguages, forceHTML, lineOffset, loadEntities, noStream, outputFormat, schemaUrl)) {
             return validator.validate(in);
         }
     }
@@ -183,6 +184,25 @@ public class EmbeddedValidator {
         this.asciiQuotes = asciiQuotes;
     }
 
+    public int getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * @param aggregate
+     *            number of occurrences of the same message to report in full;
+     *            further occurrences are reported as a count and a location
+     *            list. {@code 0} reports every occurrence in full
+     * @throws IllegalArgumentException
+     *             if argument is negative
+     */
+    public void setAggregate(int aggregate) {
+        if (aggregate < 0) {
+            throw new IllegalArgumentException("aggregate can not be negative");
+        }
+        this.aggregate = aggregate;
+    }
+
     public int getLineOffset() {
         return lineOffset;
     }
@@ -231,10 +251,13 @@ public class EmbeddedValidator {
         private final MessageEmitterAdapter errorHandler;
         private final boolean forceHtml;
 
-        private OneOffValidator(boolean asciiQuotes, boolean detectLanguages, boolean forceHtml, int lineOffset, boolean loadEntities,
+        private OneOffValidator(int aggregate, boolean asciiQuotes, boolean detectLanguages, boolean forceHtml, int lineOffset, boolean loadEntities,
                 boolean noStream, OutputFormat outputFormat, String schemaUrl) throws SAXException {
             this.validator = new SimpleDocumentValidator(true, false, !detectLanguages);
+            // the full source is emitted after the check, into memory anyway
+            this.validator.getSourceCode().setSpillThreshold(Long.MAX_VALUE);
             this.errorHandler = newErrorHandler(lineOffset, asciiQuotes, outputFormat);
+            this.errorHandler.setAggregate(aggregate);
             this.forceHtml = forceHtml;
             try {
                 this.validator.setUpMainSchema(schemaUrl == null ? SCHEMA_URL : schemaUrl, new SystemErrErrorHandler());
@@ -22,32 +22,55 @@
 
 package nu.validator.client;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 import java.net.ConnectException;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Posts documents to a validator service and prints the responses in the
+ * order of the arguments. With <code>nu.validator.client.in-flight</code>
+ * set above 1, that many documents are uploaded at a time, each thread
+ * reusing a persistent connection.
+ */
 public class HttpClient {
 
+    private static final int BUFFER_SIZE = 4096;
+
     public static void main(String[] args) {
-        URLConnection connection = null;
-        InputStream input  = null;
         String host = System.getProperty("nu.validator.client.host",
                 "127.0.0.1");
         String port = System.getProperty("nu.validator.client.port", "8888");
-        String origin = "http://" + host + ":" + port;
+        final String origin = "http://" + host + ":" + port;
         String level = System.getProperty("nu.validator.client.level", null);
         String parser = System.getProperty("nu.validator.client.parser", null);
         String charset = System.getProperty("nu.validator.client.charset", null);
         String contentType = System.getProperty(
                 "nu.validator.client.content-type", null);
+        int inFlight = Math.max(1,
+                Integer.getInteger("nu.validator.client.in-flight", 1));
+        boolean gzip = "yes".equals(
+                System.getProperty("nu.validator.client.gzip", "no"));
+        if (System.getProperty("http.maxConnections") == null) {
+            // keep a connection alive for every request in flight
+            System.setProperty("http.maxConnections",
+                    Integer.toString(Math.max(5, inFlight)));
+        }
         boolean hasErrors = false;
         String url = origin + "/?laxtype="
                 + System.getProperty("nu.validator.client.laxtype", "yes");
@@ -65,52 +88,64 @@ public class HttpClient {
         if (charset != null) {
             url += "&charset=" + charset;
         }
+        ExecutorService executor = Executors.newFixedThreadPool(inFlight);
         try {
-            String filepath = null;
-            String filename = null;
             int filecount = (args.length == 0 ? 1 : args.length);
+            List<Future<String>> responses = new ArrayList<>(filecount);
             for (int i = 0; i < filecount; i++) {
+                final String filename;
+                final byte[] stdin;
                 if (args.length == 0 || "-".equals(args[i])) {
-                  System.err.println("Waiting for document content on standard input...");
-                    input = System.in;
+                    System.err.println("Waiting for document content on standard input...");
                     filename = "[stdin]";
+                    stdin = readFully(System.in);
                 } else {
                     filename = args[i];
-                    filepath = filename;
-                    input = new FileInputStream(filepath);
+                    stdin = null;
                 }
-                URL validator = new URL(url + "&doc=" + filename);
-                connection = validator.openConnection();
-                if (filename.endsWith(".xhtml")) {
-                    contentType = (contentType == null ? "application/xhtml+xml"
-                            : contentType);
+                final URL validator = new URL(url + "&doc=" + filename);
+                final String type;
+                if (contentType != null) {
+                    type = contentType;
+                } else if (filename.endsWith(".xhtml")) {
+                    type = "application/xhtml+xml";
                 } else {
-                    contentType = (contentType == null ? "text/html"
-                            : contentType);
+                    type = "text/html";
                 }
-                if ("application/xhtml+xml".equals(contentType)) {
-                    parser = (parser == null ? "xml" : parser);
-                }
-                connection.setRequestProperty("Content-Type", contentType);
-                connection.setDoOutput(true);
-                connection.setReadTimeout(10000);
-                byte buffer[] = new byte[4096];
-                int len = 4096;
-                try (OutputStream output = connection.getOutputStream()) {
-                    while ((len = input.read(buffer, 0, 4096)) != -1) {
-                        output.write(buffer, 0, len);
+                final boolean compress = gzip;
+                responses.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        byte[] document;
+                        if (stdin != null) {
+                            document = stdin;
+                        } else {
+                            try (InputStream input = new FileInputStream(
+                                    filename)) {
+                                document = readFully(input);
+                            }
+                        }
+                        return post(validator, type, document, compress);
                     }
-                }
-                input.close();
-                try (BufferedReader responseReader = new BufferedReader(new InputStreamReader(
-                        connection.getInputStream()))) {
-                    int c;
-                    while ((c = responseReader.read()) != -1) {
-                        System.out.print((char) c);
-                        hasErrors = true;
+                }));
+            }
+            for (Future<String> response : responses) {
+                String text;
+                try {
+                    text = response.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
                     }
+                    throw new RuntimeException(cause);
+                }
+                if (text.length() > 0) {
+                    System.out.print(text);
+                    hasErrors = true;
                 }
             }
+            System.out.flush();
             System.exit(hasErrors ? 1 : 0);
         } catch (MalformedURLException | ProtocolException e) {
             e.printStackTrace();
@@ -126,10 +161,66 @@ public class HttpClient {
                 e.printStackTrace();
                 System.exit(1);
             }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(1);
         } finally {
-            connection = null;
-            input = null;
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Uploads a document, optionally gzipped, and returns the response. The
+     * response is read to the end so that the connection can be reused.
+     * Retries once if the server has dropped a persistent connection.
+     */
+    private static String post(URL validator, String contentType,
+            byte[] document, boolean gzip) throws IOException {
+        byte[] body = document;
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+                    document.length / 4 + 64);
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed,
+                    BUFFER_SIZE)) {
+                out.write(document);
+            }
+            body = compressed.toByteArray();
+        }
+        try {
+            return send(validator, contentType, body, gzip);
+        } catch (ConnectException e) {
+            throw e;
+        } catch (SocketException e) {
+            return send(validator, contentType, body, gzip);
+        }
+    }
+
+    private static String send(URL validator, String contentType,
+            byte[] body, boolean gzip) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) validator.openConnection();
+        connection.setRequestProperty("Content-Type", contentType);
+        if (gzip) {
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        }
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setReadTimeout(10000);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body);
+        }
+        try (InputStream input = connection.getInputStream()) {
+            return new String(readFully(input));
+        }
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int len;
+        while ((len = input.read(buffer, 0, BUFFER_SIZE)) != -1) {
+            out.write(buffer, 0, len);
         }
+        return out.toByteArray();
     }
 
 }
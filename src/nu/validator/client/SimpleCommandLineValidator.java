@@ -40,6 +40,7 @@ import nu.validator.messages.TextMessageEmitter;
 import nu.validator.messages.XmlMessageEmitter;
 import nu.validator.servlet.imagereview.ImageCollector;
 import nu.validator.source.SourceCode;
+import nu.validator.validation.CheckerProfile;
 import nu.validator.validation.SimpleDocumentValidator;
 import nu.validator.validation.SimpleDocumentValidator.SchemaReadException;
 import nu.validator.xml.SystemErrErrorHandler;
@@ -86,6 +87,8 @@ public class SimpleCommandLineValidator {
 
     private static int lineOffset;
 
+    private static int aggregate;
+
     private static enum OutputFormat {
         HTML, XHTML, TEXT, XML, JSON, RELAXED, SOAP, UNICORN, GNU
     }
@@ -96,6 +99,8 @@ public class SimpleCommandLineValidator {
 
     private static boolean hasSchemaOption;
 
+    private static CheckerProfile checkers;
+
     public static void main(String[] args) throws SAXException, Exception {
         out = System.err;
         System.setProperty("nu.validator.datatype.warn", "true");
@@ -107,8 +112,10 @@ public class SimpleCommandLineValidator {
         noLangDetect = false;
         noStream = false;
         lineOffset = 0;
+        aggregate = 0;
         asciiQuotes = false;
         verbose = false;
+        checkers = CheckerProfile.ALL;
 
         filterPattern = null;
         String filterString = "";
@@ -136,6 +143,17 @@ public class SimpleCommandLineValidator {
                 } else if ("--errors-only".equals(args[i])) {
                     errorsOnly = true;
                     System.setProperty("nu.validator.datatype.warn", "false");
+                } else if ("--aggregate".equals(args[i])) {
+                    try {
+                        aggregate = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException e) {
+                        aggregate = -1;
+                    }
+                    if (aggregate < 0) {
+                        System.err.println("error: The \"--aggregate\" option"
+                                + " requires a non-negative number.");
+                        System.exit(1);
+                    }
                 } else if ("--exit-zero-always".equals(args[i])) {
                     exitZeroAlways = true;
                 } else if ("--asciiquotes".equals(args[i])) {
@@ -195,6 +213,13 @@ public class SimpleCommandLineValidator {
                     noLangDetect = true;
                 } else if ("--no-stream".equals(args[i])) {
                     noStream = true;
+                } else if ("--checkers".equals(args[i])) {
+                    try {
+                        checkers = CheckerProfile.parse(args[++i]);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("error: " + e.getMessage());
+                        System.exit(1);
+                    }
                 } else if ("--schema".equals(args[i])) {
                     hasSchemaOption = true;
                     schemaUrl = args[++i];
@@ -233,7 +258,8 @@ public class SimpleCommandLineValidator {
         }
         if (readFromStdIn) {
             InputSource is = new InputSource(System.in);
-            if (noLangDetect) {
+            if (noLangDetect
+                    || !checkers.isEnabled(CheckerProfile.LANGUAGE)) {
                 validator = new SimpleDocumentValidator(true, false, false);
             } else {
                 validator = new SimpleDocumentValidator();
@@ -242,7 +268,8 @@ public class SimpleCommandLineValidator {
             validator.checkHtmlInputSource(is);
             end();
         } else if (hasFileArgs) {
-            if (noLangDetect) {
+            if (noLangDetect
+                    || !checkers.isEnabled(CheckerProfile.LANGUAGE)) {
                 validator = new SimpleDocumentValidator(true, false, false);
             } else {
                 validator = new SimpleDocumentValidator(true, false, true);
@@ -276,6 +303,7 @@ public class SimpleCommandLineValidator {
             System.out.println("\n  java -Xss512k -jar ~/vnu.jar FILE.html");
             System.exit(1);
         }
+        validator.setCheckerProfile(checkers);
         validator.setUpValidatorAndParsers(errorHandler, noStream, loadEntities);
     }
 
@@ -384,7 +412,10 @@ public class SimpleCommandLineValidator {
         }
     }
 
-    private static void setErrorHandler() {
+    private static void setErrorHandler() throws SAXException {
+        if (errorHandler != null) {
+            errorHandler.emitAggregatedMessages();
+        }
         SourceCode sourceCode = validator.getSourceCode();
         ImageCollector imageCollector = new ImageCollector(sourceCode);
         boolean showSource = false;
@@ -410,15 +441,16 @@ public class SimpleCommandLineValidator {
             throw new RuntimeException("Bug. Should be unreachable.");
         }
         errorHandler.setErrorsOnly(errorsOnly);
+        errorHandler.setAggregate(aggregate);
     }
 
     private static void usage() {
         System.out.println("Usage:");
         System.out.println("");
-        System.out.println("    java -jar vnu.jar [--errors-only] [--exit-zero-always]");
+        System.out.println("    java -jar vnu.jar [--errors-only] [--exit-zero-always] [--aggregate N]");
         System.out.println("         [--asciiquotes] [--no-stream] [--format gnu|xml|json|text]");
         System.out.println("         [--filterfile FILENAME] [--filterpattern PATTERN]");
-        System.out.println("         [--html] [--skip-non-html] [--no-langdetect]");
+        System.out.println("         [--html] [--skip-non-html] [--no-langdetect] [--checkers PROFILE]");
         System.out.println("         [--help] [--verbose] [--version] FILES");
         System.out.println("");
         System.out.println("    java -cp vnu.jar nu.validator.servlet.Main 8888");
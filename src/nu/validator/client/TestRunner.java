@@ -30,13 +30,23 @@ import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import org.xml.sax.ErrorHandler;
@@ -83,8 +93,29 @@ public class TestRunner implements ErrorHandler {
 
     private static boolean verbose;
 
+    private static int jobs = 1;
+
+    private static int slowest = 0;
+
     private File baseDir = null;
 
+    /**
+     * The top-level test directory this runner has set up its validator
+     * for, counting from 1.
+     */
+    private int preparedPhase = 0;
+
+    /**
+     * The group of files this runner has set up its validator and parsers
+     * for, counting from 1.
+     */
+    private int preparedGroup = 0;
+
+    /**
+     * The number of groups planned so far.
+     */
+    private int plannedGroups = 0;
+
     private Map<String, String> expectedMessages;
 
     private Map<String, String> reportedMessages;
@@ -103,6 +134,16 @@ public class TestRunner implements ErrorHandler {
         }
     }
 
+    /**
+     * A worker with its own validator that checks files on behalf of
+     * <code>parent</code>. Its output goes to the task being run.
+     */
+    private TestRunner(TestRunner parent) {
+        validator = new SimpleDocumentValidator(true, false, false);
+        baseDir = parent.baseDir;
+        expectedMessages = parent.expectedMessages;
+    }
+
     private URL getFileURL(File file) throws MalformedURLException {
         return file.toURI().toURL();
     }
@@ -164,18 +205,6 @@ public class TestRunner implements ErrorHandler {
         return file.isFile() && (isHtml(file) || isXhtml(file));
     }
 
-    private void recurseDirectory(File directory) throws SAXException,
-            IOException {
-        File[] files = directory.listFiles();
-        for (File file : files) {
-            if (file.isDirectory()) {
-                recurseDirectory(file);
-            } else {
-                checkHtmlFile(file);
-            }
-        }
-    }
-
     private boolean isIgnorable(File file) throws IOException {
         String testPathname = this.getRelativePathname(file, baseDir);
         if (ignoreList != null) {
@@ -194,24 +223,19 @@ public class TestRunner implements ErrorHandler {
         return false;
     }
 
-    private void checkFiles(List<File> files) throws IOException {
-        for (File file : files) {
-            if (isIgnorable(file)) {
-                continue;
-            }
-            reset();
-            emitMessages = true;
-            try {
-                if (file.isDirectory()) {
-                    recurseDirectory(file);
-                } else {
-                    checkHtmlFile(file);
-                }
-            } catch (IOException | SAXException e) {
-            }
-            if (inError) {
-                failed = true;
-            }
+    private void checkValidFile(File file) throws IOException {
+        expectingError = false;
+        if (isIgnorable(file)) {
+            return;
+        }
+        reset();
+        emitMessages = true;
+        try {
+            checkHtmlFile(file);
+        } catch (IOException | SAXException e) {
+        }
+        if (inError) {
+            failed = true;
         }
     }
 
@@ -235,147 +259,135 @@ public class TestRunner implements ErrorHandler {
         return messageReported.equals(messageExpected);
     }
 
-    private void checkInvalidFiles(List<File> files) throws IOException {
+    private void checkInvalidFile(File file) throws IOException {
         String testFilename;
         expectingError = true;
-        for (File file : files) {
-            if (isIgnorable(file)) {
-                continue;
-            }
-            reset();
-            try {
-                if (file.isDirectory()) {
-                    recurseDirectory(file);
-                } else {
-                    checkHtmlFile(file);
-                }
-            } catch (IOException | SAXException e) {
-            }
-            if (exception != null) {
-                testFilename = this.getRelativePathname(file, baseDir);
-                if (writeMessages) {
-                    reportedMessages.put(testFilename, exception.getMessage());
-                } else if (expectedMessages != null
-                        && expectedMessages.get(testFilename) == null) {
-                    try {
-                        err.println(String.format(
-                                "\"%s\": warning: No expected message in"
-                                        + " messages file.",
-                                this.getFileURL(file)));
-                        err.flush();
-                    } catch (MalformedURLException e) {
-                        throw new RuntimeException(e);
-                    }
-                } else if (expectedMessages != null
-                        && !messageMatches(testFilename)) {
-                    failed = true;
-                    try {
-                        err.println(String.format(
-                                "\"%s\": error: Expected \"%s\""
-                                        + " but instead encountered \"%s\".",
-                                this.getFileURL(file),
-                                expectedMessages.get(testFilename),
-                                exception.getMessage()));
-                        err.flush();
-                    } catch (MalformedURLException e) {
-                        throw new RuntimeException(e);
-                    }
+        if (isIgnorable(file)) {
+            return;
+        }
+        reset();
+        try {
+            checkHtmlFile(file);
+        } catch (IOException | SAXException e) {
+        }
+        if (exception != null) {
+            testFilename = this.getRelativePathname(file, baseDir);
+            if (writeMessages) {
+                reportedMessages.put(testFilename, exception.getMessage());
+            } else if (expectedMessages != null
+                    && expectedMessages.get(testFilename) == null) {
+                try {
+                    err.println(String.format(
+                            "\"%s\": warning: No expected message in"
+                                    + " messages file.",
+                            this.getFileURL(file)));
+                    err.flush();
+                } catch (MalformedURLException e) {
+                    throw new RuntimeException(e);
                 }
-            }
-            if (!inError) {
+            } else if (expectedMessages != null
+                    && !messageMatches(testFilename)) {
                 failed = true;
                 try {
                     err.println(String.format(
-                            "\"%s\": error: Expected an error but did not"
-                                    + " encounter any.",
-                            this.getFileURL(file)));
+                            "\"%s\": error: Expected \"%s\""
+                                    + " but instead encountered \"%s\".",
+                            this.getFileURL(file),
+                            expectedMessages.get(testFilename),
+                            exception.getMessage()));
                     err.flush();
                 } catch (MalformedURLException e) {
                     throw new RuntimeException(e);
                 }
             }
         }
+        if (!inError) {
+            failed = true;
+            try {
+                err.println(String.format(
+                        "\"%s\": error: Expected an error but did not"
+                                + " encounter any.",
+                        this.getFileURL(file)));
+                err.flush();
+            } catch (MalformedURLException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 
-    private void checkHasWarningFiles(List<File> files) throws IOException {
+    private void checkHasWarningFile(File file) throws IOException {
         String testFilename;
         expectingError = false;
-        for (File file : files) {
-            if (isIgnorable(file)) {
-                continue;
-            }
-            reset();
-            try {
-                if (file.isDirectory()) {
-                    recurseDirectory(file);
-                } else {
-                    checkHtmlFile(file);
-                }
-            } catch (IOException | SAXException e) {
-            }
-            if (exception != null) {
-                testFilename = this.getRelativePathname(file, baseDir);
-                if (writeMessages) {
-                    reportedMessages.put(testFilename, exception.getMessage());
-                } else if (expectedMessages != null
-                        && expectedMessages.get(testFilename) == null) {
-                    try {
-                        err.println(String.format(
-                                "\"%s\": warning: No expected message in"
-                                        + " messages file.",
-                                this.getFileURL(file)));
-                        err.flush();
-                    } catch (MalformedURLException e) {
-                        throw new RuntimeException(e);
-                    }
-                } else if (expectedMessages != null
-                        && !messageMatches(testFilename)) {
-                    try {
-                        err.println(String.format(
-                                "\"%s\": error: Expected \"%s\""
-                                        + " but instead encountered \"%s\".",
-                                this.getFileURL(file),
-                                expectedMessages.get(testFilename),
-                                exception.getMessage()));
-                        err.flush();
-                    } catch (MalformedURLException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-            }
-            if (inError) {
-                failed = true;
+        if (isIgnorable(file)) {
+            return;
+        }
+        reset();
+        try {
+            checkHtmlFile(file);
+        } catch (IOException | SAXException e) {
+        }
+        if (exception != null) {
+            testFilename = this.getRelativePathname(file, baseDir);
+            if (writeMessages) {
+                reportedMessages.put(testFilename, exception.getMessage());
+            } else if (expectedMessages != null
+                    && expectedMessages.get(testFilename) == null) {
                 try {
                     err.println(String.format(
-                            "\"%s\": error: Expected a warning but encountered"
-                                    + " an error first.",
+                            "\"%s\": warning: No expected message in"
+                                    + " messages file.",
                             this.getFileURL(file)));
                     err.flush();
                 } catch (MalformedURLException e) {
                     throw new RuntimeException(e);
                 }
-            } else if (!exceptionIsWarning) {
+            } else if (expectedMessages != null
+                    && !messageMatches(testFilename)) {
                 try {
                     err.println(String.format(
-                            "\"%s\": error: Expected a warning but did not"
-                                    + " encounter any.",
-                            this.getFileURL(file)));
+                            "\"%s\": error: Expected \"%s\""
+                                    + " but instead encountered \"%s\".",
+                            this.getFileURL(file),
+                            expectedMessages.get(testFilename),
+                            exception.getMessage()));
                     err.flush();
                 } catch (MalformedURLException e) {
                     throw new RuntimeException(e);
                 }
             }
-            if (inError) {
-                failed = true;
-                try {
-                    err.println(String.format(
-                            "\"%s\": error: Expected a warning only but"
-                                    + " encountered at least one error.",
-                            this.getFileURL(file)));
-                    err.flush();
-                } catch (MalformedURLException e) {
-                    throw new RuntimeException(e);
-                }
+        }
+        if (inError) {
+            failed = true;
+            try {
+                err.println(String.format(
+                        "\"%s\": error: Expected a warning but encountered"
+                                + " an error first.",
+                        this.getFileURL(file)));
+                err.flush();
+            } catch (MalformedURLException e) {
+                throw new RuntimeException(e);
+            }
+        } else if (!exceptionIsWarning) {
+            try {
+                err.println(String.format(
+                        "\"%s\": error: Expected a warning but did not"
+                                + " encounter any.",
+                        this.getFileURL(file)));
+                err.flush();
+            } catch (MalformedURLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (inError) {
+            failed = true;
+            try {
+                err.println(String.format(
+                        "\"%s\": error: Expected a warning only but"
+                                + " encountered at least one error.",
+                        this.getFileURL(file)));
+                err.flush();
+            } catch (MalformedURLException e) {
+                throw new RuntimeException(e);
             }
         }
     }
@@ -384,41 +396,71 @@ public class TestRunner implements ErrorHandler {
         EXPECTING_INVALID_FILES, EXPECTING_VALID_FILES, EXPECTING_ANYTHING
     }
 
-    private void checkTestDirectoryAgainstSchema(File directory,
-            String schemaUrl) throws SAXException, Exception {
-        validator.setUpMainSchema(schemaUrl, this);
-        checkTestFiles(directory, State.EXPECTING_ANYTHING);
+    private enum Kind {
+        VALID, INVALID, HAS_WARNING, NOTE
     }
 
-    private void checkTestFiles(File directory, State state)
-            throws SAXException, IOException {
+    /**
+     * A file to check, or a note to print, in the order the output is
+     * merged. A worker fills in the output, the outcome and the time taken.
+     * The files of one kind in one directory form a group, which is checked
+     * on a validator set up for it, as the sequential runner did.
+     */
+    private static final class Task {
+
+        final File file;
+
+        final Kind kind;
+
+        final int group;
+
+        final StringWriter out = new StringWriter();
+
+        final StringWriter err = new StringWriter();
+
+        boolean failed = false;
+
+        Map<String, String> reportedMessages = null;
+
+        long nanos = 0;
+
+        Task(File file, Kind kind, int group) {
+            this.file = file;
+            this.kind = kind;
+            this.group = group;
+        }
+    }
+
+    private void planTestFiles(File directory, State state, List<Task> tasks)
+            throws IOException {
         File[] files = directory.listFiles();
         List<File> validFiles = new ArrayList<>();
         List<File> invalidFiles = new ArrayList<>();
         List<File> hasWarningFiles = new ArrayList<>();
         if (files == null) {
             if (verbose) {
+                Task note = new Task(directory, Kind.NOTE, 0);
                 try {
-                    out.println(String.format(
-                            "\"%s\": warning: No files found in directory.",
+                    note.out.write(String.format(
+                            "\"%s\": warning: No files found in directory.%n",
                             this.getFileURL(directory)));
-                    out.flush();
                 } catch (MalformedURLException mue) {
                     throw new RuntimeException(mue);
                 }
+                tasks.add(note);
             }
             return;
         }
         for (File file : files) {
             if (file.isDirectory()) {
                 if (state != State.EXPECTING_ANYTHING) {
-                    checkTestFiles(file, state);
+                    planTestFiles(file, state, tasks);
                 } else if ("invalid".equals(file.getName())) {
-                    checkTestFiles(file, State.EXPECTING_INVALID_FILES);
+                    planTestFiles(file, State.EXPECTING_INVALID_FILES, tasks);
                 } else if ("valid".equals(file.getName())) {
-                    checkTestFiles(file, State.EXPECTING_VALID_FILES);
+                    planTestFiles(file, State.EXPECTING_VALID_FILES, tasks);
                 } else {
-                    checkTestFiles(file, State.EXPECTING_ANYTHING);
+                    planTestFiles(file, State.EXPECTING_ANYTHING, tasks);
                 }
             } else if (isCheckableFile(file)) {
                 if (state == State.EXPECTING_INVALID_FILES) {
@@ -434,27 +476,139 @@ public class TestRunner implements ErrorHandler {
                 }
             }
         }
-        if (validFiles.size() > 0) {
-            validator.setUpValidatorAndParsers(this, false, false);
-            checkFiles(validFiles);
+        planGroup(validFiles, Kind.VALID, tasks);
+        planGroup(invalidFiles, Kind.INVALID, tasks);
+        planGroup(hasWarningFiles, Kind.HAS_WARNING, tasks);
+    }
+
+    private void planGroup(List<File> files, Kind kind, List<Task> tasks) {
+        if (files.isEmpty()) {
+            return;
         }
-        if (invalidFiles.size() > 0) {
-            validator.setUpValidatorAndParsers(this, false, false);
-            checkInvalidFiles(invalidFiles);
+        int group = ++plannedGroups;
+        for (File file : files) {
+            tasks.add(new Task(file, kind, group));
+        }
+    }
+
+    /**
+     * Sets up the validator of a worker for the schema of a top-level test
+     * directory and its validator and parsers for a group of files, unless
+     * they have been set up for that directory and group already.
+     */
+    private void prepare(int phase, String schemaUrl, int group)
+            throws Exception {
+        if (preparedPhase != phase) {
+            validator.setUpMainSchema(schemaUrl, this);
+            preparedPhase = phase;
         }
-        if (hasWarningFiles.size() > 0) {
+        if (preparedGroup != group) {
             validator.setUpValidatorAndParsers(this, false, false);
-            checkHasWarningFiles(hasWarningFiles);
+            preparedGroup = group;
+        }
+    }
+
+    private void runTask(Task task) throws IOException {
+        out = new PrintWriter(task.out);
+        err = new PrintWriter(task.err);
+        failed = false;
+        reportedMessages = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        switch (task.kind) {
+            case VALID:
+                checkValidFile(task.file);
+                break;
+            case INVALID:
+                checkInvalidFile(task.file);
+                break;
+            case HAS_WARNING:
+                checkHasWarningFile(task.file);
+                break;
+            default:
+                break;
         }
-        if (writeMessages) {
-            OutputStreamWriter out = new OutputStreamWriter(
-                    new FileOutputStream(messagesFile), "utf-8");
-            try (BufferedWriter bw = new BufferedWriter(out)) {
-                bw.write(JSON.toString(reportedMessages));
+        task.nanos = System.nanoTime() - start;
+        out.flush();
+        err.flush();
+        task.failed = failed;
+        task.reportedMessages = reportedMessages;
+    }
+
+    /**
+     * Checks the tasks of one top-level test directory on the worker pool
+     * and prints their output in task order as they complete. All the tasks
+     * of a directory are done before the next directory starts, because
+     * setting up a schema sets system properties that validation reads.
+     */
+    private void runTasks(final int phase, final String schemaUrl,
+            List<Task> tasks, ExecutorService executor,
+            final BlockingQueue<TestRunner> workers, List<Task> done)
+            throws Exception {
+        List<Future<Task>> futures = new ArrayList<>(tasks.size());
+        for (final Task task : tasks) {
+            futures.add(executor.submit(new Callable<Task>() {
+                @Override
+                public Task call() throws Exception {
+                    if (task.kind == Kind.NOTE) {
+                        return task;
+                    }
+                    TestRunner worker = workers.take();
+                    try {
+                        worker.prepare(phase, schemaUrl, task.group);
+                        worker.runTask(task);
+                    } finally {
+                        workers.put(worker);
+                    }
+                    return task;
+                }
+            }));
+        }
+        for (Future<Task> future : futures) {
+            Task task;
+            try {
+                task = future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+            out.write(task.out.toString());
+            out.flush();
+            err.write(task.err.toString());
+            err.flush();
+            if (task.failed) {
+                failed = true;
+            }
+            if (task.reportedMessages != null) {
+                reportedMessages.putAll(task.reportedMessages);
+            }
+            if (task.kind != Kind.NOTE) {
+                done.add(task);
             }
         }
     }
 
+    private void reportSlowest(List<Task> done) throws MalformedURLException {
+        List<Task> sorted = new ArrayList<>(done);
+        Collections.sort(sorted, new Comparator<Task>() {
+            @Override
+            public int compare(Task a, Task b) {
+                return Long.compare(b.nanos, a.nanos);
+            }
+        });
+        int n = Math.min(slowest, sorted.size());
+        out.println(String.format("Slowest %d of %d files:", n,
+                sorted.size()));
+        for (int i = 0; i < n; i++) {
+            Task task = sorted.get(i);
+            out.println(String.format("%10.1f ms  \"%s\"",
+                    task.nanos / 1e6, this.getFileURL(task.file)));
+        }
+        out.flush();
+    }
+
     public boolean runTestSuite() throws SAXException, Exception {
         if (messagesFile != null) {
             baseDir = messagesFile.getCanonicalFile().getParentFile();
@@ -464,18 +618,42 @@ public class TestRunner implements ErrorHandler {
         } else {
             baseDir = new File(System.getProperty("user.dir"));
         }
-        for (File directory : baseDir.listFiles()) {
-            if (directory.isDirectory()) {
-                if (directory.getName().contains("rdfalite")) {
-                    checkTestDirectoryAgainstSchema(directory,
-                            "http://s.validator.nu/html5-rdfalite.rnc");
-                } else if (directory.getName().contains("xhtml")) {
-                    checkTestDirectoryAgainstSchema(directory,
-                            "http://s.validator.nu/xhtml5-all.rnc");
-                } else {
-                    checkTestDirectoryAgainstSchema(directory, schema);
+        BlockingQueue<TestRunner> workers = new ArrayBlockingQueue<>(jobs);
+        for (int i = 0; i < jobs; i++) {
+            workers.add(new TestRunner(this));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        List<Task> done = new ArrayList<>();
+        int phase = 0;
+        try {
+            for (File directory : baseDir.listFiles()) {
+                if (directory.isDirectory()) {
+                    String schemaUrl;
+                    if (directory.getName().contains("rdfalite")) {
+                        schemaUrl = "http://s.validator.nu/html5-rdfalite.rnc";
+                    } else if (directory.getName().contains("xhtml")) {
+                        schemaUrl = "http://s.validator.nu/xhtml5-all.rnc";
+                    } else {
+                        schemaUrl = schema;
+                    }
+                    List<Task> tasks = new ArrayList<>();
+                    planTestFiles(directory, State.EXPECTING_ANYTHING, tasks);
+                    phase++;
+                    runTasks(phase, schemaUrl, tasks, executor, workers, done);
+                    if (writeMessages) {
+                        OutputStreamWriter out = new OutputStreamWriter(
+                                new FileOutputStream(messagesFile), "utf-8");
+                        try (BufferedWriter bw = new BufferedWriter(out)) {
+                            bw.write(JSON.toString(reportedMessages));
+                        }
+                    }
                 }
             }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (slowest > 0) {
+            reportSlowest(done);
         }
         if (verbose) {
             if (failed) {
@@ -573,6 +751,10 @@ public class TestRunner implements ErrorHandler {
                 writeMessages = true;
             } else if (arg.startsWith("--ignore=")) {
                 ignoreList = arg.substring(9, arg.length()).split(",");
+            } else if (arg.startsWith("--jobs=")) {
+                jobs = parsePositive(arg, arg.substring(7));
+            } else if (arg.startsWith("--slowest=")) {
+                slowest = parsePositive(arg, arg.substring(10));
             } else if (arg.startsWith("--")) {
                 System.out.println(String.format(
                         "\nError: There is no option \"%s\".", arg));
@@ -614,13 +796,31 @@ public class TestRunner implements ErrorHandler {
         }
     }
 
+    private static int parsePositive(String arg, String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+        }
+        System.out.println(String.format(
+                "\nError: Expected a positive number in \"%s\".", arg));
+        usage();
+        System.exit(1);
+        return 0;
+    }
+
     private static void usage() {
         System.out.println("\nUsage:");
         System.out.println("\n    java nu.validator.client.TestRunner [--errors-only] [--write-messages]");
-        System.out.println("          [--verbose] [MESSAGES.json]");
+        System.out.println("          [--verbose] [--jobs=N] [--slowest=N] [MESSAGES.json]");
         System.out.println("\n...where the MESSAGES.json file contains name/value pairs in which the name is");
         System.out.println("a pathname of a document to check and the value is the first error message or");
         System.out.println("warning message the validator is expected to report when checking that document.");
         System.out.println("Use the --write-messages option to create the file.");
+        System.out.println("\nUse --jobs=N to check the documents on N threads, each with its own validator;");
+        System.out.println("the output is the same as with one thread. Use --slowest=N to list the N");
+        System.out.println("documents that took the longest to check.");
     }
 }
@@ -50,6 +50,25 @@ public class ImageCandidateStrings extends AbstractDatatype {
 
     public static final ImageCandidateStrings THE_INSTANCE = new ImageCandidateStrings();
 
+    /**
+     * Whether a width descriptor has been seen on this thread since the last
+     * reset; see nu.validator.checker.schematronequiv.Assertions.
+     */
+    private static final ThreadLocal<Boolean> HAS_WIDTH = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
+
+    public static void resetHasWidth() {
+        HAS_WIDTH.set(Boolean.FALSE);
+    }
+
+    public static boolean hasWidth() {
+        return HAS_WIDTH.get().booleanValue();
+    }
+
     protected ImageCandidateStrings() {
         super();
     }
@@ -217,9 +236,7 @@ public class ImageCandidateStrings extends AbstractDatatype {
             }
             if ('w' == last) {
                 // see nu.validator.checker.schematronequiv.Assertions
-                System.setProperty(
-                        "nu.validator.checker.imageCandidateString.hasWidth",
-                        "1");
+                HAS_WIDTH.set(Boolean.TRUE);
                 try {
                     int width = Integer.parseInt(num, 10);
                     if (width <= 0) {
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.gnu.xml.aelfred2;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nu.validator.gnu.xml.aelfred2.XmlParser.ElementDecl;
+import nu.validator.gnu.xml.aelfred2.XmlParser.EntityInfo;
+
+/**
+ * A cache of parsed external DTD subsets that can be shared by parsers on
+ * different threads. The entries are keyed by the public identifier and the
+ * absolute system identifier of the subset, so a cache must only be shared
+ * by parsers that resolve entities the same way. A cache that is shared by
+ * parsers that may fetch entities over the network should be limited to the
+ * system identifiers that are resolved locally, so that a subset fetched for
+ * one document is never replayed for another.
+ */
+public final class DtdCache {
+
+    /**
+     * A parsed external subset. It is never modified after it has been
+     * added to the cache.
+     */
+    static final class CompiledDtd {
+
+        final HashMap<String, ElementDecl> elementInfo;
+
+        final HashMap<String, EntityInfo> entityInfo;
+
+        final HashMap<String, String> notationInfo;
+
+        /**
+         * General entities referenced while the subset was parsed. A
+         * document whose internal subset declares one of these sees a
+         * different expansion, so it cannot use the cached copy.
+         */
+        final Set<String> referencedEntities;
+
+        final List<String[]> events;
+
+        CompiledDtd(HashMap<String, ElementDecl> elementInfo,
+                HashMap<String, EntityInfo> entityInfo,
+                HashMap<String, String> notationInfo,
+                Set<String> referencedEntities, List<String[]> events) {
+            this.elementInfo = elementInfo;
+            this.entityInfo = entityInfo;
+            this.notationInfo = notationInfo;
+            this.referencedEntities = referencedEntities;
+            this.events = events;
+        }
+    }
+
+    private final ConcurrentHashMap<String, CompiledDtd> cache = new ConcurrentHashMap<>();
+
+    private final int maxEntries;
+
+    private final Set<String> cacheableSystemIds;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxEntries
+     *            the number of subsets to keep; once full, further subsets
+     *            are parsed every time
+     */
+    public DtdCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.cacheableSystemIds = null;
+    }
+
+    /**
+     * @param maxEntries
+     *            the number of subsets to keep; once full, further subsets
+     *            are parsed every time
+     * @param cacheableSystemIds
+     *            the absolute system identifiers of the subsets and external
+     *            parameter entities that may be cached; a subset that uses
+     *            any other entity is parsed every time
+     */
+    public DtdCache(int maxEntries, Collection<String> cacheableSystemIds) {
+        this.maxEntries = maxEntries;
+        this.cacheableSystemIds = new HashSet<>(cacheableSystemIds);
+    }
+
+    static String key(String publicId, String absoluteSystemId,
+            boolean resolveURIs) {
+        return (resolveURIs ? "r " : "n ") + absoluteSystemId + " "
+                + publicId;
+    }
+
+    /**
+     * Whether a subset or parameter entity with the given absolute system
+     * identifier may be part of a cached subset.
+     */
+    boolean isCacheable(String absoluteSystemId) {
+        return cacheableSystemIds == null
+                || cacheableSystemIds.contains(absoluteSystemId);
+    }
+
+    CompiledDtd get(String key) {
+        CompiledDtd dtd = cache.get(key);
+        if (dtd == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return dtd;
+    }
+
+    void put(String key, CompiledDtd dtd) {
+        if (cache.size() < maxEntries) {
+            cache.putIfAbsent(key, dtd);
+        }
+    }
+
+    /**
+     * Returns the number of cached subsets.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the number of lookups that found a cached subset.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached subset.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public void clear() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.gnu.xml.aelfred2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.ext.DeclHandler;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.LexicalHandler;
+
+/**
+ * Stands in for the application's handlers while an external DTD subset is
+ * parsed. Every event is passed on unchanged and the declaration-level ones
+ * are also recorded, together with warnings and errors and their locations,
+ * so that they can be replayed for a later document that uses the same
+ * cached DTD. A fatal error or an unexpected event makes the recording
+ * unusable.
+ */
+final class DtdRecorder extends DefaultHandler2 {
+
+    private static final String START_ENTITY = "startEntity";
+
+    private static final String END_ENTITY = "endEntity";
+
+    private static final String COMMENT = "comment";
+
+    private static final String PROCESSING_INSTRUCTION = "processingInstruction";
+
+    private static final String ELEMENT_DECL = "elementDecl";
+
+    private static final String ATTRIBUTE_DECL = "attributeDecl";
+
+    private static final String INTERNAL_ENTITY_DECL = "internalEntityDecl";
+
+    private static final String EXTERNAL_ENTITY_DECL = "externalEntityDecl";
+
+    private static final String NOTATION_DECL = "notationDecl";
+
+    private static final String UNPARSED_ENTITY_DECL = "unparsedEntityDecl";
+
+    private static final String WARNING = "warning";
+
+    private static final String ERROR = "error";
+
+    final ContentHandler contentHandler;
+
+    final DTDHandler dtdHandler;
+
+    final ErrorHandler errorHandler;
+
+    final DeclHandler declHandler;
+
+    final LexicalHandler lexicalHandler;
+
+    private final Locator locator;
+
+    private final List<String[]> events = new ArrayList<>();
+
+    private boolean clean = true;
+
+    DtdRecorder(ContentHandler contentHandler, DTDHandler dtdHandler,
+            ErrorHandler errorHandler, DeclHandler declHandler,
+            LexicalHandler lexicalHandler, Locator locator) {
+        this.contentHandler = contentHandler;
+        this.dtdHandler = dtdHandler;
+        this.errorHandler = errorHandler;
+        this.declHandler = declHandler;
+        this.lexicalHandler = lexicalHandler;
+        this.locator = locator;
+    }
+
+    /**
+     * Whether the recorded events are all there was to the DTD.
+     */
+    boolean isClean() {
+        return clean;
+    }
+
+    List<String[]> getEvents() {
+        return events;
+    }
+
+    /**
+     * Replays recorded events to the given handlers. Element types and
+     * notations in the given sets were declared by the internal subset as
+     * well; the duplicate declaration errors for them are reported where the
+     * external subset declares them again.
+     */
+    static void replay(List<String[]> events, Set<String> duplicateElements,
+            Set<String> duplicateNotations, ContentHandler ch,
+            DTDHandler dh, ErrorHandler eh, DeclHandler decl,
+            LexicalHandler lh) throws SAXException {
+        for (String[] event : events) {
+            String kind = event[0];
+            if (START_ENTITY == kind) {
+                lh.startEntity(event[1]);
+            } else if (END_ENTITY == kind) {
+                lh.endEntity(event[1]);
+            } else if (COMMENT == kind) {
+                char[] buf = event[1].toCharArray();
+                lh.comment(buf, 0, buf.length);
+            } else if (PROCESSING_INSTRUCTION == kind) {
+                ch.processingInstruction(event[1], event[2]);
+            } else if (ELEMENT_DECL == kind) {
+                if (duplicateElements.contains(event[1])) {
+                    // VC: Unique Element Type Declaration
+                    eh.error(toException(event, 3,
+                            "multiple declarations for element type: "
+                                    + event[1]));
+                }
+                decl.elementDecl(event[1], event[2]);
+            } else if (ATTRIBUTE_DECL == kind) {
+                decl.attributeDecl(event[1], event[2], event[3], event[4],
+                        event[5]);
+            } else if (INTERNAL_ENTITY_DECL == kind) {
+                decl.internalEntityDecl(event[1], event[2]);
+            } else if (EXTERNAL_ENTITY_DECL == kind) {
+                decl.externalEntityDecl(event[1], event[2], event[3]);
+            } else if (NOTATION_DECL == kind) {
+                dh.notationDecl(event[1], event[2], event[3]);
+                if (duplicateNotations.contains(event[1])) {
+                    // VC: Unique Notation Name
+                    eh.error(toException(event, 4,
+                            "Duplicate notation name decl: " + event[1]));
+                }
+            } else if (UNPARSED_ENTITY_DECL == kind) {
+                dh.unparsedEntityDecl(event[1], event[2], event[3], event[4]);
+            } else if (WARNING == kind) {
+                eh.warning(toException(event, 2, event[1]));
+            } else if (ERROR == kind) {
+                eh.error(toException(event, 2, event[1]));
+            }
+        }
+    }
+
+    private String[] withLocation(String... fields) {
+        String[] event = new String[fields.length + 4];
+        System.arraycopy(fields, 0, event, 0, fields.length);
+        event[fields.length] = locator.getPublicId();
+        event[fields.length + 1] = locator.getSystemId();
+        event[fields.length + 2] = Integer.toString(locator.getLineNumber());
+        event[fields.length + 3] = Integer.toString(locator.getColumnNumber());
+        return event;
+    }
+
+    private static String[] fromException(String kind, SAXParseException e) {
+        return new String[] { kind, e.getMessage(), e.getPublicId(),
+                e.getSystemId(), Integer.toString(e.getLineNumber()),
+                Integer.toString(e.getColumnNumber()) };
+    }
+
+    /**
+     * Makes an exception from the location recorded at <code>offset</code>
+     * in an event.
+     */
+    private static SAXParseException toException(String[] event, int offset,
+            String message) {
+        return new SAXParseException(message, event[offset],
+                event[offset + 1], Integer.parseInt(event[offset + 2]),
+                Integer.parseInt(event[offset + 3]));
+    }
+
+    // LexicalHandler
+
+    @Override
+    public void startEntity(String name) throws SAXException {
+        events.add(new String[] { START_ENTITY, name });
+        lexicalHandler.startEntity(name);
+    }
+
+    @Override
+    public void endEntity(String name) throws SAXException {
+        events.add(new String[] { END_ENTITY, name });
+        lexicalHandler.endEntity(name);
+    }
+
+    @Override
+    public void comment(char[] ch, int start, int length) throws SAXException {
+        events.add(new String[] { COMMENT, new String(ch, start, length) });
+        lexicalHandler.comment(ch, start, length);
+    }
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId)
+            throws SAXException {
+        clean = false;
+        lexicalHandler.startDTD(name, publicId, systemId);
+    }
+
+    @Override
+    public void endDTD() throws SAXException {
+        clean = false;
+        lexicalHandler.endDTD();
+    }
+
+    @Override
+    public void startCDATA() throws SAXException {
+        clean = false;
+        lexicalHandler.startCDATA();
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+        clean = false;
+        lexicalHandler.endCDATA();
+    }
+
+    // DeclHandler
+
+    @Override
+    public void elementDecl(String name, String model) throws SAXException {
+        events.add(withLocation(ELEMENT_DECL, name, model));
+        declHandler.elementDecl(name, model);
+    }
+
+    @Override
+    public void attributeDecl(String eName, String aName, String type,
+            String mode, String value) throws SAXException {
+        events.add(new String[] { ATTRIBUTE_DECL, eName, aName, type, mode,
+                value });
+        declHandler.attributeDecl(eName, aName, type, mode, value);
+    }
+
+    @Override
+    public void internalEntityDecl(String name, String value)
+            throws SAXException {
+        events.add(new String[] { INTERNAL_ENTITY_DECL, name, value });
+        declHandler.internalEntityDecl(name, value);
+    }
+
+    @Override
+    public void externalEntityDecl(String name, String publicId,
+            String systemId) throws SAXException {
+        events.add(new String[] { EXTERNAL_ENTITY_DECL, name, publicId,
+                systemId });
+        declHandler.externalEntityDecl(name, publicId, systemId);
+    }
+
+    // DTDHandler
+
+    @Override
+    public void notationDecl(String name, String publicId, String systemId)
+            throws SAXException {
+        events.add(withLocation(NOTATION_DECL, name, publicId, systemId));
+        dtdHandler.notationDecl(name, publicId, systemId);
+    }
+
+    @Override
+    public void unparsedEntityDecl(String name, String publicId,
+            String systemId, String notationName) throws SAXException {
+        events.add(new String[] { UNPARSED_ENTITY_DECL, name, publicId,
+                systemId, notationName });
+        dtdHandler.unparsedEntityDecl(name, publicId, systemId, notationName);
+    }
+
+    // ContentHandler
+
+    @Override
+    public void processingInstruction(String target, String data)
+            throws SAXException {
+        events.add(new String[] { PROCESSING_INSTRUCTION, target, data });
+        contentHandler.processingInstruction(target, data);
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        clean = false;
+        contentHandler.skippedEntity(name);
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        clean = false;
+        contentHandler.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        clean = false;
+        contentHandler.startDocument();
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        clean = false;
+        contentHandler.endDocument();
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri)
+            throws SAXException {
+        clean = false;
+        contentHandler.startPrefixMapping(prefix, uri);
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        clean = false;
+        contentHandler.endPrefixMapping(prefix);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+            Attributes atts) throws SAXException {
+        clean = false;
+        contentHandler.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+        clean = false;
+        contentHandler.endElement(uri, localName, qName);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        clean = false;
+        contentHandler.characters(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length)
+            throws SAXException {
+        clean = false;
+        contentHandler.ignorableWhitespace(ch, start, length);
+    }
+
+    // ErrorHandler
+
+    @Override
+    public void warning(SAXParseException e) throws SAXException {
+        events.add(fromException(WARNING, e));
+        errorHandler.warning(e);
+    }
+
+    @Override
+    public void error(SAXParseException e) throws SAXException {
+        events.add(fromException(ERROR, e));
+        errorHandler.error(e);
+    }
+
+    @Override
+    public void fatalError(SAXParseException e) throws SAXException {
+        clean = false;
+        errorHandler.fatalError(e);
+    }
+}
@@ -66,6 +66,7 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.Stack;
 
 import nu.validator.htmlparser.common.CharacterHandler;
@@ -237,6 +238,8 @@ import org.xml.sax.helpers.NamespaceSupport;
     private boolean errorHandlerLocked = false;
 
     CharacterHandler characterHandler = null;
+
+    private DtdCache dtdCache = null;
     
     //
     // Constructor.
@@ -550,6 +553,41 @@ import org.xml.sax.helpers.NamespaceSupport;
         return resolveAll;
     }
 
+    // package private
+    DtdCache getDtdCache() {
+        return dtdCache;
+    }
+
+    /**
+     * Puts the application's handlers behind a recorder for the duration of
+     * an external DTD subset.
+     */
+    DtdRecorder startDtdRecording() {
+        DtdRecorder recorder = new DtdRecorder(contentHandler, dtdHandler,
+                errorHandler, declHandler, lexicalHandler, this);
+        contentHandler = recorder;
+        dtdHandler = recorder;
+        errorHandler = recorder;
+        declHandler = recorder;
+        lexicalHandler = recorder;
+        return recorder;
+    }
+
+    void stopDtdRecording(DtdRecorder recorder) {
+        contentHandler = recorder.contentHandler;
+        dtdHandler = recorder.dtdHandler;
+        errorHandler = recorder.errorHandler;
+        declHandler = recorder.declHandler;
+        lexicalHandler = recorder.lexicalHandler;
+    }
+
+    void replayDtd(List<String[]> events, Set<String> duplicateElements,
+            Set<String> duplicateNotations) throws SAXException {
+        DtdRecorder.replay(events, duplicateElements, duplicateNotations,
+                contentHandler, dtdHandler, errorHandler, declHandler,
+                lexicalHandler);
+    }
+
     /**
      * <b>SAX2</b>: Returns the specified property.
      * 
@@ -1531,6 +1569,17 @@ import org.xml.sax.helpers.NamespaceSupport;
 
     }
 
+    /**
+     * Sets a cache of parsed external DTD subsets to consult and fill when
+     * external parameter entities are processed. The cache may be shared
+     * with other parsers that use an equivalent entity resolver.
+     * 
+     * @param dtdCache the cache, or <code>null</code> to parse every subset
+     */
+    public void setDtdCache(DtdCache dtdCache) {
+        this.dtdCache = dtdCache;
+    }
+
     /**
      * Sets the characterHandler.
      * 
@@ -61,13 +61,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.MalformedURLException;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
 
 import nu.validator.htmlparser.common.CharacterHandler;
 import nu.validator.htmlparser.extra.NormalizationChecker;
@@ -353,6 +357,18 @@ final class XmlParser {
 
     private boolean skippedPE;
 
+    //
+    // General entities referenced while an external subset is being
+    // recorded for the DTD cache; null otherwise.
+    //
+    private Set<String> dtdEntityRefs;
+
+    /**
+     * Whether the external subset being recorded for the DTD cache has
+     * loaded an entity that the cache must not keep.
+     */
+    private boolean dtdUncacheable;
+
     //
     // Element type currently in force.
     //
@@ -1072,6 +1088,7 @@ final class XmlParser {
         handler.doctypeDecl(rootName, ids.publicId, ids.systemId);
 
         // Internal subset is parsed first, if present
+        boolean internalDecls = false;
         skipWhitespace();
         if (tryRead('[')) {
 
@@ -1084,6 +1101,7 @@ final class XmlParser {
                     break; // end of subset
                 } else {
                     // WFC, PEs in internal subset (only between decls)
+                    internalDecls = true;
                     peIsError = expandPE = true;
                     parseMarkupdecl();
                     peIsError = expandPE = false;
@@ -1102,37 +1120,42 @@ final class XmlParser {
             subset = null;
         }
         if ((ids.systemId != null) || (subset != null)) {
-            pushString(null, ">");
-
-            // NOTE: [dtd] is so we say what SAX2 expects,
-            // though it's misleading (subset, not entire dtd)
-            if (ids.systemId != null) {
-                pushURL(true, "[dtd]", ids, null, null, null, true);
-            } else {
-                handler.warn("modifying document by adding external subset");
-                pushURL(true, "[dtd]", new ExternalIdentifiers(
-                        subset.getPublicId(), subset.getSystemId(), null),
-                        subset.getCharacterStream(), subset.getByteStream(),
-                        subset.getEncoding(), false);
+            String cacheKey = dtdCacheKey(ids);
+            DtdCache.CompiledDtd cached = null;
+            if (cacheKey != null) {
+                cached = handler.getDtdCache().get(cacheKey);
             }
-
-            // Loop until we end up back at '>'
-            while (true) {
-                doReport = expandPE = true;
-                skipWhitespace();
-                doReport = expandPE = false;
-                if (tryRead('>')) {
-                    break;
-                } else {
-                    expandPE = true;
-                    parseMarkupdecl();
-                    expandPE = false;
+            if (cached != null && canAttachDtd(cached)) {
+                attachDtd(cached);
+            } else if (cacheKey != null && cached == null && !internalDecls) {
+                // Only a subset parsed without an internal subset in front
+                // of it is independent of the document.
+                DtdRecorder recorder = handler.startDtdRecording();
+                dtdEntityRefs = new HashSet<>();
+                dtdUncacheable = false;
+                if (normalizationChecker != null) {
+                    normalizationChecker.setErrorHandler(recorder);
                 }
-            }
-
-            // the ">" string isn't popped yet
-            if (inputStack.size() != 1) {
-                fatal("external subset has unmatched '>'");
+                try {
+                    parseExternalSubset(ids, subset);
+                } finally {
+                    handler.stopDtdRecording(recorder);
+                    if (normalizationChecker != null) {
+                        normalizationChecker.setErrorHandler(
+                                handler.getErrorHandler());
+                    }
+                }
+                if (recorder.isClean() && !skippedPE && !dtdUncacheable) {
+                    handler.getDtdCache().put(cacheKey,
+                            new DtdCache.CompiledDtd(
+                                    new HashMap<>(elementInfo),
+                                    new HashMap<>(entityInfo),
+                                    new HashMap<>(notationInfo),
+                                    dtdEntityRefs, recorder.getEvents()));
+                }
+                dtdEntityRefs = null;
+            } else {
+                parseExternalSubset(ids, subset);
             }
         }
 
@@ -1142,6 +1165,157 @@ final class XmlParser {
         doReport = true;
     }
 
+    /**
+     * Parse the external subset named by the doctype or supplied by the
+     * entity resolver.
+     */
+    private void parseExternalSubset(ExternalIdentifiers ids,
+            InputSource subset) throws Exception {
+        pushString(null, ">");
+
+        // NOTE: [dtd] is so we say what SAX2 expects,
+        // though it's misleading (subset, not entire dtd)
+        if (ids.systemId != null) {
+            pushURL(true, "[dtd]", ids, null, null, null, true);
+        } else {
+            handler.warn("modifying document by adding external subset");
+            pushURL(true, "[dtd]", new ExternalIdentifiers(
+                    subset.getPublicId(), subset.getSystemId(), null),
+                    subset.getCharacterStream(), subset.getByteStream(),
+                    subset.getEncoding(), false);
+        }
+
+        // Loop until we end up back at '>'
+        while (true) {
+            doReport = expandPE = true;
+            skipWhitespace();
+            doReport = expandPE = false;
+            if (tryRead('>')) {
+                break;
+            } else {
+                expandPE = true;
+                parseMarkupdecl();
+                expandPE = false;
+            }
+        }
+
+        // the ">" string isn't popped yet
+        if (inputStack.size() != 1) {
+            fatal("external subset has unmatched '>'");
+        }
+    }
+
+    /**
+     * Returns the DTD cache key for an external subset, or <code>null</code>
+     * if the subset cannot be looked up in the cache or added to it.
+     */
+    private String dtdCacheKey(ExternalIdentifiers ids) {
+        if (handler.getDtdCache() == null || ids.systemId == null
+                || ids.baseUri == null || !handler.stringInterning
+                || skippedPE) {
+            return null;
+        }
+        // A parameter entity from the internal subset may change how the
+        // external subset parses.
+        for (String name : entityInfo.keySet()) {
+            if (name.charAt(0) == '%') {
+                return null;
+            }
+        }
+        try {
+            String absoluteSystemId = handler.absolutize(ids.baseUri,
+                    ids.systemId, false);
+            if (!handler.getDtdCache().isCacheable(absoluteSystemId)) {
+                return null;
+            }
+            return DtdCache.key(ids.publicId, absoluteSystemId,
+                    handler.resolveURIs());
+        } catch (MalformedURLException e) {
+            return null;
+        } catch (SAXException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether a cached subset parses the same way after this document's
+     * internal subset as it did on its own.
+     */
+    private boolean canAttachDtd(DtdCache.CompiledDtd dtd) {
+        for (String name : dtd.referencedEntities) {
+            if (entityInfo.containsKey(name) && !isPredefinedEntity(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPredefinedEntity(String name) {
+        return "lt".equals(name) || "gt".equals(name) || "amp".equals(name)
+                || "apos".equals(name) || "quot".equals(name);
+    }
+
+    /**
+     * Use a cached external subset: report its declarations and diagnostics
+     * again and add its declarations under the ones from the internal
+     * subset, which take precedence just as when the subset is parsed.
+     */
+    private void attachDtd(DtdCache.CompiledDtd dtd) throws SAXException {
+        Set<String> duplicateElements = new HashSet<>();
+        for (Map.Entry<String, ElementDecl> entry : dtd.elementInfo.entrySet()) {
+            ElementDecl element = elementInfo.get(entry.getKey());
+            if (element != null
+                    && element.contentType != CONTENT_UNDECLARED
+                    && entry.getValue().contentType != CONTENT_UNDECLARED) {
+                duplicateElements.add(entry.getKey());
+            }
+        }
+        Set<String> duplicateNotations = new HashSet<>();
+        for (String name : dtd.notationInfo.keySet()) {
+            if (notationInfo.get(name) != null) {
+                duplicateNotations.add(name);
+            }
+        }
+        handler.replayDtd(dtd.events, duplicateElements, duplicateNotations);
+        for (Map.Entry<String, ElementDecl> entry : dtd.elementInfo.entrySet()) {
+            String name = entry.getKey();
+            ElementDecl cached = entry.getValue();
+            ElementDecl element = elementInfo.get(name);
+            if (element == null) {
+                // shared; declarations are not modified after the DTD
+                elementInfo.put(name, cached);
+                continue;
+            }
+            if (cached.contentType != CONTENT_UNDECLARED
+                    && element.contentType == CONTENT_UNDECLARED) {
+                element.contentType = cached.contentType;
+                element.contentModel = cached.contentModel;
+            }
+            if (cached.attributes != null) {
+                if (element.attributes == null) {
+                    element.attributes = new HashMap<>(cached.attributes);
+                } else {
+                    for (Map.Entry<String, AttributeDecl> attribute : cached.attributes.entrySet()) {
+                        if (element.attributes.get(attribute.getKey()) == null) {
+                            element.attributes.put(attribute.getKey(),
+                                    attribute.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, EntityInfo> entry : dtd.entityInfo.entrySet()) {
+            if (entityInfo.get(entry.getKey()) == null) {
+                entityInfo.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String name : dtd.notationInfo.keySet()) {
+            if (notationInfo.get(name) == null) {
+                notationInfo.put(name, name);
+            }
+        }
+    }
+
     /**
      * Parse a markup declaration in the internal or external DTD subset.
      * 
@@ -2212,6 +2386,9 @@ final class XmlParser {
 
         name = readNmtoken(true);
         require(';');
+        if (dtdEntityRefs != null) {
+            dtdEntityRefs.add(name);
+        }
         switch (getEntityType(name)) {
             case ENTITY_UNDECLARED:
                 // NOTE: XML REC describes amazingly convoluted handling for
@@ -3787,6 +3964,12 @@ final class XmlParser {
                 return;
             }
 
+            if (dtdEntityRefs != null && (scratch.getSystemId() == null
+                    || !handler.getDtdCache().isCacheable(
+                            scratch.getSystemId()))) {
+                dtdUncacheable = true;
+            }
+
             // we might be using alternate IDs/encoding
             systemId = source.getSystemId();
             // The following warning and setting systemId was deleted bcause
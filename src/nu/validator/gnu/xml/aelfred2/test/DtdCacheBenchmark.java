@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.gnu.xml.aelfred2.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import nu.validator.gnu.xml.aelfred2.DtdCache;
+import nu.validator.gnu.xml.aelfred2.SAXDriver;
+import nu.validator.localentities.LocalCacheEntityResolver;
+import nu.validator.xml.NullEntityResolver;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.ext.DefaultHandler2;
+
+/**
+ * Parses an XHTML 1.x corpus with external entities enabled, once with a
+ * fresh parse of the DTD for every document and once with a shared
+ * <code>DtdCache</code>, checks that both produce the same events and
+ * diagnostics, and reports the time taken. The corpus is the files or
+ * directories given as arguments, or a synthetic one if there are none.
+ */
+public class DtdCacheBenchmark {
+
+    private static final String[] DOCTYPES = {
+            "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd\">",
+            "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">",
+            "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.1//EN\" \"http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd\">",
+            "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\" [<!ENTITY product \"Widget\">]>" };
+
+    private static final class Document {
+        final String systemId;
+
+        final byte[] bytes;
+
+        Document(String systemId, byte[] bytes) {
+            this.systemId = systemId;
+            this.bytes = bytes;
+        }
+    }
+
+    private final List<Document> corpus;
+
+    public DtdCacheBenchmark(List<Document> corpus) {
+        this.corpus = corpus;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Document> corpus = new ArrayList<>();
+        for (String arg : args) {
+            addFiles(new File(arg), corpus);
+        }
+        if (corpus.isEmpty()) {
+            for (int i = 0; i < 400; i++) {
+                corpus.add(syntheticDocument(i));
+            }
+        }
+        DtdCacheBenchmark benchmark = new DtdCacheBenchmark(corpus);
+        // warm up both paths before timing
+        benchmark.run(null);
+        benchmark.run(new DtdCache(16,
+                LocalCacheEntityResolver.getLocalSystemIds()));
+        long start = System.nanoTime();
+        List<String> uncached = benchmark.run(null);
+        long uncachedTime = System.nanoTime() - start;
+        DtdCache cache = new DtdCache(16,
+                LocalCacheEntityResolver.getLocalSystemIds());
+        start = System.nanoTime();
+        List<String> cached = benchmark.run(cache);
+        long cachedTime = System.nanoTime() - start;
+        System.out.println(String.format(
+                "%d documents: %d ms without the cache, %d ms with it (%d subsets cached, %d hits, %d misses)",
+                corpus.size(), uncachedTime / 1000000, cachedTime / 1000000,
+                cache.size(), cache.getHits(), cache.getMisses()));
+        System.out.println("Same events and diagnostics: "
+                + uncached.equals(cached));
+        for (int i = 0; i < corpus.size(); i++) {
+            if (!uncached.get(i).equals(cached.get(i))) {
+                System.out.println("Differs: " + corpus.get(i).systemId);
+            }
+        }
+    }
+
+    private static void addFiles(File file, List<Document> corpus)
+            throws IOException {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    addFiles(child, corpus);
+                }
+            }
+        } else {
+            corpus.add(new Document(file.toURI().toString(),
+                    Files.readAllBytes(file.toPath())));
+        }
+    }
+
+    private static Document syntheticDocument(int i) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append(DOCTYPES[i % DOCTYPES.length]);
+        sb.append("\n<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>Document ");
+        sb.append(i);
+        sb.append("</title></head><body>\n");
+        for (int p = 0; p < 20; p++) {
+            sb.append("<p class=\"c\">Caf&eacute; &amp; r&eacute;sum&eacute;&nbsp;&mdash; paragraph ");
+            sb.append(p);
+            sb.append("</p>\n");
+        }
+        sb.append("<table><tr><td>cell</td></tr></table>\n</body></html>\n");
+        return new Document("http://example.org/doc" + i + ".xhtml",
+                sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> run(DtdCache cache) throws IOException {
+        List<String> results = new ArrayList<>();
+        LocalCacheEntityResolver resolver = new LocalCacheEntityResolver(
+                new NullEntityResolver());
+        for (Document document : corpus) {
+            SAXDriver driver = new SAXDriver();
+            driver.setDtdCache(cache);
+            EventLog log = new EventLog();
+            try {
+                driver.setFeature(
+                        "http://xml.org/sax/features/string-interning", true);
+                driver.setProperty(
+                        "http://xml.org/sax/properties/lexical-handler", log);
+                driver.setProperty(
+                        "http://xml.org/sax/properties/declaration-handler",
+                        log);
+                driver.setEntityResolver(resolver);
+                driver.setContentHandler(log);
+                driver.setDTDHandler(log);
+                driver.setErrorHandler(log);
+                InputSource is = new InputSource(new ByteArrayInputStream(
+                        document.bytes));
+                is.setSystemId(document.systemId);
+                driver.parse(is);
+            } catch (SAXException e) {
+                log.sb.append("exception ").append(e.getMessage()).append('\n');
+            }
+            results.add(log.sb.toString());
+        }
+        return results;
+    }
+
+    private static final class EventLog extends DefaultHandler2 {
+
+        final StringBuilder sb = new StringBuilder();
+
+        private void log(String... parts) {
+            for (String part : parts) {
+                sb.append(part).append(' ');
+            }
+            sb.append('\n');
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes atts) {
+            sb.append("start ").append(qName);
+            for (int i = 0; i < atts.getLength(); i++) {
+                sb.append(' ').append(atts.getQName(i)).append('=').append(
+                        atts.getValue(i));
+            }
+            sb.append('\n');
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            log("end", qName);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            log("chars", new String(ch, start, length));
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) {
+            log("pi", target, data);
+        }
+
+        @Override
+        public void startEntity(String name) {
+            log("startEntity", name);
+        }
+
+        @Override
+        public void endEntity(String name) {
+            log("endEntity", name);
+        }
+
+        @Override
+        public void comment(char[] ch, int start, int length) {
+            log("comment", new String(ch, start, length));
+        }
+
+        @Override
+        public void elementDecl(String name, String model) {
+            log("elementDecl", name, model);
+        }
+
+        @Override
+        public void attributeDecl(String eName, String aName, String type,
+                String mode, String value) {
+            log("attributeDecl", eName, aName, type, mode, value);
+        }
+
+        @Override
+        public void internalEntityDecl(String name, String value) {
+            log("internalEntityDecl", name, value);
+        }
+
+        @Override
+        public void externalEntityDecl(String name, String publicId,
+                String systemId) {
+            log("externalEntityDecl", name, publicId, systemId);
+        }
+
+        @Override
+        public void notationDecl(String name, String publicId,
+                String systemId) {
+            log("notationDecl", name, publicId, systemId);
+        }
+
+        @Override
+        public void unparsedEntityDecl(String name, String publicId,
+                String systemId, String notation) {
+            log("unparsedEntityDecl", name, publicId, systemId, notation);
+        }
+
+        @Override
+        public void warning(SAXParseException e) {
+            log("warning", e.getMessage(), e.getSystemId(),
+                    e.getLineNumber() + ":" + e.getColumnNumber());
+        }
+
+        @Override
+        public void error(SAXParseException e) {
+            log("error", e.getMessage(), e.getSystemId(),
+                    e.getLineNumber() + ":" + e.getColumnNumber());
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) {
+            log("fatal", e.getMessage(), e.getSystemId(),
+                    e.getLineNumber() + ":" + e.getColumnNumber());
+        }
+    }
+}
@@ -58,8 +58,27 @@ public class Base64InputStream extends InputStream {
         }
     }
     
+    private static final int BUFFER_SIZE = 4096;
+
     private final InputStream delegate;
 
+    /**
+     * Undecoded input read from the delegate in blocks.
+     */
+    private final byte[] in = new byte[BUFFER_SIZE];
+
+    private int pos = 0;
+
+    private int limit = 0;
+
+    private boolean eof = false;
+
+    /**
+     * An error found after some bytes had already been returned by a bulk
+     * read. Thrown by the next read.
+     */
+    private IOException pendingException = null;
+
     private int bytesLeftInBuffer = 0;
     
     private int buffer = 0;
@@ -73,45 +92,152 @@ public class Base64InputStream extends InputStream {
 
     @Override
     public int read() throws IOException {
-        if (bytesLeftInBuffer == 0) {
-            bytesLeftInBuffer = 3;
-            for (int i = 0; i < 4; i++) {
-                int c = delegate.read();
-                buffer <<= 6;
-                if (c < 0) {
-                    if (i == 0) {
-                        bytesLeftInBuffer = 0;
-                        return -1;
-                    } else {
-                        throw new EOFException();
-                    }
-                } else if (bytesLeftInBuffer == 2) {
-                    if (c == '=') {
-                        bytesLeftInBuffer = 1;
-                    } else {
-                        throw new IOException("Non-padding in Base64 stream after padding had started.");
+        throwPending();
+        if (bytesLeftInBuffer == 0 && !decodeQuad()) {
+            return -1;
+        }
+        int rv = (buffer & 0xFF0000) >> 16;
+        buffer <<= 8;
+        bytesLeftInBuffer--;
+        return rv;
+    }
+
+    /**
+     * Decodes whole quads straight into <code>b</code> and falls back on
+     * decoding one quad at a time for padding, errors and the end of the
+     * output buffer.
+     * 
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        throwPending();
+        int n = 0;
+        while (n < len) {
+            if (bytesLeftInBuffer > 0) {
+                b[off + n] = (byte) (buffer >> 16);
+                buffer <<= 8;
+                bytesLeftInBuffer--;
+                n++;
+                continue;
+            }
+            if (len - n >= 3 && limit - pos >= 4) {
+                int end = pos + Math.min(limit - pos, (len - n) / 3 * 4);
+                int i = off + n;
+                while (pos + 4 <= end) {
+                    int b0 = DECODING_TABLE[in[pos] & 0xFF];
+                    int b1 = DECODING_TABLE[in[pos + 1] & 0xFF];
+                    int b2 = DECODING_TABLE[in[pos + 2] & 0xFF];
+                    int b3 = DECODING_TABLE[in[pos + 3] & 0xFF];
+                    if ((b0 | b1 | b2 | b3) < 0) {
+                        // padding or garbage
+                        break;
                     }
+                    int quad = (b0 << 18) | (b1 << 12) | (b2 << 6) | b3;
+                    b[i] = (byte) (quad >> 16);
+                    b[i + 1] = (byte) (quad >> 8);
+                    b[i + 2] = (byte) quad;
+                    i += 3;
+                    pos += 4;
+                }
+                if (i > off + n) {
+                    n = i - off;
+                    continue;
+                }
+            }
+            try {
+                if (!decodeQuad()) {
+                    break;
+                }
+            } catch (IOException e) {
+                if (n == 0) {
+                    throw e;
+                }
+                pendingException = e;
+                return n;
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * Decodes one quad into <code>buffer</code>.
+     * 
+     * @return <code>false</code> at the end of the stream
+     */
+    private boolean decodeQuad() throws IOException {
+        bytesLeftInBuffer = 3;
+        for (int i = 0; i < 4; i++) {
+            int c = next();
+            buffer <<= 6;
+            if (c < 0) {
+                if (i == 0) {
+                    bytesLeftInBuffer = 0;
+                    return false;
                 } else {
-                    int b = DECODING_TABLE[c];
-                    if (b == -2) {
-                        if (i <= 1) {
-                            throw new IOException(
-                                    "Base 64 padding in a bad position.");
-                        }
-                        bytesLeftInBuffer = 2;
-                    } else if (b == -1) {
-                        throw new IOException("Non-Base64 input: \u201C0x"
-                                + Integer.toHexString(c) + "\u201D.");
-                    } else {
-                        buffer |= b;
+                    bytesLeftInBuffer = 0;
+                    throw new EOFException();
+                }
+            } else if (bytesLeftInBuffer == 2) {
+                if (c == '=') {
+                    bytesLeftInBuffer = 1;
+                } else {
+                    bytesLeftInBuffer = 0;
+                    throw new IOException("Non-padding in Base64 stream after padding had started.");
+                }
+            } else {
+                int b = DECODING_TABLE[c];
+                if (b == -2) {
+                    if (i <= 1) {
+                        bytesLeftInBuffer = 0;
+                        throw new IOException(
+                                "Base 64 padding in a bad position.");
                     }
+                    bytesLeftInBuffer = 2;
+                } else if (b == -1) {
+                    bytesLeftInBuffer = 0;
+                    throw new IOException("Non-Base64 input: \u201C0x"
+                            + Integer.toHexString(c) + "\u201D.");
+                } else {
+                    buffer |= b;
                 }
             }
         }
-        int rv = (buffer & 0xFF0000) >> 16;
-        buffer <<= 8;
-        bytesLeftInBuffer--;
-        return rv;
+        return true;
+    }
+
+    /**
+     * Returns the next input byte, reading a block from the delegate when
+     * the buffer has run out.
+     */
+    private int next() throws IOException {
+        if (pos == limit) {
+            if (eof) {
+                return -1;
+            }
+            int r;
+            do {
+                r = delegate.read(in, 0, in.length);
+            } while (r == 0);
+            if (r < 0) {
+                eof = true;
+                return -1;
+            }
+            pos = 0;
+            limit = r;
+        }
+        return in[pos++] & 0xFF;
+    }
+
+    private void throwPending() throws IOException {
+        if (pendingException != null) {
+            IOException e = pendingException;
+            pendingException = null;
+            throw e;
+        }
     }
 
     /**
@@ -29,7 +29,26 @@ import java.net.MalformedURLException;
 
 public final class PercentDecodingReaderInputStream extends InputStream {
 
+    private static final int BUFFER_SIZE = 4096;
+
     private final Reader delegate;
+
+    /**
+     * Undecoded input read from the delegate in blocks.
+     */
+    private final char[] in = new char[BUFFER_SIZE];
+
+    private int pos = 0;
+
+    private int limit = 0;
+
+    private boolean eof = false;
+
+    /**
+     * An error found after some bytes had already been returned by a bulk
+     * read. Thrown by the next read.
+     */
+    private IOException pendingException = null;
     
     /**
      * @param delegate
@@ -43,7 +62,8 @@ public final class PercentDecodingReaderInputStream extends InputStream {
      */
     @Override
     public int read() throws IOException {
-        int c = delegate.read();
+        throwPending();
+        int c = next();
         if (c == -1) {
             return -1;
         } if (c == '%') {
@@ -55,11 +75,88 @@ public final class PercentDecodingReaderInputStream extends InputStream {
         }
     }
 
+    /**
+     * Copies runs of unescaped ASCII straight from the block read from the
+     * delegate.
+     * 
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        throwPending();
+        int n = 0;
+        while (n < len) {
+            int end = pos + Math.min(limit - pos, len - n);
+            int i = off + n;
+            while (pos < end) {
+                char c = in[pos];
+                if (c == '%' || c >= 0x80) {
+                    break;
+                }
+                b[i++] = (byte) c;
+                pos++;
+            }
+            n = i - off;
+            if (n == len) {
+                break;
+            }
+            try {
+                int c = read();
+                if (c == -1) {
+                    break;
+                }
+                b[off + n] = (byte) c;
+                n++;
+            } catch (IOException e) {
+                if (n == 0) {
+                    throw e;
+                }
+                pendingException = e;
+                return n;
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * Returns the next input character, reading a block from the delegate
+     * when the buffer has run out.
+     */
+    private int next() throws IOException {
+        if (pos == limit) {
+            if (eof) {
+                return -1;
+            }
+            int r;
+            do {
+                r = delegate.read(in, 0, in.length);
+            } while (r == 0);
+            if (r < 0) {
+                eof = true;
+                return -1;
+            }
+            pos = 0;
+            limit = r;
+        }
+        return in[pos++];
+    }
+
+    private void throwPending() throws IOException {
+        if (pendingException != null) {
+            IOException e = pendingException;
+            pendingException = null;
+            throw e;
+        }
+    }
+
     private int readHexByte() throws IOException {
-        int c = delegate.read();
+        int c = next();
         if (isHexDigit(c)) {
             int hi = Character.getNumericValue(c) << 4;
-            c = delegate.read();
+            c = next();
             if (isHexDigit(c)) {
                 return hi | Character.getNumericValue(c);
             } else {
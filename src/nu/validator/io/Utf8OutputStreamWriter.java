@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A buffering UTF-8 writer that can also pass through bytes that are already
+ * UTF-8 and capture the bytes produced for a stretch of output, so that
+ * serialized markup can be recorded once and written again later without
+ * going through a serializer.
+ */
+public class Utf8OutputStreamWriter extends Writer {
+
+    private static final int SURROGATE_OFFSET = 0x10000 - (0xD800 << 10) - 0xDC00;
+
+    private final OutputStream out;
+
+    private final byte[] buffer = new byte[8192];
+
+    private int pos = 0;
+
+    private int prev = 0;
+
+    private ByteArrayOutputStream capture = null;
+
+    public Utf8OutputStreamWriter(OutputStream out) {
+        super();
+        this.out = out;
+    }
+
+    @Override
+    public void write(char[] buf, int offset, int count) throws IOException {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            char c = buf[i];
+            if (c < 0x80 && prev == 0) {
+                if (pos == buffer.length) {
+                    drain();
+                }
+                buffer[pos++] = (byte) c;
+            } else {
+                this.write(c);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int offset, int count) throws IOException {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            this.write(str.charAt(i));
+        }
+    }
+
+    /**
+     * @see java.io.Writer#write(int)
+     */
+    @Override
+    public void write(int c) throws IOException {
+        c &= 0xFFFF; // per API contract
+        if ((c & 0xFC00) == 0xDC00) {
+            if (prev != 0) {
+                int intVal = (prev << 10) + c + SURROGATE_OFFSET;
+                prev = 0;
+                put(0xF0 | (intVal >> 18));
+                put(0x80 | ((intVal >> 12) & 0x3F));
+                put(0x80 | ((intVal >> 6) & 0x3F));
+                put(0x80 | (intVal & 0x3F));
+            } else {
+                put('?');
+            }
+            return;
+        }
+        if (prev != 0) {
+            // unpaired high surrogate
+            prev = 0;
+            put('?');
+        }
+        if (c < 0x80) {
+            put(c);
+        } else if (c < 0x800) {
+            put(0xC0 | (c >> 6));
+            put(0x80 | (c & 0x3F));
+        } else if ((c & 0xFC00) == 0xD800) {
+            prev = c;
+        } else {
+            put(0xE0 | (c >> 12));
+            put(0x80 | ((c >> 6) & 0x3F));
+            put(0x80 | (c & 0x3F));
+        }
+    }
+
+    private void put(int b) throws IOException {
+        if (pos == buffer.length) {
+            drain();
+        }
+        buffer[pos++] = (byte) b;
+    }
+
+    /**
+     * Writes bytes that are already UTF-8.
+     */
+    public void writeEncoded(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - pos) {
+            drain();
+            if (bytes.length > buffer.length) {
+                if (capture != null) {
+                    capture.write(bytes, 0, bytes.length);
+                }
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * Starts recording the bytes written from here on, discarding any
+     * unfinished recording.
+     */
+    public void startCapture() throws IOException {
+        drain();
+        capture = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Stops recording and returns the bytes written since
+     * <code>startCapture()</code>.
+     */
+    public byte[] endCapture() throws IOException {
+        drain();
+        byte[] captured = capture == null ? new byte[0] : capture.toByteArray();
+        capture = null;
+        return captured;
+    }
+
+    private void drain() throws IOException {
+        if (pos > 0) {
+            if (capture != null) {
+                capture.write(buffer, 0, pos);
+            }
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+        out.close();
+    }
+}
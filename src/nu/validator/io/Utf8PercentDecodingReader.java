@@ -28,7 +28,20 @@ import java.net.MalformedURLException;
 
 public final class Utf8PercentDecodingReader extends Reader {
 
+    private static final int BUFFER_SIZE = 4096;
+
     private final Reader delegate;
+
+    /**
+     * Undecoded input read from the delegate in blocks.
+     */
+    private final char[] in = new char[BUFFER_SIZE];
+
+    private int pos = 0;
+
+    private int limit = 0;
+
+    private boolean eof = false;
     
     private char pending = '\u0000';
     
@@ -51,7 +64,7 @@ public final class Utf8PercentDecodingReader extends Reader {
         }
         int byteVal = 0;
         int codePoint = 0;
-        int c = delegate.read();
+        int c = next();
         int trailBytes = 0;
         if (c == -1) {
             return -1;
@@ -106,8 +119,31 @@ public final class Utf8PercentDecodingReader extends Reader {
         }
     }
 
+    /**
+     * Returns the next input character, reading a block from the delegate
+     * when the buffer has run out.
+     */
+    private int next() throws IOException {
+        if (pos == limit) {
+            if (eof) {
+                return -1;
+            }
+            int r;
+            do {
+                r = delegate.read(in, 0, in.length);
+            } while (r == 0);
+            if (r < 0) {
+                eof = true;
+                return -1;
+            }
+            pos = 0;
+            limit = r;
+        }
+        return in[pos++];
+    }
+
     private int readPercentHexByte() throws IOException {
-        int c = delegate.read();
+        int c = next();
         if (c != '%') {
             throw new MalformedURLException("Percent-encoded trail byte missing.");                            
         }
@@ -115,10 +151,10 @@ public final class Utf8PercentDecodingReader extends Reader {
     }
 
     private int readHexByte() throws IOException {
-        int c = delegate.read();
+        int c = next();
         if (isHexDigit(c)) {
             int hi = Character.getNumericValue(c) << 4;
-            c = delegate.read();
+            c = next();
             if (isHexDigit(c)) {
                 return hi | Character.getNumericValue(c);
             } else {
@@ -139,10 +175,29 @@ public final class Utf8PercentDecodingReader extends Reader {
         delegate.close();
     }
 
+    /**
+     * Copies runs of unescaped characters straight from the block read from
+     * the delegate.
+     * 
+     * @see java.io.Reader#read(char[], int, int)
+     */
     @Override
     public int read(char[] cbuf, int off, int len) throws IOException {
         int i = 0;
         while (i < len) {
+            if (pending == '\u0000') {
+                int end = pos + Math.min(limit - pos, len - i);
+                int start = pos;
+                while (pos < end && in[pos] != '%') {
+                    pos++;
+                }
+                if (pos > start) {
+                    System.arraycopy(in, start, cbuf, off, pos - start);
+                    off += pos - start;
+                    i += pos - start;
+                    continue;
+                }
+            }
             int c = read();
             if (c == -1) {
                 if (i == 0) {
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.io.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Random;
+
+import nu.validator.io.DataUri;
+
+/**
+ * Measures the throughput of decoding <code>data:</code> URIs of the given
+ * size in megabytes (default 8), once a byte at a time as the streams used
+ * to be read and once in blocks, for Base64 and for percent-encoded
+ * payloads.
+ */
+public class DataUriBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        byte[] payload = new byte[megabytes * 1024 * 1024];
+        new Random(0).nextBytes(payload);
+        String base64 = "data:application/octet-stream;base64,"
+                + Base64.getEncoder().encodeToString(payload);
+        StringBuilder sb = new StringBuilder("data:text/plain,");
+        for (int i = 0; i < payload.length; i++) {
+            int b = payload[i] & 0x7F;
+            if (b > 0x20 && b < 0x7F && b != '%' && b != '#') {
+                sb.append((char) b);
+            } else {
+                sb.append('%').append(Character.forDigit(b >> 4, 16)).append(
+                        Character.forDigit(b & 0xF, 16));
+            }
+        }
+        String percent = sb.toString();
+        for (int round = 0; round < ROUNDS; round++) {
+            run("base64, byte at a time", base64, false);
+            run("base64, blocks", base64, true);
+            run("percent, byte at a time", percent, false);
+            run("percent, blocks", percent, true);
+        }
+    }
+
+    private static void run(String label, String uri, boolean blocks)
+            throws IOException {
+        long start = System.nanoTime();
+        long total = 0;
+        try (InputStream in = new DataUri(uri).getInputStream()) {
+            if (blocks) {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf, 0, buf.length)) != -1) {
+                    total += n;
+                }
+            } else {
+                while (in.read() != -1) {
+                    total++;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("%s: %d bytes in %d ms, %.1f MB/s",
+                label, total, elapsed / 1000000,
+                (total / (1024.0 * 1024.0)) / (elapsed / 1e9)));
+    }
+}
@@ -1,11 +1,21 @@
 package nu.validator.localentities;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import nu.validator.xml.TypedInputSource;
 
@@ -23,6 +33,26 @@ public class LocalCacheEntityResolver implements EntityResolver {
 
     private static final Map<String, String> PATH_MAP = new HashMap<>();
 
+    /**
+     * Resource contents by resource path. Entries are immutable once added,
+     * so the arrays are shared by all the streams handed out.
+     */
+    private static final ConcurrentHashMap<String, CachedResource> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Whether to read all the mapped resources into the cache up front
+     * instead of on first use.
+     */
+    private static final boolean PRELOAD = Boolean.getBoolean(
+            "nu.validator.localentities.preload");
+
+    /**
+     * The number of times a resource has to be resolved before its bytes are
+     * moved off the heap into a direct buffer. Zero disables pinning.
+     */
+    private static final int PIN_AFTER = Integer.getInteger(
+            "nu.validator.localentities.pin-after", 0).intValue();
+
     static {
         try {
             BufferedReader r = new BufferedReader(new InputStreamReader(
@@ -38,6 +68,180 @@ public class LocalCacheEntityResolver implements EntityResolver {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        if (PRELOAD) {
+            for (String path : PATH_MAP.values()) {
+                cachedResource(path);
+            }
+        }
+    }
+
+    private static final class CachedResource {
+
+        private final int length;
+
+        private final AtomicInteger hits = new AtomicInteger();
+
+        /**
+         * The heap copy; dropped once the resource has been pinned.
+         */
+        private volatile byte[] bytes;
+
+        private volatile ByteBuffer pinned;
+
+        CachedResource(byte[] bytes) {
+            this.bytes = bytes;
+            this.length = bytes.length;
+        }
+
+        InputStream newStream() {
+            int count = hits.incrementAndGet();
+            // Read the array before the buffer: pinning publishes the buffer
+            // before dropping the array, so one of the two is always seen.
+            byte[] array = bytes;
+            ByteBuffer buffer = pinned;
+            if (buffer == null && PIN_AFTER > 0 && count == PIN_AFTER) {
+                buffer = ByteBuffer.allocateDirect(length);
+                buffer.put(array);
+                buffer.flip();
+                pinned = buffer;
+                bytes = null;
+            }
+            if (buffer != null) {
+                return new ByteBufferInputStream(buffer.duplicate());
+            }
+            return new ByteArrayInputStream(array);
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + k);
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Returns the cached resource for a path, reading it from the class path
+     * on first use, or <code>null</code> if there is no such resource.
+     */
+    private static CachedResource cachedResource(String path) {
+        CachedResource resource = CACHE.get(path);
+        if (resource != null) {
+            return resource;
+        }
+        try (InputStream stream = LOADER.getResourceAsStream(path)) {
+            if (stream == null) {
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            resource = new CachedResource(out.toByteArray());
+        } catch (IOException e) {
+            return null;
+        }
+        CachedResource existing = CACHE.putIfAbsent(path, resource);
+        return existing == null ? resource : existing;
+    }
+
+    /**
+     * Returns the number of bytes held by the resource cache.
+     */
+    public static long getCachedBytes() {
+        long total = 0;
+        for (CachedResource resource : CACHE.values()) {
+            total += resource.length;
+        }
+        return total;
+    }
+
+    /**
+     * Returns a report of the cached resources, most resolved first: one line
+     * per resource with the hit count, the size, whether it is held off-heap
+     * and the path, followed by a total line.
+     */
+    public static String getCacheReport() {
+        List<Map.Entry<String, CachedResource>> entries = new ArrayList<>(
+                CACHE.entrySet());
+        Collections.sort(entries,
+                new Comparator<Map.Entry<String, CachedResource>>() {
+                    @Override
+                    public int compare(Map.Entry<String, CachedResource> a,
+                            Map.Entry<String, CachedResource> b) {
+                        return b.getValue().hits.get()
+                                - a.getValue().hits.get();
+                    }
+                });
+        StringBuilder sb = new StringBuilder();
+        long heap = 0;
+        long offHeap = 0;
+        for (Map.Entry<String, CachedResource> entry : entries) {
+            CachedResource resource = entry.getValue();
+            boolean pinned = resource.pinned != null;
+            if (pinned) {
+                offHeap += resource.length;
+            } else {
+                heap += resource.length;
+            }
+            sb.append(String.format("%8d %8d %s %s%n", resource.hits.get(),
+                    resource.length, pinned ? "off-heap" : "heap    ",
+                    entry.getKey()));
+        }
+        sb.append(String.format("%d resources, %d bytes on heap, %d bytes off heap%n",
+                entries.size(), heap, offHeap));
+        return sb.toString();
+    }
+
+    /**
+     * Reads all the mapped resources into the cache and prints the size report.
+     */
+    public static void main(String[] args) {
+        for (String path : PATH_MAP.values()) {
+            cachedResource(path);
+        }
+        System.out.print(getCacheReport());
+    }
+
+    /**
+     * Returns the system identifiers that are resolved from the local cache.
+     */
+    public static Set<String> getLocalSystemIds() {
+        return Collections.unmodifiableSet(PATH_MAP.keySet());
     }
 
     public static InputStream getPresetsAsStream() {
@@ -68,14 +272,12 @@ public class LocalCacheEntityResolver implements EntityResolver {
             throws SAXException, IOException {
         String path = PATH_MAP.get(systemId);
         if (path != null) {
-            @SuppressWarnings("resource")
-            InputStream stream = LOADER.getResourceAsStream(path);
-            if (stream != null) {
+            CachedResource resource = cachedResource(path);
+            if (resource != null) {
                 TypedInputSource is = new TypedInputSource();
                 if (systemId.endsWith(".rnc")) {
                     is.setType("application/relax-ng-compact-syntax");
                     if (!allowRnc) {
-                        stream.close();
                         throw new IOException("Not an XML resource: "
                                 + systemId);
                     }
@@ -86,7 +288,7 @@ public class LocalCacheEntityResolver implements EntityResolver {
                 } else {
                     is.setType("application/xml");
                 }
-                is.setByteStream(stream);
+                is.setByteStream(resource.newStream());
                 is.setSystemId(systemId);
                 is.setPublicId(publicId);
                 return is;
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.messages;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nu.validator.spec.Spec;
+
+/**
+ * Serialized elaborations (content model, context and attribute
+ * descriptions from the spec) shared by all the message emitters that use
+ * the same spec. Each entry is the UTF-8 markup one emitter produced for a
+ * given kind of elaboration, element or attribute name and output format.
+ */
+public final class ElaborationCache {
+
+    private final Spec spec;
+
+    private final int maxEntries;
+
+    private final ConcurrentHashMap<String, byte[]> cache = new ConcurrentHashMap<>();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param spec
+     *            the spec the elaborations come from
+     * @param maxEntries
+     *            the number of elaborations to keep
+     */
+    public ElaborationCache(Spec spec, int maxEntries) {
+        this.spec = spec;
+        this.maxEntries = maxEntries;
+    }
+
+    Spec getSpec() {
+        return spec;
+    }
+
+    byte[] get(String key) {
+        byte[] serialized = cache.get(key);
+        if (serialized == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return serialized;
+    }
+
+    void put(String key, byte[] serialized) {
+        if (cache.size() < maxEntries
+                && cache.putIfAbsent(key, serialized) == null) {
+            bytes.addAndGet(serialized.length);
+        }
+    }
+
+    /**
+     * Returns the number of cached elaborations.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the total size of the cached elaborations in bytes.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Returns the number of elaborations written from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of elaborations that had to be serialized.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the proportion of elaborations written from the cache.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+}
@@ -148,6 +148,26 @@ public class GnuMessageEmitter extends MessageEmitter {
         return messageTextHandler;
     }
 
+    /**
+     * @see nu.validator.messages.MessageEmitter#suppressedOccurrences(int, int[])
+     */
+    @Override
+    public void suppressedOccurrences(int count, int[] linesAndColumns)
+            throws SAXException {
+        try {
+            writer.write(" (repeated ");
+            writer.write(Integer.toString(count));
+            writer.write(" more times");
+            if (linesAndColumns.length > 0) {
+                writer.write(" at ");
+                writer.write(locationList(linesAndColumns, '.', ", "));
+            }
+            writer.write(')');
+        } catch (IOException e) {
+            throw new SAXException(e.getMessage(), e);
+        }
+    }
+
     @Override
     public void endMessage() throws SAXException {
         try {
@@ -137,6 +137,11 @@ public class JsonExtractHandler implements SourceHandler {
         return hiliteStart;
     }
 
+    @Override
+    public void skippedLines(int oneBasedFirst, int oneBasedLast)
+            throws SAXException {
+    }
+
     @Override
     public void setLineErrors(SortedSet<Integer> oneBasedLineErrors) throws SAXException {
         
@@ -25,6 +25,7 @@ package nu.validator.messages;
 import nu.validator.json.JsonHandler;
 import nu.validator.messages.types.MessageType;
 import nu.validator.source.SourceHandler;
+import nu.validator.xml.StageTimings;
 
 import org.xml.sax.SAXException;
 
@@ -98,6 +99,21 @@ public class JsonMessageEmitter extends MessageEmitter {
     public void endFullSource() throws SAXException {
     }
 
+    /**
+     * @see nu.validator.messages.MessageEmitter#timings(nu.validator.xml.StageTimings)
+     */
+    @Override
+    public void timings(StageTimings timings) throws SAXException {
+        maybeCloseArray();
+        handler.key("timings");
+        handler.startObject();
+        for (String stage : timings.getStages()) {
+            handler.key(stage);
+            handler.number(timings.getMillis(stage));
+        }
+        handler.endObject();
+    }
+
     /**
      * @see nu.validator.messages.MessageEmitter#endMessages()
      */
@@ -176,6 +192,27 @@ public class JsonMessageEmitter extends MessageEmitter {
         return extractHandler;
     }
 
+    /**
+     * @see nu.validator.messages.MessageEmitter#suppressedOccurrences(int, int[])
+     */
+    @Override
+    public void suppressedOccurrences(int count, int[] linesAndColumns)
+            throws SAXException {
+        handler.key("suppressedOccurrences");
+        handler.number(count);
+        handler.key("locations");
+        handler.startArray();
+        for (int i = 0; i < linesAndColumns.length; i += 2) {
+            handler.startArray();
+            handler.number(linesAndColumns[i]);
+            if (linesAndColumns[i + 1] != -1) {
+                handler.number(linesAndColumns[i + 1]);
+            }
+            handler.endArray();
+        }
+        handler.endArray();
+    }
+
     /**
      * @see nu.validator.messages.MessageEmitter#startText()
      */
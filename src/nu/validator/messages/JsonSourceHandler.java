@@ -89,6 +89,11 @@ public class JsonSourceHandler implements SourceHandler {
         handler.startString();
     }
     
+    @Override
+    public void skippedLines(int oneBasedFirst, int oneBasedLast)
+            throws SAXException {
+    }
+
     @Override
     public void setLineErrors(SortedSet<Integer> oneBasedLineErrors) throws SAXException {
         
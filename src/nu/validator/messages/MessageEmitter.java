@@ -22,9 +22,11 @@
 
 package nu.validator.messages;
 
+import nu.validator.io.Utf8OutputStreamWriter;
 import nu.validator.messages.types.MessageType;
 import nu.validator.saxtree.DocumentFragment;
 import nu.validator.source.SourceHandler;
+import nu.validator.xml.StageTimings;
 
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
@@ -43,6 +45,14 @@ public abstract class MessageEmitter {
 
     }
 
+    /**
+     * Reports how long the stages of checking took. Called just before
+     * <code>endMessages</code> if timing was requested.
+     */
+    public void timings(StageTimings timings) throws SAXException {
+
+    }
+
     public abstract void startMessage(MessageType type, String systemId,
             int oneBasedFirstLine, int oneBasedFirstColumn,
             int oneBasedLastLine, int oneBasedLastColumn, boolean exact)
@@ -66,6 +76,38 @@ public abstract class MessageEmitter {
 
     }
 
+    /**
+     * Reports that the current message stands for <code>count</code> further
+     * occurrences that were not emitted individually. Called after the text
+     * of the message. <code>linesAndColumns</code> holds the one-based line
+     * and column of each located occurrence as consecutive pairs; the column
+     * is -1 where unknown.
+     */
+    public void suppressedOccurrences(int count, int[] linesAndColumns)
+            throws SAXException {
+
+    }
+
+    /**
+     * Formats a location list such as the one passed to
+     * <code>suppressedOccurrences()</code> as "line:column" items.
+     */
+    protected static String locationList(int[] linesAndColumns,
+            char columnSeparator, String itemSeparator) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < linesAndColumns.length; i += 2) {
+            if (i > 0) {
+                sb.append(itemSeparator);
+            }
+            sb.append(linesAndColumns[i]);
+            if (linesAndColumns[i + 1] != -1) {
+                sb.append(columnSeparator);
+                sb.append(linesAndColumns[i + 1]);
+            }
+        }
+        return sb.toString();
+    }
+
     public ContentHandler startElaboration() throws SAXException {
         return null;
     }
@@ -74,6 +116,23 @@ public abstract class MessageEmitter {
 
     }
 
+    /**
+     * Returns the writer that the elaboration content handler serializes to
+     * if serialized elaborations may be captured from it and written to it
+     * directly, or <code>null</code>.
+     */
+    public Utf8OutputStreamWriter getElaborationWriter() {
+        return null;
+    }
+
+    /**
+     * Returns a name for the serialization the elaboration writer receives,
+     * so that elaborations serialized differently are cached apart.
+     */
+    public String getElaborationFormat() {
+        return null;
+    }
+
     public SourceHandler startFullSource(int lineOffset) throws SAXException {
         return null;
     }
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +56,7 @@ import nu.validator.spec.html5.Html5AttributeDatatypeBuilder;
 import nu.validator.spec.html5.ImageReportAdviceBuilder;
 import nu.validator.xml.AttributesImpl;
 import nu.validator.xml.CharacterUtil;
+import nu.validator.xml.StageTimings;
 import nu.validator.xml.XhtmlSaxEmitter;
 
 import org.relaxng.datatype.DatatypeException;
@@ -412,6 +414,16 @@ public final class MessageEmitterAdapter implements ErrorHandler {
 
     private Spec spec = EmptySpec.THE_INSTANCE;
 
+    private ElaborationCache elaborationCache = null;
+
+    private int aggregate = 0;
+
+    private int sourceContext = -1;
+
+    private StageTimings timings = null;
+
+    private final Map<String, AggregatedMessage> aggregatedMessages = new LinkedHashMap<>();
+
     private boolean html = false;
 
     private boolean loggingOk = false;
@@ -629,6 +641,8 @@ public final class MessageEmitterAdapter implements ErrorHandler {
 
     public void end(String successMessage, String failureMessage,
             String language) throws SAXException {
+        long start = System.nanoTime();
+        emitAggregatedMessages();
         ResultHandler resultHandler = emitter.startResult();
         if (resultHandler != null) {
             if (isIndeterminate()) {
@@ -671,10 +685,14 @@ public final class MessageEmitterAdapter implements ErrorHandler {
         if (showSource) {
             SourceHandler sourceHandler = emitter.startFullSource(lineOffset);
             if (sourceHandler != null) {
-                sourceCode.emitSource(sourceHandler);
+                sourceCode.emitSource(sourceHandler, sourceContext);
             }
             emitter.endFullSource();
         }
+        if (timings != null) {
+            timings.addSince("emit", start);
+            emitter.timings(timings);
+        }
         emitter.endMessages(language);
     }
 
@@ -763,6 +781,27 @@ public final class MessageEmitterAdapter implements ErrorHandler {
         if (errorsOnly && type.getSuperType() == "info") {
             return;
         }
+        if (aggregate > 0 && suppressDuplicate(type, message, systemId,
+                oneBasedLine, oneBasedColumn, exact)) {
+            return;
+        }
+        if (timings == null) {
+            emitMessage(type, message, systemId, oneBasedLine, oneBasedColumn,
+                    exact);
+        } else {
+            long start = System.nanoTime();
+            try {
+                emitMessage(type, message, systemId, oneBasedLine,
+                        oneBasedColumn, exact);
+            } finally {
+                timings.addSince("emit", start);
+            }
+        }
+    }
+
+    private void emitMessage(MessageType type, Exception message,
+            String systemId, int oneBasedLine, int oneBasedColumn,
+            boolean exact) throws SAXException {
         String uri = sourceCode.getUri();
         if (oneBasedLine > -1
                 && (uri == systemId || (uri != null && uri.equals(systemId)))) {
@@ -783,6 +822,111 @@ public final class MessageEmitterAdapter implements ErrorHandler {
         }
     }
 
+    /**
+     * Counts the message in its aggregation group and returns
+     * <code>true</code> if the group has had <code>aggregate</code>
+     * occurrences emitted already. A suppressed occurrence only leaves its
+     * location behind; no extract is generated for it.
+     */
+    private boolean suppressDuplicate(MessageType type, Exception message,
+            String systemId, int oneBasedLine, int oneBasedColumn,
+            boolean exact) {
+        String key = aggregationKey(type, message, systemId);
+        AggregatedMessage group = aggregatedMessages.get(key);
+        if (group == null) {
+            group = new AggregatedMessage(type, message, systemId);
+            aggregatedMessages.put(key, group);
+        }
+        if (group.emitted < aggregate) {
+            group.emitted++;
+            return false;
+        }
+        group.suppress(oneBasedLine == -1 ? -1 : oneBasedLine + lineOffset,
+                oneBasedColumn);
+        if (timings == null) {
+            emitMessage(type, message, systemId, oneBasedLine, oneBasedColumn,
+                    exact);
+        } else {
+            long start = System.nanoTime();
+            try {
+                emitMessage(type, message, systemId, oneBasedLine,
+                        oneBasedColumn, exact);
+            } finally {
+                timings.addSince("emit", start);
+            }
+        }
+    }
+
+    private void emitMessage(MessageType type, Exception message,
+            String systemId, int oneBasedLine, int oneBasedColumn,
+            boolean exact) throws SAXException {
+        String uri = sourceCode.getUri();
+        if (oneBasedLine > -1
+                && (uri == systemId || (uri != null && uri.equals(systemId)))) {
+            if (oneBasedColumn > -1) {
+                Location location = sourceCode.newLocatorLocation(
+                        oneBasedLine, oneBasedColumn);
+                if (exact) {
+                    sourceCode.rememberExactError(location);
+                } else if (sourceCode.isWithinKnownSource(location)) {
+                    sourceCode.rememberRangeEnd(location);
+                }
+            } else if (sourceCode.isWithinKnownSource(oneBasedLine)) {
+                sourceCode.rememberLineError(oneBasedLine);
+            }
+        }
+        return true;
+    }
+
+    private static String aggregationKey(MessageType type, Exception message,
+            String systemId) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(type.getFlatType());
+        sb.append('\u0000');
+        if (systemId != null) {
+            sb.append(systemId);
+        }
+        sb.append('\u0000');
+        String msg = message.getMessage();
+        if (msg != null) {
+            boolean space = false;
+            for (int i = 0; i < msg.length(); i++) {
+                char c = msg.charAt(i);
+                if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                    space = true;
+                } else {
+                    if (space) {
+                        sb.append(' ');
+                        space = false;
+                    }
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Emits one summary message for each aggregation group that had
+     * occurrences suppressed and forgets all groups. Called by
+     * <code>end()</code>.
+     */
+    public void emitAggregatedMessages() throws SAXException {
+        for (AggregatedMessage group : aggregatedMessages.values()) {
+            if (group.suppressed == 0) {
+                continue;
+            }
+            String systemId = batchMode ? group.systemId : null;
+            startMessage(group.type, scrub(shortenDataUri(systemId)), -1, -1,
+                    -1, -1, false);
+            messageText(group.message);
+            emitter.suppressedOccurrences(group.suppressed,
+                    group.getLocations());
+            endMessage();
+        }
+        aggregatedMessages.clear();
+    }
+
     private void messageWithRange(MessageType type, Exception message,
             String systemId, int oneBasedLine, int oneBasedColumn)
             throws SAXException {
@@ -1398,6 +1542,11 @@ public final class MessageEmitterAdapter implements ErrorHandler {
      * @throws SAXException
      */
     private void elaborateContentModel(Name elt) throws SAXException {
+        String key = elaborationKey("content-model", elt, null);
+        if (writeCachedElaboration(key)) {
+            return;
+        }
+        startElaborationCapture(key);
         DocumentFragment dds = spec.contentModelDescription(elt);
         if (dds != null) {
             ContentHandler ch = emitter.startElaboration();
@@ -1411,10 +1560,17 @@ public final class MessageEmitterAdapter implements ErrorHandler {
             }
             emitter.endElaboration();
         }
+        endElaborationCapture(key);
     }
 
     private void elaborateContentModelandContext(Name parent, Name child)
             throws SAXException {
+        String key = elaborationKey("content-model-and-context", parent,
+                child);
+        if (writeCachedElaboration(key)) {
+            return;
+        }
+        startElaborationCapture(key);
         DocumentFragment contentModelDds = spec.contentModelDescription(parent);
         DocumentFragment contextDds = spec.contextDescription(child);
         if (contentModelDds != null || contextDds != null) {
@@ -1435,6 +1591,7 @@ public final class MessageEmitterAdapter implements ErrorHandler {
             }
             emitter.endElaboration();
         }
+        endElaborationCapture(key);
     }
 
     /**
@@ -1448,6 +1605,11 @@ public final class MessageEmitterAdapter implements ErrorHandler {
 
     private void elaborateElementSpecificAttributes(Name elt, Name attribute)
             throws SAXException {
+        String key = elaborationKey("attributes", elt, attribute);
+        if (writeCachedElaboration(key)) {
+            return;
+        }
+        startElaborationCapture(key);
         if ("input".equals(elt.getLocalName())) {
             ContentHandler ch = emitter.startElaboration();
             if (ch != null) {
@@ -1470,6 +1632,65 @@ public final class MessageEmitterAdapter implements ErrorHandler {
                 emitter.endElaboration();
             }
         }
+        endElaborationCapture(key);
+    }
+
+    /**
+     * Returns the cache key for an elaboration about one or two names, or
+     * <code>null</code> if the elaboration cannot be cached for this
+     * emitter.
+     */
+    private String elaborationKey(String kind, Name first, Name second) {
+        if (elaborationCache == null || elaborationCache.getSpec() != spec
+                || emitter.getElaborationWriter() == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(kind).append(' ').append(emitter.getElaborationFormat());
+        sb.append(' ').append(first.getNamespaceUri());
+        sb.append(' ').append(first.getLocalName());
+        if (second != null) {
+            sb.append(' ').append(second.getNamespaceUri());
+            sb.append(' ').append(second.getLocalName());
+        }
+        return sb.toString();
+    }
+
+    private boolean writeCachedElaboration(String key) throws SAXException {
+        if (key == null) {
+            return false;
+        }
+        byte[] serialized = elaborationCache.get(key);
+        if (serialized == null) {
+            return false;
+        }
+        try {
+            emitter.getElaborationWriter().writeEncoded(serialized);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+        return true;
+    }
+
+    private void startElaborationCapture(String key) throws SAXException {
+        if (key != null) {
+            try {
+                emitter.getElaborationWriter().startCapture();
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
+    }
+
+    private void endElaborationCapture(String key) throws SAXException {
+        if (key != null) {
+            try {
+                elaborationCache.put(key,
+                        emitter.getElaborationWriter().endCapture());
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
     }
 
     private void emitElementSpecificAttributesDt(
@@ -1665,6 +1886,51 @@ public final class MessageEmitterAdapter implements ErrorHandler {
         this.spec = spec;
     }
 
+    /**
+     * Sets the cache of serialized elaborations. It is only used when it
+     * was made for the spec set on this adapter and the emitter exposes the
+     * writer it serializes to.
+     * 
+     * @param elaborationCache
+     *            the cache, or <code>null</code>
+     */
+    public void setElaborationCache(ElaborationCache elaborationCache) {
+        this.elaborationCache = elaborationCache;
+    }
+
+    /**
+     * Sets how many occurrences of the same message are emitted in full.
+     * Further occurrences are only counted and located, and reported in one
+     * summary message per group when the messages end. Messages are grouped
+     * by type, subtype, resource and text with whitespace collapsed.
+     *
+     * @param aggregate
+     *            the number of occurrences to emit in full, or 0 to emit
+     *            every occurrence
+     */
+    public void setAggregate(int aggregate) {
+        this.aggregate = aggregate;
+    }
+
+    /**
+     * Sets how many lines of the full source are shown around each line
+     * that has a message. The lines in between are collapsed.
+     *
+     * @param sourceContext
+     *            the number of lines, or -1 to show the whole source
+     */
+    public void setSourceContext(int sourceContext) {
+        this.sourceContext = sourceContext;
+    }
+
+    /**
+     * Records the time spent emitting messages as the "emit" stage and
+     * reports the timings to the emitter at the end.
+     */
+    public void setTimings(StageTimings timings) {
+        this.timings = timings;
+    }
+
     /**
      * Sets the html.
      *
@@ -1718,4 +1984,48 @@ public final class MessageEmitterAdapter implements ErrorHandler {
                 (oneBasedLastLine == -1) ? -1 : oneBasedLastLine + lineOffset,
                 oneBasedLastColumn, exact);
     }
+
+    private static final class AggregatedMessage {
+
+        final MessageType type;
+
+        final Exception message;
+
+        final String systemId;
+
+        int emitted = 0;
+
+        int suppressed = 0;
+
+        private int[] locations = new int[16];
+
+        private int length = 0;
+
+        AggregatedMessage(MessageType type, Exception message,
+                String systemId) {
+            this.type = type;
+            this.message = message;
+            this.systemId = systemId;
+        }
+
+        void suppress(int oneBasedLine, int oneBasedColumn) {
+            suppressed++;
+            if (oneBasedLine == -1) {
+                return;
+            }
+            if (length == locations.length) {
+                int[] newLocations = new int[length << 1];
+                System.arraycopy(locations, 0, newLocations, 0, length);
+                locations = newLocations;
+            }
+            locations[length++] = oneBasedLine;
+            locations[length++] = oneBasedColumn;
+        }
+
+        int[] getLocations() {
+            int[] rv = new int[length];
+            System.arraycopy(locations, 0, rv, 0, length);
+            return rv;
+        }
+    }
 }
@@ -52,6 +52,12 @@ public class TextMessageEmitter extends MessageEmitter {
 
     private static final char[] IN_RESOURCE = " in resource ".toCharArray();
 
+    private static final char[] REPEATED = "Repeated ".toCharArray();
+
+    private static final char[] MORE_TIMES = " more times".toCharArray();
+
+    private static final char[] AT = " at ".toCharArray();
+
     private final Writer writer;
 
     private final TextMessageTextHandler messageTextHandler;
@@ -214,6 +220,32 @@ public class TextMessageEmitter extends MessageEmitter {
         }
     }
 
+    /**
+     * @see nu.validator.messages.MessageEmitter#suppressedOccurrences(int, int[])
+     */
+    @Override
+    public void suppressedOccurrences(int count, int[] linesAndColumns)
+            throws SAXException {
+        try {
+            if (!textEmitted) {
+                writer.write(PERIOD);
+                writer.write('\n');
+                textEmitted = true;
+            }
+            writer.write(REPEATED);
+            writer.write(Integer.toString(count));
+            writer.write(MORE_TIMES);
+            if (linesAndColumns.length > 0) {
+                writer.write(AT);
+                writer.write(locationList(linesAndColumns, ':', ", "));
+            }
+            writer.write(PERIOD);
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new SAXException(e.getMessage(), e);
+        }
+    }
+
     @Override
     public void endMessage() throws SAXException {
         try {
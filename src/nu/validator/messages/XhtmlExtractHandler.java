@@ -103,6 +103,11 @@ public class XhtmlExtractHandler implements SourceHandler {
         emitter.startElement("b");
     }
 
+    @Override
+    public void skippedLines(int oneBasedFirst, int oneBasedLast)
+            throws SAXException {
+    }
+
     @Override
     public void setLineErrors(SortedSet<Integer> oneBasedLineErrors) throws SAXException {
         
@@ -23,6 +23,7 @@
 
 package nu.validator.messages;
 
+import nu.validator.io.Utf8OutputStreamWriter;
 import nu.validator.messages.types.MessageType;
 import nu.validator.saxtree.DocumentFragment;
 import nu.validator.saxtree.TreeParser;
@@ -46,6 +47,8 @@ public class XhtmlMessageEmitter extends MessageEmitter implements ImageReviewHa
 
     private static final char[] PERIOD = { '.' };
 
+    private static final char[] COMMA_SPACE = { ',', ' ' };
+
     private static final char[] ON_LINE = "On line ".toCharArray();
 
     private static final char[] AT_LINE = "At line ".toCharArray();
@@ -58,6 +61,10 @@ public class XhtmlMessageEmitter extends MessageEmitter implements ImageReviewHa
 
     private static final char[] IN_RESOURCE = " in resource ".toCharArray();
 
+    private static final char[] REPEATED = "Repeated ".toCharArray();
+
+    private static final char[] MORE_TIMES = " more times".toCharArray();
+
     private static final char[] NOT_RESOLVABLE = "Not resolvable".toCharArray();
 
     private static final char[] EMPTY_STRING_AS_ALT = "Omit image in non-graphical presentation".toCharArray();
@@ -102,11 +109,30 @@ public class XhtmlMessageEmitter extends MessageEmitter implements ImageReviewHa
     
     private final TreeParser treeParser;
 
+    private final Utf8OutputStreamWriter elaborationWriter;
+
+    private final String elaborationFormat;
+
     /**
      * @param contentHandler
      */
     public XhtmlMessageEmitter(ContentHandler contentHandler) {
+        this(contentHandler, null, null);
+    }
+
+    /**
+     * @param contentHandler
+     * @param writer
+     *            the writer <code>contentHandler</code> serializes to, or
+     *            <code>null</code>
+     * @param format
+     *            the name of the serialization, such as "html" or "xhtml"
+     */
+    public XhtmlMessageEmitter(ContentHandler contentHandler,
+            Utf8OutputStreamWriter writer, String format) {
         super();
+        this.elaborationWriter = writer;
+        this.elaborationFormat = format;
         this.contentHandler = contentHandler;
         this.emitter = new XhtmlSaxEmitter(contentHandler);
         this.messageTextHandler = new XhtmlMessageTextHandler(emitter);
@@ -293,6 +319,40 @@ public class XhtmlMessageEmitter extends MessageEmitter implements ImageReviewHa
         maybeEmitLocation(true);
     }
 
+    /**
+     * @see nu.validator.messages.MessageEmitter#suppressedOccurrences(int, int[])
+     */
+    @Override
+    public void suppressedOccurrences(int count, int[] linesAndColumns)
+            throws SAXException {
+        if (!textEmitted) {
+            maybeCloseTextPara();
+            textEmitted = true;
+        }
+        this.emitter.startElementWithClass("p", "suppressed");
+        this.emitter.characters(REPEATED);
+        this.emitter.characters(Integer.toString(count));
+        this.emitter.characters(MORE_TIMES);
+        for (int i = 0; i < linesAndColumns.length; i += 2) {
+            this.emitter.characters(i == 0 ? COLON_SPACE : COMMA_SPACE);
+            int line = linesAndColumns[i];
+            int column = linesAndColumns[i + 1];
+            String label = column == -1 ? Integer.toString(line)
+                    : line + ":" + column;
+            if (willShowSource && systemId == null) {
+                attrs.clear();
+                attrs.addAttribute("href", "#l" + line);
+                emitter.startElement("a", attrs);
+                this.emitter.characters(label);
+                emitter.endElement("a");
+            } else {
+                this.emitter.characters(label);
+            }
+        }
+        this.emitter.characters(PERIOD);
+        this.emitter.endElement("p");
+    }
+
     /**
      * @see nu.validator.messages.MessageEmitter#startMessages(java.lang.String, boolean)
      */
@@ -387,6 +447,22 @@ public class XhtmlMessageEmitter extends MessageEmitter implements ImageReviewHa
         return contentHandler;
     }
 
+    /**
+     * @see nu.validator.messages.MessageEmitter#getElaborationWriter()
+     */
+    @Override
+    public Utf8OutputStreamWriter getElaborationWriter() {
+        return elaborationWriter;
+    }
+
+    /**
+     * @see nu.validator.messages.MessageEmitter#getElaborationFormat()
+     */
+    @Override
+    public String getElaborationFormat() {
+        return elaborationFormat;
+    }
+
     /**
      * @see nu.validator.messages.MessageEmitter#endImageReview()
      */
@@ -80,8 +80,9 @@ public class XhtmlSourceHandler implements SourceHandler {
         if (!listOpen) {
             attrs.clear();
             attrs.addAttribute("class", "source");
-            if (lineOffset != 0) {
-                attrs.addAttribute("start", Integer.toString(1 + lineOffset));                
+            if (lineNumber + lineOffset != 0) {
+                attrs.addAttribute("start",
+                        Integer.toString(1 + lineNumber + lineOffset));
             }
             emitter.startElement("ol", attrs);
             listOpen = true;
@@ -150,6 +151,27 @@ public class XhtmlSourceHandler implements SourceHandler {
         lineOpen = false;
     }
 
+    @Override
+    public void skippedLines(int oneBasedFirst, int oneBasedLast)
+            throws SAXException {
+        assert !lineOpen;
+        if (listOpen) {
+            emitter.endElement("ol");
+            listOpen = false;
+        }
+        int first = oneBasedFirst + lineOffset;
+        int last = oneBasedLast + lineOffset;
+        emitter.startElementWithClass("p", "skipped");
+        if (first == last) {
+            emitter.characters("Line " + first + " not shown.");
+        } else {
+            emitter.characters("Lines " + first + "\u2013" + last
+                    + " not shown.");
+        }
+        emitter.endElement("p");
+        lineNumber = oneBasedLast;
+    }
+
     @Override
     public void startCharHilite(int oneBasedLine, int oneBasedColumn)
             throws SAXException {
@@ -79,6 +79,11 @@ public class XmlExtractHandler implements SourceHandler {
     public void startSource(String type, String encoding) throws SAXException {
     }
     
+    @Override
+    public void skippedLines(int oneBasedFirst, int oneBasedLast)
+            throws SAXException {
+    }
+
     @Override
     public void setLineErrors(SortedSet<Integer> oneBasedLineErrors) throws SAXException {
         
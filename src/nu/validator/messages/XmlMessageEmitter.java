@@ -186,6 +186,19 @@ public class XmlMessageEmitter extends MessageEmitter {
         return messageTextHandler;
     }
 
+    /**
+     * @see nu.validator.messages.MessageEmitter#suppressedOccurrences(int, int[])
+     */
+    @Override
+    public void suppressedOccurrences(int count, int[] linesAndColumns)
+            throws SAXException {
+        attrs.clear();
+        attrs.addAttribute("count", Integer.toString(count));
+        emitter.startElement("suppressed", attrs);
+        emitter.characters(locationList(linesAndColumns, ':', " "));
+        emitter.endElement("suppressed");
+    }
+
     /**
      * @see nu.validator.messages.MessageEmitter#endElaboration()
      */
@@ -88,6 +88,11 @@ public class XmlSourceHandler implements SourceHandler {
         emitter.startElement("source", attrs);
     }
 
+    @Override
+    public void skippedLines(int oneBasedFirst, int oneBasedLast)
+            throws SAXException {
+    }
+
     @Override
     public void setLineErrors(SortedSet<Integer> oneBasedLineErrors) throws SAXException {
         
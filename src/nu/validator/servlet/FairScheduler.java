@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.servlet;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lets a bounded number of checks run at a time and hands the free slots to
+ * waiting requests fairly: round-robin across clients, so that one client
+ * with a deep queue cannot hold back the others, and small documents in a
+ * lane of their own that goes first. So that a stream of small documents
+ * cannot starve the large ones, every <code>FAST_BURST</code>th slot in a row
+ * goes to the regular lane if it has waiters.
+ */
+final class FairScheduler {
+
+    /**
+     * Thrown when the queue is full.
+     */
+    static final class QueueFullException extends Exception {
+
+        QueueFullException() {
+            super("Too many requests waiting.");
+        }
+    }
+
+    private static final int FAST_BURST = 4;
+
+    /**
+     * The scheduler, or <code>null</code> if scheduling is off.
+     */
+    static final FairScheduler SCHEDULER = create();
+
+    private static FairScheduler create() {
+        int concurrency = Integer.parseInt(System.getProperty(
+                "nu.validator.servlet.scheduler.concurrency", "0"));
+        if (concurrency <= 0) {
+            return null;
+        }
+        return new FairScheduler(concurrency,
+                Integer.parseInt(System.getProperty(
+                        "nu.validator.servlet.scheduler.max-queue", "500")),
+                Long.parseLong(System.getProperty(
+                        "nu.validator.servlet.scheduler.small-bytes", "65536")));
+    }
+
+    private static final class Ticket {
+
+        final long enqueuedNanos = System.nanoTime();
+
+        boolean granted = false;
+    }
+
+    /**
+     * The waiting requests of one lane, queued per client. The clients with
+     * waiters take turns in <code>rotation</code> order.
+     */
+    private static final class Lane {
+
+        final String name;
+
+        final Map<String, ArrayDeque<Ticket>> queues = new HashMap<>();
+
+        final ArrayDeque<String> rotation = new ArrayDeque<>();
+
+        int depth = 0;
+
+        int peakDepth = 0;
+
+        long granted = 0;
+
+        long totalWaitNanos = 0;
+
+        long maxWaitNanos = 0;
+
+        Lane(String name) {
+            this.name = name;
+        }
+
+        void add(String client, Ticket ticket) {
+            ArrayDeque<Ticket> queue = queues.get(client);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(client, queue);
+                rotation.addLast(client);
+            }
+            queue.addLast(ticket);
+            depth++;
+            peakDepth = Math.max(peakDepth, depth);
+        }
+
+        /**
+         * Takes the oldest waiter of the client whose turn it is.
+         */
+        Ticket next() {
+            String client = rotation.pollFirst();
+            if (client == null) {
+                return null;
+            }
+            ArrayDeque<Ticket> queue = queues.get(client);
+            Ticket ticket = queue.pollFirst();
+            if (queue.isEmpty()) {
+                queues.remove(client);
+            } else {
+                rotation.addLast(client);
+            }
+            depth--;
+            return ticket;
+        }
+
+        /**
+         * Drops a waiter that gave up.
+         */
+        void remove(String client, Ticket ticket) {
+            ArrayDeque<Ticket> queue = queues.get(client);
+            if (queue != null && queue.remove(ticket)) {
+                depth--;
+                if (queue.isEmpty()) {
+                    queues.remove(client);
+                    rotation.remove(client);
+                }
+            }
+        }
+
+        void recordWait(long nanos) {
+            granted++;
+            totalWaitNanos += nanos;
+            maxWaitNanos = Math.max(maxWaitNanos, nanos);
+        }
+
+        void appendMetrics(StringBuilder sb) {
+            sb.append("scheduler_").append(name).append("_queue_depth ").append(depth).append('\n');
+            sb.append("scheduler_").append(name).append("_queue_depth_peak ").append(peakDepth).append('\n');
+            sb.append("scheduler_").append(name).append("_granted_total ").append(granted).append('\n');
+            sb.append("scheduler_").append(name).append("_wait_ms_total ").append(totalWaitNanos / 1000000).append('\n');
+            sb.append("scheduler_").append(name).append("_wait_ms_max ").append(maxWaitNanos / 1000000).append('\n');
+        }
+    }
+
+    private final int concurrency;
+
+    private final int maxQueue;
+
+    private final long smallBytes;
+
+    private final Lane fast = new Lane("small");
+
+    private final Lane regular = new Lane("regular");
+
+    private int running = 0;
+
+    private int fastInARow = 0;
+
+    private long rejected = 0;
+
+    FairScheduler(int concurrency, int maxQueue, long smallBytes) {
+        this.concurrency = concurrency;
+        this.maxQueue = maxQueue;
+        this.smallBytes = smallBytes;
+    }
+
+    /**
+     * Tells whether a request body of <code>contentLength</code> bytes goes
+     * into the small lane. An unknown length does not.
+     */
+    boolean isSmall(long contentLength) {
+        return contentLength >= 0 && contentLength <= smallBytes;
+    }
+
+    /**
+     * Waits until the request may run. Every successful call must be paired
+     * with a call to <code>release()</code>.
+     */
+    synchronized void acquire(String client, boolean small)
+            throws InterruptedException, QueueFullException {
+        Lane lane = small ? fast : regular;
+        if (running < concurrency && fast.depth == 0 && regular.depth == 0) {
+            running++;
+            lane.recordWait(0);
+            return;
+        }
+        if (fast.depth + regular.depth >= maxQueue) {
+            rejected++;
+            throw new QueueFullException();
+        }
+        Ticket ticket = new Ticket();
+        lane.add(client, ticket);
+        try {
+            while (!ticket.granted) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            if (ticket.granted) {
+                release();
+            } else {
+                lane.remove(client, ticket);
+            }
+            throw e;
+        }
+    }
+
+    synchronized void release() {
+        running--;
+        boolean grantedAny = false;
+        while (running < concurrency) {
+            Lane lane = pickLane();
+            if (lane == null) {
+                break;
+            }
+            Ticket ticket = lane.next();
+            lane.recordWait(System.nanoTime() - ticket.enqueuedNanos);
+            ticket.granted = true;
+            running++;
+            grantedAny = true;
+        }
+        if (grantedAny) {
+            notifyAll();
+        }
+    }
+
+    private Lane pickLane() {
+        if (fast.depth > 0 && (regular.depth == 0 || fastInARow < FAST_BURST)) {
+            fastInARow++;
+            return fast;
+        }
+        fastInARow = 0;
+        return regular.depth > 0 ? regular : null;
+    }
+
+    synchronized void appendMetrics(StringBuilder sb) {
+        sb.append("scheduler_concurrency ").append(concurrency).append('\n');
+        sb.append("scheduler_running ").append(running).append('\n');
+        sb.append("scheduler_rejected_total ").append(rejected).append('\n');
+        fast.appendMetrics(sb);
+        regular.appendMetrics(sb);
+    }
+}
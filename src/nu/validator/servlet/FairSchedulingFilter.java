@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Makes the requests that check a document wait for their turn in the
+ * <code>FairScheduler</code>. Other requests, such as the form, the static
+ * files and <code>/readiness</code>, pass straight through, as does
+ * everything when scheduling is off.
+ */
+public final class FairSchedulingFilter implements Filter {
+
+    /**
+     * The request attribute holding the <code>System.nanoTime()</code> at
+     * which the request arrived, before any wait in the queue.
+     */
+    static final String ARRIVAL_ATTRIBUTE = "nu.validator.servlet.FairSchedulingFilter.arrival";
+
+    /**
+     * The header that identifies a client instead of its address, or
+     * <code>null</code>. Only worth setting when a proxy in front vouches for
+     * it; otherwise a client could claim a new identity per request.
+     */
+    private static final String KEY_HEADER = System.getProperty(
+            "nu.validator.servlet.scheduler.key-header");
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res,
+            FilterChain chain) throws IOException, ServletException {
+        req.setAttribute(ARRIVAL_ATTRIBUTE, Long.valueOf(System.nanoTime()));
+        FairScheduler scheduler = FairScheduler.SCHEDULER;
+        HttpServletRequest request = (HttpServletRequest) req;
+        if (scheduler == null || !checksDocument(request)) {
+            chain.doFilter(req, res);
+            return;
+        }
+        try {
+            scheduler.acquire(clientKey(request),
+                    scheduler.isSmall(request.getContentLength()));
+        } catch (FairScheduler.QueueFullException e) {
+            HttpServletResponse response = (HttpServletResponse) res;
+            response.setHeader("Retry-After", "5");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(e);
+        }
+        try {
+            chain.doFilter(req, res);
+        } finally {
+            scheduler.release();
+        }
+    }
+
+    /**
+     * Tells whether the request uploads a document or names one to fetch.
+     */
+    private static boolean checksDocument(HttpServletRequest request) {
+        String method = request.getMethod();
+        if ("POST".equals(method)) {
+            return true;
+        }
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            String doc = request.getParameter("doc");
+            return doc != null && !"".equals(doc);
+        }
+        return false;
+    }
+
+    private static String clientKey(HttpServletRequest request) {
+        if (KEY_HEADER != null) {
+            String key = request.getHeader(KEY_HEADER);
+            if (key != null && !"".equals(key)) {
+                return "key:" + key;
+            }
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+    }
+}
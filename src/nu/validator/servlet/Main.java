@@ -64,8 +64,14 @@ public class Main {
 
         ServletContextHandler contextHandler = new ServletContextHandler();
         contextHandler.setContextPath("/");
-        contextHandler.addFilter(new FilterHolder(new GzipFilter()), "/*",
+        FilterHolder gzipFilter = new FilterHolder(new GzipFilter());
+        // the static files are compressed once, up front
+        gzipFilter.setInitParameter("excludePaths",
+                String.join(",", StaticAsset.getPaths()));
+        contextHandler.addFilter(gzipFilter, "/*",
                 EnumSet.of(DispatcherType.REQUEST));
+        contextHandler.addFilter(new FilterHolder(new FairSchedulingFilter()),
+                "/*", EnumSet.of(DispatcherType.REQUEST));
         contextHandler.addFilter(new FilterHolder(new InboundSizeLimitFilter(
                 SIZE_LIMIT)), "/*", EnumSet.of(DispatcherType.REQUEST));
         contextHandler.addFilter(new FilterHolder(new InboundGzipFilter()),
@@ -32,14 +32,14 @@
 package nu.validator.servlet;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.regex.Pattern;
 
-import javax.servlet.http.HttpServletRequest;
-
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.DTDHandler;
@@ -52,55 +52,89 @@ import org.xml.sax.SAXNotRecognizedException;
 import org.xml.sax.SAXNotSupportedException;
 import org.xml.sax.XMLReader;
 
+/**
+ * Builds the structural outline and the heading-level outline of a document
+ * in one pass over its SAX events, passing the events on unchanged.
+ */
 public final class OutlineBuildingXMLReaderWrapper implements XMLReader,
         ContentHandler {
 
     private final XMLReader wrappedReader;
 
-    private final HttpServletRequest request;
-
     private ContentHandler contentHandler;
 
-    private final ArrayList<String> SECTIONING_ROOT_ELEMENTS = new ArrayList<>();
+    // element classification bits
+    private static final int SECTIONING_CONTENT = 1;
+
+    // a sectioning root element in the structural outline
+    private static final int SECTIONING_ROOT = 1 << 1;
+
+    // the only sectioning root element in the heading-level outline
+    private static final int BODY = 1 << 2;
+
+    private static final int HEADING = 1 << 3;
 
-    private boolean isHeadingOutline = false;
+    private static final int HGROUP = 1 << 4;
 
-    public OutlineBuildingXMLReaderWrapper(XMLReader wrappedReader,
-            HttpServletRequest request, boolean isHeadingOutline) {
-        this.request = request;
-        this.isHeadingOutline = isHeadingOutline;
+    private static final int IMG = 1 << 5;
+
+    private static final int TEMPLATE = 1 << 6;
+
+    private static final Map<String, Integer> ELEMENT_KINDS = new HashMap<>();
+
+    static {
+        ELEMENT_KINDS.put("article", SECTIONING_CONTENT);
+        ELEMENT_KINDS.put("aside", SECTIONING_CONTENT);
+        ELEMENT_KINDS.put("nav", SECTIONING_CONTENT);
+        ELEMENT_KINDS.put("section", SECTIONING_CONTENT);
+        ELEMENT_KINDS.put("blockquote", SECTIONING_ROOT);
+        ELEMENT_KINDS.put("body", SECTIONING_ROOT | BODY);
+        ELEMENT_KINDS.put("details", SECTIONING_ROOT);
+        ELEMENT_KINDS.put("fieldset", SECTIONING_ROOT);
+        ELEMENT_KINDS.put("figure", SECTIONING_ROOT);
+        ELEMENT_KINDS.put("td", SECTIONING_ROOT);
+        ELEMENT_KINDS.put("h1", HEADING);
+        ELEMENT_KINDS.put("h2", HEADING);
+        ELEMENT_KINDS.put("h3", HEADING);
+        ELEMENT_KINDS.put("h4", HEADING);
+        ELEMENT_KINDS.put("h5", HEADING);
+        ELEMENT_KINDS.put("h6", HEADING);
+        ELEMENT_KINDS.put("hgroup", HGROUP);
+        ELEMENT_KINDS.put("img", IMG);
+        ELEMENT_KINDS.put("template", TEMPLATE);
+    }
+
+    private static int kindOf(String localName) {
+        Integer kind = ELEMENT_KINDS.get(localName);
+        return kind == null ? 0 : kind.intValue();
+    }
+
+    private final Outliner documentOutliner = new Outliner(SECTIONING_ROOT);
+
+    private final Outliner headingOutliner = new Outliner(BODY);
+
+    public OutlineBuildingXMLReaderWrapper(XMLReader wrappedReader) {
         this.wrappedReader = wrappedReader;
         this.contentHandler = wrappedReader.getContentHandler();
-        this.inHgroup = false;
-        if (isHeadingOutline) {
-            this.SECTIONING_ROOT_ELEMENTS.add("body");
-        } else {
-            this.SECTIONING_ROOT_ELEMENTS.add("blockquote");
-            this.SECTIONING_ROOT_ELEMENTS.add("body");
-            this.SECTIONING_ROOT_ELEMENTS.add("details");
-            this.SECTIONING_ROOT_ELEMENTS.add("fieldset");
-            this.SECTIONING_ROOT_ELEMENTS.add("figure");
-            this.SECTIONING_ROOT_ELEMENTS.add("td");
-        }
         wrappedReader.setContentHandler(this);
     }
 
     private static final int MAX_EXCERPT = 500;
 
-    private static final String[] SECTIONING_CONTENT_ELEMENTS = { "article",
-            "aside", "nav", "section" };
-
-    private static final String[] H1_TO_H6_ELEMENTS = { "h1", "h2", "h3", "h4",
-            "h5", "h6" };
-
-    private Deque<Section> outline;
-
+    /**
+     * @return the structural outline or <code>null</code> if the document
+     *         has no outline
+     */
     public Deque<Section> getOutline() {
-        return this.outline;
+        return documentOutliner.outline;
     }
 
-    protected void setOutline(Deque<Section> outline) {
-        this.outline = outline;
+    /**
+     * @return the heading-level outline or <code>null</code> if the document
+     *         has no outline
+     */
+    public Deque<Section> getHeadingOutline() {
+        return headingOutliner.outline;
     }
 
     // an outlinee, a heading content element, or an element with a hidden
@@ -114,21 +148,13 @@ public final class OutlineBuildingXMLReaderWrapper implements XMLReader,
         // the local name of element
         final private String name;
 
-        // whether the element is hidden
-        final private boolean hidden;
-
         // the outline for a sectioning content element or a sectioning root
         // element consists of a list of one or more potentially nested sections
-        final private Deque<Section> outline = new LinkedList<>();
+        final private Deque<Section> outline = new ArrayDeque<>();
 
-        public Element(int depth, String name, boolean hidden) {
+        public Element(int depth, String name) {
             this.depth = depth;
             this.name = name;
-            this.hidden = hidden;
-        }
-
-        public boolean isHidden() {
-            return hidden;
         }
 
         public boolean equals(int depth, String name) {
@@ -189,7 +215,7 @@ public final class OutlineBuildingXMLReaderWrapper implements XMLReader,
         private int headingRank = Integer.MAX_VALUE;
 
         // each section can contain any number of further nested sections
-        final public Deque<Section> sections = new LinkedList<>();
+        final public Deque<Section> sections = new ArrayDeque<>();
 
         public Section(String elementName) {
             this.elementName = elementName;
@@ -293,48 +319,20 @@ public final class OutlineBuildingXMLReaderWrapper implements XMLReader,
     // tracks the depth of walk through the DOM
     private int currentWalkDepth;
 
-    // holds the element whose outline is being created;
-    // a sectioning content element or a sectioning root element
-    private Element currentOutlinee;
+    // Whether each open element has a "hidden" attribute (or is a
+    // template), indexed by depth, and the number of open elements that do.
+    // This is used for checking whether there are any open elements at all
+    // with a "hidden" attribute -- including elements that may be
+    // descendants of heading-content elements (which per the spec never end
+    // up on the outline stack).
+    private boolean[] hiddenStack = new boolean[64];
 
-    // A stack (not defined in the spec) to hold all open elements. We just
-    // use this stack for the purpose of checking whether there are any
-    // open elements at all with a "hidden" attribute -- including elements
-    // that may be descendants of heading-content elements (which per the
-    // spec never end up on the outline stack).
-    private Deque<Element> elementStack = new LinkedList<>();
+    private int hiddenCount;
 
     private boolean inHiddenSubtree() {
-        for (Element element : elementStack) {
-            if (element.isHidden()) {
-                return true;
-            }
-        }
-        return false;
+        return hiddenCount > 0;
     }
 
-    // A stack, defined in the spec, to which we only add open
-    // heading-content elements and elements with a "hidden" attribute that
-    // are ancestors to heading-content elements.
-    private Deque<Element> outlineStack = new LinkedList<>();
-
-    // The top of the outline stack defined in the spec is always either a
-    // heading content element or an element with a hidden attribute.
-    private boolean inHeadingContentOrHiddenElement;
-
-    // holds a pointer to a section, so that elements in the DOM can all be
-    // associated with a section
-    private Section currentSection;
-
-    // h1-h6 section that is the first h1-h6 descendant of current hgroup
-    private Section currentHgroupSection;
-
-    private boolean inHgroup;
-
-    private boolean skipHeading = false;
-
-    private boolean isWalkOver;
-
     private static final Pattern excerptPattern = Pattern.compile("\\W*\\S*$");
 
     private static final Pattern whitespacePattern = Pattern.compile("\\s+");
@@ -342,196 +340,378 @@ public final class OutlineBuildingXMLReaderWrapper implements XMLReader,
     /*
      * Returns the string excerpt.
      */
-    private String excerpt(String str, int maxLength) {
+    private static String excerpt(String str, int maxLength) {
         return str.length() > maxLength ? excerptPattern.matcher(
                 str.substring(0, maxLength)).replaceFirst("&hellip;") : str;
     }
 
     /**
-     * @see org.xml.sax.helpers.XMLFilterImpl#characters(char[], int, int)
+     * The state of the outline algorithm for one kind of outline. The two
+     * kinds only differ in which elements are sectioning roots.
      */
-    @Override
-    public void characters(char[] ch, int start, int length)
-            throws SAXException {
-        if (contentHandler == null) {
-            return;
-        }
-        if (isWalkOver) {
-            contentHandler.characters(ch, start, length);
-            return;
-        }
+    private final class Outliner {
 
-        if (inHeadingContentOrHiddenElement && !inHiddenSubtree()) {
-            currentSection.getHeadingTextBuilder().append(ch, start, length);
-        }
-        contentHandler.characters(ch, start, length);
-    }
+        // the classification bit of the sectioning root elements
+        private final int sectioningRoot;
 
-    /**
-     * @see org.xml.sax.helpers.XMLFilterImpl#endElement(java.lang.String,
-     *      java.lang.String, java.lang.String)
-     */
-    @Override
-    public void endElement(String uri, String localName, String qName)
-            throws SAXException {
-        if (contentHandler == null) {
-            return;
-        }
-        elementStack.pop();
-        if (isWalkOver) {
-            contentHandler.endElement(uri, localName, qName);
-            return;
+        // the finished outline
+        private Deque<Section> outline;
+
+        // holds the element whose outline is being created;
+        // a sectioning content element or a sectioning root element
+        private Element currentOutlinee;
+
+        // A stack, defined in the spec, to which we only add open
+        // heading-content elements and elements with a "hidden" attribute
+        // that are ancestors to heading-content elements.
+        private final Deque<Element> outlineStack = new ArrayDeque<>();
+
+        // The top of the outline stack defined in the spec is always either a
+        // heading content element or an element with a hidden attribute.
+        private boolean inHeadingContentOrHiddenElement;
+
+        // holds a pointer to a section, so that elements in the DOM can all be
+        // associated with a section
+        private Section currentSection;
+
+        // h1-h6 section that is the first h1-h6 descendant of current hgroup
+        private Section currentHgroupSection;
+
+        private boolean inHgroup;
+
+        private boolean skipHeading = false;
+
+        Outliner(int sectioningRoot) {
+            this.sectioningRoot = sectioningRoot;
         }
 
-        if ("hgroup".equals(localName)) {
-            inHgroup = false;
-            skipHeading = false;
-        } else if (Arrays.binarySearch(H1_TO_H6_ELEMENTS, localName) > -1
-                && inHgroup) {
-            if (skipHeading) {
-                // if skipHeading is true, we're in an hgroup subtree and
-                // have reached the end tag of an h1-h6 that is not the
-                // first descendant of the hgroup, so it provides a subhead
-                currentSection.setIsMasked();
-                currentHgroupSection.subheadSections.add(currentSection);
-            } else {
-                // otherwise, we're in an hgroup subtree & have reached the
-                // end tag of the first descendant h1-h6  of the hgroup, so
-                // we need make this the currentHgroupSectionto and treat
-                // any subsequent h1-h6 as subheads associated with it
-                skipHeading = true;
-                currentHgroupSection = currentSection;
-                currentHgroupSection.subheadSections = new LinkedList<>();
+        void characters(char[] ch, int start, int length) {
+            if (inHeadingContentOrHiddenElement && !inHiddenSubtree()) {
+                currentSection.getHeadingTextBuilder().append(ch, start, length);
             }
         }
 
-        int depth = currentWalkDepth--;
+        void startElement(int depth, String localName, int kind,
+                boolean hidden, Attributes atts) {
+            if ((kind & HGROUP) != 0) {
+                inHgroup = true;
+            }
 
-        if (inHeadingContentOrHiddenElement) {
-            // When exiting an element, if that element is the element at the
-            // top of the stack
-            // Note: The element being exited is a heading content element or an
-            // element with a hidden attribute.
-            Element topElement = outlineStack.peek();
-            assert topElement != null;
-            if (topElement.equals(depth, localName)) {
-                // Pop that element from the stack.
-                outlineStack.pop();
-                inHeadingContentOrHiddenElement = false;
-
-                if (currentSection != null) {
-                    StringBuilder headingTextBuilder = currentSection.getHeadingTextBuilder();
-                    String heading = excerpt(
-                            whitespacePattern.matcher(headingTextBuilder).replaceAll(
-                                    " ").trim(), MAX_EXCERPT);
-                    headingTextBuilder.setLength(0);
-                    if (heading.length() == 0) {
-                        StringBuilder headingImgAltTextBuilder = currentSection.getHeadingImgAltTextBuilder();
-                        heading = excerpt(whitespacePattern.matcher(
-                                headingImgAltTextBuilder).replaceAll(
-                                        " ").trim(),
-                                MAX_EXCERPT);
-                        headingImgAltTextBuilder.setLength(0);
-                    }
-                    if (heading.length() > 0) {
-                        headingTextBuilder.append(heading);
-                    } else {
-                        currentSection.createEmptyHeading();
+            // If the top of the stack is a heading content element or an element
+            // with a hidden attribute
+            if (inHeadingContentOrHiddenElement) {
+                if (!inHiddenSubtree() && (kind & IMG) != 0
+                        && atts.getIndex("", "alt") >= 0) {
+                    currentSection.getHeadingImgAltTextBuilder().append(
+                            atts.getValue("", "alt"));
+                }
+                // Do nothing.
+                return;
+            }
+
+            // When entering an element with a hidden attribute
+            if (hidden) {
+                // Push the element being entered onto the stack. (This causes the
+                // algorithm to skip that element and any descendants of the
+                // element.)
+                outlineStack.push(new Element(depth, localName));
+                inHeadingContentOrHiddenElement = true;
+                return;
+            }
+
+            // When entering a sectioning content element or a sectioning root
+            // element
+            if ((kind & (SECTIONING_CONTENT | sectioningRoot)) != 0) {
+                if (currentOutlinee != null) {
+                    // If current outlinee is not null, and the current section has
+                    // no heading,
+                    // create an implied heading and let that be the heading for the
+                    // current section.
+                    if (currentSection != null && !currentSection.hasHeading()) {
+                        currentSection.createImpliedHeading();
                     }
+                    // If current outlinee is not null, push current outlinee onto
+                    // the stack.
+                    outlineStack.push(currentOutlinee);
                 }
+
+                // Let current outlinee be the element that is being entered.
+                currentOutlinee = new Element(depth, localName);
+
+                // Let current section be a newly created section for the current
+                // outlinee element.
+                // Associate current outlinee with current section.
+                currentSection = new Section(localName);
+
+                // Let there be a new outline for the new current outlinee,
+                // initialized with just the new current section as the only section
+                // in the outline.
+                currentOutlinee.getOutline().add(currentSection);
+                return;
             }
 
-            // If the top of the stack is a heading content element or an
-            // element with a hidden attribute
-            // Do nothing.
-            contentHandler.endElement(uri, localName, qName);
-            return;
-        }
+            // The following implements the "When entering a heading content
+            // element" part of the outline algorithm in the spec, but note
+            // that in the internals of our implementation, we don't handle the
+            // case of hgroup here, but instead just the h1-h6 case.
+            if ((kind & HEADING) != 0 && currentOutlinee != null) {
+                int rank = localName.charAt(1) - '0';
 
-        if (Arrays.binarySearch(SECTIONING_CONTENT_ELEMENTS, localName) > -1) {
-            // When exiting a sectioning content element, if the stack is not
-            // empty
-            if (!outlineStack.isEmpty()) {
                 // If the current section has no heading,
+                // let the element being entered be the heading for the current
+                // section.
                 if (currentSection != null && !currentSection.hasHeading()) {
-                    // create an implied heading and let that be the heading for
-                    // the current section.
-                    currentSection.createImpliedHeading();
+                    // Because we do the following even if the section only has
+                    // an _implied_ heading, it can cause some non-intuitive
+                    // outlines. But the spec very intentionally requires it.
+                    // See https://www.w3.org/Bugs/Public/show_bug.cgi?id=20068#c4
+                    currentSection.setHeadingRank(rank);
+                }
+                // Otherwise, if the element being entered has a rank equal to
+                // or higher than the heading of the last section of the
+                // outline of the current outlinee, or if the heading of the
+                // last section of the outline of the current outlinee is an
+                // implied heading,
+                else if (rank <= currentOutlinee.getLastSectionHeadingRank()) {
+                    // then create a new section and append it to the outline
+                    // of the current outlinee element, so that this new
+                    // section is the new last section of that outline.
+                    // Let current section be that new section.
+                    currentSection = new Section(localName);
+                    currentOutlinee.getOutline().add(currentSection);
+
+                    // Let the element being entered be the new heading for the
+                    // current section.
+                    currentSection.setHeadingRank(rank);
                 }
-                Element exitedSectioningContentElement = currentOutlinee;
-                assert exitedSectioningContentElement != null;
-
-                // Pop the top element from the stack, and let the current
-                // outlinee be that element.
-                currentOutlinee = outlineStack.pop();
-
-                // Let current section be the last section in the outline of the
-                // current outlinee element.
-                currentSection = currentOutlinee.getOutline().peekLast();
-                assert currentSection != null;
-
-                // Append the outline of the sectioning content element being
-                // exited to the current section.
-                // (This does not change which section is the last section in
-                // the outline.)
-                for (Section section : exitedSectioningContentElement.outline) {
-                    section.setParent(currentSection);
-                    currentSection.sections.add(section);
+                // Otherwise, run these substeps:
+                else {
+                    // Let candidate section be current section.
+                    Section candidateSection = currentSection;
+
+                    // Heading loop:
+                    while (candidateSection != null) {
+                        // If the element being entered has a rank lower than the
+                        // rank of the heading of the candidate section,
+                        if (rank > candidateSection.getHeadingRank()) {
+                            // then create a new section, and append it to candidate
+                            // section.
+                            // (This does not change which section is the last
+                            // section in the outline.)
+                            // Let current section be this new section.
+                            currentSection = new Section(localName);
+                            currentSection.setParent(candidateSection);
+                            candidateSection.getSections().add(currentSection);
+
+                            // Let the element being entered be the new heading for
+                            // the current section.
+                            currentSection.setHeadingRank(rank);
+
+                            // Abort these substeps.
+                            break;
+                        }
+
+                        // Let new candidate section be the section that contains
+                        // candidate section in the outline of current outlinee.
+                        // Let candidate section be new candidate section.
+                        candidateSection = candidateSection.getParent();
+
+                        // Return to the step labeled heading loop.
+                    }
                 }
+
+                // Push the element being entered onto the stack.
+                // (This causes the algorithm to skip any descendants of the
+                // element.)
+                outlineStack.push(new Element(depth, localName));
+                inHeadingContentOrHiddenElement = true;
+                currentSection.setHeadingElementName(localName);
             }
-        } else if (Arrays.binarySearch(SECTIONING_ROOT_ELEMENTS.toArray(),
-                localName) > -1) {
-            // When exiting a sectioning root element, if the stack is not empty
-            if (!outlineStack.isEmpty()) {
-                // Run these steps:
+        }
 
-                // If the current section has no heading,
-                if (currentSection != null && !currentSection.hasHeading()) {
-                    // create an implied heading and let that be the heading for
-                    // the current section.
-                    currentSection.createImpliedHeading();
+        void endElement(int depth, String localName, int kind) {
+            if ((kind & HGROUP) != 0) {
+                inHgroup = false;
+                skipHeading = false;
+            } else if ((kind & HEADING) != 0 && inHgroup) {
+                if (skipHeading) {
+                    // if skipHeading is true, we're in an hgroup subtree and
+                    // have reached the end tag of an h1-h6 that is not the
+                    // first descendant of the hgroup, so it provides a subhead
+                    currentSection.setIsMasked();
+                    currentHgroupSection.subheadSections.add(currentSection);
+                } else {
+                    // otherwise, we're in an hgroup subtree & have reached the
+                    // end tag of the first descendant h1-h6  of the hgroup, so
+                    // we need make this the currentHgroupSectionto and treat
+                    // any subsequent h1-h6 as subheads associated with it
+                    skipHeading = true;
+                    currentHgroupSection = currentSection;
+                    currentHgroupSection.subheadSections = new LinkedList<>();
+                }
+            }
+
+            if (inHeadingContentOrHiddenElement) {
+                // When exiting an element, if that element is the element at the
+                // top of the stack
+                // Note: The element being exited is a heading content element or an
+                // element with a hidden attribute.
+                Element topElement = outlineStack.peek();
+                assert topElement != null;
+                if (topElement.equals(depth, localName)) {
+                    // Pop that element from the stack.
+                    outlineStack.pop();
+                    inHeadingContentOrHiddenElement = false;
+
+                    if (currentSection != null) {
+                        StringBuilder headingTextBuilder = currentSection.getHeadingTextBuilder();
+                        String heading = excerpt(
+                                whitespacePattern.matcher(headingTextBuilder).replaceAll(
+                                        " ").trim(), MAX_EXCERPT);
+                        headingTextBuilder.setLength(0);
+                        if (heading.length() == 0) {
+                            StringBuilder headingImgAltTextBuilder = currentSection.getHeadingImgAltTextBuilder();
+                            heading = excerpt(whitespacePattern.matcher(
+                                    headingImgAltTextBuilder).replaceAll(
+                                            " ").trim(),
+                                    MAX_EXCERPT);
+                            headingImgAltTextBuilder.setLength(0);
+                        }
+                        if (heading.length() > 0) {
+                            headingTextBuilder.append(heading);
+                        } else {
+                            currentSection.createEmptyHeading();
+                        }
+                    }
+                }
+
+                // If the top of the stack is a heading content element or an
+                // element with a hidden attribute
+                // Do nothing.
+                return;
+            }
+
+            if ((kind & SECTIONING_CONTENT) != 0) {
+                // When exiting a sectioning content element, if the stack is not
+                // empty
+                if (!outlineStack.isEmpty()) {
+                    // If the current section has no heading,
+                    if (currentSection != null && !currentSection.hasHeading()) {
+                        // create an implied heading and let that be the heading for
+                        // the current section.
+                        currentSection.createImpliedHeading();
+                    }
+                    Element exitedSectioningContentElement = currentOutlinee;
+                    assert exitedSectioningContentElement != null;
+
+                    // Pop the top element from the stack, and let the current
+                    // outlinee be that element.
+                    currentOutlinee = outlineStack.pop();
+
+                    // Let current section be the last section in the outline of the
+                    // current outlinee element.
+                    currentSection = currentOutlinee.getOutline().peekLast();
+                    assert currentSection != null;
+
+                    // Append the outline of the sectioning content element being
+                    // exited to the current section.
+                    // (This does not change which section is the last section in
+                    // the outline.)
+                    for (Section section : exitedSectioningContentElement.outline) {
+                        section.setParent(currentSection);
+                        currentSection.sections.add(section);
+                    }
                 }
+            } else if ((kind & sectioningRoot) != 0) {
+                // When exiting a sectioning root element, if the stack is not empty
+                if (!outlineStack.isEmpty()) {
+                    // Run these steps:
+
+                    // If the current section has no heading,
+                    if (currentSection != null && !currentSection.hasHeading()) {
+                        // create an implied heading and let that be the heading for
+                        // the current section.
+                        currentSection.createImpliedHeading();
+                    }
 
-                // Pop the top element from the stack, and let the current
-                // outlinee be that element.
-                currentOutlinee = outlineStack.pop();
-
-                // Let current section be the last section in the outline of the
-                // current outlinee element.
-                currentSection = currentOutlinee.getOutline().peekLast();
-
-                // Finding the deepest child:
-                // If current section has no child sections, stop these steps.
-                while (!currentSection.sections.isEmpty())
-                    // Let current section be the last child section of the
-                    // current current section.
-                    currentSection = currentSection.sections.peekLast();
-                // Go back to the substep labeled finding the deepest child.
+                    // Pop the top element from the stack, and let the current
+                    // outlinee be that element.
+                    currentOutlinee = outlineStack.pop();
+
+                    // Let current section be the last section in the outline of the
+                    // current outlinee element.
+                    currentSection = currentOutlinee.getOutline().peekLast();
+
+                    // Finding the deepest child:
+                    // If current section has no child sections, stop these steps.
+                    while (!currentSection.sections.isEmpty())
+                        // Let current section be the last child section of the
+                        // current current section.
+                        currentSection = currentSection.sections.peekLast();
+                    // Go back to the substep labeled finding the deepest child.
+                }
+            } else {
+                // neither a sectioning content element nor a sectioning root
+                // element
+                return;
             }
-        } else {
-            // neither a sectioning content element nor a sectioning root
+
+            // When exiting a sectioning content element or a sectioning root
             // element
-            contentHandler.endElement(uri, localName, qName);
-            return;
-        }
+            // Note: The current outlinee is the element being exited, and
+            // it is the sectioning content element or a sectioning root element at
+            // the root of the subtree for which an outline is being generated.
 
-        // When exiting a sectioning content element or a sectioning root
-        // element
-        // Note: The current outlinee is the element being exited, and
-        // it is the sectioning content element or a sectioning root element at
-        // the root of the subtree for which an outline is being generated.
+            // If the current section has no heading,
+            if (currentSection != null && !currentSection.hasHeading()) {
+                // create an implied heading and let that be the heading for the
+                // current section.
+                currentSection.createImpliedHeading();
+            }
 
-        // If the current section has no heading,
-        if (currentSection != null && !currentSection.hasHeading()) {
-            // create an implied heading and let that be the heading for the
-            // current section.
-            currentSection.createImpliedHeading();
+            // Skip to the next step in the overall set of steps.
+            // (The walk is over.)
+            // / isWalkOver = true;
+        }
+
+        void endDocument() {
+            if (currentOutlinee != null) {
+                outline = currentOutlinee.outline;
+            }
         }
+    }
 
-        // Skip to the next step in the overall set of steps.
-        // (The walk is over.)
-        // / isWalkOver = true;
+    /**
+     * @see org.xml.sax.helpers.XMLFilterImpl#characters(char[], int, int)
+     */
+    @Override
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        if (contentHandler == null) {
+            return;
+        }
+        documentOutliner.characters(ch, start, length);
+        headingOutliner.characters(ch, start, length);
+        contentHandler.characters(ch, start, length);
+    }
 
+    /**
+     * @see org.xml.sax.helpers.XMLFilterImpl#endElement(java.lang.String,
+     *      java.lang.String, java.lang.String)
+     */
+    @Override
+    public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+        if (contentHandler == null) {
+            return;
+        }
+        int depth = currentWalkDepth--;
+        if (hiddenStack[depth]) {
+            hiddenCount--;
+        }
+        int kind = kindOf(localName);
+        documentOutliner.endElement(depth, localName, kind);
+        headingOutliner.endElement(depth, localName, kind);
         contentHandler.endElement(uri, localName, qName);
     }
 
@@ -556,157 +736,19 @@ public final class OutlineBuildingXMLReaderWrapper implements XMLReader,
         if (contentHandler == null) {
             return;
         }
-        if (isWalkOver) {
-            contentHandler.startElement(uri, localName, qName, atts);
-            return;
-        }
-
-        if ("hgroup".equals(localName)) {
-            inHgroup = true;
-        }
-
-        ++currentWalkDepth;
-
+        int kind = kindOf(localName);
+        int depth = ++currentWalkDepth;
         boolean hidden = atts.getIndex("", "hidden") >= 0
-                || "template".equals(localName);
-        elementStack.push(new Element(currentWalkDepth, localName, hidden));
-
-        // If the top of the stack is a heading content element or an element
-        // with a hidden attribute
-        if (inHeadingContentOrHiddenElement) {
-            if (!inHiddenSubtree() && "img".equals(localName)
-                    && atts.getIndex("", "alt") >= 0) {
-                currentSection.getHeadingImgAltTextBuilder().append(
-                        atts.getValue("", "alt"));
-            }
-            // Do nothing.
-            contentHandler.startElement(uri, localName, qName, atts);
-            return;
+                || (kind & TEMPLATE) != 0;
+        if (depth == hiddenStack.length) {
+            hiddenStack = Arrays.copyOf(hiddenStack, depth << 1);
         }
-
-        // When entering an element with a hidden attribute
+        hiddenStack[depth] = hidden;
         if (hidden) {
-            // Push the element being entered onto the stack. (This causes the
-            // algorithm to skip that element and any descendants of the
-            // element.)
-            outlineStack.push(new Element(currentWalkDepth, localName, hidden));
-            inHeadingContentOrHiddenElement = true;
-            contentHandler.startElement(uri, localName, qName, atts);
-            return;
-        }
-
-        // When entering a sectioning content element or a sectioning root
-        // element
-        if (Arrays.binarySearch(SECTIONING_CONTENT_ELEMENTS, localName) > -1
-                || Arrays.binarySearch(SECTIONING_ROOT_ELEMENTS.toArray(),
-                        localName) > -1) {
-            if (currentOutlinee != null) {
-                // If current outlinee is not null, and the current section has
-                // no heading,
-                // create an implied heading and let that be the heading for the
-                // current section.
-                if (currentSection != null && !currentSection.hasHeading()) {
-                    currentSection.createImpliedHeading();
-                }
-                // If current outlinee is not null, push current outlinee onto
-                // the stack.
-                outlineStack.push(currentOutlinee);
-            }
-
-            // Let current outlinee be the element that is being entered.
-            currentOutlinee = new Element(currentWalkDepth, localName, hidden);
-
-            // Let current section be a newly created section for the current
-            // outlinee element.
-            // Associate current outlinee with current section.
-            currentSection = new Section(localName);
-
-            // Let there be a new outline for the new current outlinee,
-            // initialized with just the new current section as the only section
-            // in the outline.
-            currentOutlinee.getOutline().add(currentSection);
-            contentHandler.startElement(uri, localName, qName, atts);
-            return;
-        }
-
-        // The following implements the "When entering a heading content
-        // element" part of the outline algorithm in the spec, but note
-        // that in the internals of our implementation, we don't handle the
-        // case of hgroup here, but instead just the h1-h6 case.
-        if (Arrays.binarySearch(H1_TO_H6_ELEMENTS, localName) > -1
-                && currentOutlinee != null) {
-            int rank = localName.charAt(1) - '0';
-
-            // If the current section has no heading,
-            // let the element being entered be the heading for the current
-            // section.
-            if (currentSection != null && !currentSection.hasHeading()) {
-                // Because we do the following even if the section only has
-                // an _implied_ heading, it can cause some non-intuitive
-                // outlines. But the spec very intentionally requires it.
-                // See https://www.w3.org/Bugs/Public/show_bug.cgi?id=20068#c4
-                currentSection.setHeadingRank(rank);
-            }
-            // Otherwise, if the element being entered has a rank equal to
-            // or higher than the heading of the last section of the
-            // outline of the current outlinee, or if the heading of the
-            // last section of the outline of the current outlinee is an
-            // implied heading,
-            else if (rank <= currentOutlinee.getLastSectionHeadingRank()) {
-                // then create a new section and append it to the outline
-                // of the current outlinee element, so that this new
-                // section is the new last section of that outline.
-                // Let current section be that new section.
-                currentSection = new Section(localName);
-                currentOutlinee.getOutline().add(currentSection);
-
-                // Let the element being entered be the new heading for the
-                // current section.
-                currentSection.setHeadingRank(rank);
-            }
-            // Otherwise, run these substeps:
-            else {
-                // Let candidate section be current section.
-                Section candidateSection = currentSection;
-
-                // Heading loop:
-                while (candidateSection != null) {
-                    // If the element being entered has a rank lower than the
-                    // rank of the heading of the candidate section,
-                    if (rank > candidateSection.getHeadingRank()) {
-                        // then create a new section, and append it to candidate
-                        // section.
-                        // (This does not change which section is the last
-                        // section in the outline.)
-                        // Let current section be this new section.
-                        currentSection = new Section(localName);
-                        currentSection.setParent(candidateSection);
-                        candidateSection.getSections().add(currentSection);
-
-                        // Let the element being entered be the new heading for
-                        // the current section.
-                        currentSection.setHeadingRank(rank);
-
-                        // Abort these substeps.
-                        break;
-                    }
-
-                    // Let new candidate section be the section that contains
-                    // candidate section in the outline of current outlinee.
-                    // Let candidate section be new candidate section.
-                    candidateSection = candidateSection.getParent();
-
-                    // Return to the step labeled heading loop.
-                }
-            }
-
-            // Push the element being entered onto the stack.
-            // (This causes the algorithm to skip any descendants of the
-            // element.)
-            outlineStack.push(new Element(currentWalkDepth, localName, hidden));
-            inHeadingContentOrHiddenElement = true;
-            currentSection.setHeadingElementName(localName);
+            hiddenCount++;
         }
+        documentOutliner.startElement(depth, localName, kind, hidden, atts);
+        headingOutliner.startElement(depth, localName, kind, hidden, atts);
         contentHandler.startElement(uri, localName, qName, atts);
     }
 
@@ -735,18 +777,8 @@ public final class OutlineBuildingXMLReaderWrapper implements XMLReader,
         if (contentHandler == null) {
             return;
         }
-        if (currentOutlinee != null) {
-            if (isHeadingOutline) {
-                request.setAttribute(
-                        "http://validator.nu/properties/heading-outline",
-                        currentOutlinee.outline);
-            } else {
-                request.setAttribute(
-                        "http://validator.nu/properties/document-outline",
-                        currentOutlinee.outline);
-            }
-            setOutline(currentOutlinee.outline);
-        }
+        documentOutliner.endDocument();
+        headingOutliner.endDocument();
         contentHandler.endDocument();
     }
 
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.servlet;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+
+import com.thaiopensource.validate.IncorrectSchemaException;
+import com.thaiopensource.validate.Schema;
+
+/**
+ * Holds a built-in schema that is loaded at most once, on first use. Threads
+ * asking for a schema that is being loaded wait for that load instead of
+ * starting another one. A failed load is not remembered, so the next caller
+ * tries again.
+ */
+final class PresetSchemaHolder {
+
+    interface Loader {
+        Schema load() throws SAXException, IOException,
+                IncorrectSchemaException;
+    }
+
+    private static final Logger log4j = Logger.getLogger(PresetSchemaHolder.class);
+
+    private final String url;
+
+    private final Loader loader;
+
+    private volatile Schema schema;
+
+    private volatile boolean failed = false;
+
+    /**
+     * A holder for a schema that exists already, such as a checker.
+     */
+    PresetSchemaHolder(String url, Schema schema) {
+        this.url = url;
+        this.loader = null;
+        this.schema = schema;
+    }
+
+    PresetSchemaHolder(String url, Loader loader) {
+        this.url = url;
+        this.loader = loader;
+        this.schema = null;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    boolean isLoaded() {
+        return schema != null;
+    }
+
+    /**
+     * Whether the last attempt to load the schema failed.
+     */
+    boolean hasFailed() {
+        return failed;
+    }
+
+    Schema get() throws SAXException, IOException, IncorrectSchemaException {
+        Schema rv = schema;
+        if (rv == null) {
+            synchronized (this) {
+                rv = schema;
+                if (rv == null) {
+                    long start = System.nanoTime();
+                    try {
+                        rv = loader.load();
+                    } catch (SAXException | IOException
+                            | IncorrectSchemaException | RuntimeException e) {
+                        failed = true;
+                        throw e;
+                    }
+                    failed = false;
+                    log4j.info(String.format("Loaded schema %s in %d ms.", url,
+                            (System.nanoTime() - start) / 1000000));
+                    schema = rv;
+                }
+            }
+        }
+        return rv;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.PropertyConfigurator;
+
+/**
+ * Runs a case spooled by <code>SlowDocumentSpool</code> through the same
+ * transaction that checked it on the server, in a loop, and prints how long
+ * each run took and how much it allocated.
+ *
+ * <pre>
+ * java -cp vnu.jar nu.validator.servlet.SlowDocumentReplay [--warmup=N]
+ *     [--iterations=N] [--pause] [--print] CASE.properties
+ * </pre>
+ *
+ * <code>--pause</code> waits for Enter before the measured runs and again
+ * before exiting, which leaves time to attach a profiler and to take a
+ * snapshot. <code>--print</code> writes the response of the first run to
+ * standard output.
+ */
+public class SlowDocumentReplay {
+
+    private final Properties description;
+
+    private final byte[] body;
+
+    private final Map<String, String> parameters = new TreeMap<>();
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private int status;
+
+    public SlowDocumentReplay(Path properties) throws IOException {
+        description = new Properties();
+        try (InputStream in = Files.newInputStream(properties)) {
+            description.load(in);
+        }
+        String file = properties.getFileName().toString();
+        String name = file.endsWith(SlowDocumentSpool.PROPERTIES_SUFFIX) ? file.substring(
+                0, file.length() - SlowDocumentSpool.PROPERTIES_SUFFIX.length())
+                : file;
+        body = Files.readAllBytes(properties.resolveSibling(name
+                + SlowDocumentSpool.BODY_SUFFIX));
+        for (String key : description.stringPropertyNames()) {
+            if (key.startsWith("param.")) {
+                parameters.put(key.substring("param.".length()),
+                        description.getProperty(key));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int warmup = 3;
+        int iterations = 10;
+        boolean pause = false;
+        boolean print = false;
+        String file = null;
+        for (String arg : args) {
+            if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            } else if ("--pause".equals(arg)) {
+                pause = true;
+            } else if ("--print".equals(arg)) {
+                print = true;
+            } else if (arg.startsWith("--")) {
+                usage();
+                return;
+            } else {
+                file = arg;
+            }
+        }
+        if (file == null) {
+            usage();
+            return;
+        }
+        Properties log4jProperties = new Properties();
+        log4jProperties.load(SlowDocumentReplay.class.getClassLoader().getResourceAsStream(
+                "nu/validator/localentities/files/log4j.properties"));
+        PropertyConfigurator.configure(log4jProperties);
+
+        SlowDocumentReplay replay = new SlowDocumentReplay(Paths.get(file));
+        replay.describe();
+        for (int i = 0; i < warmup; i++) {
+            replay.run(print && i == 0 ? System.out : null);
+        }
+        if (pause) {
+            waitForEnter("Press Enter to start the measured runs.");
+        }
+        long[] nanos = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = replay.allocatedBytes();
+            long start = System.nanoTime();
+            replay.run(print && warmup == 0 && i == 0 ? System.out : null);
+            nanos[i] = System.nanoTime() - start;
+            long allocated = replay.allocatedBytes() - allocatedBefore;
+            System.err.println(String.format("run %d: %d ms, %d KB allocated, status %d",
+                    i + 1, nanos[i] / 1000000, allocated / 1024,
+                    replay.status));
+        }
+        if (iterations > 0) {
+            Arrays.sort(nanos);
+            System.err.println(String.format("min %d ms, median %d ms, max %d ms",
+                    nanos[0] / 1000000, nanos[iterations / 2] / 1000000,
+                    nanos[iterations - 1] / 1000000));
+        }
+        if (pause) {
+            waitForEnter("Press Enter to exit.");
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -cp vnu.jar nu.validator.servlet.SlowDocumentReplay [--warmup=N] [--iterations=N] [--pause] [--print] CASE.properties");
+        System.exit(1);
+    }
+
+    private static void waitForEnter(String prompt) throws IOException {
+        System.err.println(prompt);
+        while (true) {
+            int c = System.in.read();
+            if (c == -1 || c == '\n') {
+                return;
+            }
+        }
+    }
+
+    private void describe() {
+        System.err.println(String.format("%s: %d bytes of %s, %s ms on the server",
+                description.getProperty("document", "(no URL)"), body.length,
+                description.getProperty("content-type"),
+                description.getProperty("elapsed-ms")));
+        if ("true".equals(description.getProperty("truncated"))) {
+            System.err.println("The document was truncated when it was spooled.");
+        }
+    }
+
+    private long allocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Runs the case once, writing the response to <code>out</code> or
+     * discarding it.
+     */
+    private void run(OutputStream out) throws ServletException, IOException {
+        status = HttpServletResponse.SC_OK;
+        HttpServletRequest request = newRequest();
+        HttpServletResponse response = newResponse(out == null ? new ByteArrayOutputStream() : out);
+        if (Html5ConformanceCheckerTransaction.class.getName().equals(
+                description.getProperty("transaction"))) {
+            new Html5ConformanceCheckerTransaction(request, response).service();
+        } else {
+            new VerifierServletTransaction(request, response).service();
+        }
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    private HttpServletRequest newRequest() {
+        final Map<String, Object> attributes = new HashMap<>();
+        String inputType = description.getProperty("input-type");
+        if (inputType != null) {
+            attributes.put("nu.validator.servlet.MultipartFormDataFilter.type",
+                    inputType);
+        }
+        final InputStream in = new DelegatingServletInputStream(
+                new ByteArrayInputStream(body));
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        switch (method.getName()) {
+                            case "getMethod":
+                                return "POST";
+                            case "getContentType":
+                                return description.getProperty("content-type");
+                            case "getContentLength":
+                                return body.length;
+                            case "getContentLengthLong":
+                                return (long) body.length;
+                            case "getInputStream":
+                                return in;
+                            case "getHeader":
+                                if ("Content-Location".equalsIgnoreCase((String) args[0])) {
+                                    return description.getProperty("document");
+                                }
+                                return null;
+                            case "getParameter":
+                                return parameters.get(args[0]);
+                            case "getParameterValues":
+                                String value = parameters.get(args[0]);
+                                return value == null ? null : new String[] { value };
+                            case "getParameterNames":
+                                return Collections.enumeration(parameters.keySet());
+                            case "getAttribute":
+                                return attributes.get(args[0]);
+                            case "setAttribute":
+                                attributes.put((String) args[0], args[1]);
+                                return null;
+                            case "removeAttribute":
+                                attributes.remove(args[0]);
+                                return null;
+                            case "getRequestURL":
+                                return new StringBuffer("http://localhost/");
+                            default:
+                                return defaultValue(method);
+                        }
+                    }
+                });
+    }
+
+    private HttpServletResponse newResponse(final OutputStream out) {
+        final ServletOutputStream servletOut = new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(
+                HttpServletResponse.class.getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        switch (method.getName()) {
+                            case "getOutputStream":
+                                return servletOut;
+                            case "sendError":
+                            case "setStatus":
+                                status = (Integer) args[0];
+                                return null;
+                            default:
+                                return defaultValue(method);
+                        }
+                    }
+                });
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the documents whose checking took longer than a wall-time or
+ * allocation threshold in a bounded directory so that they can be replayed
+ * with <code>SlowDocumentReplay</code>. Each case is a
+ * <code>.body</code> file with the bytes the parser read and a
+ * <code>.properties</code> file with what is needed to run the request
+ * again. When the directory holds the maximum number of cases, the oldest
+ * case makes room for the new one.
+ * <p>
+ * While a request is being checked, its first bytes are kept in memory and
+ * the rest in a temporary file in the spool directory, so recording does not
+ * hold large documents on the heap.
+ */
+final class SlowDocumentSpool {
+
+    private static final Logger log4j = Logger.getLogger(SlowDocumentSpool.class);
+
+    static final String BODY_SUFFIX = ".body";
+
+    static final String PROPERTIES_SUFFIX = ".properties";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * How much of a body is kept in memory before it goes to a temporary
+     * file.
+     */
+    private static final int MEMORY_BYTES = 64 * 1024;
+
+    /**
+     * The spool, or <code>null</code> if no spool directory was configured.
+     */
+    static final SlowDocumentSpool SPOOL = create();
+
+    private static SlowDocumentSpool create() {
+        String dir = System.getProperty("nu.validator.servlet.slow-spool.dir");
+        if (dir == null || "".equals(dir)) {
+            return null;
+        }
+        return new SlowDocumentSpool(Paths.get(dir),
+                Long.parseLong(System.getProperty(
+                        "nu.validator.servlet.slow-spool.millis", "10000")),
+                Long.parseLong(System.getProperty(
+                        "nu.validator.servlet.slow-spool.allocated-bytes", "0")),
+                Integer.parseInt(System.getProperty(
+                        "nu.validator.servlet.slow-spool.max-cases", "50")),
+                Integer.parseInt(System.getProperty(
+                        "nu.validator.servlet.max-file-size", "2097152")));
+    }
+
+    private final Path directory;
+
+    private final long thresholdNanos;
+
+    /**
+     * Zero if allocation is not measured.
+     */
+    private final long thresholdBytes;
+
+    private final int maxCases;
+
+    private final int maxBodyBytes;
+
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    private long lastCaseId = 0;
+
+    SlowDocumentSpool(Path directory, long thresholdMillis,
+            long thresholdBytes, int maxCases, int maxBodyBytes) {
+        this.directory = directory;
+        this.thresholdNanos = thresholdMillis * 1000000L;
+        this.maxCases = maxCases;
+        this.maxBodyBytes = maxBodyBytes;
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (thresholdBytes > 0
+                && bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            this.threadBean = (com.sun.management.ThreadMXBean) bean;
+            this.threadBean.setThreadAllocatedMemoryEnabled(true);
+            this.thresholdBytes = thresholdBytes;
+        } else {
+            if (thresholdBytes > 0) {
+                log4j.warn("Per-thread allocation is not measurable on this VM; spooling slow documents by wall time only.");
+            }
+            this.threadBean = null;
+            this.thresholdBytes = 0;
+        }
+        try {
+            Files.createDirectories(directory);
+            // Recordings left over from a previous run.
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                    directory, "*" + TEMP_SUFFIX)) {
+                for (Path path : stream) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log4j.info("Spooling slow documents to " + directory);
+    }
+
+    /**
+     * Starts measuring a request on the current thread.
+     */
+    Recording startRecording() {
+        return new Recording();
+    }
+
+    /**
+     * Measures one request and keeps a copy of its document. The request
+     * description is only built for slow requests.
+     */
+    final class Recording {
+
+        private final long startNanos = System.nanoTime();
+
+        private final long startBytes = allocatedBytes();
+
+        private long elapsedNanos;
+
+        private long allocated;
+
+        private ByteArrayOutputStream memory;
+
+        private Path spill;
+
+        private OutputStream spillOut;
+
+        private long size;
+
+        private String contentType;
+
+        private boolean truncated = false;
+
+        private Recording() {
+        }
+
+        /**
+         * Returns a stream that keeps a copy of what is read from
+         * <code>in</code>.
+         */
+        InputStream record(InputStream in, String type) {
+            this.contentType = type;
+            this.memory = new ByteArrayOutputStream();
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        keep(new byte[] { (byte) b }, 0, 1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len)
+                        throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        keep(b, off, n);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        /**
+         * Returns a reader that keeps a UTF-8 copy of what is read from
+         * <code>in</code>. <code>type</code> should not have a
+         * <code>charset</code> parameter; the recorded type says UTF-8.
+         */
+        Reader record(Reader in, String type) {
+            this.contentType = type + "; charset=utf-8";
+            this.memory = new ByteArrayOutputStream();
+            final Writer encoder = new OutputStreamWriter(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    keep(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    keep(b, off, len);
+                }
+            }, StandardCharsets.UTF_8);
+            return new FilterReader(in) {
+                @Override
+                public int read() throws IOException {
+                    int c = super.read();
+                    if (c != -1) {
+                        encoder.write(c);
+                        encoder.flush();
+                    }
+                    return c;
+                }
+
+                @Override
+                public int read(char[] cbuf, int off, int len)
+                        throws IOException {
+                    int n = super.read(cbuf, off, len);
+                    if (n > 0) {
+                        encoder.write(cbuf, off, n);
+                        encoder.flush();
+                    }
+                    return n;
+                }
+            };
+        }
+
+        private void keep(byte[] b, int off, int len) {
+            if (size + len > maxBodyBytes) {
+                truncated = true;
+                len = (int) Math.max(0, maxBodyBytes - size);
+            }
+            if (len == 0) {
+                return;
+            }
+            size += len;
+            if (spill == null && memory.size() + len <= MEMORY_BYTES) {
+                memory.write(b, off, len);
+                return;
+            }
+            try {
+                if (spill == null) {
+                    spill = Files.createTempFile(directory, "recording",
+                            TEMP_SUFFIX);
+                    spillOut = Files.newOutputStream(spill);
+                    memory.writeTo(spillOut);
+                    memory = null;
+                }
+                if (spillOut != null) {
+                    spillOut.write(b, off, len);
+                }
+            } catch (IOException e) {
+                // Recording must not fail the check; keep what was written.
+                log4j.warn("Could not record document: " + e.getMessage());
+                truncated = true;
+                closeSpill();
+                size = maxBodyBytes;
+            }
+        }
+
+        private void closeSpill() {
+            if (spillOut != null) {
+                try {
+                    spillOut.close();
+                } catch (IOException e) {
+                    log4j.warn("Could not record document: " + e.getMessage());
+                    truncated = true;
+                }
+                spillOut = null;
+            }
+        }
+
+        /**
+         * Stops the clock and tells whether the request exceeded a
+         * threshold. A recording that is not slow is discarded.
+         */
+        boolean isSlow() {
+            elapsedNanos = System.nanoTime() - startNanos;
+            allocated = allocatedBytes() - startBytes;
+            boolean slow = (memory != null || spill != null)
+                    && (elapsedNanos > thresholdNanos
+                            || (thresholdBytes > 0 && allocated > thresholdBytes));
+            if (!slow) {
+                discard();
+            }
+            return slow;
+        }
+
+        private void discard() {
+            closeSpill();
+            if (spill != null) {
+                try {
+                    Files.deleteIfExists(spill);
+                } catch (IOException e) {
+                    log4j.warn("Could not delete " + spill + ": "
+                            + e.getMessage());
+                }
+                spill = null;
+            }
+            memory = null;
+        }
+
+        /**
+         * Spools the recorded body with <code>description</code>, to which
+         * the content type and the measurements are added.
+         */
+        void spool(Properties description) {
+            closeSpill();
+            description.setProperty("content-type", contentType);
+            description.setProperty("elapsed-ms",
+                    Long.toString(elapsedNanos / 1000000));
+            if (threadBean != null) {
+                description.setProperty("allocated-bytes",
+                        Long.toString(allocated));
+            }
+            if (truncated) {
+                description.setProperty("truncated", "true");
+            }
+            try {
+                write(memory, spill, description);
+            } finally {
+                discard();
+            }
+        }
+    }
+
+    private long allocatedBytes() {
+        if (threadBean == null) {
+            return 0;
+        }
+        return threadBean.getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    /**
+     * Writes a case whose body is either in <code>memory</code> or in the
+     * temporary file <code>spill</code>.
+     */
+    private synchronized void write(ByteArrayOutputStream memory, Path spill,
+            Properties description) {
+        long id = Math.max(System.currentTimeMillis(), lastCaseId + 1);
+        lastCaseId = id;
+        String name = Long.toString(id);
+        Path body = directory.resolve(name + BODY_SUFFIX);
+        boolean complete = false;
+        try {
+            makeRoom();
+            if (spill != null) {
+                Files.move(spill, body, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (OutputStream out = Files.newOutputStream(body)) {
+                    memory.writeTo(out);
+                }
+            }
+            // The properties file goes last; it marks the case complete.
+            try (OutputStream out = Files.newOutputStream(
+                    directory.resolve(name + PROPERTIES_SUFFIX))) {
+                description.store(out, "Slow document");
+            }
+            complete = true;
+            log4j.info(String.format("Spooled slow document %s as case %s (%s ms).",
+                    description.getProperty("document", "(no URL)"), name,
+                    description.getProperty("elapsed-ms")));
+        } catch (IOException e) {
+            log4j.warn("Could not spool slow document: " + e.getMessage());
+        } finally {
+            if (!complete) {
+                try {
+                    Files.deleteIfExists(
+                            directory.resolve(name + PROPERTIES_SUFFIX));
+                    Files.deleteIfExists(body);
+                } catch (IOException e) {
+                    log4j.warn("Could not remove incomplete case " + name
+                            + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void makeRoom() throws IOException {
+        List<String> cases = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                directory, "*" + PROPERTIES_SUFFIX)) {
+            for (Path path : stream) {
+                String file = path.getFileName().toString();
+                cases.add(file.substring(0,
+                        file.length() - PROPERTIES_SUFFIX.length()));
+            }
+        }
+        // Bodies without properties are cases that were never completed.
+        Set<String> complete = new HashSet<>(cases);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                directory, "*" + BODY_SUFFIX)) {
+            for (Path path : stream) {
+                String file = path.getFileName().toString();
+                if (!complete.contains(file.substring(0,
+                        file.length() - BODY_SUFFIX.length()))) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        if (cases.size() < maxCases) {
+            return;
+        }
+        // The names are millisecond timestamps of equal length.
+        Collections.sort(cases);
+        for (int i = 0; i <= cases.size() - maxCases; i++) {
+            Files.deleteIfExists(directory.resolve(cases.get(i)
+                    + PROPERTIES_SUFFIX));
+            Files.deleteIfExists(directory.resolve(cases.get(i) + BODY_SUFFIX));
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A file of the web UI that is served from memory. The file is compressed
+ * once when loaded; a brotli-compressed copy is used if the build put one
+ * next to the file. Responses carry an <code>ETag</code> derived from the
+ * content, and each file is also served under a fingerprinted name (such as
+ * <code>style.0123456789abcdef.css</code>) that can be cached forever.
+ */
+final class StaticAsset {
+
+    private static final String RESOURCE_DIR = "nu/validator/localentities/files/";
+
+    private static final String CACHE_CONTROL = "public, max-age=43200"; // 12 hours
+
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    static final StaticAsset STYLE_CSS = load("style.css",
+            "text/css; charset=utf-8");
+
+    static final StaticAsset SCRIPT_JS = load("script.js",
+            "text/javascript; charset=utf-8");
+
+    static final StaticAsset ICON_PNG = load("icon.png", "image/png");
+
+    static final StaticAsset ABOUT_HTML = load("about.html",
+            "text/html; charset=utf-8");
+
+    private static final StaticAsset[] ALL = { STYLE_CSS, SCRIPT_JS,
+            ICON_PNG, ABOUT_HTML };
+
+    private static final Map<String, StaticAsset> BY_PATH = new HashMap<>();
+
+    static {
+        for (StaticAsset asset : ALL) {
+            BY_PATH.put(asset.path, asset);
+            BY_PATH.put(asset.fingerprintedPath, asset);
+        }
+    }
+
+    private final String path;
+
+    private final String fingerprintedPath;
+
+    private final String fingerprintedName;
+
+    private final String contentType;
+
+    private final String hash;
+
+    private final byte[] identity;
+
+    private final byte[] gzip;
+
+    private final byte[] brotli;
+
+    private StaticAsset(String name, String contentType, byte[] identity,
+            byte[] brotli) throws IOException {
+        this.contentType = contentType;
+        this.identity = identity;
+        this.brotli = brotli;
+        this.hash = hash(identity);
+        int dot = name.lastIndexOf('.');
+        this.fingerprintedName = name.substring(0, dot) + "." + hash
+                + name.substring(dot);
+        this.path = "/" + name;
+        this.fingerprintedPath = "/" + fingerprintedName;
+        byte[] compressed = gzip(identity);
+        // already compressed formats such as PNG don't get smaller
+        this.gzip = compressed.length < identity.length ? compressed : null;
+    }
+
+    private static StaticAsset load(String name, String contentType) {
+        try {
+            byte[] identity = readFromClassLoader(RESOURCE_DIR + name);
+            if (identity == null) {
+                throw new IOException("Missing resource: " + name);
+            }
+            return new StaticAsset(name, contentType, identity,
+                    readFromClassLoader(RESOURCE_DIR + name + ".br"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the file served at the given path, or <code>null</code>.
+     */
+    static StaticAsset forPath(String pathInfo) {
+        return pathInfo == null ? null : BY_PATH.get(pathInfo);
+    }
+
+    /**
+     * Returns the paths of all the files, for excluding them from dynamic
+     * compression.
+     */
+    static String[] getPaths() {
+        String[] paths = new String[ALL.length * 2];
+        for (int i = 0; i < ALL.length; i++) {
+            paths[i * 2] = ALL[i].path;
+            paths[i * 2 + 1] = ALL[i].fingerprintedPath;
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the name under which the file can be cached forever, for use
+     * in relative URLs.
+     */
+    String getFingerprintedName() {
+        return fingerprintedName;
+    }
+
+    void write(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (fingerprintedPath.equals(request.getPathInfo())) {
+            response.setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+        } else {
+            response.setHeader("Cache-Control", CACHE_CONTROL);
+            response.setDateHeader("Expires",
+                    System.currentTimeMillis() + 43200000); // 12 hours
+        }
+        byte[] body = identity;
+        String encoding = null;
+        if (gzip != null || brotli != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            if (brotli != null && accepts(acceptEncoding, "br")) {
+                body = brotli;
+                encoding = "br";
+            } else if (gzip != null && accepts(acceptEncoding, "gzip")) {
+                body = gzip;
+                encoding = "gzip";
+            }
+        }
+        response.setHeader("ETag", encoding == null ? "\"" + hash + "\""
+                : "\"" + hash + "-" + encoding + "\"");
+        if (matches(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(contentType);
+        if (encoding != null) {
+            response.setHeader("Content-Encoding", encoding);
+        }
+        response.setContentLength(body.length);
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(body);
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if an <code>If-None-Match</code> header
+     * names any representation of this file. All of them have the same
+     * content, so any of them is as good as the one that would be sent.
+     */
+    private boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.length() > 2 && tag.charAt(0) == '"'
+                    && tag.substring(1).startsWith(hash)) {
+                String rest = tag.substring(1 + hash.length());
+                if ("\"".equals(rest) || "-gzip\"".equals(rest)
+                        || "-br\"".equals(rest)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if an <code>Accept-Encoding</code> header
+     * lists a content coding with a non-zero quality.
+     */
+    private static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String item : acceptEncoding.split(",")) {
+            String[] parts = item.split(";");
+            if (!coding.equalsIgnoreCase(parts[0].trim())) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+                    content);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", digest[i] & 0xFF));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(baos) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(content);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Returns the contents of a resource or <code>null</code> if there is no
+     * such resource.
+     */
+    private static byte[] readFromClassLoader(String name) throws IOException {
+        try (InputStream in = StaticAsset.class.getClassLoader().getResourceAsStream(
+                name)) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                baos.write(buffer, 0, n);
+            }
+            return baos.toByteArray();
+        }
+    }
+}
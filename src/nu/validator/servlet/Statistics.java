@@ -28,6 +28,7 @@ import java.text.DecimalFormat;
 import javax.servlet.http.HttpServletResponse;
 
 import nu.validator.htmlparser.sax.HtmlSerializer;
+import nu.validator.messages.ElaborationCache;
 import nu.validator.xml.EmptyAttributes;
 
 import org.xml.sax.ContentHandler;
@@ -51,6 +52,12 @@ public class Statistics {
 
     private static final char[] VALIDATIONS_PER_SECOND = "Validations per second".toCharArray();
 
+    private static final char[] ELABORATION_CACHE_ENTRIES = "Cached elaborations".toCharArray();
+
+    private static final char[] ELABORATION_CACHE_KILOBYTES = "Cached elaboration kilobytes".toCharArray();
+
+    private static final char[] ELABORATION_CACHE_HIT_RATE = "Elaboration cache hit rate".toCharArray();
+
     private static final char[] SORT_LANGS_SCRIPT = (""
             + " var rows = document.querySelectorAll('tr');"
             + " var langRows = new Array();"
@@ -659,6 +666,30 @@ public class Statistics {
                 characters(ch, totalDouble / (uptimeMillis / 1000.0));
                 endElement(ch, "dd");
 
+                ElaborationCache elaborationCache = VerifierServletTransaction.getElaborationCache();
+                if (elaborationCache != null) {
+                    startElement(ch, "dt");
+                    characters(ch, ELABORATION_CACHE_ENTRIES);
+                    endElement(ch, "dt");
+                    startElement(ch, "dd");
+                    characters(ch, elaborationCache.size());
+                    endElement(ch, "dd");
+
+                    startElement(ch, "dt");
+                    characters(ch, ELABORATION_CACHE_KILOBYTES);
+                    endElement(ch, "dt");
+                    startElement(ch, "dd");
+                    characters(ch, elaborationCache.getBytes() / 1024.0);
+                    endElement(ch, "dd");
+
+                    startElement(ch, "dt");
+                    characters(ch, ELABORATION_CACHE_HIT_RATE);
+                    endElement(ch, "dt");
+                    startElement(ch, "dd");
+                    characters(ch, elaborationCache.getHitRate());
+                    endElement(ch, "dd");
+                }
+
                 endElement(ch, "dl");
 
                 startElement(ch, "table");
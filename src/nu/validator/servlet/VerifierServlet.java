@@ -24,9 +24,7 @@
 package nu.validator.servlet;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
 
 import javax.servlet.ServletException;
@@ -70,14 +68,6 @@ public class VerifierServlet extends HttpServlet {
 
     private static final byte[] PARSETREE_ROBOTS_TXT;
 
-    private static final byte[] STYLE_CSS;
-
-    private static final byte[] SCRIPT_JS;
-
-    private static final byte[] ICON_PNG;
-
-    private static final byte[] ABOUT_HTML;
-
     static {
         try {
             GENERIC_ROBOTS_TXT = buildRobotsTxt(GENERIC_HOST, GENERIC_PATH, HTML5_HOST, HTML5_PATH, PARSETREE_HOST, PARSETREE_PATH);
@@ -86,14 +76,6 @@ public class VerifierServlet extends HttpServlet {
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         }
-        try {
-            STYLE_CSS = readFromClassLoaderIntoByteArray("nu/validator/localentities/files/style.css");
-            SCRIPT_JS = readFromClassLoaderIntoByteArray("nu/validator/localentities/files/script.js");
-            ICON_PNG = readFromClassLoaderIntoByteArray("nu/validator/localentities/files/icon.png");
-            ABOUT_HTML = readFromClassLoaderIntoByteArray("nu/validator/localentities/files/about.html");
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
         PrudentHttpEntityResolver.setParams(
             Integer.parseInt(System.getProperty("nu.validator.servlet.connection-timeout","5000")),
             Integer.parseInt(System.getProperty("nu.validator.servlet.socket-timeout","5000")),
@@ -125,21 +107,6 @@ public class VerifierServlet extends HttpServlet {
         return builder.toString().getBytes("UTF-8");
     }
 
-    private static byte[] readFromClassLoaderIntoByteArray(String name)
-            throws IOException {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            try (InputStream ios = VerifierServlet.class.getClassLoader().getResourceAsStream(
-                    name)) {
-                for (int b = ios.read(); b != -1; b = ios.read()) {
-                    baos.write(b);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            return baos.toByteArray();
-        }
-    }
-
     private void writeResponse(byte[] buffer, String type,
             HttpServletResponse response) throws IOException {
         try {
@@ -156,11 +123,55 @@ public class VerifierServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Lists which presets have their schemas loaded and which failed to
+     * load. When schemas are loaded eagerly, responds with 503 until the
+     * loading and its retries are over so that a load balancer can hold
+     * traffic back until then. A schema that still failed is loaded again on
+     * first use.
+     */
+    private void writeReadiness(HttpServletResponse response)
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        VerifierServletTransaction.writePresetReadiness(sb);
+        byte[] buffer = sb.toString().getBytes("UTF-8");
+        if (VerifierServletTransaction.EAGER_SCHEMA_LOADING
+                && !VerifierServletTransaction.isPresetLoadingDone()) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        response.setContentType("text/plain; charset=utf-8");
+        response.setContentLength(buffer.length);
+        response.setHeader("Cache-Control", "no-cache");
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(buffer);
+            out.flush();
+        }
+    }
+
+    /**
+     * Lists the depth of the scheduler queues and how long requests waited
+     * in them.
+     */
+    private void writeSchedulerMetrics(HttpServletResponse response)
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        FairScheduler.SCHEDULER.appendMetrics(sb);
+        byte[] buffer = sb.toString().getBytes("UTF-8");
+        response.setContentType("text/plain; charset=utf-8");
+        response.setContentLength(buffer.length);
+        response.setHeader("Cache-Control", "no-cache");
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(buffer);
+            out.flush();
+        }
+    }
+
     /**
      * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        StaticAsset asset = StaticAsset.forPath(request.getPathInfo());
         if ("/robots.txt".equals(request.getPathInfo())) {
             String serverName = request.getServerName();
             byte[] robotsTxt = null;
@@ -176,17 +187,15 @@ public class VerifierServlet extends HttpServlet {
             }
             writeResponse(robotsTxt, "text/plain; charset=utf-8", response);
             return;
-        } else if ("/style.css".equals(request.getPathInfo())) {
-            writeResponse(STYLE_CSS, "text/css; charset=utf-8", response);
-            return;
-        } else if ("/script.js".equals(request.getPathInfo())) {
-            writeResponse(SCRIPT_JS, "text/javascript; charset=utf-8", response);
+        } else if (asset != null) {
+            asset.write(request, response);
             return;
-        } else if ("/icon.png".equals(request.getPathInfo())) {
-            writeResponse(ICON_PNG, "image/png", response);
+        } else if ("/readiness".equals(request.getPathInfo())) {
+            writeReadiness(response);
             return;
-        } else if ("/about.html".equals(request.getPathInfo())) {
-            writeResponse(ABOUT_HTML, "text/html; charset=utf-8", response);
+        } else if (FairScheduler.SCHEDULER != null
+                && "/scheduler".equals(request.getPathInfo())) {
+            writeSchedulerMetrics(response);
             return;
         } else if (Statistics.STATISTICS != null && "/stats.html".equals(request.getPathInfo())) {
             Statistics.STATISTICS.writeToResponse(response);
@@ -30,6 +30,7 @@ import java.io.OutputStream;
 import java.net.SocketTimeoutException;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -40,6 +41,8 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -47,8 +50,12 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import nu.validator.checker.IdIndex;
+import nu.validator.checker.NullChecker;
 import nu.validator.checker.XmlPiChecker;
 import nu.validator.checker.jing.CheckerSchema;
+import nu.validator.checker.jing.CheckerValidator;
+import nu.validator.gnu.xml.aelfred2.DtdCache;
 import nu.validator.gnu.xml.aelfred2.FatalSAXException;
 import nu.validator.gnu.xml.aelfred2.SAXDriver;
 import nu.validator.htmlparser.common.DoctypeExpectation;
@@ -64,7 +71,9 @@ import nu.validator.htmlparser.sax.XmlSerializer;
 import nu.validator.io.BoundedInputStream;
 import nu.validator.io.DataUri;
 import nu.validator.io.StreamBoundException;
+import nu.validator.io.Utf8OutputStreamWriter;
 import nu.validator.localentities.LocalCacheEntityResolver;
+import nu.validator.messages.ElaborationCache;
 import nu.validator.messages.GnuMessageEmitter;
 import nu.validator.messages.JsonMessageEmitter;
 import nu.validator.messages.MessageEmitterAdapter;
@@ -77,21 +86,28 @@ import nu.validator.servlet.OutlineBuildingXMLReaderWrapper.Section;
 import nu.validator.source.SourceCode;
 import nu.validator.spec.Spec;
 import nu.validator.spec.html5.Html5SpecBuilder;
+import nu.validator.validation.CheckerProfile;
 import nu.validator.xml.AttributesImpl;
 import nu.validator.xml.AttributesPermutingXMLReaderWrapper;
 import nu.validator.xml.BaseUriTracker;
+import nu.validator.xml.CancellingContentHandler;
 import nu.validator.xml.CharacterUtil;
+import nu.validator.xml.CheckCancelledException;
 import nu.validator.xml.CombineContentHandler;
 import nu.validator.xml.ContentTypeParser;
 import nu.validator.xml.ContentTypeParser.NonXmlContentTypeException;
 import nu.validator.xml.DataUriEntityResolver;
+import nu.validator.xml.Deadline;
 import nu.validator.xml.IdFilter;
+import nu.validator.xml.IdIndexingContentHandler;
 import nu.validator.xml.LanguageDetectingXMLReaderWrapper;
 import nu.validator.xml.NamespaceDroppingXMLReaderWrapper;
 import nu.validator.xml.NullEntityResolver;
 import nu.validator.xml.PrudentHttpEntityResolver;
 import nu.validator.xml.PrudentHttpEntityResolver.ResourceNotRetrievableException;
+import nu.validator.xml.StageTimings;
 import nu.validator.xml.SystemErrErrorHandler;
+import nu.validator.xml.TimingContentHandler;
 import nu.validator.xml.TypedInputSource;
 import nu.validator.xml.WiretapXMLReaderWrapper;
 import nu.validator.xml.XhtmlSaxEmitter;
@@ -227,6 +243,8 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
 
     private static Spec html5spec;
 
+    private static ElaborationCache elaborationCache;
+
     private static int[] presetDoctypes;
 
     private static String[] presetLabels;
@@ -260,6 +278,8 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
 
     private long start = System.currentTimeMillis();
 
+    private final long arrivalNanos = System.nanoTime();
+
     protected final HttpServletRequest request;
 
     private final HttpServletResponse response;
@@ -296,7 +316,23 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
 
     private static String[] preloadedSchemaUrls;
 
-    private static Schema[] preloadedSchemas;
+    private static PresetSchemaHolder[] preloadedSchemas;
+
+    static final boolean EAGER_SCHEMA_LOADING = "eager".equals(
+            System.getProperty("nu.validator.servlet.schema-loading", "lazy"));
+
+    /**
+     * How many times eager loading tries each preset schema.
+     */
+    private static final int PRESET_LOAD_ATTEMPTS = 5;
+
+    /**
+     * The pause before the first retry of a preset schema; it doubles with
+     * every further retry.
+     */
+    private static final long PRESET_RETRY_MILLIS = 1000;
+
+    private static volatile boolean presetLoadingDone = false;
 
     private final static String[] DENY_LIST = System.getProperty(
             "nu.validator.servlet.deny-list", "").split("\\s+");
@@ -308,23 +344,54 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
 
     private final static String STYLE_SHEET = System.getProperty(
             "nu.validator.servlet.style-sheet",
-            "style.css");
+            StaticAsset.STYLE_CSS.getFingerprintedName());
 
     private final static String ICON = System.getProperty(
             "nu.validator.servlet.icon",
-            "icon.png");
+            StaticAsset.ICON_PNG.getFingerprintedName());
 
     private final static String SCRIPT = System.getProperty(
             "nu.validator.servlet.script",
-            "script.js");
+            StaticAsset.SCRIPT_JS.getFingerprintedName());
 
     private static final long SIZE_LIMIT = Integer.parseInt(System.getProperty(
             "nu.validator.servlet.max-file-size", "2097152"));
 
+    /**
+     * Whether every request is timed, not just those with a
+     * <code>timings</code> parameter.
+     */
+    private static final boolean ALWAYS_TIME = "true".equals(
+            System.getProperty("nu.validator.servlet.timings", "false"));
+
+    /**
+     * The longest a check may take in milliseconds, or zero for no limit. A
+     * <code>deadline</code> parameter can only make it shorter.
+     */
+    private static final long DEADLINE_MILLIS = Long.parseLong(
+            System.getProperty("nu.validator.servlet.deadline", "0"));
+
+    /**
+     * The checkers that run unless a <code>checkers</code> parameter says
+     * otherwise.
+     */
+    private static final CheckerProfile DEFAULT_CHECKERS = CheckerProfile.parse(
+            System.getProperty("nu.validator.servlet.checkers", "all"));
+
+    /**
+     * Parsed external DTD subsets, shared by all requests that load external
+     * entities. Only subsets served from the local entity cache are kept, so
+     * a DTD fetched for one document is never reused for another.
+     */
+    private static final DtdCache DTD_CACHE = new DtdCache(32,
+            LocalCacheEntityResolver.getLocalSystemIds());
+
     protected String schemaUrls = null;
 
     protected Validator validator = null;
 
+    private final IdIndex idIndex = new IdIndex();
+
     private BufferingRootNamespaceSniffer bufferingRootNamespaceSniffer = null;
 
     private String contentType = null;
@@ -379,6 +446,18 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
 
     private LexicalHandler lexicalHandler;
 
+    private StageTimings timings = null;
+
+    private long deadlineMillis = DEADLINE_MILLIS;
+
+    private CheckerProfile checkers = DEFAULT_CHECKERS;
+
+    private boolean checkersSkipped = false;
+
+    private Deadline deadline = null;
+
+    private boolean clientGone = false;
+
     // for
     // UI
     // stability
@@ -467,18 +546,10 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
 
             log4j.debug("The cache path prefix is: " + prefix);
 
-            ErrorHandler eh = new SystemErrErrorHandler();
-            LocalCacheEntityResolver er = new LocalCacheEntityResolver(new NullEntityResolver());
+            final LocalCacheEntityResolver er = new LocalCacheEntityResolver(new NullEntityResolver());
             er.setAllowRnc(true);
-            PropertyMapBuilder pmb = new PropertyMapBuilder();
-            pmb.put(ValidateProperty.ERROR_HANDLER, eh);
-            pmb.put(ValidateProperty.ENTITY_RESOLVER, er);
-            pmb.put(ValidateProperty.XML_READER_CREATOR,
-                    new VerifierServletXMLReaderCreator(eh, er));
-            RngProperty.CHECK_ID_IDREF.add(pmb);
-            PropertyMap pMap = pmb.toPropertyMap();
 
-            log4j.debug("Parsing set up. Starting to read schemas.");
+            log4j.debug("Parsing set up. Registering schemas.");
 
             SortedMap<String, Schema> schemaMap = new TreeMap<>();
 
@@ -519,47 +590,48 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
             schemaMap.put("http://c.validator.nu/rdfalite/",
                     CheckerSchema.RDFALITE_CHECKER);
 
+            SortedMap<String, PresetSchemaHolder> holderMap = new TreeMap<>();
+            for (Map.Entry<String, Schema> entry : schemaMap.entrySet()) {
+                holderMap.put(entry.getKey(), new PresetSchemaHolder(
+                        entry.getKey(), entry.getValue()));
+            }
             for (String presetUrl : presetUrls) {
-                for (String url : SPACE.split(presetUrl)) {
-                    if (schemaMap.get(url) == null && !isCheckerUrl(url)) {
-                        Schema sch = schemaByUrl(url, er, pMap);
-                        schemaMap.put(url, sch);
+                for (final String url : SPACE.split(presetUrl)) {
+                    if (holderMap.get(url) == null && !isCheckerUrl(url)) {
+                        holderMap.put(url, new PresetSchemaHolder(url,
+                                new PresetSchemaHolder.Loader() {
+                                    @Override
+                                    public Schema load() throws SAXException,
+                                            IOException,
+                                            IncorrectSchemaException {
+                                        return wrapPresetSchema(url,
+                                                schemaByUrl(url, er,
+                                                        presetPropertyMap(er)));
+                                    }
+                                }));
                     }
                 }
             }
 
-            log4j.debug("Schemas read.");
-
-            preloadedSchemaUrls = new String[schemaMap.size()];
-            preloadedSchemas = new Schema[schemaMap.size()];
+            preloadedSchemaUrls = new String[holderMap.size()];
+            preloadedSchemas = new PresetSchemaHolder[holderMap.size()];
             int i = 0;
-            for (Map.Entry<String, Schema> entry : schemaMap.entrySet()) {
+            for (Map.Entry<String, PresetSchemaHolder> entry : holderMap.entrySet()) {
                 preloadedSchemaUrls[i] = entry.getKey().intern();
-                Schema s = entry.getValue();
-                String u = entry.getKey();
-                if (isDataAttributeDroppingSchema(u)) {
-                    s = new DataAttributeDroppingSchemaWrapper(
-                            s);
-                }
-                if (isXmlLangAllowingSchema(u)) {
-                    s = new XmlLangAttributeDroppingSchemaWrapper(s);
-                }
-                if (isRoleAttributeFilteringSchema(u)) {
-                    s = new RoleAttributeFilteringSchemaWrapper(s);
-                }
-                if (isTemplateElementDroppingSchema(u)) {
-                    s = new TemplateElementDroppingSchemaWrapper(s);
-                }
-                if (isCustomElementNamespaceChangingSchema(u)) {
-                    s = new NamespaceChangingSchemaWrapper(s);
-                }
-                preloadedSchemas[i] = s;
+                preloadedSchemas[i] = entry.getValue();
                 i++;
             }
 
+            log4j.debug("Schemas registered.");
+
+            if (EAGER_SCHEMA_LOADING) {
+                loadPresetSchemasInParallel();
+            }
+
             log4j.debug("Reading spec.");
 
             html5spec = Html5SpecBuilder.parseSpec(LocalCacheEntityResolver.getHtml5SpecAsStream());
+            elaborationCache = new ElaborationCache(html5spec, 4096);
 
             log4j.debug("Spec read.");
 
@@ -567,12 +639,156 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
 
             LanguageDetectingXMLReaderWrapper.initialize();
 
+            if (log4j.isDebugEnabled()) {
+                log4j.debug("Local entity cache:\n"
+                        + LocalCacheEntityResolver.getCacheReport());
+            }
             log4j.debug("Initialization complete.");
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Returns the shared cache of serialized elaborations, or
+     * <code>null</code> before initialization.
+     */
+    static ElaborationCache getElaborationCache() {
+        return elaborationCache;
+    }
+
+    /**
+     * Returns the properties for parsing one preset schema. Each load gets
+     * its own error handler because loads may run at the same time.
+     */
+    private static PropertyMap presetPropertyMap(EntityResolver er) {
+        ErrorHandler eh = new SystemErrErrorHandler();
+        PropertyMapBuilder pmb = new PropertyMapBuilder();
+        pmb.put(ValidateProperty.ERROR_HANDLER, eh);
+        pmb.put(ValidateProperty.ENTITY_RESOLVER, er);
+        pmb.put(ValidateProperty.XML_READER_CREATOR,
+                new VerifierServletXMLReaderCreator(eh, er));
+        RngProperty.CHECK_ID_IDREF.add(pmb);
+        return pmb.toPropertyMap();
+    }
+
+    private static Schema wrapPresetSchema(String u, Schema s) {
+        if (isDataAttributeDroppingSchema(u)) {
+            s = new DataAttributeDroppingSchemaWrapper(s);
+        }
+        if (isXmlLangAllowingSchema(u)) {
+            s = new XmlLangAttributeDroppingSchemaWrapper(s);
+        }
+        if (isRoleAttributeFilteringSchema(u)) {
+            s = new RoleAttributeFilteringSchemaWrapper(s);
+        }
+        if (isTemplateElementDroppingSchema(u)) {
+            s = new TemplateElementDroppingSchemaWrapper(s);
+        }
+        if (isCustomElementNamespaceChangingSchema(u)) {
+            s = new NamespaceChangingSchemaWrapper(s);
+        }
+        return s;
+    }
+
+    /**
+     * Loads every preset schema that isn't loaded yet, in parallel, on a
+     * fork-join pool. A failed load is retried a few times with a growing
+     * pause. Returns immediately; {@link #isPresetLoadingDone()} reports
+     * when the loading and any retries are over.
+     */
+    private static void loadPresetSchemasInParallel() {
+        log4j.info("Loading preset schemas in parallel.");
+        final long start = System.nanoTime();
+        final ForkJoinPool pool = new ForkJoinPool();
+        for (final PresetSchemaHolder holder : preloadedSchemas) {
+            if (holder.isLoaded()) {
+                continue;
+            }
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long pause = PRESET_RETRY_MILLIS;
+                    for (int attempt = 1;; attempt++) {
+                        try {
+                            holder.get();
+                            return;
+                        } catch (Exception e) {
+                            if (attempt == PRESET_LOAD_ATTEMPTS) {
+                                log4j.error("Failed to load schema "
+                                        + holder.getUrl() + " after "
+                                        + attempt + " attempts; it will be"
+                                        + " loaded on first use.", e);
+                                return;
+                            }
+                            log4j.warn(String.format(
+                                    "Failed to load schema %s; retrying in %d ms.",
+                                    holder.getUrl(), pause), e);
+                        }
+                        try {
+                            Thread.sleep(pause);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        pause *= 2;
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pool.awaitTermination(Long.MAX_VALUE,
+                            TimeUnit.MILLISECONDS);
+                    presetLoadingDone = true;
+                    log4j.info(String.format(
+                            "Loaded preset schemas in %d ms.",
+                            (System.nanoTime() - start) / 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "preset-schema-loader");
+        waiter.setDaemon(true);
+        waiter.start();
+    }
+
+    /**
+     * @return <code>true</code> once eager loading, including its retries,
+     *         is over, whether or not every schema loaded
+     */
+    static boolean isPresetLoadingDone() {
+        return presetLoadingDone;
+    }
+
+    /**
+     * Writes one line per preset: "warm" if all of its schemas have been
+     * loaded, "failed" if the last attempt to load one of them failed,
+     * "cold" otherwise, followed by the preset label.
+     */
+    static void writePresetReadiness(StringBuilder sb) {
+        for (int i = 0; i < presetUrls.length; i++) {
+            String state = "warm";
+            for (String url : SPACE.split(presetUrls[i])) {
+                int j = Arrays.binarySearch(preloadedSchemaUrls, url);
+                if (j > -1 && !preloadedSchemas[j].isLoaded()) {
+                    if (preloadedSchemas[j].hasFailed()) {
+                        state = "failed";
+                        break;
+                    }
+                    state = "cold";
+                }
+            }
+            sb.append(state);
+            sb.append('\t');
+            sb.append(presetLabels[i]);
+            sb.append('\n');
+        }
+    }
+
     @SuppressWarnings("deprecation")
     protected static String scrub(CharSequence s) {
         return Normalizer.normalize(
@@ -757,6 +973,17 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
             }
         }
 
+        String checkersStr = request.getParameter("checkers");
+        if (checkersStr != null) {
+            try {
+                checkers = CheckerProfile.parse(checkersStr);
+            } catch (IllegalArgumentException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                        e.getMessage());
+                return;
+            }
+        }
+
         if (willValidate()) {
             response.setDateHeader("Expires", 0);
             response.setHeader("Cache-Control", "no-cache");
@@ -785,6 +1012,27 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
         showSource = (request.getParameter("showsource") != null);
         showSource = (showSource || "textarea".equals(inputType));
         showOutline = (request.getParameter("showoutline") != null);
+        if (ALWAYS_TIME || request.getParameter("timings") != null) {
+            timings = new StageTimings();
+        }
+        String deadlineStr = request.getParameter("deadline");
+        if (deadlineStr != null) {
+            long requested;
+            try {
+                requested = Long.parseLong(deadlineStr);
+            } catch (NumberFormatException e) {
+                requested = 0;
+            }
+            if (requested <= 0) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                        "The \u201Cdeadline\u201D parameter must be a positive"
+                                + " number of milliseconds.");
+                return;
+            }
+            if (deadlineMillis == 0 || requested < deadlineMillis) {
+                deadlineMillis = requested;
+            }
+        }
         if (request.getParameter("checkerrorpages") != null) {
             request.setAttribute(
                     "http://validator.nu/properties/ignore-response-status",
@@ -825,21 +1073,60 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
             }
         }
 
+        int aggregate = 0;
+        String aggregateStr = request.getParameter("aggregate");
+        if (aggregateStr != null) {
+            try {
+                aggregate = Integer.parseInt(aggregateStr);
+            } catch (NumberFormatException e) {
+                aggregate = -1;
+            }
+            if (aggregate < 0) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                        "The \u201Caggregate\u201D parameter must be a"
+                                + " non-negative number.");
+                return;
+            }
+        }
+
+        int sourceContext = -1;
+        String sourceContextStr = request.getParameter("sourcecontext");
+        if (sourceContextStr != null) {
+            try {
+                sourceContext = Integer.parseInt(sourceContextStr);
+            } catch (NumberFormatException e) {
+                sourceContext = -1;
+            }
+            if (sourceContext < 0) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                        "The \u201Csourcecontext\u201D parameter must be a"
+                                + " non-negative number of lines.");
+                return;
+            }
+        }
+
         try {
             if (outputFormat == OutputFormat.HTML
                     || outputFormat == OutputFormat.XHTML) {
+                Utf8OutputStreamWriter writer = new Utf8OutputStreamWriter(out);
+                String format;
                 if (outputFormat == OutputFormat.HTML) {
                     response.setContentType("text/html; charset=utf-8");
-                    contentHandler = new HtmlSerializer(out);
+                    contentHandler = new HtmlSerializer(writer);
+                    format = "html";
                 } else {
                     response.setContentType("application/xhtml+xml");
                     contentHandler = 
-                            new XmlSerializer(out);
+                            new XmlSerializer(writer);
+                    format = "xhtml";
                 }
                 emitter = new XhtmlSaxEmitter(contentHandler);
                 errorHandler = new MessageEmitterAdapter(filterPattern,
                         sourceCode, showSource, imageCollector, lineOffset,
-                        false, new XhtmlMessageEmitter(contentHandler));
+                        false, new XhtmlMessageEmitter(contentHandler, writer,
+                                format));
+                errorHandler.setAggregate(aggregate);
+                errorHandler.setSourceContext(sourceContext);
                 PageEmitter.emit(contentHandler, this);
             } else {
                 if (outputFormat == OutputFormat.TEXT) {
@@ -872,10 +1159,13 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                     throw new RuntimeException("Unreachable.");
                 }
                 errorHandler.setErrorsOnly(errorsOnly);
+                errorHandler.setAggregate(aggregate);
                 validate();
             }
         } catch (SAXException e) {
             log4j.debug("SAXException: " + e.getMessage());
+        } finally {
+            sourceCode.dispose();
         }
     }
 
@@ -962,7 +1252,7 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
     /**
      * @throws SAXException
      */
-    @SuppressWarnings({ "deprecation", "unchecked" }) void validate() throws SAXException {
+    @SuppressWarnings("deprecation") void validate() throws SAXException {
         if (!willValidate()) {
             return;
         }
@@ -982,7 +1272,36 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
         contentTypeParser = new ContentTypeParser(errorHandler, laxType);
         entityResolver = new LocalCacheEntityResolver(dataRes);
         setAllowRnc(true);
+        // The limit counts from arrival, so time spent queued or setting up
+        // the schema is part of it.
+        Object arrival = request.getAttribute(
+                FairSchedulingFilter.ARRIVAL_ATTRIBUTE);
+        long deadlineStart = arrival instanceof Long
+                ? ((Long) arrival).longValue() : arrivalNanos;
+        deadline = new Deadline(deadlineStart, deadlineMillis,
+                new Deadline.DisconnectProbe() {
+            // Only a response on the wire can tell that the client is gone.
+            @Override
+            public boolean isDisconnected() {
+                if (!response.isCommitted()) {
+                    return false;
+                }
+                try {
+                    out.flush();
+                    return false;
+                } catch (IOException e) {
+                    return true;
+                }
+            }
+        });
+        long validateStart = System.nanoTime();
+        long parseStart = 0;
+        SlowDocumentSpool.Recording recording = null;
+        if (SlowDocumentSpool.SPOOL != null) {
+            recording = SlowDocumentSpool.SPOOL.startRecording();
+        }
         try {
+            this.errorHandler.setTimings(timings);
             this.errorHandler.start(document);
             PropertyMapBuilder pmb = new PropertyMapBuilder();
             pmb.put(ValidateProperty.ERROR_HANDLER, errorHandler);
@@ -991,20 +1310,44 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                     new VerifierServletXMLReaderCreator(errorHandler,
                             entityResolver));
             pmb.put(ValidateProperty.SCHEMA_RESOLVER, this);
+            pmb.put(IdIndex.PROPERTY, idIndex);
+            if (timings != null) {
+                pmb.put(StageTimings.PROPERTY, timings);
+            }
             RngProperty.CHECK_ID_IDREF.add(pmb);
             jingPropertyMap = pmb.toPropertyMap();
 
+            long stageStart = System.nanoTime();
             tryToSetupValidator();
+            if (timings != null) {
+                timings.addSince("schema", stageStart);
+            }
 
             setAllowRnc(false);
 
+            stageStart = System.nanoTime();
             loadDocAndSetupParser();
+            if (timings != null) {
+                timings.addSince("fetch", stageStart);
+                // The body is read while parsing.
+                if (documentInput.getByteStream() != null) {
+                    documentInput.setByteStream(timings.timedStream(
+                            documentInput.getByteStream(), "fetch"));
+                }
+            }
+            if (recording != null) {
+                recordDocument(recording);
+            }
+            if (documentInput.getByteStream() != null) {
+                documentInput.setByteStream(deadline.checkedStream(
+                        documentInput.getByteStream()));
+            }
             setErrorProfile();
 
             reader.setErrorHandler(errorHandler);
             contentType = documentInput.getType();
             sourceCode.initialize(documentInput);
-            if (validator == null) {
+            if (validator == null && checkers.isEnabled(CheckerProfile.NFC)) {
                 checkNormalization = true;
             }
             if (checkNormalization) {
@@ -1040,10 +1383,12 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
             } else {
                 throw new RuntimeException("Bug. Unreachable.");
             }
-            reader = new AttributesPermutingXMLReaderWrapper(reader); // make
-            // RNG
-            // validation
-            // better
+            if (checkers.isEnabled(CheckerProfile.SCHEMA)) {
+                reader = new AttributesPermutingXMLReaderWrapper(reader); // make
+                // RNG
+                // validation
+                // better
+            }
             if (charsetOverride != null) {
                 String charset = documentInput.getEncoding();
                 if (charset == null) {
@@ -1058,16 +1403,19 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                 }
                 documentInput.setEncoding(charsetOverride);
             }
-            if (showOutline) {
-                reader = new OutlineBuildingXMLReaderWrapper(reader, request, false);
-                reader = new OutlineBuildingXMLReaderWrapper(reader, request, true);
+            // Only the HTML and XHTML outputs show the outline.
+            OutlineBuildingXMLReaderWrapper outlineBuilder = null;
+            if (showOutline && isHtmlOrXhtml
+                    && checkers.isEnabled(CheckerProfile.OUTLINE)) {
+                outlineBuilder = new OutlineBuildingXMLReaderWrapper(reader);
+                reader = outlineBuilder;
             }
+            deadline.check();
+            parseStart = System.nanoTime();
             reader.parse(documentInput);
-            if (showOutline) {
-                outline = (Deque<Section>) request.getAttribute(
-                        "http://validator.nu/properties/document-outline");
-                headingOutline = (Deque<Section>) request.getAttribute(
-                        "http://validator.nu/properties/heading-outline");
+            if (outlineBuilder != null) {
+                outline = outlineBuilder.getOutline();
+                headingOutline = outlineBuilder.getHeadingOutline();
             }
         } catch (CannotRecoverException e) {
         } catch (ChangingEncodingException e) {
@@ -1084,11 +1432,17 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
             errorHandler.ioError(new IOException(e.getMessage(), null));
         } catch (TooManyErrorsException e) {
             errorHandler.fatalError(e);
+        } catch (CheckCancelledException e) {
+            checkCancelled(e);
         } catch (SAXException e) {
             log4j.debug("SAXException: " + e.getMessage());
         } catch (IOException e) {
-            isHtmlOrXhtml = false;
-            errorHandler.ioError(e);
+            if (e.getCause() instanceof CheckCancelledException) {
+                checkCancelled((CheckCancelledException) e.getCause());
+            } else {
+                isHtmlOrXhtml = false;
+                errorHandler.ioError(e);
+            }
         } catch (IncorrectSchemaException e) {
             log4j.debug("IncorrectSchemaException", e);
             errorHandler.schemaError(e);
@@ -1107,12 +1461,30 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                     e,
                     "Oops. That was not supposed to happen. A bug manifested itself in the application internals. Unable to continue. Sorry. The admin was notified.");
         } finally {
-            errorHandler.end(successMessage(), failureMessage(),
-                    (String) request.getAttribute(
-                            "http://validator.nu/properties/document-language"));
+            if (timings != null) {
+                if (parseStart != 0) {
+                    timings.addSince("parse", parseStart);
+                }
+                // The checkers run inside the Jing handler; report Jing alone.
+                if (timings.get("jing") != 0) {
+                    timings.add("jing", -timings.sumOf("checker."));
+                }
+                timings.addSince("total", validateStart);
+            }
+            if (!clientGone) {
+                errorHandler.end(successMessage(), failureMessage(),
+                        (String) request.getAttribute(
+                                "http://validator.nu/properties/document-language"));
+            }
+            if (timings != null) {
+                reportTimings();
+            }
+            if (recording != null && recording.isSlow()) {
+                recording.spool(describeRequest());
+            }
             gatherStatistics();
         }
-        if (isHtmlOrXhtml) {
+        if (isHtmlOrXhtml && !clientGone) {
             XhtmlOutlineEmitter outlineEmitter = new XhtmlOutlineEmitter(
                     contentHandler, outline, headingOutline);
             outlineEmitter.emitHeadings();
@@ -1122,6 +1494,111 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
         }
     }
 
+    /**
+     * Reports a check that ran out of time as a non-document error. A check
+     * whose client went away ends without a report.
+     */
+    private void checkCancelled(CheckCancelledException e)
+            throws SAXException {
+        if (e.isDisconnected()) {
+            clientGone = true;
+            log4j.debug("Client went away, doc: " + document);
+        } else {
+            log4j.info("Deadline of " + deadlineMillis + " ms exceeded, doc: "
+                    + document);
+            errorHandler.ioError(new IOException(e.getMessage()));
+        }
+    }
+
+    /**
+     * Sends the timings as a <code>Server-Timing</code> header. The HTML and
+     * XHTML pages and large reports have been flushed by now, so those only
+     * carry the timings in the log.
+     */
+    private void reportTimings() {
+        String serverTiming = timings.toServerTiming();
+        if (!response.isCommitted()) {
+            response.setHeader("Server-Timing", serverTiming);
+        }
+        log4j.debug(document + "\t" + serverTiming);
+    }
+
+    /**
+     * Keeps a copy of the document as it is read, labelled with the content
+     * type it arrived with.
+     */
+    private void recordDocument(SlowDocumentSpool.Recording recording) {
+        String type = postContentType;
+        if (methodIsGet) {
+            type = documentInput.getType();
+            if (type != null && documentInput.getEncoding() != null) {
+                type = type + "; charset=" + documentInput.getEncoding();
+            }
+        }
+        if (type == null) {
+            return;
+        }
+        if (documentInput.getByteStream() != null) {
+            documentInput.setByteStream(recording.record(
+                    documentInput.getByteStream(), type));
+        } else if (documentInput.getCharacterStream() != null) {
+            // Characters are recorded as UTF-8 under the bare type.
+            int semicolon = type.indexOf(';');
+            documentInput.setCharacterStream(recording.record(
+                    documentInput.getCharacterStream(),
+                    semicolon == -1 ? type : type.substring(0, semicolon).trim()));
+        }
+    }
+
+    /**
+     * Describes the request for <code>SlowDocumentReplay</code>.
+     */
+    private Properties describeRequest() {
+        Properties description = new Properties();
+        description.setProperty("transaction", getClass().getName());
+        if (document != null) {
+            description.setProperty("document", document);
+        }
+        description.setProperty("schema", schemaUrls);
+        description.setProperty("parser", parser.name());
+        Object inputType = request.getAttribute(
+                "nu.validator.servlet.MultipartFormDataFilter.type");
+        if (inputType != null) {
+            description.setProperty("input-type", inputType.toString());
+        }
+        for (Enumeration<String> names = request.getParameterNames(); names.hasMoreElements();) {
+            String name = names.nextElement();
+            description.setProperty("param." + name,
+                    request.getParameter(name));
+        }
+        return description;
+    }
+
+    /**
+     * Returns the content handler of the validator behind the handler that
+     * fills the checkers' ID index, timed as the "jing" stage if timing was
+     * requested, behind the deadline checks.
+     */
+    private ContentHandler validatorContentHandler() {
+        ContentHandler ch = new IdIndexingContentHandler(
+                validator.getContentHandler(), idIndex);
+        if (timings != null) {
+            ch = new TimingContentHandler(ch, timings, "jing");
+        }
+        return new CancellingContentHandler(ch, deadline);
+    }
+
+    private XMLReader detectingLanguage(XMLReader wrapped) {
+        if (!checkers.isEnabled(CheckerProfile.LANGUAGE)) {
+            return wrapped;
+        }
+        LanguageDetectingXMLReaderWrapper wrapper = new LanguageDetectingXMLReaderWrapper(
+                wrapped, request, errorHandler, documentInput.getLanguage(),
+                documentInput.getSystemId());
+        wrapper.setTimings(timings);
+        return wrapper;
+    }
+
     private void gatherStatistics() {
         Statistics stats = Statistics.STATISTICS;
         if (stats == null) {
@@ -1619,11 +2096,9 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                     validator = validatorByDoctype(schemaId);
                 }
                 if (validator != null) {
-                    reader.setContentHandler(validator.getContentHandler());
+                    reader.setContentHandler(validatorContentHandler());
                 }
-                reader = new LanguageDetectingXMLReaderWrapper(reader, request,
-                        errorHandler, documentInput.getLanguage(),
-                        documentInput.getSystemId());
+                reader = detectingLanguage(reader);
                 break;
             case XML_NO_EXTERNAL_ENTITIES:
             case XML_EXTERNAL_ENTITIES_NO_VALIDATION:
@@ -1657,11 +2132,9 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                     htmlParser.setDocumentModeHandler(this);
                     reader = htmlParser;
                     if (validator != null) {
-                        reader.setContentHandler(validator.getContentHandler());
+                        reader.setContentHandler(validatorContentHandler());
                     }
-                    reader = new LanguageDetectingXMLReaderWrapper(reader,
-                            request, errorHandler, documentInput.getLanguage(),
-                            documentInput.getSystemId());
+                    reader = detectingLanguage(reader);
                 } else {
                     if (contentType != null) {
                         if ("application/xml".equals(contentType) ||
@@ -1730,6 +2203,7 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                 parser == ParserMode.XML_EXTERNAL_ENTITIES_NO_VALIDATION);
         if (parser == ParserMode.XML_EXTERNAL_ENTITIES_NO_VALIDATION) {
             reader.setEntityResolver(entityResolver);
+            xmlParser.setDtdCache(DTD_CACHE);
         } else {
             reader.setEntityResolver(new NullEntityResolver());
         }
@@ -1739,13 +2213,11 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
             reader.setContentHandler(bufferingRootNamespaceSniffer);
         } else {
             reader.setContentHandler(new RootNamespaceSniffer(this,
-                    validator.getContentHandler()));
+                    validatorContentHandler()));
             reader.setDTDHandler(validator.getDTDHandler());
         }
         if (useXhtml5Schema()) {
-            reader = new LanguageDetectingXMLReaderWrapper(reader, request,
-                    errorHandler, documentInput.getLanguage(),
-                    documentInput.getSystemId());
+            reader = detectingLanguage(reader);
         }
     }
 
@@ -1781,6 +2253,11 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                 v = combineValidatorByUrl(v, url);
             }
         }
+        if (v == null && checkersSkipped) {
+            // Everything asked for was switched off; the parsers still need
+            // somewhere to send their events.
+            v = new CheckerValidator(new NullChecker(), jingPropertyMap);
+        }
         if (imageCollector != null && v != null) {
             v = new CombineValidator(imageCollector, v);
         }
@@ -1798,6 +2275,10 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
     private Validator combineValidatorByUrl(Validator val, String url)
             throws SAXException, IOException, IncorrectSchemaException {
         if (!"".equals(url)) {
+            if (!checkers.isEnabledUrl(url)) {
+                checkersSkipped = true;
+                return val;
+            }
             Validator v = validatorByUrl(url);
             if (val == null) {
                 val = v;
@@ -1829,6 +2310,7 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                 || "http://s.validator.nu/xhtml5-rdfalite.rnc".equals(url)
                 || "http://s.validator.nu/html5-rdfalite.rnc".equals(url)) {
             errorHandler.setSpec(html5spec);
+            errorHandler.setElaborationCache(elaborationCache);
         }
         Schema sch = resolveSchema(url, jingPropertyMap);
         Validator validator = sch.createValidator(jingPropertyMap);
@@ -1843,7 +2325,7 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
             throws SAXException, IOException, IncorrectSchemaException {
         int i = Arrays.binarySearch(preloadedSchemaUrls, url);
         if (i > -1) {
-            Schema rv = preloadedSchemas[i];
+            Schema rv = preloadedSchemas[i].get();
             if (options.contains(WrapProperty.ATTRIBUTE_OWNER)) {
                 if (rv instanceof CheckerSchema) {
                     errorHandler.error(new SAXParseException(
@@ -2137,7 +2619,7 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                 throw new RuntimeException(
                         "Bug! bufferingRootNamespaceSniffer was null.");
             }
-            bufferingRootNamespaceSniffer.setContentHandler(validator.getContentHandler());
+            bufferingRootNamespaceSniffer.setContentHandler(validatorContentHandler());
         }
 
         if (!rootNamespaceSeen) {
@@ -2246,7 +2728,7 @@ class VerifierServletTransaction implements DocumentModeHandler, SchemaResolver
                 // At this point the schema comes from memory.
                 throw new RuntimeException(e);
             }
-            ContentHandler ch = validator.getContentHandler();
+            ContentHandler ch = validatorContentHandler();
             ch.setDocumentLocator(htmlParser.getDocumentLocator());
             ch.startDocument();
             reader.setContentHandler(ch);
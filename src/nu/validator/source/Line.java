@@ -73,7 +73,10 @@ final class Line {
     void characters(char[] ch, int start, int length) {
         int newBufferLength = bufferLength + length;
         if (offset + newBufferLength > buffer.length) {
-            char[] newBuf = new char[((newBufferLength >> 11) + 1) << 11];
+            // Grow at least geometrically so that a very long line isn't
+            // copied over and over in 2K steps.
+            char[] newBuf = new char[Math.max(
+                    ((newBufferLength >> 11) + 1) << 11, bufferLength << 1)];
             System.arraycopy(buffer, offset, newBuf, 0, bufferLength);
             buffer = newBuf;
             offset = 0;
@@ -50,7 +50,7 @@ public final class Location implements Comparable<Location>, Cloneable {
                 line = 0;
                 column = 0;                
             } else {
-                column = owner.getLine(line).getBufferLength();
+                column = owner.getLineLength(line);
             }
         }
         this.line = line;
@@ -131,8 +131,7 @@ public final class Location implements Comparable<Location>, Cloneable {
                     break;
                 }
                 newColumn++;
-                Line sourceLine = owner.getLine(newLine);
-                if (newColumn > sourceLine.getBufferLength()) {
+                if (newColumn > owner.getLineLength(newLine)) {
                     newLine++;
                     newColumn = 0;
                 }
@@ -147,7 +146,7 @@ public final class Location implements Comparable<Location>, Cloneable {
                 newColumn--;
                 if (newColumn == -1) {
                     newLine--;
-                    newColumn = owner.getLine(newLine).getBufferLength();
+                    newColumn = owner.getLineLength(newLine);
                 }
             }            
             return new Location(owner, newLine, newColumn);
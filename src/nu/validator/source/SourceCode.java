@@ -22,16 +22,18 @@
 
 package nu.validator.source;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.SortedSet;
 
 import nu.validator.collections.HeadBiasedSortedSet;
 import nu.validator.collections.TailBiasedSortedSet;
 import nu.validator.htmlparser.common.CharacterHandler;
+import nu.validator.xml.CharacterUtil;
 import nu.validator.xml.TypedInputSource;
 
 import org.apache.log4j.Logger;
@@ -45,6 +47,14 @@ public final class SourceCode implements CharacterHandler {
 
     private static Location[] SOURCE_LOCATION_ARRAY_TYPE = new Location[0];
 
+    /**
+     * Documents longer than this many characters (or bytes, when the length
+     * is known up front) are kept in a temporary file instead of on the heap.
+     */
+    private static final long DEFAULT_SPILL_THRESHOLD = Long.parseLong(
+            System.getProperty("nu.validator.source.spill-threshold",
+                    "4194304"));
+
     private String uri;
     
     private String type;
@@ -74,8 +84,37 @@ public final class SourceCode implements CharacterHandler {
 
     private Line currentLine = null;
 
+    private long spillThreshold = DEFAULT_SPILL_THRESHOLD;
+
+    private long retained = 0;
+
+    /**
+     * Non-<code>null</code> when the source text has been spilled to a
+     * temporary file. <code>lines</code> is empty then.
+     */
+    private SpilledLines spilled = null;
+
     private boolean prevWasCr = false;
 
+    /**
+     * While a windowed source view is being emitted, the first and the last
+     * line of each window, in pairs; <code>null</code> when all lines are
+     * emitted.
+     */
+    private int[] windows = null;
+
+    private int windowCount;
+
+    /**
+     * The window that contains or follows the line being emitted.
+     */
+    private int window;
+
+    /**
+     * The line the source handler is on.
+     */
+    private int handlerLine;
+
     private final LocationRecorder locationRecorder;
 
     public SourceCode() {
@@ -100,6 +139,18 @@ public final class SourceCode implements CharacterHandler {
         }
     }
 
+    /**
+     * Sets the length in characters above which the source text is kept in a
+     * temporary file instead of on the heap. Takes effect for the next
+     * document.
+     *
+     * @param spillThreshold the threshold; <code>Long.MAX_VALUE</code> to
+     *            always keep the source on the heap
+     */
+    public void setSpillThreshold(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
     /**
      * @see org.xml.sax.ContentHandler#characters(char[], int, int)
      * @see java.lang.StringBuffer#append(char[], int, int)
@@ -110,11 +161,20 @@ public final class SourceCode implements CharacterHandler {
         int s = start;
         int end = start + length;
         for (int i = start; i < end; i++) {
+            // skip to the next CR, LF or other control character
+            int next = CharacterUtil.skipRange(ch, i, end, '\u000E', 0x10000);
+            if (next > i) {
+                prevWasCr = false;
+                i = next;
+                if (i == end) {
+                    break;
+                }
+            }
             char c = ch[i];
             switch (c) {
                 case '\r':
                     if (s < i) {
-                        currentLine.characters(ch, s, i - s);
+                        appendToCurrentLine(ch, s, i - s);
                     }
                     newLine();
                     s = i + 1;
@@ -123,7 +183,7 @@ public final class SourceCode implements CharacterHandler {
                 case '\n':
                     if (!prevWasCr) {
                         if (s < i) {
-                            currentLine.characters(ch, s, i - s);
+                            appendToCurrentLine(ch, s, i - s);
                         }
                         newLine();
                     }
@@ -136,11 +196,56 @@ public final class SourceCode implements CharacterHandler {
             }
         }
         if (s < end) {
-            currentLine.characters(ch, s, end - s);
+            appendToCurrentLine(ch, s, end - s);
+        }
+    }
+
+    private void appendToCurrentLine(char[] ch, int start, int length)
+            throws SAXException {
+        if (spilled != null) {
+            try {
+                spilled.characters(ch, start, length);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+            return;
+        }
+        currentLine.characters(ch, start, length);
+        retained += length;
+        if (retained > spillThreshold) {
+            spill();
         }
     }
 
+    /**
+     * Moves the lines retained so far into a temporary file. If the file
+     * cannot be created, keeps the source on the heap.
+     */
+    private void spill() {
+        SpilledLines spill;
+        try {
+            spill = new SpilledLines();
+            for (Line line : lines) {
+                spill.newLine();
+                spill.characters(line.getBuffer(), line.getOffset(),
+                        line.getBufferLength());
+            }
+        } catch (IOException e) {
+            log4j.warn("Could not spill source to a temporary file.", e);
+            spillThreshold = Long.MAX_VALUE;
+            return;
+        }
+        log4j.debug("Spilled source of " + uri + " to a temporary file.");
+        spilled = spill;
+        lines.clear();
+        currentLine = null;
+    }
+
     private void newLine() {
+        if (spilled != null) {
+            spilled.newLine();
+            return;
+        }
         int offset;
         char[] buffer;
         if (currentLine == null) {
@@ -156,6 +261,13 @@ public final class SourceCode implements CharacterHandler {
 
     @Override
     public void end() throws SAXException {
+        if (spilled != null) {
+            int last = spilled.getNumberOfLines() - 1;
+            if (last >= 0 && spilled.getLineLength(last) == 0) {
+                spilled.removeLastLine();
+            }
+            return;
+        }
         if (currentLine != null && currentLine.getBufferLength() == 0) {
             // Theoretical impurity with line separators vs. terminators
             lines.remove(lines.size() - 1);
@@ -168,10 +280,30 @@ public final class SourceCode implements CharacterHandler {
         reverseSortedLocations.clear();
         lines.clear();
         currentLine = null;
+        dispose();
+        retained = 0;
+        if (expectedLength > spillThreshold) {
+            spill();
+        }
         newLine();
         prevWasCr = false;
     }
 
+    /**
+     * Releases the temporary file that holds the source of a large document.
+     * Extracts can no longer be emitted for the document afterwards.
+     */
+    public void dispose() {
+        if (spilled != null) {
+            try {
+                spilled.close();
+            } catch (IOException e) {
+                log4j.debug("Could not close spilled source.", e);
+            }
+            spilled = null;
+        }
+    }
+
     void addLocatorLocation(int oneBasedLine, int oneBasedColumn) {
         log4j.debug(oneBasedLine + ", " + oneBasedColumn);
         reverseSortedLocations.add(new Location(this, oneBasedLine - 1,
@@ -201,6 +333,23 @@ public final class SourceCode implements CharacterHandler {
         exactErrors.add(location);
     }
 
+    /**
+     * Records an error range end without emitting an extract, so that later
+     * range starts and the full source come out as if it had been emitted.
+     */
+    public void rememberRangeEnd(Location rangeLast) {
+        reverseSortedLocations.add(rangeLast);
+        rangeLasts.add(rangeLast);
+    }
+
+    /**
+     * Records a line error without emitting an extract.
+     */
+    @SuppressWarnings("boxing")
+    public void rememberLineError(int oneBasedLine) {
+        oneBasedLineErrors.add(oneBasedLine);
+    }
+
     public void registerRandeEnd(Locator locator) {
         String systemId = locator.getSystemId();
         if (uri == systemId || (uri != null && uri.equals(systemId))) {
@@ -242,41 +391,116 @@ public final class SourceCode implements CharacterHandler {
     public void lineError(int oneBasedLine, SourceHandler extractHandler)
             throws SAXException {
         oneBasedLineErrors.add(oneBasedLine);
-        Line line = lines.get(oneBasedLine - 1);
+        int line = oneBasedLine - 1;
         extractHandler.startSource(type, encoding);
-        extractHandler.characters(line.getBuffer(), line.getOffset(),
-                line.getBufferLength());
+        emitLine(line, 0, getLineLength(line), extractHandler);
         extractHandler.endSource();
     }
 
     public boolean isWithinKnownSource(Location location) {
-        if (location.getLine() >= lines.size()) {
+        if (location.getLine() >= getNumberOfLines()) {
             return false;
         }
-        Line line = lines.get(location.getLine());
-        return line.getBufferLength() >= location.getColumn();
+        return getLineLength(location.getLine()) >= location.getColumn();
     }
 
     public boolean isWithinKnownSource(int oneBasedLine) {
-        return !(oneBasedLine > lines.size());
+        return !(oneBasedLine > getNumberOfLines());
     }
 
-    Line getLine(int line) {
-        return lines.get(line);
+    int getLineLength(int line) {
+        if (spilled != null) {
+            return spilled.getLineLength(line);
+        }
+        return lines.get(line).getBufferLength();
     }
 
     int getNumberOfLines() {
+        if (spilled != null) {
+            return spilled.getNumberOfLines();
+        }
         return lines.size();
     }
 
+    /**
+     * Emits <code>length</code> characters of a line starting at column
+     * <code>from</code>.
+     */
+    private void emitLine(int line, int from, int length,
+            SourceHandler handler) throws SAXException {
+        if (!enterLine(line, handler)) {
+            return;
+        }
+        if (spilled != null) {
+            spilled.emit(line, from, length, handler);
+            return;
+        }
+        Line l = lines.get(line);
+        handler.characters(l.getBuffer(), l.getOffset() + from, length);
+    }
+
+    /**
+     * Emits the line break that ends a line.
+     */
+    private void endLine(int line, SourceHandler handler)
+            throws SAXException {
+        if (enterLine(line, handler)) {
+            handler.newLine();
+            handlerLine = line + 1;
+        }
+    }
+
+    /**
+     * Tells whether a line is shown and, if lines have been skipped to get
+     * to it, reports them to the handler first. Lines must be entered in
+     * ascending order.
+     */
+    private boolean enterLine(int line, SourceHandler handler)
+            throws SAXException {
+        if (windows == null) {
+            return true;
+        }
+        while (window < windowCount && windows[2 * window + 1] < line) {
+            window++;
+        }
+        if (window == windowCount || windows[2 * window] > line) {
+            return false;
+        }
+        if (line > handlerLine) {
+            handler.skippedLines(handlerLine + 1, line);
+            handlerLine = line;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the location itself if its line is shown and otherwise the
+     * start of the next line that is.
+     */
+    private Location shownFrom(Location location) {
+        if (windows == null) {
+            return location;
+        }
+        int line = location.getLine();
+        for (int w = window; w < windowCount; w++) {
+            if (windows[2 * w + 1] >= line) {
+                if (windows[2 * w] <= line) {
+                    return location;
+                }
+                return new Location(this, windows[2 * w], 0);
+            }
+        }
+        return location;
+    }
+
     void emitCharacter(Location location, SourceHandler handler)
             throws SAXException {
-        Line line = getLine(location.getLine());
+        int line = location.getLine();
         int col = location.getColumn();
-        if (col == line.getBufferLength()) {
-            handler.newLine();
+        if (col == getLineLength(line)) {
+            endLine(line, handler);
         } else {
-            handler.characters(line.getBuffer(), line.getOffset() + col, 1);
+            emitLine(line, col, 1, handler);
         }
     }
 
@@ -296,75 +520,84 @@ public final class SourceCode implements CharacterHandler {
         }
         int fromLine = from.getLine();
         int untilLine = until.getLine();
-        Line line = getLine(fromLine);
+        int numberOfLines = getNumberOfLines();
         if (fromLine == untilLine) {
-            handler.characters(line.getBuffer(), line.getOffset()
-                    + from.getColumn(), until.getColumn() - from.getColumn());
+            emitLine(fromLine, from.getColumn(),
+                    until.getColumn() - from.getColumn(), handler);
         } else {
             // first line
-            int length = line.getBufferLength() - from.getColumn();
+            int length = getLineLength(fromLine) - from.getColumn();
             if (length > 0) {
-                handler.characters(line.getBuffer(), line.getOffset()
-                        + from.getColumn(), length);
+                emitLine(fromLine, from.getColumn(), length, handler);
             }
-            if (fromLine + 1 != lines.size()) {
-                handler.newLine();
+            if (fromLine + 1 != numberOfLines) {
+                endLine(fromLine, handler);
             }
             // lines in between
             int wholeLine = fromLine + 1;
             while (wholeLine < untilLine) {
-                line = getLine(wholeLine);
-                handler.characters(line.getBuffer(), line.getOffset(),
-                        line.getBufferLength());
-                wholeLine++;
-                if (wholeLine != lines.size()) {
-                    handler.newLine();
+                if (windows != null && !enterLine(wholeLine, handler)) {
+                    // jump to the next window
+                    wholeLine = window == windowCount ? untilLine
+                            : Math.min(untilLine, windows[2 * window]);
+                    continue;
                 }
+                emitLine(wholeLine, 0, getLineLength(wholeLine), handler);
+                if (wholeLine + 1 != numberOfLines) {
+                    endLine(wholeLine, handler);
+                }
+                wholeLine++;
             }
             // last line
             int untilCol = until.getColumn();
             if (untilCol > 0) {
-                line = getLine(untilLine);
-                handler.characters(line.getBuffer(), line.getOffset(), untilCol);
+                emitLine(untilLine, 0, untilCol, handler);
             }
         }
     }
 
     public void emitSource(SourceHandler handler) throws SAXException {
-        List<Range> ranges = new LinkedList<>();
+        emitSource(handler, -1);
+    }
+
+    /**
+     * Emits the source with the recorded errors highlighted.
+     * 
+     * @param handler
+     *            the handler
+     * @param context
+     *            the number of lines to show around each line that has an
+     *            error, with the lines in between reported as skipped; a
+     *            negative number to show all lines
+     * @throws SAXException
+     */
+    public void emitSource(SourceHandler handler, int context)
+            throws SAXException {
         Location[] locations = reverseSortedLocations.toArray(SOURCE_LOCATION_ARRAY_TYPE);
-        int i = locations.length - 1;
-        for (Location loc : rangeLasts) {
-            while (i >= 0 && locations[i].compareTo(loc) < 0) {
-                i--;
-            }
-            Location start;
-            if (i == locations.length - 1) {
-                start = new Location(this, 0, 0);
-            } else {
-                start = locations[i + 1].next();                
-            }
-            Location end = loc.next();
-            ranges.add(new Range(start, end, loc));
+        Location origin = new Location(this, 0, 0);
+        int numberOfLines = getNumberOfLines();
+        if (context >= 0) {
+            computeWindows(context, numberOfLines);
         }
         try {
             handler.startSource(type, encoding);
             handler.setLineErrors(oneBasedLineErrors);
-            Iterator<Range> rangeIter = ranges.iterator();
+            Iterator<Location> rangeIter = rangeLasts.iterator();
             Iterator<Location> exactIter = exactErrors.iterator();
-            Location previousLocation = new Location(this, 0, 0);
+            Location previousLocation = origin;
             Location exact = null;
             Location rangeStart = null;
             Location rangeEnd = null;
             Location rangeLoc = null;
+            int i = locations.length - 1;
             if (exactIter.hasNext()) {
                 exact = exactIter.next();
             }
             if (rangeIter.hasNext()) {
-                Range r = rangeIter.next();
-                rangeStart = r.getStart();
-                rangeEnd = r.getEnd();
-                rangeLoc = r.getLoc();
+                rangeLoc = rangeIter.next();
+                i = rangeStartIndex(locations, i, rangeLoc);
+                rangeStart = rangeStart(locations, i, origin);
+                rangeEnd = rangeLoc.next();
             }
             while (exact != null || rangeEnd != null) {
                 if (exact != null
@@ -372,6 +605,7 @@ public final class SourceCode implements CharacterHandler {
                         && (rangeEnd == null || exact.compareTo(rangeEnd) < 0)) { // exact
                                                                                     // first?
                     emitContent(previousLocation, exact, handler);
+                    enterLine(exact.getLine(), handler);
                     handler.startCharHilite(exact.getLine() + 1,
                             exact.getColumn() + 1);
                     emitCharacter(exact, handler);
@@ -384,7 +618,9 @@ public final class SourceCode implements CharacterHandler {
                         exact = null;
                     }
                 } else if (rangeStart != null) { // range start first?
+                    rangeStart = shownFrom(rangeStart);
                     emitContent(previousLocation, rangeStart, handler);
+                    enterLine(rangeStart.getLine(), handler);
                     handler.startRange(rangeLoc.getLine() + 1,
                             rangeLoc.getColumn() + 1);
                     previousLocation = rangeStart;
@@ -395,22 +631,91 @@ public final class SourceCode implements CharacterHandler {
                     previousLocation = rangeEnd;
 
                     if (rangeIter.hasNext()) {
-                        Range r = rangeIter.next();
-                        rangeStart = r.getStart();
-                        rangeEnd = r.getEnd();
-                        rangeLoc = r.getLoc();
+                        rangeLoc = rangeIter.next();
+                        i = rangeStartIndex(locations, i, rangeLoc);
+                        rangeStart = rangeStart(locations, i, origin);
+                        rangeEnd = rangeLoc.next();
                     } else {
                         rangeEnd = null;
                     }
                 }
             }
-            emitContent(previousLocation, new Location(this, lines.size(), 0),
-                    handler);
+            emitContent(previousLocation, new Location(this,
+                    numberOfLines, 0), handler);
+            if (windows != null) {
+                int last = windowCount == 0 ? -1
+                        : windows[2 * windowCount - 1];
+                if (last < numberOfLines - 1) {
+                    handler.skippedLines(last + 2, numberOfLines);
+                }
+            }
         } finally {
+            windows = null;
             handler.endSource();
         }
     }
 
+    /**
+     * Moves down the reverse sorted locations past those that are not
+     * before a range end.
+     */
+    private static int rangeStartIndex(Location[] locations, int i,
+            Location rangeLast) {
+        while (i >= 0 && locations[i].compareTo(rangeLast) < 0) {
+            i--;
+        }
+        return i;
+    }
+
+    private Location rangeStart(Location[] locations, int i, Location origin) {
+        if (i == locations.length - 1) {
+            return origin;
+        }
+        return locations[i + 1].next();
+    }
+
+    /**
+     * Merges the windows of <code>context</code> lines around each line that
+     * has an error.
+     */
+    @SuppressWarnings("boxing")
+    private void computeWindows(int context, int numberOfLines) {
+        int[] errorLines = new int[exactErrors.size() + rangeLasts.size()
+                + oneBasedLineErrors.size()];
+        int n = 0;
+        for (Location loc : exactErrors) {
+            errorLines[n++] = loc.getLine();
+        }
+        for (Location loc : rangeLasts) {
+            errorLines[n++] = loc.getLine();
+        }
+        for (Integer oneBasedLine : oneBasedLineErrors) {
+            errorLines[n++] = oneBasedLine - 1;
+        }
+        Arrays.sort(errorLines, 0, n);
+        windows = new int[2 * n];
+        windowCount = 0;
+        window = 0;
+        handlerLine = 0;
+        for (int j = 0; j < n; j++) {
+            int first = Math.max(0, errorLines[j] - context);
+            int last = Math.min(numberOfLines - 1,
+                    (int) Math.min(Integer.MAX_VALUE,
+                            (long) errorLines[j] + context));
+            if (first > last) {
+                continue;
+            }
+            if (windowCount > 0 && first <= windows[2 * windowCount - 1] + 1) {
+                windows[2 * windowCount - 1] = Math.max(last,
+                        windows[2 * windowCount - 1]);
+            } else {
+                windows[2 * windowCount] = first;
+                windows[2 * windowCount + 1] = last;
+                windowCount++;
+            }
+        }
+    }
+
     /**
      * Returns the uri.
      * 
@@ -43,6 +43,12 @@ public interface SourceHandler {
     public void characters(char[] ch, int start, int length) throws SAXException;
     
     public void newLine() throws SAXException;
+
+    /**
+     * Reports that the given lines, inclusive, are left out of the source.
+     * Called instead of the content of the lines, only at line boundaries.
+     */
+    public void skippedLines(int oneBasedFirst, int oneBasedLast) throws SAXException;
     
     public void startRange(int oneBasedLine, int oneBasedColumn) throws SAXException;
 
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.source;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Source text kept in a temporary file instead of on the heap. The decoded
+ * characters are written as UTF-16 so that a character offset maps directly
+ * to a file position; the heap only holds the start offset and the length of
+ * each line.
+ */
+final class SpilledLines implements Closeable {
+
+    private static final int CHUNK = 4096;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer out = ByteBuffer.allocate(CHUNK * 2);
+
+    private final ByteBuffer in = ByteBuffer.allocate(CHUNK * 2);
+
+    private final char[] scratch = new char[CHUNK];
+
+    private int[] starts = new int[1024];
+
+    private int[] lengths = new int[1024];
+
+    private int count = 0;
+
+    private int length = 0;
+
+    private long flushed = 0;
+
+    SpilledLines() throws IOException {
+        Path path = Files.createTempFile("vnu-source", ".utf16");
+        channel = FileChannel.open(path, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    void newLine() {
+        if (count == starts.length) {
+            int[] newStarts = new int[count << 1];
+            System.arraycopy(starts, 0, newStarts, 0, count);
+            starts = newStarts;
+            int[] newLengths = new int[count << 1];
+            System.arraycopy(lengths, 0, newLengths, 0, count);
+            lengths = newLengths;
+        }
+        starts[count] = length;
+        lengths[count] = 0;
+        count++;
+    }
+
+    void removeLastLine() {
+        count--;
+    }
+
+    void characters(char[] ch, int start, int len) throws IOException {
+        lengths[count - 1] += len;
+        length += len;
+        int end = start + len;
+        for (int i = start; i < end; i++) {
+            if (!out.hasRemaining()) {
+                flush();
+            }
+            out.putChar(ch[i]);
+        }
+    }
+
+    private void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            flushed += channel.write(out, flushed);
+        }
+        out.clear();
+    }
+
+    int getNumberOfLines() {
+        return count;
+    }
+
+    int getLineLength(int line) {
+        return lengths[line];
+    }
+
+    /**
+     * Emits <code>len</code> characters of a line starting at column
+     * <code>from</code>.
+     */
+    void emit(int line, int from, int len, SourceHandler handler)
+            throws SAXException {
+        if (len <= 0) {
+            return;
+        }
+        try {
+            if (out.position() > 0) {
+                flush();
+            }
+            long pos = ((long) starts[line] + from) << 1;
+            while (len > 0) {
+                int n = Math.min(len, CHUNK);
+                in.clear();
+                in.limit(n << 1);
+                while (in.hasRemaining()) {
+                    if (channel.read(in, pos + in.position()) < 0) {
+                        throw new EOFException();
+                    }
+                }
+                in.flip();
+                in.asCharBuffer().get(scratch, 0, n);
+                handler.characters(scratch, 0, n);
+                pos += n << 1;
+                len -= n;
+            }
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.source.test;
+
+import java.util.SortedSet;
+
+import nu.validator.source.SourceCode;
+import nu.validator.source.SourceHandler;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Feeds a synthetic document of the given size in megabytes (default 50)
+ * through <code>SourceCode</code>, once with the source kept on the heap and
+ * once spilled to a temporary file, and reports the time taken, the heap
+ * retained, the time to emit a thousand extracts and the time to emit the
+ * whole source and a windowed view of it.
+ */
+public class SourceCodeBenchmark {
+
+    private static final int EXTRACTS = 1000;
+
+    private static final int SOURCE_CONTEXT = 3;
+
+    private final char[] chunk;
+
+    private final int chunks;
+
+    /**
+     * @param megabytes size of the document
+     */
+    public SourceCodeBenchmark(int megabytes) {
+        StringBuilder sb = new StringBuilder();
+        int row = 0;
+        while (sb.length() < 8192) {
+            sb.append("<tr><td class=cell>row ");
+            sb.append(row++);
+            sb.append("</td><td>value</td></tr>\n");
+        }
+        chunk = sb.toString().toCharArray();
+        chunks = (int) ((megabytes * 1024L * 1024L) / chunk.length);
+    }
+
+    public static void main(String[] args) throws SAXException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        SourceCodeBenchmark benchmark = new SourceCodeBenchmark(megabytes);
+        benchmark.run("heap", Long.MAX_VALUE);
+        benchmark.run("spilled", 0);
+    }
+
+    private void run(String label, long spillThreshold) throws SAXException {
+        System.gc();
+        long before = usedHeap();
+        long start = System.nanoTime();
+        SourceCode sourceCode = new SourceCode();
+        sourceCode.setSpillThreshold(spillThreshold);
+        sourceCode.initialize(new InputSource());
+        sourceCode.start();
+        for (int i = 0; i < chunks; i++) {
+            sourceCode.characters(chunk, 0, chunk.length);
+        }
+        sourceCode.end();
+        long fed = System.nanoTime() - start;
+        System.gc();
+        long retained = usedHeap() - before;
+        CountingHandler handler = new CountingHandler();
+        start = System.nanoTime();
+        int lines = chunks * countLines();
+        for (int i = 0; i < EXTRACTS; i++) {
+            int line = (int) ((long) lines * i / EXTRACTS) + 1;
+            sourceCode.exactError(sourceCode.newLocatorLocation(line, 10),
+                    handler);
+        }
+        long extracts = System.nanoTime() - start;
+        CountingHandler full = new CountingHandler();
+        start = System.nanoTime();
+        sourceCode.emitSource(full);
+        long fullSource = System.nanoTime() - start;
+        CountingHandler windowed = new CountingHandler();
+        start = System.nanoTime();
+        sourceCode.emitSource(windowed, SOURCE_CONTEXT);
+        long windowedSource = System.nanoTime() - start;
+        sourceCode.dispose();
+        System.out.println(String.format(
+                "%s: fed in %d ms, retained %d KB, %d extracts (%d chars) in %d ms",
+                label, fed / 1000000, retained / 1024, EXTRACTS,
+                handler.chars, extracts / 1000000));
+        System.out.println(String.format(
+                "%s: full source (%d chars) in %d ms, windowed source (%d chars) in %d ms",
+                label, full.chars, fullSource / 1000000, windowed.chars,
+                windowedSource / 1000000));
+    }
+
+    private int countLines() {
+        int count = 0;
+        for (char c : chunk) {
+            if (c == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final class CountingHandler implements SourceHandler {
+
+        long chars = 0;
+
+        @Override
+        public void startSource(String type, String encoding)
+                throws SAXException {
+        }
+
+        @Override
+        public void skippedLines(int oneBasedFirst, int oneBasedLast)
+                throws SAXException {
+        }
+
+        @Override
+        public void setLineErrors(SortedSet<Integer> oneBasedLineErrors)
+                throws SAXException {
+        }
+
+        @Override
+        public void endSource() throws SAXException {
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+                throws SAXException {
+            chars += length;
+        }
+
+        @Override
+        public void newLine() throws SAXException {
+        }
+
+        @Override
+        public void startRange(int oneBasedLine, int oneBasedColumn)
+                throws SAXException {
+        }
+
+        @Override
+        public void endRange() throws SAXException {
+        }
+
+        @Override
+        public void startCharHilite(int oneBasedLine, int oneBasedColumn)
+                throws SAXException {
+        }
+
+        @Override
+        public void endCharHilite() throws SAXException {
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.validation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Selects which parts of the checking pipeline run for a document. A profile
+ * is given as a list of names separated by commas or spaces: a profile name
+ * replaces the selection with that profile, a component name prefixed with
+ * "-" disables that component and a component name on its own (or prefixed
+ * with "+") enables it. The selection starts from the "all" profile, so
+ * "parse-errors-only,language" or "-obsolete,-unchecked" are both complete
+ * profiles.
+ */
+public final class CheckerProfile {
+
+    /**
+     * RELAX NG validation against the main schema and any other schema that
+     * is not one of the components below.
+     */
+    public static final String SCHEMA = "schema";
+
+    /**
+     * The assertions that complement the HTML schemas.
+     */
+    public static final String ASSERTIONS = "assertions";
+
+    public static final String TABLE = "table";
+
+    public static final String NFC = "nfc";
+
+    public static final String TEXT_CONTENT = "text-content";
+
+    public static final String UNCHECKED = "unchecked";
+
+    public static final String USEMAP = "usemap";
+
+    public static final String OBSOLETE = "obsolete";
+
+    public static final String XML_PI = "xml-pi";
+
+    public static final String UNSUPPORTED = "unsupported";
+
+    public static final String MICRODATA = "microdata";
+
+    public static final String RDFALITE = "rdfalite";
+
+    public static final String DEBUG = "debug";
+
+    /**
+     * The legacy http://c.validator.nu/base/ checker URL. It is a checker,
+     * not a schema, so it must not fall under {@link #SCHEMA}.
+     */
+    public static final String BASE = "base";
+
+    /**
+     * The XMLReader wrapper that checks html[lang] against the detected
+     * language.
+     */
+    public static final String LANGUAGE = "language";
+
+    /**
+     * The XMLReader wrapper that builds the document outline.
+     */
+    public static final String OUTLINE = "outline";
+
+    private static final String[] COMPONENTS = { SCHEMA, ASSERTIONS, TABLE,
+            NFC, TEXT_CONTENT, UNCHECKED, USEMAP, OBSOLETE, XML_PI,
+            UNSUPPORTED, MICRODATA, RDFALITE, DEBUG, BASE, LANGUAGE, OUTLINE };
+
+    private static final String[] CHECKER_URL_PREFIXES = {
+            "http://c.validator.nu/", "http://hsivonen.iki.fi/checkers/",
+            "http://n.validator.nu/checkers/" };
+
+    private static final String[] ASSERTION_URLS = {
+            "http://s.validator.nu/html5/assertions.sch",
+            "http://s.validator.nu/html4/assertions.sch" };
+
+    private static final Pattern SEPARATOR = Pattern.compile("[,\\s]+");
+
+    private static final Map<String, String[]> PROFILES = new LinkedHashMap<>();
+
+    static {
+        PROFILES.put("all", COMPONENTS);
+        PROFILES.put("schema-only", new String[] { SCHEMA, ASSERTIONS });
+        PROFILES.put("parse-errors-only", new String[0]);
+    }
+
+    public static final CheckerProfile ALL = new CheckerProfile(
+            new HashSet<>(Arrays.asList(COMPONENTS)));
+
+    private final Set<String> enabled;
+
+    private CheckerProfile(Set<String> enabled) {
+        this.enabled = Collections.unmodifiableSet(enabled);
+    }
+
+    /**
+     * Parses a profile.
+     *
+     * @param spec profile and component names
+     * @return the profile
+     * @throws IllegalArgumentException if a name is not known
+     */
+    public static CheckerProfile parse(String spec) {
+        Set<String> enabled = new HashSet<>(ALL.enabled);
+        for (String token : SEPARATOR.split(spec.trim())) {
+            if ("".equals(token)) {
+                continue;
+            }
+            String[] profile = PROFILES.get(token);
+            if (profile != null) {
+                enabled.clear();
+                enabled.addAll(Arrays.asList(profile));
+                continue;
+            }
+            boolean disable = token.charAt(0) == '-';
+            String name = (disable || token.charAt(0) == '+') ? token.substring(1)
+                    : token;
+            if (!ALL.enabled.contains(name)) {
+                throw new IllegalArgumentException(
+                        "Unknown checker profile or component \u201C" + name
+                                + "\u201D.");
+            }
+            if (disable) {
+                enabled.remove(name);
+            } else {
+                enabled.add(name);
+            }
+        }
+        if (enabled.equals(ALL.enabled)) {
+            return ALL;
+        }
+        return new CheckerProfile(enabled);
+    }
+
+    /**
+     * Returns the component that a schema or checker URL belongs to.
+     */
+    public static String componentOf(String url) {
+        for (String prefix : CHECKER_URL_PREFIXES) {
+            if (url.startsWith(prefix) && url.endsWith("/")) {
+                String name = url.substring(prefix.length(), url.length() - 1);
+                if (ALL.enabled.contains(name)) {
+                    return name;
+                }
+            }
+        }
+        for (String assertions : ASSERTION_URLS) {
+            if (assertions.equals(url)) {
+                return ASSERTIONS;
+            }
+        }
+        return SCHEMA;
+    }
+
+    public boolean isEnabled(String component) {
+        return enabled.contains(component);
+    }
+
+    /**
+     * Tells whether the schema or checker at <code>url</code> should be
+     * placed in the pipeline.
+     */
+    public boolean isEnabledUrl(String url) {
+        return enabled.contains(componentOf(url));
+    }
+
+    /**
+     * @return the names of the enabled components in a fixed order, or the
+     * name of the profile they make up
+     */
+    @Override
+    public String toString() {
+        for (Map.Entry<String, String[]> entry : PROFILES.entrySet()) {
+            if (enabled.equals(new HashSet<>(Arrays.asList(entry.getValue())))) {
+                return entry.getKey();
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String component : COMPONENTS) {
+            if (enabled.contains(component)) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(component);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -30,13 +30,16 @@ import nu.validator.checker.jing.CheckerSchema;
 import nu.validator.checker.jing.CheckerValidator;
 import nu.validator.checker.table.TableChecker;
 import nu.validator.checker.ConformingButObsoleteWarner;
+import nu.validator.checker.IdIndex;
 import nu.validator.checker.MicrodataChecker;
 import nu.validator.checker.NormalizationChecker;
+import nu.validator.checker.NullChecker;
 import nu.validator.checker.TextContentChecker;
 import nu.validator.checker.UncheckedSubtreeWarner;
 import nu.validator.checker.UnsupportedFeatureChecker;
 import nu.validator.checker.UsemapChecker;
 import nu.validator.checker.XmlPiChecker;
+import nu.validator.gnu.xml.aelfred2.DtdCache;
 import nu.validator.gnu.xml.aelfred2.FatalSAXException;
 import nu.validator.gnu.xml.aelfred2.SAXDriver;
 import nu.validator.htmlparser.common.DoctypeExpectation;
@@ -51,6 +54,7 @@ import nu.validator.xml.langattributes.XmlLangAttributeDroppingSchemaWrapper;
 import nu.validator.xml.roleattributes.RoleAttributeFilteringSchemaWrapper;
 import nu.validator.xml.templateelement.TemplateElementDroppingSchemaWrapper;
 import nu.validator.xml.IdFilter;
+import nu.validator.xml.IdIndexingContentHandler;
 import nu.validator.xml.LanguageDetectingXMLReaderWrapper;
 import nu.validator.xml.NullEntityResolver;
 import nu.validator.xml.PrudentHttpEntityResolver;
@@ -89,6 +93,13 @@ import java.util.Properties;
  */
 public class SimpleDocumentValidator {
 
+    /**
+     * Parsed external DTD subsets from the local entity cache, shared by all
+     * the validators in the process.
+     */
+    private static final DtdCache DTD_CACHE = new DtdCache(32,
+            LocalCacheEntityResolver.getLocalSystemIds());
+
     private LocalCacheEntityResolver entityResolver;
 
     private Schema mainSchema;
@@ -99,6 +110,8 @@ public class SimpleDocumentValidator {
 
     private Validator validator;
 
+    private final IdIndex idIndex = new IdIndex();
+
     private SourceCode sourceCode = new SourceCode();
 
     private TypedInputSource documentInput;
@@ -115,6 +128,8 @@ public class SimpleDocumentValidator {
 
     private boolean enableLanguageDetection;
 
+    private CheckerProfile checkers = CheckerProfile.ALL;
+
     static {
         PrudentHttpEntityResolver.setParams(
                 Integer.parseInt(System.getProperty(
@@ -168,6 +183,12 @@ public class SimpleDocumentValidator {
         this(initializeLog4j, true, true);
     }
 
+    /**
+     * Returns the source of the document being checked. The temporary file
+     * of a spilled source is released when the check returns, so a caller
+     * that emits the full source afterwards must turn spilling off with
+     * {@link SourceCode#setSpillThreshold(long)}.
+     */
     public SourceCode getSourceCode() {
         return this.sourceCode;
     }
@@ -278,33 +299,64 @@ public class SimpleDocumentValidator {
         pmb.put(ValidateProperty.ERROR_HANDLER, docValidationErrHandler);
         pmb.put(ValidateProperty.XML_READER_CREATOR,
                 new Jaxp11XMLReaderCreator());
+        pmb.put(IdIndex.PROPERTY, idIndex);
         RngProperty.CHECK_ID_IDREF.add(pmb);
         PropertyMap jingPropertyMap = pmb.toPropertyMap();
 
-        validator = this.mainSchema.createValidator(jingPropertyMap);
+        validator = null;
+        if (checkers.isEnabled(CheckerProfile.SCHEMA)) {
+            validator = this.mainSchema.createValidator(jingPropertyMap);
+        }
 
         if (this.hasHtml5Schema) {
-            Validator assertionValidator = assertionSchema.createValidator(jingPropertyMap);
-            validator = new CombineValidator(validator, assertionValidator);
-            validator = new CombineValidator(validator, new CheckerValidator(
-                    new TableChecker(), jingPropertyMap));
-            validator = new CombineValidator(validator, new CheckerValidator(
-                    new ConformingButObsoleteWarner(), jingPropertyMap));
-            validator = new CombineValidator(validator, new CheckerValidator(
-                    new MicrodataChecker(), jingPropertyMap));
-            validator = new CombineValidator(validator, new CheckerValidator(
-                    new NormalizationChecker(), jingPropertyMap));
-            validator = new CombineValidator(validator, new CheckerValidator(
-                    new TextContentChecker(), jingPropertyMap));
-            validator = new CombineValidator(validator, new CheckerValidator(
-                    new UncheckedSubtreeWarner(), jingPropertyMap));
-            validator = new CombineValidator(validator, new CheckerValidator(
-                    new UnsupportedFeatureChecker(), jingPropertyMap));
-            validator = new CombineValidator(validator, new CheckerValidator(
-                    new UsemapChecker(), jingPropertyMap));
-            validator = new CombineValidator(validator, new CheckerValidator(
-                    new XmlPiChecker(), jingPropertyMap));
+            if (checkers.isEnabled(CheckerProfile.ASSERTIONS)) {
+                validator = combine(validator,
+                        assertionSchema.createValidator(jingPropertyMap));
+            }
+            if (checkers.isEnabled(CheckerProfile.TABLE)) {
+                validator = combine(validator, new CheckerValidator(
+                        new TableChecker(), jingPropertyMap));
+            }
+            if (checkers.isEnabled(CheckerProfile.OBSOLETE)) {
+                validator = combine(validator, new CheckerValidator(
+                        new ConformingButObsoleteWarner(), jingPropertyMap));
+            }
+            if (checkers.isEnabled(CheckerProfile.MICRODATA)) {
+                validator = combine(validator, new CheckerValidator(
+                        new MicrodataChecker(), jingPropertyMap));
+            }
+            if (checkers.isEnabled(CheckerProfile.NFC)) {
+                validator = combine(validator, new CheckerValidator(
+                        new NormalizationChecker(), jingPropertyMap));
+            }
+            if (checkers.isEnabled(CheckerProfile.TEXT_CONTENT)) {
+                validator = combine(validator, new CheckerValidator(
+                        new TextContentChecker(), jingPropertyMap));
+            }
+            if (checkers.isEnabled(CheckerProfile.UNCHECKED)) {
+                validator = combine(validator, new CheckerValidator(
+                        new UncheckedSubtreeWarner(), jingPropertyMap));
+            }
+            if (checkers.isEnabled(CheckerProfile.UNSUPPORTED)) {
+                validator = combine(validator, new CheckerValidator(
+                        new UnsupportedFeatureChecker(), jingPropertyMap));
+            }
+            if (checkers.isEnabled(CheckerProfile.USEMAP)) {
+                validator = combine(validator, new CheckerValidator(
+                        new UsemapChecker(), jingPropertyMap));
+            }
+            if (checkers.isEnabled(CheckerProfile.XML_PI)) {
+                validator = combine(validator, new CheckerValidator(
+                        new XmlPiChecker(), jingPropertyMap));
+            }
+        }
+        if (validator == null) {
+            validator = new CheckerValidator(new NullChecker(),
+                    jingPropertyMap);
         }
+        boolean checkNormalization = checkers.isEnabled(CheckerProfile.NFC);
+        boolean detectLanguage = enableLanguageDetection
+                && checkers.isEnabled(CheckerProfile.LANGUAGE);
 
         HtmlParser htmlParser = new HtmlParser();
         htmlParser.addCharacterHandler(sourceCode);
@@ -317,23 +369,25 @@ public class SimpleDocumentValidator {
         htmlParser.setHtml4ModeCompatibleWithXhtml1Schemata(true);
         htmlParser.setDoctypeExpectation(DoctypeExpectation.HTML);
         htmlParser.setHeuristics(Heuristics.ALL);
-        htmlParser.setContentHandler(validator.getContentHandler());
+        htmlParser.setContentHandler(new IdIndexingContentHandler(
+                validator.getContentHandler(), idIndex));
         htmlParser.setErrorHandler(docValidationErrHandler);
         htmlParser.setNamePolicy(XmlViolationPolicy.ALLOW);
         htmlParser.setMappingLangToXmlLang(true);
         htmlParser.setFeature(
                 "http://xml.org/sax/features/unicode-normalization-checking",
-                true);
+                checkNormalization);
         if (!noStream) {
             htmlParser.setStreamabilityViolationPolicy(XmlViolationPolicy.FATAL);
         }
         htmlReader = getWiretap(htmlParser);
-        if (enableLanguageDetection) {
+        if (detectLanguage) {
             htmlReader = new LanguageDetectingXMLReaderWrapper(htmlReader, null,
                     docValidationErrHandler, "", "");
         }
         xmlParser = new SAXDriver();
-        xmlParser.setContentHandler(validator.getContentHandler());
+        xmlParser.setContentHandler(new IdIndexingContentHandler(
+                validator.getContentHandler(), idIndex));
         if (lexicalHandler != null) {
             xmlParser.setProperty(
                     "http://xml.org/sax/properties/lexical-handler",
@@ -341,12 +395,14 @@ public class SimpleDocumentValidator {
         }
         xmlReader = new IdFilter(xmlParser);
         xmlReader.setFeature("http://xml.org/sax/features/string-interning", true);
-        xmlReader.setContentHandler(validator.getContentHandler());
+        xmlReader.setContentHandler(new IdIndexingContentHandler(
+                validator.getContentHandler(), idIndex));
         xmlReader.setFeature(
                 "http://xml.org/sax/features/unicode-normalization-checking",
-                true);
+                checkNormalization);
         if (loadExternalEnts) {
             xmlReader.setEntityResolver(entityResolver);
+            xmlParser.setDtdCache(DTD_CACHE);
         } else {
             xmlReader.setFeature(
                     "http://xml.org/sax/features/external-general-entities",
@@ -357,7 +413,7 @@ public class SimpleDocumentValidator {
             xmlReader.setEntityResolver(new NullEntityResolver());
         }
         xmlReader = getWiretap(xmlParser);
-        if (enableLanguageDetection) {
+        if (detectLanguage) {
             xmlReader = new LanguageDetectingXMLReaderWrapper(xmlReader, null,
                     docValidationErrHandler, "", "");
         }
@@ -365,6 +421,23 @@ public class SimpleDocumentValidator {
         xmlParser.lockErrorHandler();
     }
 
+    /**
+     * Selects the checkers that {@link #setUpValidatorAndParsers} places in
+     * the pipeline. Checkers that are switched off are not instantiated.
+     * 
+     * @param checkers the checker profile; all checkers by default
+     */
+    public void setCheckerProfile(CheckerProfile checkers) {
+        this.checkers = checkers;
+    }
+
+    private static Validator combine(Validator first, Validator second) {
+        if (first == null) {
+            return second;
+        }
+        return new CombineValidator(first, second);
+    }
+
     private WiretapXMLReaderWrapper getWiretap(XMLReader reader) {
         WiretapXMLReaderWrapper wiretap = new WiretapXMLReaderWrapper(reader);
         ContentHandler recorder = sourceCode.getLocationRecorder();
@@ -457,6 +530,9 @@ public class SimpleDocumentValidator {
         try {
             htmlReader.parse(is);
         } catch (SAXParseException e) {
+        } finally {
+            // releases the temporary file of a spilled source
+            sourceCode.dispose();
         }
     }
 
@@ -470,6 +546,8 @@ public class SimpleDocumentValidator {
             xmlReader.parse(is);
         } catch (SAXParseException e) {
         } catch (FatalSAXException e) {
+        } finally {
+            sourceCode.dispose();
         }
     }
 
@@ -43,5 +43,46 @@ public class CharacterUtil {
     public static String prudentlyScrubCharacterData(CharSequence data) {
         Matcher m = PRUDENT.matcher(data);
         return m.replaceAll("");
-    }    
+    }
+
+    /**
+     * Returns the index of the first UTF-16 code unit in a slice of an array
+     * that is not in the range from <code>low</code> (inclusive) to
+     * <code>high</code> (exclusive), or <code>end</code> if there is none.
+     * Four code units are examined per step as long as they are all in
+     * range, which lets callers skip runs of uninteresting text (typically
+     * ASCII) before doing per-character work.
+     *
+     * @param ch the array to scan
+     * @param start the index of the first code unit to examine
+     * @param end the index of the first code unit not to examine
+     * @param low the lowest code unit in the range
+     * @param high one more than the highest code unit in the range
+     * @return the index of the first code unit outside the range or
+     *         <code>end</code>
+     */
+    public static int skipRange(char[] ch, int start, int end, int low,
+            int high) {
+        int span = high - low;
+        int i = start;
+        int stop = end - 3;
+        while (i < stop) {
+            // If all four are in range, none of the differences is negative
+            // and their bitwise or is at least as large as each of them.
+            int or = (ch[i] - low) | (ch[i + 1] - low) | (ch[i + 2] - low)
+                    | (ch[i + 3] - low);
+            if (or < 0 || or >= span) {
+                break;
+            }
+            i += 4;
+        }
+        while (i < end) {
+            int d = ch[i] - low;
+            if (d < 0 || d >= span) {
+                return i;
+            }
+            i++;
+        }
+        return end;
+    }
 }
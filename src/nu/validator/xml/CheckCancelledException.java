@@ -1,67 +1,51 @@
 /*
- * Copyright (c) 2007 Mozilla Foundation
+ * Copyright (c) 2017 Mozilla Foundation
  *
- * Permission is hereby granted, free of charge, to any person obtaining a 
- * copy of this software and associated documentation files (the "Software"), 
- * to deal in the Software without restriction, including without limitation 
- * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
- * and/or sell copies of the Software, and to permit persons to whom the 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
  * Software is furnished to do so, subject to the following conditions:
  *
- * The above copyright notice and this permission notice shall be included in 
+ * The above copyright notice and this permission notice shall be included in
  * all copies or substantial portions of the Software.
  *
- * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
- * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
- * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL 
- * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
- * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
- * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
  * DEALINGS IN THE SOFTWARE.
  */
 
-package nu.validator.source;
+package nu.validator.xml;
 
-public class Range {
-    private final Location start;
-    private final Location end;
-    private final Location loc;
-    
-    /**
-     * @param start
-     * @param end
-     * @param loc 
-     */
-    Range(Location start, Location end, Location loc) {
-        this.start = start;
-        this.end = end;
-        this.loc = loc;
-    }
+import org.xml.sax.SAXParseException;
 
-    /**
-     * Returns the end.
-     * 
-     * @return the end
-     */
-    Location getEnd() {
-        return end;
-    }
+/**
+ * Thrown to abandon a check that ran past its deadline or whose client went
+ * away.
+ */
+public class CheckCancelledException extends SAXParseException {
+
+    private final boolean disconnected;
 
     /**
-     * Returns the start.
-     * 
-     * @return the start
+     * @param message
+     * @param disconnected whether the client went away
      */
-    Location getStart() {
-        return start;
+    public CheckCancelledException(String message, boolean disconnected) {
+        super(message, null);
+        this.disconnected = disconnected;
     }
 
     /**
-     * Returns the loc.
-     * 
-     * @return the loc
+     * Tells whether the client went away, in which case nobody reads the
+     * report.
      */
-    Location getLoc() {
-        return loc;
+    public boolean isDisconnected() {
+        return disconnected;
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.xml;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decides when a check is to be abandoned: when it has run longer than its
+ * time limit or when the client has gone away. The parser input and the
+ * content handlers call <code>check()</code> or <code>tick()</code> as they
+ * make progress, so a cancelled check stops at the next event.
+ */
+public final class Deadline {
+
+    /**
+     * Tells whether the client is still there.
+     */
+    public interface DisconnectProbe {
+        boolean isDisconnected();
+    }
+
+    private static final long PROBE_INTERVAL_NANOS = 250000000L;
+
+    private static final int EVENTS_PER_CHECK = 32;
+
+    private final long limitMillis;
+
+    private final long expiresNanos;
+
+    private final DisconnectProbe probe;
+
+    private long nextProbeNanos;
+
+    private int events = 0;
+
+    private CheckCancelledException cancelled = null;
+
+    /**
+     * @param limitMillis the time limit from now, or zero for none
+     * @param probe the disconnect probe or <code>null</code>
+     */
+    public Deadline(long limitMillis, DisconnectProbe probe) {
+        this(System.nanoTime(), limitMillis, probe);
+    }
+
+    /**
+     * @param startNanos the <code>System.nanoTime()</code> from which the
+     *            limit counts, such as the arrival of the request
+     * @param limitMillis the time limit from <code>startNanos</code>, or zero
+     *            for none
+     * @param probe the disconnect probe or <code>null</code>
+     */
+    public Deadline(long startNanos, long limitMillis, DisconnectProbe probe) {
+        this.limitMillis = limitMillis;
+        this.expiresNanos = startNanos + limitMillis * 1000000L;
+        this.probe = probe;
+        this.nextProbeNanos = System.nanoTime() + PROBE_INTERVAL_NANOS;
+    }
+
+    /**
+     * Throws if the check is to be abandoned. Once cancelled, every later
+     * check throws too, so that the events a parser sends while unwinding
+     * do not restart the work.
+     */
+    public void check() throws CheckCancelledException {
+        if (cancelled != null) {
+            throw cancelled;
+        }
+        long now = System.nanoTime();
+        if (limitMillis > 0 && now - expiresNanos > 0) {
+            cancelled = new CheckCancelledException(
+                    "The check was stopped because it took longer than the time limit of "
+                            + limitMillis + " ms.", false);
+            throw cancelled;
+        }
+        if (probe != null && now - nextProbeNanos > 0) {
+            nextProbeNanos = now + PROBE_INTERVAL_NANOS;
+            if (probe.isDisconnected()) {
+                cancelled = new CheckCancelledException(
+                        "The check was stopped because the client went away.",
+                        true);
+                throw cancelled;
+            }
+        }
+    }
+
+    /**
+     * Counts an event and checks every few events.
+     */
+    public void tick() throws CheckCancelledException {
+        if (++events == EVENTS_PER_CHECK) {
+            events = 0;
+            check();
+        }
+    }
+
+    /**
+     * Returns a stream that checks before each read. A cancellation surfaces
+     * as an <code>IOException</code> whose cause is the
+     * <code>CheckCancelledException</code>.
+     */
+    public InputStream checkedStream(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                checkForRead();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                checkForRead();
+                return super.read(b, off, len);
+            }
+        };
+    }
+
+    private void checkForRead() throws IOException {
+        try {
+            check();
+        } catch (CheckCancelledException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
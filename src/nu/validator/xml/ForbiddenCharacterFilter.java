@@ -46,6 +46,11 @@ public class ForbiddenCharacterFilter extends ContentHandlerFilter {
     public void characters(char[] chars, int start, int length) throws SAXException {
         int end = start + length;
         for (int i = start; i < end; i++) {
+            // printable ASCII is always allowed
+            i = CharacterUtil.skipRange(chars, i, end, '\u0020', '\u007F');
+            if (i == end) {
+                break;
+            }
             char c = chars[i];
             if (!((c >= '\u0020' && c <= '\uFFFD') || c == '\t' || c == '\n' || c == '\r') || c == '\uFEFF' || (c >= '\u007F' && c <= '\u009F') || (c >= '\uFDD0' && c <= '\uFDDF')) {
                 if (start < i) {
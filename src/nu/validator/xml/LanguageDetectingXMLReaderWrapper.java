@@ -34,7 +34,6 @@ import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 
-import com.cybozu.labs.langdetect.Detector;
 import com.cybozu.labs.langdetect.DetectorFactory;
 import com.cybozu.labs.langdetect.LangDetectException;
 import com.cybozu.labs.langdetect.Language;
@@ -281,6 +280,8 @@ public final class LanguageDetectingXMLReaderWrapper
 
     private int nonWhitespaceCharacterCount;
 
+    private StageTimings timings;
+
     private static final int MAX_CHARS = 30720;
 
     private static final int MIN_CHARS = 1024;
@@ -361,6 +362,13 @@ public final class LanguageDetectingXMLReaderWrapper
         wrappedReader.setContentHandler(this);
     }
 
+    /**
+     * Records the time spent detecting the language as the "lang" stage.
+     */
+    public void setTimings(StageTimings timings) {
+        this.timings = timings;
+    }
+
     /**
      * @see org.xml.sax.helpers.XMLFilterImpl#characters(char[], int, int)
      */
@@ -740,7 +748,16 @@ public final class LanguageDetectingXMLReaderWrapper
         if (contentHandler == null) {
             return;
         }
-        detectLanguageAndCheckAgainstDeclaredLanguage();
+        if (timings == null) {
+            detectLanguageAndCheckAgainstDeclaredLanguage();
+        } else {
+            long start = System.nanoTime();
+            try {
+                detectLanguageAndCheckAgainstDeclaredLanguage();
+            } finally {
+                timings.addSince("lang", start);
+            }
+        }
         contentHandler.endDocument();
     }
 
@@ -764,11 +781,9 @@ public final class LanguageDetectingXMLReaderWrapper
             String textContent = documentContent.toString() //
                     .replaceAll("\\s+", " ");
             String detectedLanguage = "";
-            Detector detector = DetectorFactory.create();
-            detector.append(textContent);
-            detector.getProbabilities();
             ArrayList<String> possibileLanguages = new ArrayList<>();
-            ArrayList<Language> possibilities = detector.getProbabilities();
+            ArrayList<Language> possibilities = ScriptHistogram.detect(
+                    textContent);
             for (Language possibility : possibilities) {
                 possibileLanguages.add(possibility.lang);
                 ULocale plocale = new ULocale(possibility.lang);
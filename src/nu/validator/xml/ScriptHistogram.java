@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.xml;
+
+import java.lang.Character.UnicodeScript;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.cybozu.labs.langdetect.Detector;
+import com.cybozu.labs.langdetect.DetectorFactory;
+import com.cybozu.labs.langdetect.LangDetectException;
+import com.cybozu.labs.langdetect.Language;
+
+/**
+ * Counts the letters of a text by Unicode script before n-gram language
+ * detection. When one script makes up nearly all the letters and only one of
+ * the language profiles is written in it (Hangul, Thai, Greek, Hebrew and
+ * so on), the script settles the language and the n-gram detector does not
+ * run. Scripts that several profiles share (Latin, Cyrillic, Arabic,
+ * Devanagari, Han) are left to the detector.
+ */
+public final class ScriptHistogram {
+
+    /**
+     * The share of letters that the dominant script must have.
+     */
+    private static final double MIN_SCRIPT_SHARE = .90;
+
+    /**
+     * The number of characters looked at, the same as the detector's default
+     * text length limit.
+     */
+    private static final int MAX_CHARS = 10000;
+
+    private static final UnicodeScript[] SCRIPTS = UnicodeScript.values();
+
+    private static final Map<UnicodeScript, String> LANG_BY_SCRIPT = new EnumMap<>(
+            UnicodeScript.class);
+
+    static {
+        LANG_BY_SCRIPT.put(UnicodeScript.ARMENIAN, "hy");
+        LANG_BY_SCRIPT.put(UnicodeScript.BENGALI, "bn");
+        LANG_BY_SCRIPT.put(UnicodeScript.CHEROKEE, "chr");
+        LANG_BY_SCRIPT.put(UnicodeScript.GEORGIAN, "ka");
+        LANG_BY_SCRIPT.put(UnicodeScript.GREEK, "el");
+        LANG_BY_SCRIPT.put(UnicodeScript.GUJARATI, "gu");
+        LANG_BY_SCRIPT.put(UnicodeScript.GURMUKHI, "pa");
+        LANG_BY_SCRIPT.put(UnicodeScript.HANGUL, "ko");
+        LANG_BY_SCRIPT.put(UnicodeScript.HEBREW, "he");
+        LANG_BY_SCRIPT.put(UnicodeScript.KANNADA, "kn");
+        LANG_BY_SCRIPT.put(UnicodeScript.KHMER, "km");
+        LANG_BY_SCRIPT.put(UnicodeScript.LAO, "lo");
+        LANG_BY_SCRIPT.put(UnicodeScript.MALAYALAM, "ml");
+        LANG_BY_SCRIPT.put(UnicodeScript.MYANMAR, "my");
+        LANG_BY_SCRIPT.put(UnicodeScript.ORIYA, "or");
+        LANG_BY_SCRIPT.put(UnicodeScript.SINHALA, "si");
+        LANG_BY_SCRIPT.put(UnicodeScript.TAMIL, "ta");
+        LANG_BY_SCRIPT.put(UnicodeScript.TELUGU, "te");
+        LANG_BY_SCRIPT.put(UnicodeScript.THAANA, "dv");
+        LANG_BY_SCRIPT.put(UnicodeScript.THAI, "th");
+        LANG_BY_SCRIPT.put(UnicodeScript.TIBETAN, "bo");
+    }
+
+    private ScriptHistogram() {
+    }
+
+    /**
+     * Returns the language that the dominant script of <code>text</code>
+     * settles, or <code>null</code> if no script dominates or the dominant
+     * script is shared by several languages.
+     */
+    public static String dominantScriptLanguage(CharSequence text) {
+        int[] counts = new int[SCRIPTS.length];
+        int letters = 0;
+        int length = Math.min(text.length(), MAX_CHARS);
+        for (int i = 0; i < length;) {
+            int c = Character.codePointAt(text, i);
+            i += Character.charCount(c);
+            if (c < 0x80) {
+                if ((c | 0x20) >= 'a' && (c | 0x20) <= 'z') {
+                    counts[UnicodeScript.LATIN.ordinal()]++;
+                    letters++;
+                }
+            } else if (Character.isLetter(c)) {
+                counts[UnicodeScript.of(c).ordinal()]++;
+                letters++;
+            }
+        }
+        int dominant = 0;
+        for (int i = 1; i < counts.length; i++) {
+            if (counts[i] > counts[dominant]) {
+                dominant = i;
+            }
+        }
+        if (letters == 0 || counts[dominant] < letters * MIN_SCRIPT_SHARE) {
+            return null;
+        }
+        return LANG_BY_SCRIPT.get(SCRIPTS[dominant]);
+    }
+
+    /**
+     * Detects the language of <code>text</code> like
+     * {@link Detector#getProbabilities()}, unless the dominant script
+     * settles it.
+     *
+     * @return the possible languages, most probable first
+     */
+    public static ArrayList<Language> detect(String text)
+            throws LangDetectException {
+        String language = dominantScriptLanguage(text);
+        if (language != null) {
+            ArrayList<Language> possibilities = new ArrayList<>();
+            possibilities.add(new Language(language, 1.0));
+            return possibilities;
+        }
+        Detector detector = DetectorFactory.create();
+        detector.append(text);
+        return detector.getProbabilities();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.xml;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.thaiopensource.util.PropertyId;
+
+/**
+ * Accumulates the wall-clock time spent in the stages of checking one
+ * document, such as fetching, parsing and each checker. Stages are reported
+ * in the order in which they were first recorded. Stages may nest (a checker
+ * runs inside parsing), so the durations do not add up to the total.
+ */
+public final class StageTimings {
+
+    /**
+     * The property under which <code>CheckerValidator</code> finds the
+     * timings to record into.
+     */
+    public static final PropertyId<StageTimings> PROPERTY = PropertyId.newInstance(
+            "STAGE_TIMINGS", StageTimings.class);
+
+    private final Map<String, long[]> nanos = new LinkedHashMap<>();
+
+    /**
+     * Returns the accumulator of a stage, creating it if needed. Callers on a
+     * hot path keep the array instead of looking the stage up every time.
+     */
+    long[] counter(String stage) {
+        long[] counter = nanos.get(stage);
+        if (counter == null) {
+            counter = new long[1];
+            nanos.put(stage, counter);
+        }
+        return counter;
+    }
+
+    public void add(String stage, long elapsedNanos) {
+        counter(stage)[0] += elapsedNanos;
+    }
+
+    /**
+     * Adds the time elapsed since <code>startNanos</code>, as returned by
+     * <code>System.nanoTime()</code>, to a stage.
+     */
+    public void addSince(String stage, long startNanos) {
+        add(stage, System.nanoTime() - startNanos);
+    }
+
+    public long get(String stage) {
+        long[] counter = nanos.get(stage);
+        return counter == null ? 0 : counter[0];
+    }
+
+    /**
+     * Returns the summed time of the stages whose names start with
+     * <code>prefix</code>.
+     */
+    public long sumOf(String prefix) {
+        long sum = 0;
+        for (Map.Entry<String, long[]> entry : nanos.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                sum += entry.getValue()[0];
+            }
+        }
+        return sum;
+    }
+
+    public Iterable<String> getStages() {
+        return nanos.keySet();
+    }
+
+    /**
+     * Returns the duration of a stage in milliseconds, rounded to
+     * microseconds.
+     */
+    public double getMillis(String stage) {
+        return Math.round(get(stage) / 1000.0) / 1000.0;
+    }
+
+    /**
+     * Formats the stages as the value of a <code>Server-Timing</code>
+     * header.
+     */
+    public String toServerTiming() {
+        StringBuilder sb = new StringBuilder();
+        for (String stage : nanos.keySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(stage).append(";dur=").append(getMillis(stage));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a stream that adds the time spent blocked in reads from
+     * <code>in</code> to a stage.
+     */
+    public InputStream timedStream(InputStream in, String stage) {
+        final long[] counter = counter(stage);
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return super.read();
+                } finally {
+                    counter[0] += System.nanoTime() - start;
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return super.read(b, off, len);
+                } finally {
+                    counter[0] += System.nanoTime() - start;
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.xml;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * Passes events on to another content handler and adds the time spent in it
+ * to a stage of a <code>StageTimings</code>.
+ */
+public final class TimingContentHandler implements ContentHandler {
+
+    private final ContentHandler delegate;
+
+    private final long[] counter;
+
+    public TimingContentHandler(ContentHandler delegate, StageTimings timings,
+            String stage) {
+        this.delegate = delegate;
+        this.counter = timings.counter(stage);
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        delegate.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        long start = System.nanoTime();
+        try {
+            delegate.startDocument();
+        } finally {
+            counter[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        long start = System.nanoTime();
+        try {
+            delegate.endDocument();
+        } finally {
+            counter[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri)
+            throws SAXException {
+        long start = System.nanoTime();
+        try {
+            delegate.startPrefixMapping(prefix, uri);
+        } finally {
+            counter[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        long start = System.nanoTime();
+        try {
+            delegate.endPrefixMapping(prefix);
+        } finally {
+            counter[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+            Attributes atts) throws SAXException {
+        long start = System.nanoTime();
+        try {
+            delegate.startElement(uri, localName, qName, atts);
+        } finally {
+            counter[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+        long start = System.nanoTime();
+        try {
+            delegate.endElement(uri, localName, qName);
+        } finally {
+            counter[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        long before = System.nanoTime();
+        try {
+            delegate.characters(ch, start, length);
+        } finally {
+            counter[0] += System.nanoTime() - before;
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length)
+            throws SAXException {
+        long before = System.nanoTime();
+        try {
+            delegate.ignorableWhitespace(ch, start, length);
+        } finally {
+            counter[0] += System.nanoTime() - before;
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data)
+            throws SAXException {
+        long start = System.nanoTime();
+        try {
+            delegate.processingInstruction(target, data);
+        } finally {
+            counter[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        long start = System.nanoTime();
+        try {
+            delegate.skippedEntity(name);
+        } finally {
+            counter[0] += System.nanoTime() - start;
+        }
+    }
+}
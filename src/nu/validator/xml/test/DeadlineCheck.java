@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.xml.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import nu.validator.xml.CheckCancelledException;
+import nu.validator.xml.Deadline;
+
+/**
+ * Checks that an expired <code>Deadline</code> cancels and keeps cancelling,
+ * that a deadline counts from the start it is given, that a disconnect is
+ * noticed and that <code>checkedStream</code> surfaces a cancellation as an
+ * <code>IOException</code> caused by the
+ * <code>CheckCancelledException</code>.
+ */
+public class DeadlineCheck {
+
+    private int failures = 0;
+
+    private int cases = 0;
+
+    public static void main(String[] args) throws Exception {
+        DeadlineCheck check = new DeadlineCheck();
+        check.expiredKeepsThrowing();
+        check.countsFromStart();
+        check.unlimited();
+        check.disconnected();
+        check.checkedStream();
+        System.out.println(String.format("%d cases, %d failures",
+                check.cases, check.failures));
+        if (check.failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void expiredKeepsThrowing() throws InterruptedException {
+        Deadline deadline = new Deadline(1, null);
+        Thread.sleep(20);
+        CheckCancelledException first = cancellation(deadline);
+        expect("expired deadline throws", first != null);
+        expect("expired deadline is not a disconnect",
+                first != null && !first.isDisconnected());
+        for (int i = 0; i < 3; i++) {
+            expect("expired deadline keeps throwing the same exception",
+                    cancellation(deadline) == first);
+        }
+        boolean ticked = false;
+        try {
+            for (int i = 0; i < 64; i++) {
+                deadline.tick();
+            }
+        } catch (CheckCancelledException e) {
+            ticked = true;
+        }
+        expect("expired deadline throws on tick", ticked);
+    }
+
+    private void countsFromStart() {
+        Deadline deadline = new Deadline(System.nanoTime() - 5000000000L,
+                1000, null);
+        expect("deadline started in the past has expired",
+                cancellation(deadline) != null);
+        deadline = new Deadline(System.nanoTime(), 60000, null);
+        expect("deadline started now has not expired",
+                cancellation(deadline) == null);
+    }
+
+    private void unlimited() throws InterruptedException {
+        Deadline deadline = new Deadline(0, null);
+        Thread.sleep(20);
+        expect("zero limit never expires", cancellation(deadline) == null);
+    }
+
+    private void disconnected() throws InterruptedException {
+        Deadline deadline = new Deadline(0, new Deadline.DisconnectProbe() {
+            @Override
+            public boolean isDisconnected() {
+                return true;
+            }
+        });
+        expect("probe is not asked before its interval",
+                cancellation(deadline) == null);
+        Thread.sleep(300);
+        CheckCancelledException e = cancellation(deadline);
+        expect("disconnect throws", e != null && e.isDisconnected());
+        expect("disconnect keeps throwing", cancellation(deadline) == e);
+    }
+
+    private void checkedStream() throws InterruptedException {
+        Deadline live = new Deadline(60000, null);
+        InputStream in = live.checkedStream(
+                new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        try {
+            byte[] buf = new byte[3];
+            expect("live stream reads",
+                    in.read() == 1 && in.read(buf, 0, 3) == 2);
+        } catch (IOException e) {
+            expect("live stream reads", false);
+        }
+        Deadline expired = new Deadline(1, null);
+        Thread.sleep(20);
+        in = expired.checkedStream(new ByteArrayInputStream(new byte[3]));
+        expect("read() surfaces the cancellation", causeOfRead(in, false));
+        expect("read(byte[], int, int) surfaces the cancellation",
+                causeOfRead(in, true));
+    }
+
+    private static boolean causeOfRead(InputStream in, boolean array) {
+        try {
+            if (array) {
+                in.read(new byte[3], 0, 3);
+            } else {
+                in.read();
+            }
+        } catch (IOException e) {
+            return e.getCause() instanceof CheckCancelledException;
+        }
+        return false;
+    }
+
+    private static CheckCancelledException cancellation(Deadline deadline) {
+        try {
+            deadline.check();
+        } catch (CheckCancelledException e) {
+            return e;
+        }
+        return null;
+    }
+
+    private void expect(String what, boolean ok) {
+        cases++;
+        if (!ok) {
+            failures++;
+            System.out.println("Failed: " + what);
+        }
+    }
+}
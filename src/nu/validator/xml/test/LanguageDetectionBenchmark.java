@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2017 Mozilla Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package nu.validator.xml.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nu.validator.xml.LanguageDetectingXMLReaderWrapper;
+import nu.validator.xml.ScriptHistogram;
+
+import com.cybozu.labs.langdetect.Detector;
+import com.cybozu.labs.langdetect.DetectorFactory;
+import com.cybozu.labs.langdetect.LangDetectException;
+import com.cybozu.labs.langdetect.Language;
+
+/**
+ * Runs language detection over a directory of UTF-8 text files, one
+ * document per file, with the n-gram detector alone and with the script
+ * histogram in front of it. Reports the CPU time of each, how many documents
+ * the script settled, and how many documents got a different
+ * answer.
+ */
+public class LanguageDetectionBenchmark {
+
+    private static final int MAX_CHARS = 30720;
+
+    private final List<String> texts = new ArrayList<>();
+
+    /**
+     * @param corpus directory of text files
+     */
+    public LanguageDetectionBenchmark(File corpus) throws IOException {
+        File[] files = corpus.listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            String text = new String(Files.readAllBytes(file.toPath()),
+                    StandardCharsets.UTF_8).replaceAll("\\s+", " ");
+            if (text.length() > MAX_CHARS) {
+                text = text.substring(0, MAX_CHARS);
+            }
+            texts.add(text);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println(
+                    "Usage: LanguageDetectionBenchmark CORPUS_DIR [ROUNDS]");
+            System.exit(1);
+        }
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        LanguageDetectingXMLReaderWrapper.initialize();
+        DetectorFactory.setSeed(0);
+        new LanguageDetectionBenchmark(new File(args[0])).run(rounds);
+    }
+
+    /**
+     * Runs one warm-up round and then the given number of timed rounds.
+     */
+    public void run(int rounds) throws LangDetectException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        String[] plain = new String[texts.size()];
+        String[] shortcut = new String[texts.size()];
+        long plainNanos = 0;
+        long shortcutNanos = 0;
+        for (int round = 0; round <= rounds; round++) {
+            long start = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < plain.length; i++) {
+                Detector detector = DetectorFactory.create();
+                detector.append(texts.get(i));
+                plain[i] = top(detector.getProbabilities());
+            }
+            long middle = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < shortcut.length; i++) {
+                shortcut[i] = top(ScriptHistogram.detect(texts.get(i)));
+            }
+            long end = threads.getCurrentThreadCpuTime();
+            if (round > 0) {
+                plainNanos += middle - start;
+                shortcutNanos += end - middle;
+            }
+        }
+        int settled = 0;
+        int differing = 0;
+        for (int i = 0; i < plain.length; i++) {
+            if (ScriptHistogram.dominantScriptLanguage(texts.get(i)) != null) {
+                settled++;
+            }
+            if (!plain[i].equals(shortcut[i])) {
+                differing++;
+            }
+        }
+        System.out.println(String.format(
+                "%d documents: %d settled by script, %d with a different answer",
+                plain.length, settled, differing));
+        System.out.println(String.format(
+                "n-gram only: %d ms per round, with script histogram: %d ms per round (%.1f%% saved)",
+                plainNanos / rounds / 1000000,
+                shortcutNanos / rounds / 1000000,
+                100.0 * (plainNanos - shortcutNanos) / plainNanos));
+    }
+
+    /**
+     * Returns the language the wrapper would report, or "" for none.
+     */
+    private static String top(ArrayList<Language> possibilities) {
+        for (Language possibility : possibilities) {
+            if (possibility.prob > .90) {
+                return possibility.lang;
+            }
+        }
+        return "";
+    }
+}